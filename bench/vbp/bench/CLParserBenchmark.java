@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2011 Sebastian Straub <sebastian-straub@gmx.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package vbp.bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import vbp.util.arg.CLParser;
+
+/**
+ * Parses typical encoder command lines. Run with "-prof gc" to see the
+ * allocated bytes per parse (gc.alloc.rate.norm).
+ * 
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CLParserBenchmark {
+    
+    @Param({
+        "ffmpeg -i input.avi output.mpg",
+        "ffmpeg -y -i \"my video.avi\" -c:v libx264 -preset slow -crf 22 -vf scale=1280:-2 -c:a aac -b:a 160k \"my video-conv.mkv\"",
+        "-f mkv --strict-anamorphic -e x264 -q 25 -a 1 -E lame -6 dpl2 -R Auto -B 128 -D 0.0 -x ref=2:bframes=2:subq=6:mixed-refs=0:weightb=0:8x8dct=0:trellis=0 --verbose=1"
+    })
+    public String commandLine;
+    
+    @Benchmark
+    public CLParser parse() {
+        return CLParser.parse(commandLine);
+    }
+    
+    @Benchmark
+    public String parseAndQuery() {
+        CLParser parser = CLParser.parse(commandLine);
+        parser.exists("-i");
+        return parser.getLastArg();
+    }
+    
+}
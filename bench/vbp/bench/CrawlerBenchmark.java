@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2011 Sebastian Straub <sebastian-straub@gmx.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package vbp.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import vbp.model.Crawler;
+import vbp.model.FileFilter;
+import vbp.model.Model;
+import vbp.model.ParallelCrawler;
+import vbp.util.fs.MemoryFileSystem;
+
+/**
+ * Crawls a synthetic folder tree (sequential and parallel, with and without
+ * filter), on disk and in memory. The in-memory tree shows the cost of the
+ * crawler itself, without the file system.
+ * 
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class CrawlerBenchmark {
+    
+    /** folder levels of the tree: 4 levels with 6 folders of 12 files each are 259 folders */
+    @Param({"3", "4"})
+    public int depth;
+    
+    /** where the tree is created: "disk" (temp folder) or "memory" */
+    @Param({"disk", "memory"})
+    public String fileSystem;
+    
+    private File root;
+    private MemoryFileSystem memory;
+    private List<Path> input;
+    private FileFilter filter;
+    private ExecutorService executor;
+    private Crawler sequential;
+    private ParallelCrawler parallel;
+    
+    @Setup
+    public void setUp() throws IOException {
+        Path tree;
+        if ("memory".equals(fileSystem)) {
+            memory = MemoryFileSystem.create("bench-" + depth);
+            tree = memory.getPath("/bench");
+        } else {
+            root = File.createTempFile("vbp-bench", "");
+            root.delete();
+            tree = root.toPath();
+        }
+        Fixtures.createTree(tree, depth, 6, 12, 42);
+        input = Collections.singletonList(tree);
+        
+        Model model = new Model();
+        model.loadDefaults();
+        model.setSearchPatternProperties();
+        model.setFileExtension(true);
+        model.setExtensionFilter("avi,mkv,mp4,mov");
+        filter = FileFilter.initialize(model);
+        
+        executor = Executors.newCachedThreadPool();
+        sequential = new Crawler();
+        parallel = new ParallelCrawler(executor, ParallelCrawler.DEFAULT_LISTINGS_PER_MOUNT);
+    }
+    
+    @TearDown
+    public void tearDown() throws IOException {
+        executor.shutdownNow();
+        if (memory != null) {
+            memory.close();
+        } else {
+            Fixtures.delete(root);
+        }
+    }
+    
+    @Benchmark
+    public List<Path> crawl() {
+        return sequential.crawlComplete(input, true);
+    }
+    
+    @Benchmark
+    public List<Path> crawlFiltered() {
+        return sequential.crawlComplete(input, true, filter);
+    }
+    
+    @Benchmark
+    public List<Path> crawlParallel() {
+        return parallel.crawlComplete(input, true, filter);
+    }
+    
+}
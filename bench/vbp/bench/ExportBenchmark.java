@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2011 Sebastian Straub <sebastian-straub@gmx.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package vbp.bench;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import vbp.model.exec.TranscodeJob;
+import vbp.model.export.ExportFFmpeg;
+import vbp.model.export.ExportHandbrake;
+import vbp.model.export.ScriptDialect;
+
+/**
+ * Builds the scripts of both backends (and the jobs of the built-in executor)
+ * for a synthetic file list
+ * 
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ExportBenchmark {
+    
+    private static final String FFMPEG = "ffmpeg -i input.avi -c:v libx264 -preset slow -crf 22 -c:a aac -b:a 160k output.mkv";
+    private static final String HANDBRAKE = "-f mkv --strict-anamorphic -e x264 -q 25 -a 1 -E lame -6 dpl2 -R Auto -B 128 -D 0.0 -x ref=2:bframes=2:subq=6 --verbose=1";
+    
+    @Param({"100", "10000"})
+    public int files;
+    
+    private List<Path> list;
+    private File output;
+    
+    @Setup
+    public void setUp() {
+        list = Fixtures.fileList(files, 42);
+        output = new File(System.getProperty("java.io.tmpdir"), "vbp-bench-out");
+    }
+    
+    @Benchmark
+    public String ffmpeg() {
+        return new ExportFFmpeg(list, FFMPEG, "ffmpeg", "{name}-conv", ScriptDialect.SHELL).buildScript();
+    }
+    
+    @Benchmark
+    public String ffmpegOutputFolder() {
+        return new ExportFFmpeg(list, FFMPEG, "ffmpeg", output, true, ScriptDialect.SHELL).buildScript();
+    }
+    
+    @Benchmark
+    public List<TranscodeJob> ffmpegJobs() {
+        return new ExportFFmpeg(list, FFMPEG, "ffmpeg", "{name}-conv", ScriptDialect.SHELL).buildJobs();
+    }
+    
+    @Benchmark
+    public String handbrake() {
+        return new ExportHandbrake(list, HANDBRAKE, "{name}-conv").buildScript();
+    }
+    
+}
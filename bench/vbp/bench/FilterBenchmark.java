@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2011 Sebastian Straub <sebastian-straub@gmx.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package vbp.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+import vbp.model.Crawler;
+import vbp.model.FileFilter;
+import vbp.model.Model;
+
+/**
+ * Applies the file filter (extensions, size and a user regex) on the files of
+ * a synthetic folder tree
+ * 
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FilterBenchmark {
+    
+    @Param({"EXTENSION", "SIZE", "REGEX"})
+    public String pattern;
+    
+    private File root;
+    private List<Path> files;
+    private FileFilter filter;
+    
+    @Setup
+    public void setUp() throws IOException {
+        root = File.createTempFile("vbp-bench", "");
+        root.delete();
+        Fixtures.createTree(root.toPath(), 3, 5, 40, 42);
+        files = new Crawler().crawlComplete(Collections.singletonList(root.toPath()), true);
+        
+        Model model = new Model();
+        model.loadDefaults();
+        if ("REGEX".equals(pattern)) {
+            model.setSearchPatternRegex();
+            model.setRegex(".*/folder [^/]*/[^/]* - .*\\.(avi|mkv)");
+        } else {
+            model.setSearchPatternProperties();
+            model.setFileExtension("EXTENSION".equals(pattern));
+            model.setExtensionFilter("avi,mkv,mp4,mov");
+            model.setFileSize("SIZE".equals(pattern));
+            model.setMinSize(0);
+            model.setMaxSize(1000);
+        }
+        filter = FileFilter.initialize(model);
+    }
+    
+    @TearDown
+    public void tearDown() {
+        Fixtures.delete(root);
+    }
+    
+    @Benchmark
+    public void filter(Blackhole blackhole) {
+        for (Path file : files) {
+            blackhole.consume(filter.filter(file));
+        }
+    }
+    
+    /**
+     * @return the filtered list, as built by a crawl
+     */
+    @Benchmark
+    public List<Path> filterToList() {
+        List<Path> passed = new ArrayList<Path>();
+        for (Path file : files) {
+            if (filter.filter(file)) {
+                passed.add(file);
+            }
+        }
+        return passed;
+    }
+    
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2011 Sebastian Straub <sebastian-straub@gmx.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package vbp.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import vbp.util.fs.FixtureGenerator;
+
+/**
+ * Generates synthetic input for the benchmarks: folder trees on disk and file
+ * lists that only exist in memory (use FixtureGenerator with a
+ * MemoryFileSystem for folder trees in memory). The names are random (to defeat any
+ * ordering effects) but seeded, so every run sees the same data.
+ * 
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+public class Fixtures {
+    
+    /** extensions of the generated files, videos and others */
+    private static final String[] EXTENSIONS = { "avi", "mkv", "mp4", "mov", "txt", "nfo", "jpg" };
+    
+    /**
+     * Creates a tree of sparse files (see FixtureGenerator)
+     * @param root the folder to create the tree in (on disk or in memory)
+     * @param depth number of folder levels (1: only the root)
+     * @param folders number of sub folders per folder
+     * @param files number of files per folder
+     * @param seed seed for the names and sizes
+     * @return number of created files
+     * @throws IOException if a file can't be created
+     */
+    public static int createTree(Path root, int depth, int folders, int files, long seed) throws IOException {
+        FixtureGenerator generator = new FixtureGenerator(seed);
+        generator.setDepth(depth);
+        generator.setFolders(folders);
+        generator.setFiles(files);
+        generator.setJitter(0);
+        return generator.generate(root).getFiles();
+    }
+    
+    /**
+     * Generates a list of files that don't exist
+     * @param count number of files
+     * @param seed seed for the names
+     * @return the files, spread over a few folders
+     */
+    public static List<Path> fileList(int count, long seed) {
+        Random random = new Random(seed);
+        List<Path> list = new ArrayList<Path>(count);
+        File root = new File(System.getProperty("java.io.tmpdir"), "vbp-bench");
+        for (int i = 0; i < count; i++) {
+            File folder = new File(root, "series " + random.nextInt(Math.max(1, count / 20)));
+            list.add(new File(folder, fileName(random)).toPath());
+        }
+        return list;
+    }
+    
+    /**
+     * @return a random file name, sometimes with spaces or special characters
+     */
+    private static String fileName(Random random) {
+        StringBuilder name = new StringBuilder();
+        int words = 1 + random.nextInt(4);
+        for (int i = 0; i < words; i++) {
+            if (i > 0) {
+                name.append(random.nextInt(4) == 0 ? " - " : " ");
+            }
+            name.append(Long.toString(random.nextLong() & 0xffffffL, 36));
+        }
+        if (random.nextInt(10) == 0) {
+            name.append(" (it's $special)");
+        }
+        return name.append('.').append(EXTENSIONS[random.nextInt(EXTENSIONS.length)]).toString();
+    }
+    
+    /**
+     * Deletes a file or folder with all its content
+     * @param file the file to delete
+     */
+    public static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+    
+}
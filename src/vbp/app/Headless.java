@@ -0,0 +1,467 @@
+/*
+ * Copyright (C) 2011 Sebastian Straub <sebastian-straub@gmx.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package vbp.app;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import sebi.util.observer.ObserverArgs;
+import vbp.model.Model;
+import vbp.model.Settings;
+import vbp.model.exec.TranscodeJob;
+import vbp.model.export.ScriptDialect;
+import vbp.model.preset.Encoder;
+import vbp.util.timing.Metrics;
+import vbp.util.timing.PhaseTimer;
+
+/**
+ * <p>Runs the program without graphical user interface, e.g. on a server or
+ * from cron: loads a project file and/or takes the settings from the command
+ * line, searches the files to transcode and exports or transcodes them.</p>
+ * 
+ * <p>No class of AWT or Swing must be loaded on this path (they take long to
+ * load and fail on machines without display). This means: no Controller, no
+ * classes from vbp.gui and only the methods of the Model that don't take a
+ * file chooser.</p>
+ * 
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+public class Headless {
+    
+    /** exit codes */
+    public static final int EXIT_OK = 0;
+    public static final int EXIT_FAILED = 1;
+    public static final int EXIT_USAGE = 2;
+    
+    protected final PrintStream out;
+    protected final PrintStream err;
+    
+    // options
+    protected File project;
+    protected boolean userSettings;
+    protected Boolean recursive;
+    protected Boolean archives;
+    protected String extensions;
+    protected String regex;
+    protected Integer minSize;
+    protected Integer maxSize;
+    protected String renamePattern;
+    protected File outputFolder;
+    protected boolean preserveFolders;
+    protected boolean handbrake;
+    protected String query;
+    protected File presetFile;
+    protected String preset;
+    protected Integer jobs;
+    protected Integer segmentLength;
+    protected final List<Path> inputs = new ArrayList<Path>();
+    protected boolean timing;
+    protected File metrics;
+    
+    // actions
+    protected File export;
+    protected boolean execute;
+    protected File submit;
+    protected File worker;
+    
+    /** measures the phases of the run */
+    protected final PhaseTimer timer;
+
+    public Headless() {
+        this(new PhaseTimer());
+    }
+    
+    /**
+     * @param timer measures the phases of the run (started at program launch)
+     */
+    public Headless(PhaseTimer timer) {
+        this(System.out, System.err, timer);
+    }
+    
+    /**
+     * @param out stream for the results (file list)
+     * @param err stream for messages, progress and timing
+     * @param timer measures the phases of the run
+     */
+    public Headless(PrintStream out, PrintStream err, PhaseTimer timer) {
+        this.out = out;
+        this.err = err;
+        this.timer = timer;
+    }
+    
+    /**
+     * Runs the command line interface
+     * @param args the command line arguments
+     * @return the exit code
+     */
+    public int run(String[] args) {
+        PhaseTimer.Phase phase = timer.begin("parse");
+        try {
+            if (!parse(args)) {
+                return EXIT_OK;
+            }
+        } catch (IllegalArgumentException ex) {
+            err.println("vbp: " + ex.getMessage());
+            err.println("Try 'vbp --help' for more information.");
+            return EXIT_USAGE;
+        }
+        phase.end();
+        if (metrics != null) {
+            Metrics.setEnabled(true);
+            Metrics.reset();
+        }
+        
+        phase = timer.begin("load");
+        Model model = new Model();
+        if (userSettings) {
+            model.init();
+        } else {
+            model.loadDefaults();
+        }
+        if (project != null && !model.loadProject(project)) {
+            err.println("vbp: can't load project " + project);
+            return EXIT_FAILED;
+        }
+        boolean filterChanged;
+        try {
+            filterChanged = configure(model);
+        } catch (IllegalArgumentException ex) {
+            err.println("vbp: " + ex.getMessage());
+            return EXIT_USAGE;
+        }
+        phase.end();
+        
+        phase = timer.begin("crawl");
+        if (!inputs.isEmpty()) {
+            model.addInputFiles(inputs);
+        } else if (filterChanged) {
+            model.updateFilesToTranscode();
+        }
+        phase.end();
+        
+        phase = timer.begin("action");
+        int exit = perform(model);
+        phase.end();
+        
+        if (timing) {
+            err.print("vbp: timing (ms since launch)\n" + timer.report());
+        }
+        if (metrics != null) {
+            try {
+                Metrics.writeSummary("cli", metrics);
+            } catch (IOException ex) {
+                err.println("vbp: can't write " + metrics);
+                return EXIT_FAILED;
+            }
+        }
+        return exit;
+    }
+    
+    /**
+     * Writes the options into the model
+     * @param model the model
+     * @return true if the settings of the file filter have changed
+     * @throws IllegalArgumentException if a preset or query is invalid
+     */
+    protected boolean configure(Model model) {
+        boolean filterChanged = false;
+        if (recursive != null) {
+            model.setRecursive(recursive);
+            filterChanged = true;
+        }
+        if (archives != null) {
+            model.setCrawlArchives(archives);
+            filterChanged = true;
+        }
+        if (extensions != null) {
+            model.setSearchPatternProperties();
+            model.setFileExtension(true);
+            model.setExtensionFilter(extensions);
+            filterChanged = true;
+        }
+        if (regex != null) {
+            model.setSearchPatternRegex();
+            model.setRegex(regex);
+            filterChanged = true;
+        }
+        if (minSize != null || maxSize != null) {
+            model.setSearchPatternProperties();
+            model.setFileSize(true);
+            if (minSize != null) {
+                model.setMinSize(minSize);
+            }
+            if (maxSize != null) {
+                model.setMaxSize(maxSize);
+            }
+            filterChanged = true;
+        }
+        
+        if (renamePattern != null) {
+            model.setOutputSamePlace();
+            model.setRenamePattern(renamePattern);
+        }
+        if (outputFolder != null) {
+            model.setOutputDifferentFolder();
+            model.setOutputLocation(outputFolder);
+            model.setPreserveFolders(preserveFolders);
+        }
+        
+        if (presetFile != null) {
+            if (!presetFile.canRead()) {
+                throw new IllegalArgumentException("can't read presets " + presetFile);
+            }
+            model.setPresets(Settings.loadPresets(presetFile));
+        }
+        if (preset != null) {
+            Encoder encoder = handbrake ? Encoder.HANDBRAKE : Encoder.FFMPEG;
+            if (!model.selectPreset(encoder, preset)) {
+                throw new IllegalArgumentException("unknown " + encoder.getKey() + " preset: " + preset);
+            }
+        }
+        if (query != null && !model.setHandBrakeQuery(query)) {
+            throw new IllegalArgumentException("invalid query: " + query);
+        }
+        if (jobs != null) {
+            model.setFFmpegParallelJobs(jobs);
+        }
+        if (segmentLength != null) {
+            model.setFFmpegSegmentLength(segmentLength);
+        }
+        if (export != null && !handbrake) {
+            ScriptDialect dialect = ScriptDialect.forFileExtension(extensionOf(export));
+            if (dialect != null) {
+                model.setFFmpegDialect(dialect);
+            }
+        }
+        return filterChanged;
+    }
+    
+    /**
+     * Runs the requested action: export, execute, submit, work or (default)
+     * list the files to transcode
+     * @param model the model
+     * @return the exit code
+     */
+    protected int perform(Model model) {
+        if (export != null) {
+            boolean written = handbrake ? model.exportToHandbrake(export) : model.exportToFFmpeg(export);
+            if (!written) {
+                err.println("vbp: can't write " + export);
+                return EXIT_FAILED;
+            }
+            err.println("vbp: " + model.getFilesToTranscode().size() + " files exported to " + export);
+            return EXIT_OK;
+        }
+        if (execute) {
+            model.eventJobUpdate().addObserver(new ObserverArgs<TranscodeJob>() {
+
+                @Override
+                public void update(TranscodeJob job) {
+                    if (job.isFinished()) {
+                        err.println(String.format("vbp: %s %s (exit %d, %.1f s)", job.getState(),
+                                job.getSource(), job.getExitCode(), job.getDuration() / 1000.0));
+                    }
+                }
+            });
+            List<TranscodeJob> jobList = handbrake ? model.executeHandbrake() : model.executeFFmpeg();
+            for (TranscodeJob job : jobList) {
+                if (job.getState() != TranscodeJob.State.DONE) {
+                    return EXIT_FAILED;
+                }
+            }
+            return EXIT_OK;
+        }
+        if (submit != null) {
+            if (handbrake) {
+                throw new IllegalStateException("only ffmpeg jobs can be submitted");
+            }
+            return model.submitFFmpegToSpool(submit) ? EXIT_OK : EXIT_FAILED;
+        }
+        if (worker != null) {
+            int completed = model.runSpoolWorker(worker, true);
+            err.println("vbp: " + completed + " jobs finished");
+            return EXIT_OK;
+        }
+        for (String file : model.getFilesToTranscode()) {
+            out.println(file);
+        }
+        return EXIT_OK;
+    }
+    
+    // ++++++++++ arguments ++++++++++
+    
+    /**
+     * Reads the command line arguments
+     * @param args the command line arguments
+     * @return false if the program shall exit (help has been printed)
+     * @throws IllegalArgumentException if the arguments are invalid
+     */
+    protected boolean parse(String[] args) {
+        int actions = 0;
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (!arg.startsWith("-") || arg.equals("-")) {
+                inputs.add(Paths.get(arg));
+            } else if (arg.equals("--")) {
+                for (i++; i < args.length; i++) {
+                    inputs.add(Paths.get(args[i]));
+                }
+            } else if (arg.equals("-h") || arg.equals("--help")) {
+                printUsage();
+                return false;
+            } else if (arg.equals("-p") || arg.equals("--project")) {
+                project = new File(value(args, ++i, arg));
+            } else if (arg.equals("-s") || arg.equals("--settings")) {
+                userSettings = true;
+            } else if (arg.equals("-r") || arg.equals("--recursive")) {
+                recursive = true;
+            } else if (arg.equals("-n") || arg.equals("--no-recursive")) {
+                recursive = false;
+            } else if (arg.equals("--archives")) {
+                archives = true;
+            } else if (arg.equals("--no-archives")) {
+                archives = false;
+            } else if (arg.equals("--extensions")) {
+                extensions = value(args, ++i, arg);
+            } else if (arg.equals("--regex")) {
+                regex = value(args, ++i, arg);
+            } else if (arg.equals("--min-size")) {
+                minSize = number(args, ++i, arg);
+            } else if (arg.equals("--max-size")) {
+                maxSize = number(args, ++i, arg);
+            } else if (arg.equals("--rename")) {
+                renamePattern = value(args, ++i, arg);
+            } else if (arg.equals("-o") || arg.equals("--output")) {
+                outputFolder = new File(value(args, ++i, arg));
+            } else if (arg.equals("--preserve-folders")) {
+                preserveFolders = true;
+            } else if (arg.equals("-e") || arg.equals("--encoder")) {
+                String encoder = value(args, ++i, arg);
+                if (encoder.equalsIgnoreCase("handbrake")) {
+                    handbrake = true;
+                } else if (encoder.equalsIgnoreCase("ffmpeg")) {
+                    handbrake = false;
+                } else {
+                    throw new IllegalArgumentException("unknown encoder: " + encoder);
+                }
+            } else if (arg.equals("--query")) {
+                query = value(args, ++i, arg);
+            } else if (arg.equals("--preset")) {
+                preset = value(args, ++i, arg);
+            } else if (arg.equals("--presets")) {
+                presetFile = new File(value(args, ++i, arg));
+            } else if (arg.equals("-j") || arg.equals("--jobs")) {
+                jobs = number(args, ++i, arg);
+            } else if (arg.equals("--segment")) {
+                segmentLength = number(args, ++i, arg);
+            } else if (arg.equals("-l") || arg.equals("--list")) {
+                actions++;
+            } else if (arg.equals("-x") || arg.equals("--export")) {
+                export = new File(value(args, ++i, arg));
+                actions++;
+            } else if (arg.equals("--execute")) {
+                execute = true;
+                actions++;
+            } else if (arg.equals("--submit")) {
+                submit = new File(value(args, ++i, arg));
+                actions++;
+            } else if (arg.equals("--worker")) {
+                worker = new File(value(args, ++i, arg));
+                actions++;
+            } else if (arg.equals("--timing")) {
+                timing = true;
+            } else if (arg.equals("--metrics")) {
+                metrics = new File(value(args, ++i, arg));
+            } else {
+                throw new IllegalArgumentException("unknown option: " + arg);
+            }
+        }
+        if (actions > 1) {
+            throw new IllegalArgumentException("only one of --list, --export, --execute, --submit and --worker is allowed");
+        }
+        if (submit != null && handbrake) {
+            throw new IllegalArgumentException("only ffmpeg jobs can be submitted to a spool directory");
+        }
+        return true;
+    }
+    
+    private static String value(String[] args, int index, String option) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException("option " + option + " requires a value");
+        }
+        return args[index];
+    }
+    
+    private static int number(String[] args, int index, String option) {
+        String value = value(args, index, option);
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("option " + option + " requires a number, not " + value);
+        }
+    }
+    
+    private static String extensionOf(File file) {
+        String name = file.getName();
+        int dot = name.lastIndexOf('.');
+        return (dot < 0) ? null : name.substring(dot + 1);
+    }
+    
+    protected void printUsage() {
+        out.println("Usage: vbp [options] [files or folders...]");
+        out.println("Without any arguments, the graphical user interface is started.");
+        out.println();
+        out.println("Input:");
+        out.println("  -p, --project FILE       load a project file (.vbpp): settings and files");
+        out.println("  -s, --settings           start with the user settings instead of the defaults");
+        out.println("  -r, --recursive          search folders recursively");
+        out.println("  -n, --no-recursive       don't search subfolders");
+        out.println("      --archives           search zip archives and iso images like folders");
+        out.println("      --no-archives        treat zip archives and iso images like any file");
+        out.println("Filter:");
+        out.println("      --extensions LIST    only files with these extensions (e.g. \"avi|mkv\")");
+        out.println("      --regex REGEX        only files that match the regex");
+        out.println("      --min-size MB        only files of at least this size");
+        out.println("      --max-size MB        only files of at most this size");
+        out.println("Output:");
+        out.println("      --rename PATTERN     save next to the source file (e.g. \"{name}-conv\")");
+        out.println("  -o, --output DIR         save into this folder");
+        out.println("      --preserve-folders   keep the folder structure in the output folder");
+        out.println("Encoding:");
+        out.println("  -e, --encoder NAME       ffmpeg (default) or handbrake");
+        out.println("      --preset NAME        use this preset of the encoder (rules may choose others)");
+        out.println("      --presets FILE       load the presets from this file instead of ~/.vbp");
+        out.println("      --query ARGS         arguments for HandBrakeCLI (changes the preset)");
+        out.println("  -j, --jobs N             concurrent ffmpeg jobs (0: one per cpu core)");
+        out.println("      --segment SECONDS    encode each file in segments (shell scripts only, 0: off)");
+        out.println("Action:");
+        out.println("  -l, --list               print the files to transcode (default)");
+        out.println("  -x, --export FILE        write a script (ffmpeg: .sh, .bat or .ps1) or queue (handbrake)");
+        out.println("      --execute            transcode on this machine");
+        out.println("      --submit DIR         write the ffmpeg jobs into a shared spool directory");
+        out.println("      --worker DIR         work on the jobs of a spool directory until it's empty");
+        out.println("Other:");
+        out.println("      --timing             print the duration of startup and each phase");
+        out.println("      --metrics FILE       write the metrics of crawl, filter and export as json");
+        out.println("  -h, --help               show this help");
+    }
+    
+}
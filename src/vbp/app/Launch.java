@@ -17,9 +17,12 @@
 package vbp.app;
 
 import vbp.ctrl.Controller;
+import vbp.util.timing.PhaseTimer;
 
 /**
- * Launches the application and accepts command line arguments.
+ * Launches the application and accepts command line arguments. Without
+ * arguments, the graphical user interface is started, otherwise the program
+ * runs headless (see {@link Headless}).
  * 
  * @author Sebastian Straub <sebastian-straub@gmx.net>
  */
@@ -29,9 +32,13 @@ public class Launch {
      * @param args the command line arguments
      */
     public static void main(String[] args) {
+        PhaseTimer timer = new PhaseTimer();
         
-        // TODO accept project files as input!
+        if (args.length > 0) {
+            // don't touch anything from the gui here, it would load AWT
+            System.exit(new Headless(timer).run(args));
+        }
         
-        new Controller();
+        new Controller(timer);
     }
 }
@@ -16,8 +16,14 @@
  */
 package vbp.ctrl;
 
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import vbp.gui.GUI;
 import vbp.model.Model;
+import vbp.model.exec.ModelExecutor;
+import vbp.util.timing.PhaseTimer;
 
 /**
  * The Controller in the MVC-Designpattern. Not really in use right now...
@@ -30,13 +36,42 @@ public class Controller {
     GUI gui;
     
     public Controller() {
+        this(new PhaseTimer());
+    }
+    
+    /**
+     * Starts the program. Loading the settings and setting up the look and
+     * feel don't depend on each other, so they run in parallel. The main window
+     * is built as soon as both are done.
+     * @param timer measures the startup phases (started at program launch)
+     */
+    public Controller(final PhaseTimer timer) {
         
         // initialize the model
         model = new Model();
-        model.init();
+        Future<?> settings = model.getLanes().submit(ModelExecutor.Lane.PERSISTENCE, new Runnable() {
+
+            @Override
+            public void run() {
+                PhaseTimer.Phase phase = timer.begin("settings");
+                model.init();
+                phase.end();
+            }
+        });
         
         // initialize the gui
-        gui = new GUI(model);
+        PhaseTimer.Phase phase = timer.begin("look and feel");
+        gui = new GUI(model, timer);
+        phase.end();
+        
+        try {
+            // the main window shows the settings
+            settings.get();
+        } catch (InterruptedException ex) {
+            Logger.getLogger(Controller.class.getName()).log(Level.SEVERE, null, ex);
+        } catch (ExecutionException ex) {
+            Logger.getLogger(Controller.class.getName()).log(Level.SEVERE, null, ex);
+        }
         gui.init();
         
     }
@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2011 Sebastian Straub <sebastian-straub@gmx.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package vbp.gui;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.swing.AbstractListModel;
+import vbp.util.data.ListChange;
+import vbp.util.fs.PathUtils;
+
+/**
+ * A list model that shows a list of files by their canonical path. The model
+ * is backed directly by the given list (e.g. the result of a crawl) instead of
+ * copying it: replacing the list fires a single change event, and the display
+ * strings are only computed for the rows that are actually requested, i.e. the
+ * visible ones. This keeps the list responsive with millions of entries.
+ * 
+ * Smaller changes can be applied as ListChange, which fires one event per
+ * added or removed range, so the selection and the cached display strings of
+ * the other rows are kept. The model makes its own copy of the list before the
+ * first change is applied.
+ * 
+ * The backing list must not be modified after it was handed to the model,
+ * replace it with setFiles() instead. All methods must be called on the EDT.
+ * 
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+public class FileListModel extends AbstractListModel<String> {
+    
+    /** the list that was handed to the model (the version that is shown) */
+    protected List<Path> source = Collections.emptyList();
+    /** the files to show */
+    protected List<Path> files = Collections.emptyList();
+    /** true, if files is a copy owned by this model */
+    protected boolean owned = false;
+    /** display strings of the files, computed on first access */
+    protected List<String> paths = new ArrayList<String>();
+    /** the file with the longest path */
+    protected Path longest;
+
+    /**
+     * Replaces the files to show and notifies the listeners with a single
+     * event.
+     * @param files the files to show (not copied, must not be modified later)
+     */
+    public void setFiles(List<Path> files) {
+        int previous = this.files.size();
+        this.source = files;
+        this.files = files;
+        this.owned = false;
+        this.paths = new ArrayList<String>(Collections.<String>nCopies(files.size(), null));
+        this.longest = longest(files, null);
+        
+        int max = Math.max(previous, files.size());
+        if (max > 0) {
+            fireContentsChanged(this, 0, max - 1);
+        }
+    }
+    
+    /**
+     * Applies a change to the shown files and notifies the listeners about
+     * each added and removed range. If the change doesn't start from the
+     * version of the list that is shown (e.g. because the list has been
+     * replaced in the meantime), the list is replaced with the new version.
+     * @param change the change, based on the currently shown files
+     */
+    public void apply(ListChange<Path> change) {
+        if (change.getList() == source) {
+            return;
+        } else if (change.getPrevious() != source) {
+            setFiles(change.getList());
+            return;
+        }
+        source = change.getList();
+        if (change.isEmpty()) {
+            return;
+        }
+        if (!owned) {
+            files = new ArrayList<Path>(files);
+            owned = true;
+        }
+        for (ListChange.Range<Path> range : change.getRanges()) {
+            int from = range.getIndex();
+            int to = from + range.getElements().size();
+            if (range.getType() == ListChange.Type.REMOVED) {
+                files.subList(from, to).clear();
+                paths.subList(from, to).clear();
+                fireIntervalRemoved(this, from, to - 1);
+            } else {
+                files.addAll(from, range.getElements());
+                paths.addAll(from, Collections.<String>nCopies(to - from, null));
+                longest = longest(range.getElements(), longest);
+                fireIntervalAdded(this, from, to - 1);
+            }
+        }
+    }
+    
+    /**
+     * @return the files that are currently shown
+     */
+    public List<Path> getFiles() {
+        return Collections.unmodifiableList(files);
+    }
+
+    @Override
+    public int getSize() {
+        return files.size();
+    }
+
+    @Override
+    public String getElementAt(int index) {
+        String path = paths.get(index);
+        if (path == null) {
+            path = displayString(files.get(index));
+            paths.set(index, path);
+        }
+        return path;
+    }
+    
+    /**
+     * Returns the element with the longest display string, without computing
+     * the display strings of all elements (the length of the path is used as
+     * estimate). Useful as prototype cell value, so the list doesn't have to
+     * measure every single cell. Removed elements are not taken into account,
+     * so the result may be a bit too long after a change.
+     * @return the (probably) longest element or null, if the list is empty
+     */
+    public String getLongestElement() {
+        return (longest == null) ? null : displayString(longest);
+    }
+    
+    /**
+     * @param files the files to search
+     * @param longest the longest file so far (may be null)
+     * @return the file with the longest path
+     */
+    protected static Path longest(List<Path> files, Path longest) {
+        int length = (longest == null) ? -1 : longest.toString().length();
+        for (int i = 0; i < files.size(); i++) {
+            Path file = files.get(i);
+            if (file.toString().length() > length) {
+                length = file.toString().length();
+                longest = file;
+            }
+        }
+        return longest;
+    }
+    /**
+     * @param file the file to show
+     * @return the canonical path of the file (the absolute path, if the
+     *         canonical path can't be resolved)
+     */
+    protected static String displayString(Path file) {
+        try {
+            return PathUtils.canonicalPath(file);
+        } catch (IOException ex) {
+            Logger.getLogger(FileListModel.class.getName()).log(Level.SEVERE, null, ex);
+            return file.toAbsolutePath().toString();
+        }
+    }
+    
+}
@@ -16,14 +16,19 @@
  */
 package vbp.gui;
 
+import java.awt.EventQueue;
 import java.awt.Image;
+import java.io.File;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.List;
 import javax.swing.ImageIcon;
+import javax.swing.JFileChooser;
 import sebi.util.observer.Observer;
-import sebi.util.threads.ThreadedExecutor;
 import vbp.model.Model;
+import vbp.model.exec.ModelExecutor;
+import vbp.util.timing.Metrics;
+import vbp.util.timing.PhaseTimer;
 
 /**
  * This class serves as the common basis for all application windows.
@@ -40,13 +45,33 @@ public class GUI {
     protected WindowExportHandbrake windowHandbrake;
     protected List<Saveable> windows = new ArrayList<Saveable>();
     
+    /** measures the startup phases */
+    protected PhaseTimer timer;
+    /** delivers the events of the model to the windows */
+    protected GuiEventBus eventBus = new GuiEventBus();
+    
     /**
      * Constructor of the GUI. Don't forget to call init() for the gui to become
      * visible.
      * @param model 
      */
     public GUI(Model model) {
+        this(model, new PhaseTimer());
+    }
+    
+    /**
+     * Constructor of the GUI. Don't forget to call init() for the gui to become
+     * visible.
+     * @param model the model
+     * @param timer measures the startup phases. If the system property
+     *        vbp.timing is true, a report is printed when the main window is
+     *        visible.
+     */
+    public GUI(Model model, PhaseTimer timer) {
         this.model = model;
+        this.timer = timer;
+        // the main window shows a report of every scan and export
+        Metrics.setEnabled(true);
         setLookAndFeel();
     }
     
@@ -85,35 +110,64 @@ public class GUI {
         java.awt.EventQueue.invokeLater(new Runnable() {
 
             public void run() {
+                PhaseTimer.Phase phase = timer.begin("main window");
                 windowMain = new WindowMain(model, gui);
                 registerListeners(windowMain);
                 windowMain.setVisible(true);
+                phase.end();
+                
+                if (Boolean.getBoolean("vbp.timing")) {
+                    System.err.print("vbp: startup timing (ms since launch)\n" + timer.report());
+                }
             }
         });
     }
     
+    /**
+     * Shows the ffmpeg export window. The window is built on first use and
+     * reused afterwards.
+     */
     protected void popupWindowFFmpeg() {
         java.awt.EventQueue.invokeLater(new Runnable() {
 
             public void run() {
-                windowFFmpeg = new WindowExportFFmpeg(windowMain, model);
-                registerListeners(windowFFmpeg);
+                if (windowFFmpeg == null) {
+                    windowFFmpeg = new WindowExportFFmpeg(windowMain, model);
+                    registerListeners(windowFFmpeg);
+                } else {
+                    windowFFmpeg.updateGuiValues();
+                }
                 windowFFmpeg.setVisible(true);
             }
         });
     }
     
+    /**
+     * Shows the HandBrake export window. The window is built on first use and
+     * reused afterwards.
+     */
     protected void popupWindowHandbrake() {
         java.awt.EventQueue.invokeLater(new Runnable() {
 
             public void run() {
-                windowHandbrake = new WindowExportHandbrake(windowMain, model);
-                registerListeners(windowHandbrake);
+                if (windowHandbrake == null) {
+                    windowHandbrake = new WindowExportHandbrake(windowMain, model);
+                    registerListeners(windowHandbrake);
+                } else {
+                    windowHandbrake.updateGuiValues();
+                }
                 windowHandbrake.setVisible(true);
             }
         });
     }
     
+    /**
+     * @return the bus that delivers the events of the model on the EDT
+     */
+    protected GuiEventBus getEventBus() {
+        return eventBus;
+    }
+    
     /**
      * @return the icon image for the application
      */
@@ -125,23 +179,41 @@ public class GUI {
     // load and save
     
     protected void loadDefaults() {
-        model.loadDefaults();
-        updateAllGuiValues();
+        // on the IO lane, so a running scan can't fill the new lists
+        model.getLanes().submit(ModelExecutor.Lane.IO, new Runnable() {
+
+            @Override
+            public void run() {
+                model.loadDefaults();
+                updateAllGuiValuesLater();
+            }
+        });
     }
     
     protected void loadProject() {
-        model.loadProject(windowMain.jFileChooserProjectLoad);
-        updateAllGuiValues();
+        JFileChooser fileChooser = windowMain.jFileChooserProjectLoad;
+        if (fileChooser.showOpenDialog(null) == JFileChooser.APPROVE_OPTION) {
+            final File file = fileChooser.getSelectedFile();
+            model.getLanes().submit(ModelExecutor.Lane.IO, new Runnable() {
+
+                @Override
+                public void run() {
+                    model.loadProject(file);
+                    updateAllGuiValuesLater();
+                }
+            });
+        }
     }
     
     protected void saveProject() {
-        new ThreadedExecutor() {
+        updateAllModelValues();
+        model.getLanes().submit(ModelExecutor.Lane.PERSISTENCE, new Runnable() {
+
             @Override
-            public void execute() {
-                updateAllModelValues();
+            public void run() {
                 model.saveProject(windowMain.jFileChooserProjectSave);
             }
-        }.start();
+        });
     }
     
     private void updateAllModelValues() {
@@ -153,6 +225,16 @@ public class GUI {
         }
     }
     
+    private void updateAllGuiValuesLater() {
+        EventQueue.invokeLater(new Runnable() {
+
+            @Override
+            public void run() {
+                updateAllGuiValues();
+            }
+        });
+    }
+    
     private void updateAllGuiValues() {
         refreshWindowList();
         for (Saveable window : windows) {
@@ -0,0 +1,211 @@
+/*
+ * Copyright (C) 2011 Sebastian Straub <sebastian-straub@gmx.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package vbp.gui;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.swing.Timer;
+
+/**
+ * Delivers events from the model (fired on any thread) to the event dispatch
+ * thread in batches. Instead of one invokeLater() per event, all events that
+ * arrive within one frame are delivered together in a single run on the EDT.
+ * <p>
+ * Events are posted to topics. A topic either keeps only the latest event per
+ * key (for states like "the list has changed" or the progress of a job, where
+ * intermediate states are superseded anyway) or all events in order (for
+ * changes that have to be applied one after another).
+ * <p>
+ * The bus is back-pressured: the next frame is only scheduled when the
+ * previous batch has been delivered, so a busy EDT never has more than one
+ * batch of the bus in its queue, and the events that pile up in the meantime
+ * are merged.
+ * 
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+public class GuiEventBus {
+    
+    /** default length of a frame in ms */
+    public static final int DEFAULT_FRAME = 40;
+    
+    /**
+     * Receives the events of a topic on the EDT
+     */
+    public interface Receiver<T> {
+        
+        /**
+         * @param events all events of the topic since the last delivery, in
+         *        the order they were posted (if only the latest event per key
+         *        is kept: in the order of the latest posts)
+         */
+        void receive(List<T> events);
+        
+    }
+    
+    /**
+     * A type of events with a common receiver
+     */
+    public class Topic<T> {
+        
+        protected final Receiver<T> receiver;
+        protected final boolean latestOnly;
+        /** events that have not been delivered yet (guarded by the bus) */
+        protected Map<Object, T> pending = new LinkedHashMap<Object, T>();
+
+        protected Topic(Receiver<T> receiver, boolean latestOnly) {
+            this.receiver = receiver;
+            this.latestOnly = latestOnly;
+        }
+        
+        /**
+         * Posts an event. If the topic keeps only the latest event, it
+         * replaces the pending one. May be called from any thread.
+         * @param event the event
+         */
+        public void post(T event) {
+            post(latestOnly ? this : new Object(), event);
+        }
+        
+        /**
+         * Posts an event. If the topic keeps only the latest event, it
+         * replaces the pending event with the same key. May be called from any
+         * thread.
+         * @param key the key (e.g. the component to update or the job that
+         *        made progress); ignored if the topic keeps all events
+         * @param event the event
+         */
+        public void post(Object key, T event) {
+            enqueue(this, latestOnly ? key : new Object(), event);
+        }
+        
+        /**
+         * @return the pending events, leaves an empty queue
+         */
+        protected List<T> take() {
+            List<T> events = new ArrayList<T>(pending.values());
+            pending = new LinkedHashMap<Object, T>();
+            return events;
+        }
+        
+        protected void deliver(List<T> events) {
+            try {
+                receiver.receive(events);
+            } catch (RuntimeException ex) {
+                // a broken receiver must not stop the delivery of the others
+                Logger.getLogger(GuiEventBus.class.getName()).log(Level.SEVERE, null, ex);
+            }
+        }
+        
+    }
+    
+    /** topics with pending events, in the order of their first event */
+    protected final Set<Topic<?>> dirty = new LinkedHashSet<Topic<?>>();
+    /** true, while a batch is scheduled or being delivered */
+    protected boolean scheduled = false;
+    protected final Timer timer;
+
+    public GuiEventBus() {
+        this(DEFAULT_FRAME);
+    }
+    
+    /**
+     * @param frame length of a frame in ms: events are delivered at most once
+     *        per frame
+     */
+    public GuiEventBus(int frame) {
+        timer = new Timer(frame, new ActionListener() {
+
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                flush();
+            }
+        });
+        timer.setRepeats(false);
+    }
+    
+    /**
+     * Creates a topic that delivers only the latest event per key
+     * @param receiver receives the events on the EDT
+     * @return the topic
+     */
+    public <T> Topic<T> latest(Receiver<T> receiver) {
+        return new Topic<T>(receiver, true);
+    }
+    
+    /**
+     * Creates a topic that delivers all events
+     * @param receiver receives the events on the EDT
+     * @return the topic
+     */
+    public <T> Topic<T> all(Receiver<T> receiver) {
+        return new Topic<T>(receiver, false);
+    }
+    
+    protected synchronized <T> void enqueue(Topic<T> topic, Object key, T event) {
+        if (topic.latestOnly) {
+            // re-insert, so the event is delivered in the order of the latest post
+            topic.pending.remove(key);
+        }
+        topic.pending.put(key, event);
+        dirty.add(topic);
+        if (!scheduled) {
+            scheduled = true;
+            timer.restart();
+        }
+    }
+    
+    /**
+     * Delivers all pending events. Runs on the EDT.
+     */
+    protected void flush() {
+        List<Topic<?>> topics;
+        List<List<?>> batches = new ArrayList<List<?>>();
+        synchronized (this) {
+            topics = new ArrayList<Topic<?>>(dirty);
+            dirty.clear();
+            for (Topic<?> topic : topics) {
+                batches.add(topic.take());
+            }
+        }
+        
+        for (int i = 0; i < topics.size(); i++) {
+            deliver(topics.get(i), batches.get(i));
+        }
+        
+        synchronized (this) {
+            // events that arrived during the delivery go into the next frame
+            scheduled = !dirty.isEmpty();
+            if (scheduled) {
+                timer.restart();
+            }
+        }
+    }
+    
+    @SuppressWarnings("unchecked")
+    private static <T> void deliver(Topic<T> topic, List<?> events) {
+        topic.deliver((List<T>) events);
+    }
+    
+}
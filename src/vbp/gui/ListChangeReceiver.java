@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2011 Sebastian Straub <sebastian-straub@gmx.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package vbp.gui;
+
+import java.util.List;
+import vbp.util.data.ListChange;
+
+/**
+ * Applies list changes that have been delivered by the GuiEventBus. All
+ * changes of one batch are handled together: as long as the batch is small,
+ * each change is applied in order, otherwise the list is replaced once with
+ * the latest version (which is cheaper than applying many ranges, each of them
+ * shifting the rest of the list).
+ * 
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+public abstract class ListChangeReceiver<E> implements GuiEventBus.Receiver<ListChange<E>> {
+    
+    /** max. number of ranges in a batch that are applied one by one */
+    public static final int MAX_RANGES = 64;
+    
+    @Override
+    public void receive(List<ListChange<E>> batch) {
+        int ranges = 0;
+        for (ListChange<E> change : batch) {
+            ranges += change.getRanges().size();
+        }
+        
+        if (ranges > MAX_RANGES) {
+            replace(batch.get(batch.size() - 1).getList());
+        } else {
+            for (ListChange<E> change : batch) {
+                apply(change);
+            }
+        }
+        done();
+    }
+    
+    /**
+     * Applies a single change to the list (on the EDT)
+     * @param change the change
+     */
+    protected abstract void apply(ListChange<E> change);
+    
+    /**
+     * Replaces the whole list (on the EDT)
+     * @param list the new version of the list
+     */
+    protected abstract void replace(List<E> list);
+    
+    /**
+     * Called on the EDT after a batch of changes has been handled
+     */
+    protected void done() {
+        // nothing to do by default
+    }
+    
+}
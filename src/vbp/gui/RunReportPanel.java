@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2011 Sebastian Straub <sebastian-straub@gmx.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package vbp.gui;
+
+import java.awt.BorderLayout;
+import java.util.Map;
+import javax.swing.BorderFactory;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTable;
+import javax.swing.SwingConstants;
+import javax.swing.table.DefaultTableCellRenderer;
+import javax.swing.table.DefaultTableModel;
+import vbp.util.timing.RunReport;
+
+/**
+ * Shows the report of the last scan or export (see Model.eventRunReport()):
+ * the counts, and the time of every stage with its share of all stages.
+ * Must be used on the EDT.
+ * 
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+public class RunReportPanel extends JPanel {
+    
+    protected final JLabel title = new JLabel("Nothing scanned yet");
+    protected final DefaultTableModel rows = new DefaultTableModel(new Object[] { "", "Value", "Share" }, 0) {
+
+        @Override
+        public boolean isCellEditable(int row, int column) {
+            return false;
+        }
+    };
+
+    public RunReportPanel() {
+        super(new BorderLayout(0, 6));
+        setBorder(BorderFactory.createEmptyBorder(6, 6, 6, 6));
+        
+        JTable table = new JTable(rows);
+        table.setFillsViewportHeight(true);
+        table.setRowSelectionAllowed(false);
+        DefaultTableCellRenderer right = new DefaultTableCellRenderer();
+        right.setHorizontalAlignment(SwingConstants.RIGHT);
+        table.getColumnModel().getColumn(1).setCellRenderer(right);
+        table.getColumnModel().getColumn(2).setCellRenderer(right);
+        
+        title.setToolTipText("Stages may run in parallel, so their sum can exceed the elapsed time");
+        add(title, BorderLayout.NORTH);
+        add(new JScrollPane(table), BorderLayout.CENTER);
+    }
+    
+    /**
+     * Shows a report instead of the previous one
+     * @param report the report
+     */
+    public void show(RunReport report) {
+        title.setText(String.format("%s finished at %tT: %.1f ms, %,.0f files/s", capitalize(report.getName()),
+                report.getFinished(), report.getElapsed() / 1e6, report.getThroughput()));
+        
+        rows.setRowCount(0);
+        for (Map.Entry<String, Long> count : report.getCounts().entrySet()) {
+            rows.addRow(new Object[] { count.getKey(), String.format("%,d", count.getValue()), "" });
+        }
+        long total = 0;
+        for (long nanos : report.getStages().values()) {
+            total += nanos;
+        }
+        for (Map.Entry<String, Long> stage : report.getStages().entrySet()) {
+            String share = (total > 0) ? String.format("%.1f %%", stage.getValue() * 100.0 / total) : "";
+            rows.addRow(new Object[] { stage.getKey(), String.format("%,.1f ms", stage.getValue() / 1e6), share });
+        }
+    }
+    
+    private static String capitalize(String name) {
+        return name.isEmpty() ? name : Character.toUpperCase(name.charAt(0)) + name.substring(1);
+    }
+    
+}
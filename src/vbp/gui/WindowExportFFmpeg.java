@@ -22,10 +22,13 @@
  */
 package vbp.gui;
 
+import java.awt.EventQueue;
+import java.util.concurrent.Future;
 import javax.swing.JFileChooser;
 import sebi.util.observer.Event;
-import sebi.util.threads.ThreadedExecutor;
 import vbp.model.Model;
+import vbp.model.exec.ModelExecutor;
+import vbp.model.export.ScriptDialect;
 
 /**
  *
@@ -41,25 +44,56 @@ public class WindowExportFFmpeg extends javax.swing.JDialog implements Saveable
         this.model = model;
         
         initComponents();
+        updateGuiValues();
+        jButtonExecuteNow.setEnabled(!model.isExecuting());
     }
     
     public void updateModelValues() {
-        // TODO implement
+        model.setFFmpegDialect((ScriptDialect) jComboBoxChooseOs.getSelectedItem());
     }
 
     public void updateGuiValues() {
-        // TODO implement
+        jComboBoxChooseOs.setSelectedItem(model.getFFmpegDialect());
     }
     
     protected void saveFFmpegScript() {
-        new ThreadedExecutor() {
+        updateModelValues.fire();
+        model.getLanes().submit(ModelExecutor.Lane.CPU, new Runnable() {
 
             @Override
-            public void execute() {
-                updateModelValues.fire();
+            public void run() {
                 model.exportToFFmpeg(new JFileChooser());
             }
-        }.start();
+        });
+    }
+
+    protected void executeFFmpeg() {
+        if (model.isExecuting()) {
+            return;
+        }
+        updateModelValues.fire();
+        // one batch at a time: enabled again when the batch is done
+        jButtonExecuteNow.setEnabled(false);
+        Future<?> batch = model.getLanes().submit(ModelExecutor.Lane.CPU, new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    model.executeFFmpeg();
+                } finally {
+                    EventQueue.invokeLater(new Runnable() {
+
+                        @Override
+                        public void run() {
+                            jButtonExecuteNow.setEnabled(true);
+                        }
+                    });
+                }
+            }
+        });
+        if (batch.isCancelled()) {
+            jButtonExecuteNow.setEnabled(true);
+        }
     }
 
     public void safeExit() {
@@ -100,10 +134,9 @@ public class WindowExportFFmpeg extends javax.swing.JDialog implements Saveable
         setLocationByPlatform(true);
         setMinimumSize(new java.awt.Dimension(450, 230));
 
-        jComboBoxChooseOs.setModel(new javax.swing.DefaultComboBoxModel(new String[] { "Windows (*.bat)", "Linux (*.sh)" }));
-        jComboBoxChooseOs.setEnabled(false);
+        jComboBoxChooseOs.setModel(new javax.swing.DefaultComboBoxModel(ScriptDialect.values()));
 
-        jLabelChooseOs.setText("Choose your Operating System:");
+        jLabelChooseOs.setText("Choose your Script Type:");
 
         jButtonBrowsePath.setText("Browse");
         jButtonBrowsePath.setEnabled(false);
@@ -120,7 +153,11 @@ public class WindowExportFFmpeg extends javax.swing.JDialog implements Saveable
         });
 
         jButtonExecuteNow.setText("Execute Now");
-        jButtonExecuteNow.setEnabled(false);
+        jButtonExecuteNow.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                jButtonExecuteNowActionPerformed(evt);
+            }
+        });
 
         jButtonClose.setText("Close");
         jButtonClose.addActionListener(new java.awt.event.ActionListener() {
@@ -197,6 +234,10 @@ public class WindowExportFFmpeg extends javax.swing.JDialog implements Saveable
     private void jButtonSaveScriptActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jButtonSaveScriptActionPerformed
         saveFFmpegScript();
     }//GEN-LAST:event_jButtonSaveScriptActionPerformed
+
+    private void jButtonExecuteNowActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jButtonExecuteNowActionPerformed
+        executeFFmpeg();
+    }//GEN-LAST:event_jButtonExecuteNowActionPerformed
     
     // Variables declaration - do not modify//GEN-BEGIN:variables
     private javax.swing.JButton jButtonBrowsePath;
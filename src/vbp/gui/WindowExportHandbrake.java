@@ -22,9 +22,11 @@
  */
 package vbp.gui;
 
+import java.util.List;
+import javax.swing.JOptionPane;
 import sebi.util.observer.Event;
-import sebi.util.threads.ThreadedExecutor;
 import vbp.model.Model;
+import vbp.model.exec.ModelExecutor;
 
 /**
  *
@@ -55,7 +57,25 @@ public class WindowExportHandbrake extends javax.swing.JDialog implements Saveab
     
     @Override
     public void updateModelValues() {
-        model.setHandBrakeQuery(jTextPaneHandbrakeQuery.getText());
+        applyQuery();
+    }
+    
+    /**
+     * Writes the query into the model, or tells the user why it is invalid
+     * @return true if the query has been applied
+     */
+    private boolean applyQuery() {
+        String query = jTextPaneHandbrakeQuery.getText();
+        List<String> problems = model.validateHandBrakeQuery(query);
+        if (problems.isEmpty()) {
+            return model.setHandBrakeQuery(query);
+        }
+        StringBuilder message = new StringBuilder("The query has not been applied:");
+        for (String problem : problems) {
+            message.append("\n- ").append(problem);
+        }
+        JOptionPane.showMessageDialog(this, message.toString(), "Invalid Handbrake query", JOptionPane.ERROR_MESSAGE);
+        return false;
     }
     
     @Override
@@ -67,20 +87,25 @@ public class WindowExportHandbrake extends javax.swing.JDialog implements Saveab
     // <editor-fold desc="GUI Actions">
     
     protected void saveHandbrakeQueue() {
-        new ThreadedExecutor() {
+        if (!applyQuery()) {
+            return;
+        }
+        updateModelValues.fire();
+        model.getLanes().submit(ModelExecutor.Lane.CPU, new Runnable() {
 
             @Override
-            public void execute() {
-                updateModelValues.fire();
+            public void run() {
                 model.exportToHandbrake(jFileChooserExportHandbrake);
             }
-        }.start();
+        });
     }
     
     @Override
     public void safeExit() {
-        updateModelValues();
-        this.dispose();
+        // the close button keeps the dialog open, so the query can be corrected
+        if (applyQuery()) {
+            this.dispose();
+        }
     }
     
     // </editor-fold>
@@ -26,12 +26,12 @@ import java.io.File;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URL;
+import java.nio.file.Path;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.swing.JFileChooser;
 import javax.swing.JOptionPane;
-import javax.swing.SwingUtilities;
 import net.java.balloontip.BalloonTip;
 import net.java.balloontip.positioners.BalloonTipPositioner;
 import net.java.balloontip.positioners.LeftAbovePositioner;
@@ -41,6 +41,9 @@ import net.java.balloontip.utils.ToolTipUtils;
 import sebi.util.observer.Event;
 import sebi.util.observer.ObserverArgs;
 import sebi.util.threads.ThreadedExecutor;
+import vbp.model.exec.ModelExecutor;
+import vbp.util.data.ListChange;
+import vbp.util.timing.RunReport;
 
 /**
  * The main gui of the application. Built with Netbeans (about 3/4 of the code lines
@@ -52,6 +55,8 @@ public class WindowMain extends javax.swing.JFrame implements Saveable {
 
     protected Model model;
     protected GUI gui;
+    /** shows the report of the last scan or export */
+    protected RunReportPanel reportPanel = new RunReportPanel();
     
     /**
      * Main Window Constructor. Creates a new Instance of the main window.
@@ -160,10 +165,10 @@ public class WindowMain extends javax.swing.JFrame implements Saveable {
      * model values
      */
     protected void updateInputFiles() {
-        List<String> files = model.getInputFiles();
+        shownInputFiles = model.getInputFileList();
         listModelInput.clear();
-        for (String file : files) {
-            listModelInput.addElement(file);
+        for (Path file : shownInputFiles) {
+            listModelInput.addElement(FileListModel.displayString(file));
         }
     }
 
@@ -172,44 +177,41 @@ public class WindowMain extends javax.swing.JFrame implements Saveable {
      * current model values
      */
     protected void updateTranscodeFiles() {
-        List<String> files = model.getFilesToTranscode();
-        listModelTranscode.clear();
-        for (String file : files) {
-            listModelTranscode.addElement(file);
-        }
+        jListTranscode.clearSelection();
+        listModelTranscode.setFiles(model.getTranscodeFileList());
+        // with a fixed cell size, the list doesn't have to measure every cell
+        jListTranscode.setPrototypeCellValue(listModelTranscode.getLongestElement());
         jProgressBarScan.setIndeterminate(false);
     }
     
     protected void browseInput() {
         if (jFileChooserInput.showOpenDialog(null) == JFileChooser.APPROVE_OPTION) {
-            runProgressBar(true);
-            new ThreadedExecutor() {
+            updateModelValues.fire();
+            final File[] files = jFileChooserInput.getSelectedFiles();
+            submitScan(new Runnable() {
 
                 @Override
-                public void execute() {
-                    updateModelValues.fire();
-                    model.addInputFiles(jFileChooserInput.getSelectedFiles());
+                public void run() {
+                    model.addInputFiles(files);
                 }
-            }.start();
+            });
         }
     }
     
     protected void removeInput() {
-        runProgressBar(true);
-        new ThreadedExecutor() {
+        int[] selected = jListInput.getSelectedIndices();
+        final String[] files = new String[selected.length];
+        for (int i = 0; i < selected.length; i++) {
+            files[i] = listModelInput.get(selected[i]);
+        }
+        
+        submitScan(new Runnable() {
 
             @Override
-            public void execute() {
-                int[] selected = jListInput.getSelectedIndices();
-
-                String[] files = new String[selected.length];
-                for (int i = 0; i < selected.length; i++) {
-                    files[i] = listModelInput.get(selected[i]);
-                }
-
+            public void run() {
                 model.removeInputFiles(files);
             }
-        }.start();
+        });
     }
     
     protected void browseOutput() {
@@ -220,15 +222,47 @@ public class WindowMain extends javax.swing.JFrame implements Saveable {
     }
     
     protected void rescan() {
-        runProgressBar(true);
-        new ThreadedExecutor() {
+        updateModelValues.fire();
+        submitScan(new Runnable() {
 
             @Override
-            public void execute() {
-                updateModelValues.fire();
+            public void run() {
                 model.updateFilesToTranscode();
             }
-        }.start();
+        });
+    }
+    
+    protected void clearInput() {
+        model.getLanes().submit(ModelExecutor.Lane.IO, new Runnable() {
+
+            @Override
+            public void run() {
+                model.clearInputFiles();
+            }
+        });
+    }
+    
+    protected void clearTranscode() {
+        model.getLanes().submit(ModelExecutor.Lane.IO, new Runnable() {
+
+            @Override
+            public void run() {
+                model.clearFilesToTranscode();
+            }
+        });
+    }
+    
+    /**
+     * Runs a task that updates the files to transcode on the IO lane (after
+     * all changes requested before). The progress bar runs until the new list
+     * is shown.
+     * @param task the task
+     */
+    private void submitScan(Runnable task) {
+        runProgressBar(true);
+        if (model.getLanes().submit(ModelExecutor.Lane.IO, task).isCancelled()) {
+            runProgressBar(false);      // rejected, there won't be a new list
+        }
     }
     
     
@@ -276,59 +310,175 @@ public class WindowMain extends javax.swing.JFrame implements Saveable {
     
     // Model
     
+    /**
+     * The events of the model are fired on worker threads and handed to the
+     * EDT via the event bus of the gui, which merges them per frame.
+     */
     private void initEvents() {
-        model.eventUpdateGUI().addObserver(onUpdateGUI());
-    }
+        GuiEventBus bus = gui.getEventBus();
+        
+        final GuiEventBus.Topic<GuiComponents> components = bus.latest(new GuiEventBus.Receiver<GuiComponents>() {
 
-    private ObserverArgs<GuiComponents> onUpdateGUI() {
-        return new ObserverArgs<GuiComponents>() {
+            @Override
+            public void receive(List<GuiComponents> events) {
+                for (GuiComponents component : events) {
+                    updateComponent(component);
+                }
+            }
+        });
+        model.eventUpdateGUI().addObserver(new ObserverArgs<GuiComponents>() {
 
             @Override
             public void update(GuiComponents component) {
-                switch (component) {
-                    case DIFFERENT_FOLDER:
-                        // TODO
-                        break;
-                    case HANDBRAKE_QUERY:
-                        // TODO
-                        break;
-                    case LIST_INPUT:
-                        SwingUtilities.invokeLater(new Runnable() {
-
-                            @Override
-                            public void run() {
-                                updateInputFiles();
-                            }
-                        });
-                        break;
-                    case LIST_TRANSCODE:
-                        SwingUtilities.invokeLater(new Runnable() {
-
-                            @Override
-                            public void run() {
-                                updateTranscodeFiles();
-                                runProgressBar(false);
-                            }
-                        });
-                        break;
-                    case PATTERN_EXTENSIONS:
-                        // TODO
-                        break;
-                    case PATTERN_REGEX:
-                        // TODO
-                        break;
-                    case PATTERN_SIZE_MAX:
-                        // TODO
-                        break;
-                    case PATTERN_SIZE_MIN:
-                        // TODO
-                        break;
-                    case RENAME_PATTERN:
-                        // TODO
-                        break;
+                components.post(component, component);
+            }
+        });
+        
+        final GuiEventBus.Topic<ListChange<Path>> input = bus.all(inputChanges);
+        model.eventInputListChange().addObserver(new ObserverArgs<ListChange<Path>>() {
+
+            @Override
+            public void update(ListChange<Path> change) {
+                input.post(change);
+            }
+        });
+        
+        final GuiEventBus.Topic<ListChange<Path>> transcode = bus.all(transcodeChanges);
+        model.eventTranscodeListChange().addObserver(new ObserverArgs<ListChange<Path>>() {
+
+            @Override
+            public void update(ListChange<Path> change) {
+                transcode.post(change);
+            }
+        });
+        
+        // the list changes of a scan are posted first, so they have been
+        // rendered when the report of the scan arrives
+        final GuiEventBus.Topic<RunReport> reports = bus.latest(new GuiEventBus.Receiver<RunReport>() {
+
+            @Override
+            public void receive(List<RunReport> events) {
+                for (RunReport report : events) {
+                    if (report.getName().equals("scan")) {
+                        report.stage("list rendering", renderTime);
+                        renderTime = 0;
+                    }
+                    reportPanel.show(report);
                 }
             }
-        };
+        });
+        model.eventRunReport().addObserver(new ObserverArgs<RunReport>() {
+
+            @Override
+            public void update(RunReport report) {
+                reports.post(report.getName(), report);
+            }
+        });
+    }
+    
+    /** time spent applying changes to the list of files to transcode (ns) */
+    private long renderTime;
+    
+    /** the version of the input files that is shown in the list view */
+    private List<Path> shownInputFiles;
+    
+    /**
+     * Applies changes of the input files to the list view
+     */
+    private final ListChangeReceiver<Path> inputChanges = new ListChangeReceiver<Path>() {
+
+        @Override
+        protected void apply(ListChange<Path> change) {
+            if (change.getList() == shownInputFiles) {
+                return;
+            } else if (change.getPrevious() != shownInputFiles) {
+                updateInputFiles();
+                return;
+            }
+            shownInputFiles = change.getList();
+            for (ListChange.Range<Path> range : change.getRanges()) {
+                if (range.getType() == ListChange.Type.REMOVED) {
+                    listModelInput.removeRange(range.getIndex(), range.getLastIndex());
+                } else {
+                    int index = range.getIndex();
+                    for (Path file : range.getElements()) {
+                        listModelInput.add(index++, FileListModel.displayString(file));
+                    }
+                }
+            }
+        }
+
+        @Override
+        protected void replace(List<Path> list) {
+            updateInputFiles();
+        }
+    };
+    
+    /**
+     * Applies changes of the files to transcode to the list view
+     */
+    private final ListChangeReceiver<Path> transcodeChanges = new ListChangeReceiver<Path>() {
+
+        @Override
+        public void receive(List<ListChange<Path>> batch) {
+            long start = System.nanoTime();
+            super.receive(batch);
+            renderTime += System.nanoTime() - start;
+        }
+
+        @Override
+        protected void apply(ListChange<Path> change) {
+            listModelTranscode.apply(change);
+        }
+
+        @Override
+        protected void replace(List<Path> list) {
+            jListTranscode.clearSelection();
+            listModelTranscode.setFiles(list);
+        }
+
+        @Override
+        protected void done() {
+            jListTranscode.setPrototypeCellValue(listModelTranscode.getLongestElement());
+            runProgressBar(false);
+        }
+    };
+
+    /**
+     * Updates a gui element on request of the model (on the EDT)
+     * @param component the element to update
+     */
+    private void updateComponent(GuiComponents component) {
+        switch (component) {
+            case DIFFERENT_FOLDER:
+                // TODO
+                break;
+            case HANDBRAKE_QUERY:
+                // TODO
+                break;
+            case LIST_INPUT:
+                updateInputFiles();
+                break;
+            case LIST_TRANSCODE:
+                updateTranscodeFiles();
+                runProgressBar(false);
+                break;
+            case PATTERN_EXTENSIONS:
+                // TODO
+                break;
+            case PATTERN_REGEX:
+                // TODO
+                break;
+            case PATTERN_SIZE_MAX:
+                // TODO
+                break;
+            case PATTERN_SIZE_MIN:
+                // TODO
+                break;
+            case RENAME_PATTERN:
+                // TODO
+                break;
+        }
     }
     
     // </editor-fold>
@@ -356,8 +506,8 @@ public class WindowMain extends javax.swing.JFrame implements Saveable {
         jFileChooserOutput = new javax.swing.JFileChooser();
         jPanelFileView = new javax.swing.JPanel();
         jScrollPaneFileList = new javax.swing.JScrollPane();
-        listModelTranscode = new javax.swing.DefaultListModel<String>();
-        jListTranscode = new javax.swing.JList(listModelTranscode);
+        listModelTranscode = new FileListModel();
+        jListTranscode = new javax.swing.JList<String>(listModelTranscode);
         jButtonUp = new javax.swing.JButton();
         jButtonDel = new javax.swing.JButton();
         jButtonDown = new javax.swing.JButton();
@@ -380,7 +530,7 @@ public class WindowMain extends javax.swing.JFrame implements Saveable {
         jPanelSearch = new javax.swing.JPanel();
         jScrollPaneInput = new javax.swing.JScrollPane();
         listModelInput = new javax.swing.DefaultListModel<String>();
-        jListInput = new javax.swing.JList(listModelInput);
+        jListInput = new javax.swing.JList<String>(listModelInput);
         jButtonInputUp = new javax.swing.JButton();
         jButtonInputDel = new javax.swing.JButton();
         jButtonInputDown = new javax.swing.JButton();
@@ -1291,6 +1441,7 @@ public class WindowMain extends javax.swing.JFrame implements Saveable {
 //    BalloonTip myBalloonTip = new BalloonTip(jButtonRenamePatternHelp, "Hello world!", edgedLook, false);
     private void initCustomComponents() {
         initBalloonTips();
+        jTabbedPaneSettings.addTab("Report", reportPanel);
     }
     protected String tipRenamePattern = "<html>Define your rename pattern: This is how your transcoded files will be named.<br>"
             + "You can use a static name for all files or keep the original name and add something to it,<br>"
@@ -1362,7 +1513,7 @@ private void jButtonDownActionPerformed(java.awt.event.ActionEvent evt) {//GEN-F
 }//GEN-LAST:event_jButtonDownActionPerformed
 
 private void jButtonClearInputActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jButtonClearInputActionPerformed
-    model.clearInputFiles();
+    clearInput();
 }//GEN-LAST:event_jButtonClearInputActionPerformed
 
 private void jButtonInputDelActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jButtonInputDelActionPerformed
@@ -1410,7 +1561,7 @@ private void jMenuItemNewActionPerformed(java.awt.event.ActionEvent evt) {//GEN-
     }//GEN-LAST:event_jButtonExportHandbrakeActionPerformed
 
     private void jButtonClearTranscodeActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jButtonClearTranscodeActionPerformed
-        model.clearFilesToTranscode();
+        clearTranscode();
     }//GEN-LAST:event_jButtonClearTranscodeActionPerformed
 
     private void jButtonExitActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jButtonExitActionPerformed
@@ -1541,10 +1692,10 @@ private void jMenuItemNewActionPerformed(java.awt.event.ActionEvent evt) {//GEN-
     private javax.swing.JLabel jLabelSizeFrom;
     private javax.swing.JLabel jLabelSizeMb;
     private javax.swing.JLabel jLabelSizeTo;
-    private javax.swing.JList jListInput;
+    private javax.swing.JList<String> jListInput;
     private javax.swing.DefaultListModel<String> listModelInput;
-    private javax.swing.JList jListTranscode;
-    private javax.swing.DefaultListModel<String> listModelTranscode;
+    private javax.swing.JList<String> jListTranscode;
+    private FileListModel listModelTranscode;
     private javax.swing.JMenu jMenu1;
     private javax.swing.JMenuBar jMenuBar;
     private javax.swing.JMenu jMenuFile;
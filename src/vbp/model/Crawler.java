@@ -16,28 +16,60 @@
  */
 package vbp.model;
 
-import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import vbp.util.fs.ArchiveFileSystems;
+import vbp.util.timing.Counter;
+import vbp.util.timing.Histogram;
+import vbp.util.timing.Metrics;
+import vbp.util.timing.Timer;
 
 /**
  * This class implements the ICrawler interface, which describes some abstract
  * ways to search for files on a device. Detailed descriptions of the functions
  * can be found in the interface documentation.
  * 
+ * The attributes of every entry are read once (instead of asking for
+ * isFile(), isDirectory() and length() separately) and handed to the filter,
+ * which saves a round trip per file on network shares.
+ * 
+ * If archives are set, ZIP archives and ISO images are crawled like folders
+ * (see ArchiveFileSystems): the files inside are listed instead of the archive.
+ * 
  * @author Sebastian Straub <sebastian-straub@gmx.net>
  */
 public class Crawler implements ICrawler {
     
+    // metrics
+    protected static final Timer CRAWL = Metrics.timer("crawl");
+    protected static final Timer LIST = Metrics.timer("crawl.list");
+    protected static final Timer STAT = Metrics.timer("crawl.stat");
+    protected static final Timer FILTER = Metrics.timer("crawl.filter");
+    protected static final Counter DIRECTORIES = Metrics.counter("crawl.directories");
+    protected static final Counter FILES = Metrics.counter("crawl.files");
+    protected static final Counter MATCHED = Metrics.counter("crawl.matched");
+    protected static final Counter MATCHED_BYTES = Metrics.counter("crawl.matched.bytes");
+    protected static final Histogram ENTRIES = Metrics.histogram("crawl.directory.entries");
+    
     /** Files crawled so far. */
-    protected List<File> crawled = new ArrayList<File>();
+    protected List<Path> crawled = new ArrayList<Path>();
     /** Folders already used as input. Can be skipped on recrawl */
-    protected List<File> knownInput = new ArrayList<File>();
+    protected List<Path> knownInput = new ArrayList<Path>();
+    /** mounts the archives, null if archives are treated as files */
+    protected volatile ArchiveFileSystems archives;
     
     @Override
-    public List<File> crawl(List<File> input, boolean recursive) {
-        for (File file : input)
+    public List<Path> crawl(List<Path> input, boolean recursive) {
+        for (Path file : input)
             if(!knownInput.contains(file))
                 knownInput.add(file);
         
@@ -46,55 +78,73 @@ public class Crawler implements ICrawler {
     }
     
     @Override
-    public List<File> crawl(List<File> input, boolean recursive, IFileFilter filter) {
+    public List<Path> crawl(List<Path> input, boolean recursive, IFileFilter filter) {
         // TODO implement!
         throw new UnsupportedOperationException("Not supported yet.");
     }
     
     @Override
-    public List<File> crawlComplete(List<File> input, boolean recursive) {
-        crawled.clear();
-
-        // crawl
-        for (File file : input) {
-            if (file.isFile()) {
-                crawled.add(file);
-            } else if (file.isDirectory()) {    // is folder -> dig deeper
-                if (recursive) {         // recursive
-                    addFilesRecursively(file, crawled);
-                } else {                // just one layer below
-                    File[] children = file.listFiles();
-                    for (File child : children) {
-                        if (child.isFile()) {
-                            crawled.add(child);
-                        }
-                    }
-                }
-            }
-        }
-        return crawled;
+    public List<Path> crawlComplete(List<Path> input, boolean recursive) {
+        return crawlComplete(input, recursive, null);
     }
     
+    /**
+     * {@inheritDoc}
+     * @param filter may be null (all files pass)
+     */
     @Override
-    public List<File> crawlComplete(List<File> input, boolean recursive, IFileFilter filter) {
-        crawled.clear();
+    public List<Path> crawlComplete(List<Path> input, boolean recursive, IFileFilter filter) {
+        // a new list, the previous result may still be in use
+        crawled = new ArrayList<Path>();
 
         // crawl
-        for (File file : input) {
-            applyFilter(file, filter, crawled);
-            if (file.isDirectory()) {    // is folder -> dig deeper
+        long start = CRAWL.start();
+        ArchiveFileSystems archives = this.archives;
+        for (Path file : input) {
+            BasicFileAttributes attributes = attributes(file);
+            if (attributes == null) {
+                continue;
+            }
+            Path folder = isArchive(file, attributes, archives) ? mount(file, archives) : null;
+            if (folder == null) {
+                applyFilter(file, attributes, filter, crawled);
+                if (attributes.isDirectory()) {
+                    folder = file;
+                }
+            }
+            if (folder != null) {    // is folder -> dig deeper
                 if (recursive) {         // recursive
-                    addFilesRecursively(file, crawled, filter);
+                    addFilesRecursively(folder, crawled, filter, archives);
                 } else {                // just one layer below
-                    File[] children = file.listFiles();
-                    for (File child : children) {
-                        applyFilter(child, filter, crawled);
+                    List<Path> children = list(folder);
+                    if (children != null) {
+                        for (Path child : children) {
+                            BasicFileAttributes childAttributes = attributes(child);
+                            if (childAttributes != null && !isArchive(child, childAttributes, archives)) {
+                                applyFilter(child, childAttributes, filter, crawled);
+                            }
+                        }
                     }
                 }
             }
         }
+        CRAWL.stop(start);
         return crawled;
     }
+
+    /**
+     * @return mounts the archives, null if archives are treated as files
+     */
+    public ArchiveFileSystems getArchives() {
+        return archives;
+    }
+
+    /**
+     * @param archives mounts the archives, null: archives are treated as files
+     */
+    public void setArchives(ArchiveFileSystems archives) {
+        this.archives = archives;
+    }
     
     // ++++++++++++++ static filters +++++++++++++++
     
@@ -105,37 +155,47 @@ public class Crawler implements ICrawler {
      * Else (file is really a folder or filter not passed) no change will be done
      * and false is returned.
      * @param file file-object to apply filter (if applicable)
-     * @param filter filter to be applied on the file
+     * @param attributes the attributes of the file
+     * @param filter filter to be applied on the file (null: all files pass)
      * @param list list where the file will be added to if it passes the filter
      * @return true if the file has passed the filter, else false.
      */
-    private static boolean applyFilter(File file, IFileFilter filter, Collection<File> list) {
-        if (file.isFile()) {
-            if (filter.filter(file)) {
-                list.add(file);
-                return true;
-            }
+    protected static boolean applyFilter(Path file, BasicFileAttributes attributes, IFileFilter filter, Collection<Path> list) {
+        if (attributes.isRegularFile() && accept(file, attributes, filter)) {
+            list.add(file);
+            return true;
         }
         return false;
     }
     
+    /**
+     * Applies the filter on a file (and counts the files that have been
+     * visited and matched, see Metrics)
+     * @param file a regular file
+     * @param attributes the attributes of the file
+     * @param filter the filter (null: all files pass)
+     * @return true, if the file passes the filter
+     */
+    protected static boolean accept(Path file, BasicFileAttributes attributes, IFileFilter filter) {
+        FILES.increment();
+        long start = FILTER.start();
+        boolean accepted = (filter == null || filter.filter(file, attributes));
+        FILTER.stop(start);
+        if (accepted) {
+            MATCHED.increment();
+            MATCHED_BYTES.add(attributes.size());
+        }
+        return accepted;
+    }
+    
     /**
      * Searches all files and folders recursively from the specified root file.
      * Adds all files to the specified file collection. Folders will not be added.
      * @param root file to start searching from recursively
      * @param fileList list where the found files will be written into
      */
-    public static void addFilesRecursively(File root, Collection<File> fileList) {
-        final File[] children = root.listFiles();
-        if (children != null) {
-            for (File child : children) {
-                if (child.isFile()) {
-                    fileList.add(child);
-                } else if (child.isDirectory()) {
-                    addFilesRecursively(child, fileList);
-                }
-            }
-        }
+    public static void addFilesRecursively(Path root, Collection<Path> fileList) {
+        addFilesRecursively(root, fileList, null);
     }
     
     /**
@@ -144,18 +204,119 @@ public class Crawler implements ICrawler {
      * Folders will not be added.
      * @param root file to start searching from recursively
      * @param fileList list where the found files will be written into
-     * @param filter filter settings that will be applied on every found file before adding
+     * @param filter filter settings that will be applied on every found file before adding (null: all files pass)
+     */
+    public static void addFilesRecursively(Path root, Collection<Path> fileList, IFileFilter filter) {
+        addFilesRecursively(root, fileList, filter, null);
+    }
+    
+    /**
+     * Searches all files and folders recursively from the specified root file.
+     * Adds all files that pass the specified filter to the specified file collection.
+     * Folders will not be added, archives are searched like folders.
+     * @param root file to start searching from recursively
+     * @param fileList list where the found files will be written into
+     * @param filter filter settings that will be applied on every found file before adding (null: all files pass)
+     * @param archives mounts the archives (null: archives are treated as files)
      */
-    public static void addFilesRecursively(File root, Collection<File> fileList, IFileFilter filter) {
-        final File[] children = root.listFiles();
+    public static void addFilesRecursively(Path root, Collection<Path> fileList, IFileFilter filter, ArchiveFileSystems archives) {
+        final List<Path> children = list(root);
         if (children != null) {
-            for (File child : children) {
-                applyFilter(child, filter, fileList);
-                if(child.isDirectory()) {
-                    addFilesRecursively(child, fileList, filter);
+            for (Path child : children) {
+                BasicFileAttributes attributes = attributes(child);
+                if (attributes == null) {
+                    continue;
+                }
+                if (isArchive(child, attributes, archives)) {
+                    Path mounted = mount(child, archives);
+                    if (mounted != null) {
+                        addFilesRecursively(mounted, fileList, filter, archives);
+                        continue;
+                    }
+                }
+                applyFilter(child, attributes, filter, fileList);
+                if(attributes.isDirectory()) {
+                    addFilesRecursively(child, fileList, filter, archives);
+                }
+            }
+        }
+    }
+    
+    // ++++++++++++++ file system access +++++++++++++++
+    
+    /**
+     * @param file a file
+     * @param attributes the attributes of the file
+     * @param archives mounts the archives (may be null)
+     * @return true, if the file is an archive that shall be crawled like a folder
+     */
+    protected static boolean isArchive(Path file, BasicFileAttributes attributes, ArchiveFileSystems archives) {
+        return archives != null && attributes.isRegularFile() && ArchiveFileSystems.isArchive(file);
+    }
+    
+    /**
+     * Mounts an archive
+     * @param archive the archive
+     * @param archives mounts the archives
+     * @return the root folder of the archive or null, if it can't be read
+     *         (then it's treated as file)
+     */
+    protected static Path mount(Path archive, ArchiveFileSystems archives) {
+        try {
+            return archives.mount(archive);
+        } catch (IOException ex) {
+            Logger.getLogger(Crawler.class.getName()).log(Level.WARNING, "can''t read archive {0}: {1}",
+                    new Object[] { archive, ex.getMessage() });
+            return null;
+        }
+    }
+    
+    /**
+     * Reads the attributes of a file (symbolic links are followed, like
+     * File.isFile() and File.isDirectory() do)
+     * @param file the file
+     * @return the attributes or null, if the file doesn't exist or can't be read
+     */
+    protected static BasicFileAttributes attributes(Path file) {
+        long start = STAT.start();
+        try {
+            return Files.readAttributes(file, BasicFileAttributes.class);
+        } catch (IOException ex) {
+            return null;
+        } finally {
+            STAT.stop(start);
+        }
+    }
+    
+    /**
+     * Lists the content of a folder (like File.listFiles())
+     * @param folder the folder
+     * @return all entries of the folder or null, if the folder can't be read
+     */
+    protected static List<Path> list(Path folder) {
+        long start = LIST.start();
+        List<Path> children = new ArrayList<Path>();
+        try {
+            DirectoryStream<Path> stream = Files.newDirectoryStream(folder);
+            try {
+                for (Path child : stream) {
+                    children.add(child);
                 }
+            } finally {
+                stream.close();
             }
+        } catch (IOException ex) {
+            Logger.getLogger(Crawler.class.getName()).log(Level.WARNING, null, ex);
+            return null;
+        } catch (DirectoryIteratorException ex) {
+            // keep the entries that have been read so far
+            Logger.getLogger(Crawler.class.getName()).log(Level.WARNING, null, ex);
+        } finally {
+            LIST.stop(start);
         }
+        DIRECTORIES.increment();
+        ENTRIES.record(children.size());
+        return children;
     }
     
 }
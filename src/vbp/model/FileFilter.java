@@ -17,11 +17,17 @@
 package vbp.model;
 
 import vbp.model.Model.SearchPattern;
-import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Pattern;
+import vbp.util.fs.PathUtils;
+import vbp.util.timing.Counter;
+import vbp.util.timing.Metrics;
+import vbp.util.timing.Timer;
 
 /**
  * This class implements a file filter that can be applied on any file to decide
@@ -34,6 +40,12 @@ public class FileFilter implements IFileFilter {
     // model - update filter settings from here
     private Model model;
     
+    // metrics
+    protected static final Timer CANONICAL = Metrics.timer("filter.canonical");
+    protected static final Timer REGEX = Metrics.timer("filter.regex");
+    protected static final Counter REJECTED_SIZE = Metrics.counter("filter.rejected.size");
+    protected static final Counter REJECTED_REGEX = Metrics.counter("filter.rejected.regex");
+    
     // settings inherited from model
     protected SearchPattern searchPattern;
     protected boolean fileSize;
@@ -66,25 +78,44 @@ public class FileFilter implements IFileFilter {
     }
 
     @Override
-    public boolean filter(File file) {
+    public boolean filter(Path file) {
+        if (searchPattern == SearchPattern.FILE_PROPERTIES && fileSize) {
+            // the size is the only attribute we need
+            try {
+                return filter(file, Files.readAttributes(file, BasicFileAttributes.class));
+            } catch (IOException ex) {
+                return filter(file, null);
+            }
+        }
+        return filter(file, null);
+    }
+
+    /**
+     * {@inheritDoc}
+     * @param attributes may be null, if the attributes can't be read (the
+     *        file size is 0 then)
+     */
+    @Override
+    public boolean filter(Path file, BasicFileAttributes attributes) {
         switch (searchPattern) {
             case FILE_PROPERTIES:
                 if (fileSize) {
-                    long length = file.length();
-                    if (length < minSize) {
-                        return false;
-                    } else if (length > maxSize) {
+                    long length = (attributes == null) ? 0 : attributes.size();
+                    if (length < minSize || length > maxSize) {
+                        REJECTED_SIZE.increment();
                         return false;
                     }
                 }
                 if (applyRegex) {
                     if (!applyRegex(file, regex)) {
+                        REJECTED_REGEX.increment();
                         return false;
                     }
                 }
                 break;
             case REGEX:
                 if (!applyRegex(file, regex)) {
+                    REJECTED_REGEX.increment();
                     return false;
                 }
         }
@@ -99,16 +130,21 @@ public class FileFilter implements IFileFilter {
      * @param regex pre-compiled java-regex
      * @return true if regex matches, else false
      */
-    protected static boolean applyRegex(File file, Pattern regex) {
-        try {   // if regex matches -> win
-            if (regex.matcher(file.getCanonicalPath()).matches()) {
-                return true;
-            }
+    protected static boolean applyRegex(Path file, Pattern regex) {
+        String path;
+        long start = CANONICAL.start();
+        try {
+            path = PathUtils.canonicalPath(file);
         } catch (IOException ex) {     // if file path can't be read -> fail
             Logger.getLogger(FileFilter.class.getName()).log(Level.SEVERE, null, ex);
             return false;
+        } finally {
+            CANONICAL.stop(start);
         }
-        return false;       // regex did'nt match
+        start = REGEX.start();
+        boolean matches = regex.matcher(path).matches();  // if regex matches -> win
+        REGEX.stop(start);
+        return matches;
     }
 
     @Override
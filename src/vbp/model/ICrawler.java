@@ -16,12 +16,14 @@
  */
 package vbp.model;
 
-import java.io.File;
+import java.nio.file.Path;
 import java.util.List;
 
 /**
  * This Interface describes a set of tools that can be used to search for files
- * on a device, optionally using a file filter.
+ * on a device, optionally using a file filter. The search locations may belong
+ * to any java.nio file system (e.g. the content of an archive or an in-memory
+ * file system), the results belong to the same file system.
  * 
  * @author Sebastian Straub <sebastian-straub@gmx.net>
  */
@@ -34,7 +36,7 @@ public interface ICrawler {
      * @param recursive folders will be crawled recursively (to the bottom) if set to true
      * @return list of all crawled files
      */
-    List<File> crawl(List<File> input, boolean recursive);
+    List<Path> crawl(List<Path> input, boolean recursive);
     
     /**
      * Searches for all files that haven't been crawled for before (incremental crawling).
@@ -44,7 +46,7 @@ public interface ICrawler {
      * @param filter file filter that decides which file comes on the list
      * @return list of all crawled files that have passed the filter
      */
-    List<File> crawl(List<File> input, boolean recursive, IFileFilter filter);
+    List<Path> crawl(List<Path> input, boolean recursive, IFileFilter filter);
     
     /**
      * Searches for all files no matter if they have been crawled for before (complete crawling).
@@ -53,7 +55,7 @@ public interface ICrawler {
      * @param recursive folders will be crawled recursively (to the bottom) if set to true
      * @return list of all crawled files
      */
-    List<File> crawlComplete(List<File> input, boolean recursive);
+    List<Path> crawlComplete(List<Path> input, boolean recursive);
     
     /**
      * Searches for all files no matter if they have been crawled for before (complete crawling).
@@ -63,6 +65,6 @@ public interface ICrawler {
      * @param filter file filter that decides which file comes on the list
      * @return list of all crawled files that have passed the filter
      */
-    List<File> crawlComplete(List<File> input, boolean recursive, IFileFilter filter);
+    List<Path> crawlComplete(List<Path> input, boolean recursive, IFileFilter filter);
     
 }
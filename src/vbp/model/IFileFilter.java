@@ -16,7 +16,8 @@
  */
 package vbp.model;
 
-import java.io.File;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
 
 /**
  *
@@ -29,7 +30,17 @@ public interface IFileFilter {
      * @param file File to check
      * @return true if the file matches the filter
      */
-    boolean filter(File file);
+    boolean filter(Path file);
+    
+    /**
+     * decides if the given file is in accordance with the current filter settings.
+     * Use this if the attributes of the file are already known (e.g. while
+     * crawling), so they don't have to be read again.
+     * @param file File to check
+     * @param attributes the attributes of the file
+     * @return true if the file matches the filter
+     */
+    boolean filter(Path file, BasicFileAttributes attributes);
     
     /**
      * updates the filter settings
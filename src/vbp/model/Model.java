@@ -19,19 +19,52 @@ package vbp.model;
 import vbp.model.export.HandbrakeExportStatic;
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.swing.JFileChooser;
 import sebi.util.data.Clipboard;
-import sebi.util.data.ListUtils;
 import sebi.util.observer.EventArgs;
+import sebi.util.observer.ObserverArgs;
 import vbp.gui.FileFilters;
+import vbp.model.exec.BatchProgress;
+import vbp.model.exec.FFmpegProgressParser;
+import vbp.model.exec.HandbrakeProgressParser;
+import vbp.model.exec.JobJournal;
+import vbp.model.exec.ModelExecutor;
+import vbp.model.exec.Progress;
+import vbp.model.exec.ProgressParser;
+import vbp.model.exec.ResourceScheduler;
+import vbp.model.exec.SpoolQueue;
+import vbp.model.exec.SpoolWorker;
+import vbp.model.exec.TranscodeExecutor;
+import vbp.model.exec.TranscodeJob;
 import vbp.model.export.Export;
 import vbp.model.export.ExportFFmpeg;
+import vbp.model.export.ExportFFmpegParallel;
+import vbp.model.export.ExportFFmpegSegmented;
 import vbp.model.export.ExportHandbrake;
-import vbp.util.arg.CommandLine;
+import vbp.model.export.ScriptDialect;
+import vbp.model.preset.Encoder;
+import vbp.model.preset.Preset;
+import vbp.model.preset.PresetLibrary;
+import vbp.util.data.ListChange;
+import vbp.util.fs.ArchiveFileSystems;
+import vbp.util.fs.PathUtils;
+import vbp.util.timing.Metrics;
+import vbp.util.timing.MetricsSnapshot;
+import vbp.util.timing.RunReport;
 
 /**
  * The Model class holds the main program logic. All user settings are stored
@@ -43,16 +76,35 @@ public class Model {
     
     // <editor-fold desc="Class attributes">
     
+    /** max. time to wait for pending tasks when the program exits (s) */
+    protected static final int EXIT_TIMEOUT = 10;
+    
     // Model
-    protected Crawler crawler = new Crawler();
+    /** parallel with virtual threads, if the runtime supports them */
+    protected Crawler crawler = ParallelCrawler.create();
+    /** runs the background tasks of the model */
+    protected final ModelExecutor lanes = new ModelExecutor();
+    /** the executor of the running batch (null if nothing runs) */
+    protected volatile TranscodeExecutor executor;
+    /** true while a batch is executed (set before the executor exists) */
+    protected final AtomicBoolean executing = new AtomicBoolean();
+    /** the spool worker, if this instance works on a shared queue (null otherwise) */
+    protected volatile SpoolWorker worker;
+    /** the project file that has been loaded or saved last (null if none) */
+    protected File projectFile;
+    /** the file system where the input files are searched */
+    protected FileSystem fileSystem = FileSystems.getDefault();
+    /** the archives that have been crawled */
+    protected final ArchiveFileSystems archives = new ArchiveFileSystems();
     
     // GUI
     // main view
-    protected List<File> filesToTranscode = new ArrayList<File>();
+    protected List<Path> filesToTranscode = new ArrayList<Path>();
     
     // input
-    protected List<File> inputFiles = new ArrayList<File>();
+    protected List<Path> inputFiles = new ArrayList<Path>();
     protected boolean recursive;
+    protected boolean crawlArchives;
     
     // output
     protected OutputMethod outputMethod;
@@ -70,8 +122,23 @@ public class Model {
     protected String regex;
     
     // encoding
-    /** cleaned Handbrake-Query (without -i and -o args) **/
-    protected String handBrakeQuery;
+    /** all presets of the user **/
+    protected PresetLibrary presets;
+    /** name of the preset used for ffmpeg exports (unless a rule assigns another one) **/
+    protected String ffmpegPreset;
+    /** name of the preset used for HandBrake exports (unless a rule assigns another one) **/
+    protected String handBrakePreset;
+    /** query of a project that differs from the selected HandBrake preset. It
+     *  replaces the preset, but is never written into the library **/
+    protected Preset handBrakeQueryPreset;
+    /** script dialect of the ffmpeg export **/
+    protected ScriptDialect ffmpegDialect;
+    /** number of concurrent ffmpeg jobs (1: sequential script, 0: one per cpu core) **/
+    protected int ffmpegParallelJobs;
+    /** split each file into segments of this length (s) that are encoded concurrently (0: off) **/
+    protected int ffmpegSegmentLength;
+    /** adapt the number of concurrent jobs to cpu load and free disk space **/
+    protected boolean resourceScheduling;
     
     // </editor-fold>
     
@@ -95,8 +162,9 @@ public class Model {
      */
     public void loadDefaults() {
         Settings.loadDefaultSettings(this);
-        filesToTranscode = new ArrayList<File>();
-        inputFiles = new ArrayList<File>();
+        filesToTranscode = new ArrayList<Path>();
+        inputFiles = new ArrayList<Path>();
+        projectFile = null;
     }
     
     /**
@@ -105,10 +173,23 @@ public class Model {
      */
     public void loadProject(JFileChooser fileChooser) {
         if (fileChooser.showOpenDialog(null) == JFileChooser.APPROVE_OPTION) {
-            Settings.loadProject(this, fileChooser.getSelectedFile());
-            updateGUI.fire(GuiComponents.LIST_INPUT);
-            updateGUI.fire(GuiComponents.LIST_TRANSCODE);
+            loadProject(fileChooser.getSelectedFile());
+        }
+    }
+    
+    /**
+     * Loads a saved project file
+     * @param file the project file (.vbpp)
+     * @return true if the project has been loaded
+     */
+    public boolean loadProject(File file) {
+        if (!Settings.loadProject(this, file)) {
+            return false;
         }
+        projectFile = file;
+        updateGUI.fire(GuiComponents.LIST_INPUT);
+        updateGUI.fire(GuiComponents.LIST_TRANSCODE);
+        return true;
     }
     
     /**
@@ -117,22 +198,22 @@ public class Model {
      */
     public void saveProject(JFileChooser fileChooser) {
         if (fileChooser.showSaveDialog(null) == JFileChooser.APPROVE_OPTION) {
-            Settings.writeProject(this, FileFilters.enforceFileExtension(fileChooser.getSelectedFile(), "vbpp"));
+            projectFile = FileFilters.enforceFileExtension(fileChooser.getSelectedFile(), "vbpp");
+            Settings.writeProject(this, projectFile);
         }
     }
     
     // ------------- main view -------------
     
     public void clearFilesToTranscode() {
-        filesToTranscode.clear();
-        updateGUI.fire(GuiComponents.LIST_TRANSCODE);
+        setFilesToTranscode(new ArrayList<Path>());
     }
     
-    public void moveFilesToTranscodeUp(File file) {
+    public void moveFilesToTranscodeUp(Path file) {
         // TODO
     }
     
-    public void moveFilesToTranscodeDown(File file) {
+    public void moveFilesToTranscodeDown(Path file) {
         // TODO
     }
     
@@ -140,15 +221,82 @@ public class Model {
         // TODO
     }
     
-    public void removeFilesToTranscode(List<File> files) {
+    public void removeFilesToTranscode(List<Path> files) {
         // TODO
     }
     
+    /**
+     * Crawls the input files again and publishes a report of the scan (see
+     * eventRunReport())
+     */
     public void updateFilesToTranscode() {
         // TODO this is very inefficient! improve!
-        filesToTranscode = crawler.crawlComplete(inputFiles, recursive, FileFilter.initialize(this));
-        
-        updateGUI.fire(GuiComponents.LIST_TRANSCODE);
+        MetricsSnapshot before = Metrics.snapshot();
+        long start = System.nanoTime();
+        List<Path> files = crawl();
+        long crawled = System.nanoTime();
+        setFilesToTranscode(files);
+        long end = System.nanoTime();
+        runReport.fire(scanReport(Metrics.snapshot().since(before), end - start, end - crawled));
+    }
+    
+    /**
+     * @param run the metrics of the scan
+     * @param elapsed duration of the scan in ns
+     * @param listUpdate time to publish the new list in ns
+     * @return the report of a scan
+     */
+    protected static RunReport scanReport(MetricsSnapshot run, long elapsed, long listUpdate) {
+        long canonical = run.timer("filter.canonical");
+        return new RunReport("scan", elapsed, run.counter("crawl.files"))
+                .count("directories visited", run.counter("crawl.directories"))
+                .count("files visited", run.counter("crawl.files"))
+                .count("files matched", run.counter("crawl.matched"))
+                .count("bytes matched", run.counter("crawl.matched.bytes"))
+                .stage("walk", run.timer("crawl.list"))
+                .stage("stat", run.timer("crawl.stat"))
+                .stage("filter", Math.max(0, run.timer("crawl.filter") - canonical))
+                .stage("canonical path", canonical)
+                .stage("list update", listUpdate);
+    }
+    
+    /**
+     * @param run the metrics of the export
+     * @return the report of an export. The elapsed time is the sum of all
+     *         stages, without the time the user spent in dialogues.
+     */
+    protected static RunReport exportReport(MetricsSnapshot run) {
+        long mapping = run.timer("export.mapping");
+        long source = run.timer("export.source");
+        long build = Math.max(0, run.timer("export.build") - source);
+        long write = run.timer("export.write");
+        return new RunReport("export", mapping + source + build + write, run.counter("export.files"))
+                .count("files exported", run.counter("export.files"))
+                .count("script characters", run.counter("export.script.chars"))
+                .stage("output mapping", mapping)
+                .stage("canonical path", source)
+                .stage("script build", build)
+                .stage("write", write);
+    }
+    
+    /**
+     * @return the files to transcode, crawled from the input files
+     */
+    protected List<Path> crawl() {
+        crawler.setArchives(crawlArchives ? archives : null);
+        return crawler.crawlComplete(inputFiles, recursive, FileFilter.initialize(this));
+    }
+    
+    /**
+     * Replaces the files to transcode and publishes the difference to the
+     * previous list. The lists are never modified in place, so the gui can
+     * keep using the old one until it has applied the change.
+     * @param files the new files to transcode
+     */
+    protected void setFilesToTranscode(List<Path> files) {
+        ListChange<Path> change = ListChange.diff(filesToTranscode, files);
+        filesToTranscode = files;
+        transcodeListChange.fire(change);
     }
     
     /**
@@ -158,6 +306,16 @@ public class Model {
         return filesToCanocialPath(filesToTranscode);
     }
     
+    /**
+     * The list is not copied, it's the current crawl result and must not be
+     * modified. A new crawl replaces the list instead of modifying it, so the
+     * returned list stays unchanged (see eventTranscodeListChange()).
+     * @return all files that shall be transcoded
+     */
+    public List<Path> getTranscodeFileList() {
+        return filesToTranscode;
+    }
+    
     public void copyToClipboard() {
         Clipboard.setClipboardString(toSimpleFileList(filesToTranscode));
     }
@@ -165,84 +323,395 @@ public class Model {
     // ------------- input -------------
     
     public void addInputFiles(File[] files) {
-        addInputFiles(ListUtils.listOfArray(files));
+        addInputFiles(PathUtils.toPaths(files));
     }
     
-    public void addInputFiles(List<File> files) {
-        for (File file : files) {
-            if(!inputFiles.contains(file))
-                inputFiles.add(file);
+    public void addInputFiles(List<Path> files) {
+        List<Path> input = new ArrayList<Path>(inputFiles);
+        for (Path file : files) {
+            if(!input.contains(file))
+                input.add(file);
         }
+        setInputFiles(input);
         
-        filesToTranscode = crawler.crawlComplete(inputFiles, recursive, FileFilter.initialize(this));
-        
-        updateGUI.fire(GuiComponents.LIST_INPUT);
-        updateGUI.fire(GuiComponents.LIST_TRANSCODE);
+        updateFilesToTranscode();
     }
     
-    public void moveInputFileUp(File file) {
+    public void moveInputFileUp(Path file) {
         // TODO
     }
     
-    public void moveInputFileDown(File file) {
+    public void moveInputFileDown(Path file) {
         // TODO
     }
     
     public void removeInputFiles(String[] files) {
-        List<File> list = new ArrayList<File>(files.length);  
-        for (String fileString : files) {
-            list.add(new File(fileString));
+        List<Path> paths = new ArrayList<Path>(files.length);
+        for (String file : files) {
+            paths.add(toPath(file));
         }
-        removeInputFiles(list);
+        removeInputFiles(paths);
     }
     
-    public void removeInputFiles(List<File> files) {
-        inputFiles.removeAll(files);
-        updateGUI.fire(GuiComponents.LIST_INPUT);
+    public void removeInputFiles(List<Path> files) {
+        List<Path> input = new ArrayList<Path>(inputFiles);
+        input.removeAll(files);
+        setInputFiles(input);
         
         updateFilesToTranscode();
     }
     
     public void clearInputFiles() {
-        inputFiles.clear();
-        updateGUI.fire(GuiComponents.LIST_INPUT);
+        setInputFiles(new ArrayList<Path>());
+    }
+    
+    /**
+     * Replaces the input files and publishes the difference to the previous
+     * list (see setFilesToTranscode())
+     * @param files the new input files
+     */
+    protected void setInputFiles(List<Path> files) {
+        ListChange<Path> change = ListChange.diff(inputFiles, files);
+        inputFiles = files;
+        inputListChange.fire(change);
     }
     
     public List<String> getInputFiles() {
         return filesToCanocialPath(inputFiles);
     }
     
+    /**
+     * The list is not copied and must not be modified. Changes replace the
+     * list instead of modifying it (see eventInputListChange()).
+     * @return the input files
+     */
+    public List<Path> getInputFileList() {
+        return inputFiles;
+    }
+    
     // ------------- export -------------
     
     public void exportToHandbrake(JFileChooser fileChooser) {
         // TODO throw fail events to gui (separate) when items are malformed
+        MetricsSnapshot before = Metrics.snapshot();
+        buildHandbrakeExport().saveScript(fileChooser);
+        runReport.fire(exportReport(Metrics.snapshot().since(before)));
+    }
+    
+    /**
+     * Writes the HandBrake queue into a file, without any dialogue
+     * @param output the queue file (overwritten without asking!)
+     * @return true if the queue has been written
+     */
+    public boolean exportToHandbrake(File output) {
+        MetricsSnapshot before = Metrics.snapshot();
+        boolean written = buildHandbrakeExport().saveScript(output);
+        runReport.fire(exportReport(Metrics.snapshot().since(before)));
+        return written;
+    }
+    
+    public void exportToFFmpeg(JFileChooser fileChooser) {
+        MetricsSnapshot before = Metrics.snapshot();
+        buildFFmpegExport().saveScript(fileChooser);
+        runReport.fire(exportReport(Metrics.snapshot().since(before)));
+    }
+    
+    /**
+     * Writes the ffmpeg script into a file, without any dialogue
+     * @param output the script file (overwritten without asking!)
+     * @return true if the script has been written
+     */
+    public boolean exportToFFmpeg(File output) {
+        MetricsSnapshot before = Metrics.snapshot();
+        boolean written = buildFFmpegExport().saveScript(output);
+        runReport.fire(exportReport(Metrics.snapshot().since(before)));
+        return written;
+    }
+    
+    /**
+     * @return the HandBrake export for the current settings
+     */
+    protected Export buildHandbrakeExport() {
+        Preset preset = getPreset(Encoder.HANDBRAKE);
+        Export export;
+        if (outputMethod == OutputMethod.SPECIFIC_FOLDER) {
+            export = new ExportHandbrake(filesToTranscode, preset.getCommandLine(), outputLocation, preserveFolders);
+        } else {
+            export = new ExportHandbrake(filesToTranscode, preset.getCommandLine(), renamePattern);
+        }
+        return applyPresets(export, preset, presets.assign(filesToTranscode, preset));
+    }
+    
+    /**
+     * @param export the export
+     * @param preset the preset selected for the batch
+     * @param assignment files that get another preset by rule
+     * @return the export
+     */
+    protected Export applyPresets(Export export, Preset preset, Map<Path, Preset> assignment) {
+        export.setPreset(preset);
+        export.setAssignment(assignment);
+        return export;
+    }
+    
+    /**
+     * @return the ffmpeg script export for the current settings: segmented,
+     *         parallel or sequential
+     */
+    protected Export buildFFmpegExport() {
+        // only shell scripts can run jobs concurrently
+        boolean segmented = ffmpegSegmentLength > 0 && ffmpegDialect == ScriptDialect.SHELL;
+        boolean parallel = ffmpegParallelJobs != 1 && ffmpegDialect == ScriptDialect.SHELL;
+        // a single encoder per file makes no sense for segments, use all cores instead
+        int segmentJobs = (ffmpegParallelJobs == 1) ? 0 : ffmpegParallelJobs;
+        
+        Preset preset = getPreset(Encoder.FFMPEG);
+        String commandLine = preset.getCommandLine();
+        Map<Path, Preset> assignment = presets.assign(filesToTranscode, preset);
+        if (!assignment.isEmpty()) {
+            // concurrent scripts share a single command, run the presets one after another
+            segmented = parallel = false;
+        }
         
-        Export handbrake;
-        switch(outputMethod) {
-            case INPLACE:
-//                HandbrakeExportStatic.saveQueue(fileChooser, filesToTranscode, handBrakeQuery, renamePattern);
-                handbrake = new ExportHandbrake(filesToTranscode, handBrakeQuery, renamePattern);
-                handbrake.saveScript(fileChooser);
-                break;
-            case SPECIFIC_FOLDER:
-//                HandbrakeExportStatic.saveQueue(fileChooser, filesToTranscode, handBrakeQuery, outputLocation, preserveFolders);
-                handbrake = new ExportHandbrake(filesToTranscode, handBrakeQuery, outputLocation, preserveFolders);
-                handbrake.saveScript(fileChooser);
-                break;
+        Export export;
+        if (outputMethod == OutputMethod.SPECIFIC_FOLDER) {
+            if (segmented) {
+                export = new ExportFFmpegSegmented(filesToTranscode, commandLine, "ffmpeg", outputLocation, preserveFolders, ffmpegSegmentLength, segmentJobs);
+            } else if (parallel) {
+                export = new ExportFFmpegParallel(filesToTranscode, commandLine, "ffmpeg", outputLocation, preserveFolders, ffmpegParallelJobs);
+            } else {
+                export = new ExportFFmpeg(filesToTranscode, commandLine, "ffmpeg", outputLocation, preserveFolders, ffmpegDialect);
+            }
+        } else {
+            if (segmented) {
+                export = new ExportFFmpegSegmented(filesToTranscode, commandLine, "ffmpeg", renamePattern, ffmpegSegmentLength, segmentJobs);
+            } else if (parallel) {
+                export = new ExportFFmpegParallel(filesToTranscode, commandLine, "ffmpeg", renamePattern, ffmpegParallelJobs);
+            } else {
+                export = new ExportFFmpeg(filesToTranscode, commandLine, "ffmpeg", renamePattern, ffmpegDialect);
+            }
         }
+        return applyPresets(export, preset, assignment);
     }
     
-    public void exportToFFmpeg(JFileChooser fileChooser) {
-        Export ffmpeg;
-        switch(outputMethod) {
-            case INPLACE:
-                ffmpeg = new ExportFFmpeg(filesToTranscode, "ffmpeg -i video_origine.avi video_finale.mpg", "ffmpeg", renamePattern);
-                ffmpeg.saveScript(fileChooser);
-                break;
-            case SPECIFIC_FOLDER:
-                ffmpeg = new ExportFFmpeg(filesToTranscode, "ffmpeg -i video_origine.avi video_finale.mpg", "ffmpeg", outputLocation, preserveFolders);
-                ffmpeg.saveScript(fileChooser);
-                break;
+    // ------------- execution -------------
+    
+    /**
+     * Transcodes all files with ffmpeg on this machine, running up to
+     * ffmpegParallelJobs encoder processes at once. Blocks until all jobs are
+     * finished, so don't call this from the event dispatch thread.
+     * @return all jobs, with their final state and exit code
+     * @throws IllegalStateException if another batch is running
+     */
+    public List<TranscodeJob> executeFFmpeg() {
+        return execute(buildFFmpegJobs(), ffmpegParallelJobs, new FFmpegProgressParser());
+    }
+    
+    /**
+     * Writes all ffmpeg jobs into a shared spool directory. Workers on any
+     * number of machines (see runSpoolWorker()) will pick them up.
+     * @param spoolDirectory the shared directory
+     * @return true if all jobs have been submitted
+     */
+    public boolean submitFFmpegToSpool(File spoolDirectory) {
+        try {
+            SpoolQueue queue = new SpoolQueue(spoolDirectory);
+            queue.submit(new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()), buildFFmpegJobs().buildJobs());
+            return true;
+        } catch (IOException ex) {
+            Logger.getLogger(Model.class.getName()).log(Level.SEVERE, null, ex);
+            return false;
+        }
+    }
+    
+    /**
+     * Works on the jobs in a shared spool directory, running up to
+     * ffmpegParallelJobs jobs at once. Blocks until cancelExecution() is called
+     * (or the queue is empty), so don't call this from the event dispatch thread.
+     * @param spoolDirectory the shared directory
+     * @param untilEmpty true: return as soon as there are no more pending or
+     *        running jobs in the queue
+     * @return the number of jobs finished by this worker
+     */
+    public int runSpoolWorker(File spoolDirectory, boolean untilEmpty) {
+        try {
+            worker = new SpoolWorker(new SpoolQueue(spoolDirectory), ffmpegParallelJobs);
+            return worker.run(untilEmpty);
+        } catch (IOException ex) {
+            Logger.getLogger(Model.class.getName()).log(Level.SEVERE, null, ex);
+        } catch (InterruptedException ex) {
+            Logger.getLogger(Model.class.getName()).log(Level.WARNING, "worker interrupted", ex);
+            Thread.currentThread().interrupt();
+        } finally {
+            worker = null;
+        }
+        return 0;
+    }
+    
+    /**
+     * @return the export that defines the ffmpeg jobs for local execution
+     */
+    protected Export buildFFmpegJobs() {
+        Preset preset = getPreset(Encoder.FFMPEG);
+        Export export;
+        if (outputMethod == OutputMethod.SPECIFIC_FOLDER) {
+            export = new ExportFFmpeg(filesToTranscode, preset.getCommandLine(), "ffmpeg", outputLocation, preserveFolders, ffmpegDialect);
+        } else {
+            export = new ExportFFmpeg(filesToTranscode, preset.getCommandLine(), "ffmpeg", renamePattern, ffmpegDialect);
+        }
+        return applyPresets(export, preset, presets.assign(filesToTranscode, preset));
+    }
+    
+    /**
+     * Transcodes all files with HandBrakeCLI on this machine, one file at a
+     * time (HandBrake uses all cpu cores anyway). Blocks until all jobs are
+     * finished, so don't call this from the event dispatch thread.
+     * @return all jobs, with their final state and exit code
+     * @throws IllegalStateException if another batch is running
+     */
+    public List<TranscodeJob> executeHandbrake() {
+        return execute(buildHandbrakeExport(), 1, new HandbrakeProgressParser());
+    }
+    
+    /**
+     * Runs all jobs of an export on this machine. The output of the encoder
+     * is logged in a new folder in the settings directory. All state changes
+     * are written to a journal, so an interrupted batch can be resumed: jobs
+     * that are already done are skipped when the same batch is run again.
+     * @param export the export that defines the jobs
+     * @param concurrency maximum number of jobs running at the same time
+     *        (values < 1: one job per cpu core)
+     * @param parser reads the progress of the jobs from the encoder's output
+     * @return all jobs, with their final state and exit code
+     * @throws IllegalStateException if another batch is running
+     */
+    protected List<TranscodeJob> execute(Export export, int concurrency, ProgressParser parser) {
+        // a second batch would take over the executor and the journal of the first
+        if (!executing.compareAndSet(false, true)) {
+            throw new IllegalStateException("a batch is running already");
+        }
+        try {
+            return executeBatch(export, concurrency, parser);
+        } finally {
+            executing.set(false);
+        }
+    }
+    
+    private List<TranscodeJob> executeBatch(Export export, int concurrency, ProgressParser parser) {
+        String timestamp = new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date());
+        File logDirectory = new File(new File(Settings.getSettingsDirectory(), "logs"), timestamp);
+        
+        List<TranscodeJob> jobs = export.buildJobs();
+        List<TranscodeJob> remaining = jobs;
+        JobJournal journal = null;
+        try {
+            File journalFile = getJournalFile(jobs);
+            journalFile.getParentFile().mkdirs();
+            journal = new JobJournal(journalFile);
+            remaining = journal.resume(jobs);
+        } catch (IOException ex) {
+            Logger.getLogger(Model.class.getName()).log(Level.WARNING, "can't open job journal, batch won't be resumable", ex);
+        }
+        
+        executor = new TranscodeExecutor(concurrency, logDirectory);
+        executor.setJournal(journal);
+        executor.setProgressParser(parser);
+        if (resourceScheduling) {
+            executor.setScheduler(new ResourceScheduler(concurrency));
+        }
+        final BatchProgress batch = new BatchProgress(remaining.size());
+        executor.eventJobUpdate().addObserver(new ObserverArgs<TranscodeJob>() {
+
+            @Override
+            public void update(TranscodeJob job) {
+                jobUpdate.fire(job);
+                batchProgress.fire(batch.update(job));
+            }
+        });
+        executor.eventJobProgress().addObserver(new ObserverArgs<TranscodeJob>() {
+
+            @Override
+            public void update(TranscodeJob job) {
+                jobProgress.fire(job);
+                batchProgress.fire(batch.update(job));
+            }
+        });
+        try {
+            executor.execute(remaining);
+        } catch (InterruptedException ex) {
+            Logger.getLogger(Model.class.getName()).log(Level.WARNING, "execution interrupted", ex);
+            Thread.currentThread().interrupt();
+        } finally {
+            executor = null;
+            if (journal != null) {
+                closeJournal(journal, jobs);
+            }
+        }
+        return jobs;
+    }
+    
+    /**
+     * Closes the journal of a batch. If every job is done, there is nothing
+     * left to resume and the journal is deleted.
+     * @param journal the journal of the batch
+     * @param jobs all jobs of the batch
+     */
+    protected void closeJournal(JobJournal journal, List<TranscodeJob> jobs) {
+        for (TranscodeJob job : jobs) {
+            if (job.getState() != TranscodeJob.State.DONE) {
+                try {
+                    journal.close();
+                } catch (IOException ex) {
+                    Logger.getLogger(Model.class.getName()).log(Level.WARNING, null, ex);
+                }
+                return;
+            }
+        }
+        journal.delete();
+    }
+    
+    /**
+     * @param jobs all jobs of the batch
+     * @return the journal of the batch: next to the project file, if the
+     *         project has been saved, otherwise in the settings directory,
+     *         named after the destinations of the batch (so unrelated batches
+     *         don't share a journal)
+     */
+    protected File getJournalFile(List<TranscodeJob> jobs) {
+        if (projectFile != null) {
+            String name = projectFile.getName();
+            int dot = name.lastIndexOf('.');
+            String base = (dot > 0) ? name.substring(0, dot) : name;
+            return new File(projectFile.getAbsoluteFile().getParentFile(), base + ".journal");
+        }
+        StringBuilder destinations = new StringBuilder();
+        for (TranscodeJob job : jobs) {
+            destinations.append(job.getDestination().getAbsolutePath()).append('\n');
+        }
+        UUID batch = UUID.nameUUIDFromBytes(destinations.toString().getBytes(StandardCharsets.UTF_8));
+        return new File(new File(Settings.getSettingsDirectory(), "journals"), "batch-" + batch + ".journal");
+    }
+    
+    /**
+     * @return true if a batch is executed right now
+     */
+    public boolean isExecuting() {
+        return executing.get();
+    }
+    
+    /**
+     * Stops the running batch, if any: no more jobs will be started, running
+     * encoder processes are killed. A spool worker gives its jobs back to the
+     * queue.
+     */
+    public void cancelExecution() {
+        TranscodeExecutor running = executor;
+        if (running != null) {
+            running.cancel();
+        }
+        SpoolWorker spoolWorker = worker;
+        if (spoolWorker != null) {
+            spoolWorker.stop();
         }
     }
     
@@ -254,6 +723,9 @@ public class Model {
      */
     public void safeExit() {
         
+        // stop crawls and exports, but finish saving
+        cancelExecution();
+        lanes.shutdown(EXIT_TIMEOUT, TimeUnit.SECONDS);
         Settings.writeSettings(this);
         
         // TODO show save dialogue before exiting, if changes happened
@@ -262,9 +734,24 @@ public class Model {
     }
     
     
+    /**
+     * @return the lanes that run the background tasks of the model. Tasks
+     *         that change the lists of files (crawls) belong into the IO lane,
+     *         where they are executed in the order of submission.
+     */
+    public ModelExecutor getLanes() {
+        return lanes;
+    }
+    
     // <editor-fold defaultstate="collapsed" desc="Event-block + Getters">
     
     protected EventArgs<GuiComponents> updateGUI = new EventArgs<GuiComponents>();
+    protected EventArgs<TranscodeJob> jobUpdate = new EventArgs<TranscodeJob>();
+    protected EventArgs<TranscodeJob> jobProgress = new EventArgs<TranscodeJob>();
+    protected EventArgs<Progress> batchProgress = new EventArgs<Progress>();
+    protected EventArgs<ListChange<Path>> inputListChange = new EventArgs<ListChange<Path>>();
+    protected EventArgs<ListChange<Path>> transcodeListChange = new EventArgs<ListChange<Path>>();
+    protected EventArgs<RunReport> runReport = new EventArgs<RunReport>();
 
     /**
      * @return a request from the model to update a specific gui-element.
@@ -273,6 +760,62 @@ public class Model {
         return updateGUI;
     }
     
+    /**
+     * @return fired with the difference to the previous list, whenever the
+     *         input files have changed. Not fired from the event dispatch
+     *         thread! Replacing the whole list (e.g. when a project is loaded)
+     *         is announced via eventUpdateGUI() instead.
+     */
+    public EventArgs<ListChange<Path>> eventInputListChange() {
+        return inputListChange;
+    }
+    
+    /**
+     * @return fired with the difference to the previous list, whenever the
+     *         files to transcode have changed. Not fired from the event
+     *         dispatch thread! Replacing the whole list (e.g. when a project
+     *         is loaded) is announced via eventUpdateGUI() instead.
+     */
+    public EventArgs<ListChange<Path>> eventTranscodeListChange() {
+        return transcodeListChange;
+    }
+    
+    /**
+     * @return fired whenever a transcoding job (started by executeFFmpeg()) has
+     *         been started or finished. Not fired from the event dispatch thread!
+     */
+    public EventArgs<TranscodeJob> eventJobUpdate() {
+        return jobUpdate;
+    }
+    
+    /**
+     * @return fired whenever the encoder of a running job reports progress
+     *         (see TranscodeJob.getProgress()). Not fired from the event
+     *         dispatch thread!
+     */
+    public EventArgs<TranscodeJob> eventJobProgress() {
+        return jobProgress;
+    }
+    
+    /**
+     * @return fired with the progress of the whole batch, whenever a job has
+     *         been started, made progress or finished. Not fired from the event
+     *         dispatch thread!
+     */
+    public EventArgs<Progress> eventBatchProgress() {
+        return batchProgress;
+    }
+    
+    /**
+     * @return fired with a report after each scan of the input files and
+     *         after each export. The counts and stage times are only
+     *         measured, if the metrics are enabled (see Metrics). Not fired
+     *         from the event dispatch thread!
+     */
+    public EventArgs<RunReport> eventRunReport() {
+        return runReport;
+    }
+    
     // </editor-fold>
     
     // <editor-fold defaultstate="collapsed" desc="generated Getters and Setters">
@@ -320,18 +863,180 @@ public class Model {
     }
     
     /**
-     * @return handbrake-query, that will be used to generate the queue-file
+     * @return handbrake-query of the selected preset, that will be used to generate the queue-file
      */
     public String getHandBrakeQuery() {
-        return handBrakeQuery;
+        return getPreset(Encoder.HANDBRAKE).getCommandLine();
     }
     
     /**
+     * Changes the options of the selected HandBrake preset (or of the query
+     * that is used instead of it). -i and -o are ignored by the export, which
+     * sets input and output itself.
      * @param handBrakeQuery handbrake-query, that will be used to generate the queue-file
+     * @return true if the query is valid, false if it has been rejected
+     */
+    public boolean setHandBrakeQuery(String handBrakeQuery) {
+        Preset preset = getPreset(Encoder.HANDBRAKE).withCommandLine(handBrakeQuery.trim());
+        if (!isValid(preset)) {
+            return false;
+        }
+        if (handBrakeQueryPreset != null) {
+            handBrakeQueryPreset = preset;      // still belongs to the project
+        } else {
+            presets.put(preset);
+        }
+        return true;
+    }
+    
+    /**
+     * Uses the query instead of the selected HandBrake preset, without changing
+     * the preset library (e.g. the query of a project). Selecting a preset
+     * discards the query.
+     * @param handBrakeQuery handbrake-query, that will be used to generate the queue-file
+     * @return true if the query is valid, false if it has been rejected
+     */
+    public boolean useHandBrakeQuery(String handBrakeQuery) {
+        Preset preset = getPreset(Encoder.HANDBRAKE).withCommandLine(handBrakeQuery.trim());
+        if (!isValid(preset)) {
+            return false;
+        }
+        handBrakeQueryPreset = preset;
+        return true;
+    }
+    
+    /**
+     * @param handBrakeQuery handbrake-query
+     * @return the reasons why the query can't be used (empty if it is valid)
+     */
+    public List<String> validateHandBrakeQuery(String handBrakeQuery) {
+        return getPreset(Encoder.HANDBRAKE).withCommandLine(handBrakeQuery.trim()).validate();
+    }
+    
+    private static boolean isValid(Preset preset) {
+        List<String> problems = preset.validate();
+        if (!problems.isEmpty()) {
+            Logger.getLogger(Model.class.getName()).log(Level.WARNING, "{0}: {1}",
+                    new Object[] { preset.getName(), problems });
+        }
+        return problems.isEmpty();
+    }
+    
+    /**
+     * @return all presets of the user
+     */
+    public PresetLibrary getPresets() {
+        return presets;
+    }
+    
+    /**
+     * Replaces the presets. The selected presets are kept, if the new library
+     * has presets with the same names.
+     * @param presets the presets to use
      */
-    public void setHandBrakeQuery(String handBrakeQuery) {
-        // remove -i and -o parameters
-        this.handBrakeQuery = CommandLine.removeArgFromString(handBrakeQuery, "-i", "-o");
+    public void setPresets(PresetLibrary presets) {
+        this.presets = presets;
+    }
+    
+    /**
+     * @param encoder the encoder
+     * @return the preset selected for the encoder (the first preset for this
+     *         encoder, if the selected one doesn't exist), or the query used
+     *         instead of the HandBrake preset
+     */
+    public Preset getPreset(Encoder encoder) {
+        if (encoder == Encoder.HANDBRAKE && handBrakeQueryPreset != null) {
+            return handBrakeQueryPreset;
+        }
+        Preset preset = presets.get((encoder == Encoder.FFMPEG) ? ffmpegPreset : handBrakePreset);
+        if (preset == null || preset.getEncoder() != encoder) {
+            List<Preset> available = presets.getPresets(encoder);
+            preset = available.isEmpty() ? PresetLibrary.defaults().getPresets(encoder).get(0) : available.get(0);
+        }
+        return preset;
+    }
+    
+    /**
+     * Selects the preset that is used for all files of this encoder, unless a
+     * rule assigns another one.
+     * @param encoder the encoder
+     * @param name name of the preset
+     * @return false if there is no preset with this name for the encoder
+     */
+    public boolean selectPreset(Encoder encoder, String name) {
+        Preset preset = presets.get(name);
+        if (preset == null || preset.getEncoder() != encoder) {
+            return false;
+        }
+        if (encoder == Encoder.FFMPEG) {
+            ffmpegPreset = name;
+        } else {
+            handBrakePreset = name;
+            handBrakeQueryPreset = null;
+        }
+        return true;
+    }
+
+    /**
+     * @return the dialect of scripts generated by the ffmpeg export
+     */
+    public ScriptDialect getFFmpegDialect() {
+        return ffmpegDialect;
+    }
+
+    /**
+     * @param ffmpegDialect the dialect of scripts generated by the ffmpeg export
+     */
+    public void setFFmpegDialect(ScriptDialect ffmpegDialect) {
+        this.ffmpegDialect = ffmpegDialect;
+    }
+
+    /**
+     * @return number of concurrent ffmpeg jobs (1: sequential script, 0: one per cpu core)
+     */
+    public int getFFmpegParallelJobs() {
+        return ffmpegParallelJobs;
+    }
+
+    /**
+     * @param ffmpegParallelJobs number of concurrent ffmpeg jobs (1: sequential
+     *        script, 0: one per cpu core). Only shell scripts support more than one.
+     */
+    public void setFFmpegParallelJobs(int ffmpegParallelJobs) {
+        this.ffmpegParallelJobs = ffmpegParallelJobs;
+    }
+
+    /**
+     * @return length of the segments in seconds, if every file is encoded
+     *         segment by segment (0: off)
+     */
+    public int getFFmpegSegmentLength() {
+        return ffmpegSegmentLength;
+    }
+
+    /**
+     * @param ffmpegSegmentLength split every file into segments of this length
+     *        (in seconds), which are encoded concurrently (0: off). Only shell
+     *        scripts support segments.
+     */
+    public void setFFmpegSegmentLength(int ffmpegSegmentLength) {
+        this.ffmpegSegmentLength = ffmpegSegmentLength;
+    }
+
+    /**
+     * @return true if the number of concurrent jobs adapts to cpu load and
+     *         free disk space, when transcoding on this machine
+     */
+    public boolean isResourceScheduling() {
+        return resourceScheduling;
+    }
+
+    /**
+     * @param resourceScheduling adapt the number of concurrent jobs to cpu load
+     *        and free disk space, when transcoding on this machine
+     */
+    public void setResourceScheduling(boolean resourceScheduling) {
+        this.resourceScheduling = resourceScheduling;
     }
 
     /**
@@ -429,6 +1134,21 @@ public class Model {
         this.recursive = recursive;
     }
 
+    /**
+     * @return crawl ZIP archives and ISO images like folders?
+     */
+    public boolean isCrawlArchives() {
+        return crawlArchives;
+    }
+
+    /**
+     * @param crawlArchives crawl ZIP archives and ISO images like folders
+     *        (otherwise they are treated like any other file)
+     */
+    public void setCrawlArchives(boolean crawlArchives) {
+        this.crawlArchives = crawlArchives;
+    }
+
     /**
      * @return the custom regex that will be applied to filter files
      */
@@ -460,9 +1180,36 @@ public class Model {
     /**
      * @return the locations or files where the program is searching for files to transcode
      */
-    public List<File> getSearchPath() {
+    public List<Path> getSearchPath() {
         return inputFiles;
     }
+
+    /**
+     * @return the file system where the input files are searched
+     */
+    public FileSystem getFileSystem() {
+        return fileSystem;
+    }
+
+    /**
+     * Paths given as string (e.g. in project files) are resolved in this file
+     * system. Paths given as Path may belong to any file system.
+     * @param fileSystem the file system where the input files are searched
+     */
+    public void setFileSystem(FileSystem fileSystem) {
+        this.fileSystem = fileSystem;
+    }
+    
+    /**
+     * Resolves a path string in the file system of the input files. Files in
+     * archives ("archive!/path/in/archive", see PathUtils.canonicalPath())
+     * are resolved in their archive.
+     * @param path the path string
+     * @return the path
+     */
+    public Path toPath(String path) {
+        return archives.resolve(fileSystem, path);
+    }
     
     /**
      * Use the built-in file properties dialogue to generate your filter
@@ -516,12 +1263,12 @@ public class Model {
     
     // <editor-fold defaultstate="collapsed" desc="static methods">
     
-    public static String toSimpleFileList(List<File> list) {
+    public static String toSimpleFileList(List<Path> list) {
         
         StringBuilder build = new StringBuilder(list.size());
-        for (File file : list) {
+        for (Path file : list) {
             try {
-                build.append(file.getCanonicalPath());
+                build.append(PathUtils.canonicalPath(file));
                 build.append('\n');
             } catch (IOException ex) {
                 Logger.getLogger(Model.class.getName()).log(Level.SEVERE, null, ex);
@@ -531,11 +1278,11 @@ public class Model {
         return build.toString();
     }
     
-    public static List<String> filesToCanocialPath(List<File> files) {
+    public static List<String> filesToCanocialPath(List<Path> files) {
         List<String> list = new ArrayList<String>();
-        for (File file : files) {
+        for (Path file : files) {
             try {
-                list.add(file.getCanonicalPath());
+                list.add(PathUtils.canonicalPath(file));
             } catch (IOException ex) {
                 Logger.getLogger(Model.class.getName()).log(Level.SEVERE, null, ex);
             }
@@ -0,0 +1,308 @@
+/*
+ * Copyright (C) 2011 Sebastian Straub <sebastian-straub@gmx.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package vbp.model;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import vbp.util.fs.ArchiveFileSystems;
+
+/**
+ * A crawler that lists all folders in parallel, one task per folder. On
+ * network shares (SMB, NFS) a crawl is bound by the latency of the single
+ * listings, so many listings in flight use the round-trip time that a
+ * sequential crawl waits for. The number of listings in flight per mount
+ * (file store) is limited, so a share is not flooded with requests.
+ * <p>
+ * Meant to be run with virtual threads (one per folder, available since Java
+ * 21), see create(). The tasks never wait for each other, so any executor
+ * works, but platform threads won't scale to thousands of folders.
+ * <p>
+ * The results are the same as the ones of the sequential Crawler, in the same
+ * order. Nested mounts share the limit of the mount of their input folder.
+ * 
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+public class ParallelCrawler extends Crawler {
+    
+    /** default max. number of listings in flight per mount */
+    public static final int DEFAULT_LISTINGS_PER_MOUNT = 16;
+    
+    /** Executors.newVirtualThreadPerTaskExecutor(), null if not supported */
+    private static final Method VIRTUAL_THREADS = virtualThreads();
+    
+    protected final ExecutorService executor;
+    protected final int listingsPerMount;
+    /** limits the listings in flight per mount */
+    protected final ConcurrentMap<Object, Semaphore> mounts = new ConcurrentHashMap<Object, Semaphore>();
+
+    /**
+     * @param executor runs one task per folder
+     * @param listingsPerMount max. number of listings in flight per mount
+     */
+    public ParallelCrawler(ExecutorService executor, int listingsPerMount) {
+        this.executor = executor;
+        this.listingsPerMount = listingsPerMount;
+    }
+    
+    /**
+     * @return a crawler with one virtual thread per folder if the runtime
+     *         supports virtual threads, otherwise a sequential Crawler
+     */
+    public static Crawler create() {
+        if (isSupported()) {
+            try {
+                ExecutorService executor = (ExecutorService) VIRTUAL_THREADS.invoke(null);
+                return new ParallelCrawler(executor, DEFAULT_LISTINGS_PER_MOUNT);
+            } catch (Exception ex) {
+                Logger.getLogger(ParallelCrawler.class.getName()).log(Level.WARNING, null, ex);
+            }
+        }
+        return new Crawler();
+    }
+    
+    /**
+     * @return true, if the runtime supports virtual threads
+     */
+    public static boolean isSupported() {
+        return VIRTUAL_THREADS != null;
+    }
+    
+    private static Method virtualThreads() {
+        try {
+            return java.util.concurrent.Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException ex) {
+            return null;
+        }
+    }
+
+    @Override
+    public List<Path> crawlComplete(List<Path> input, boolean recursive) {
+        return crawlComplete(input, recursive, null);
+    }
+
+    /**
+     * {@inheritDoc}
+     * If the thread is interrupted, the crawl is cancelled and the result is
+     * empty.
+     * @param filter may be null (all files pass)
+     */
+    @Override
+    public List<Path> crawlComplete(List<Path> input, boolean recursive, IFileFilter filter) {
+        long start = CRAWL.start();
+        Crawl crawl = new Crawl(recursive, filter, archives);
+        Listing roots = new Listing();
+        for (Path file : input) {
+            BasicFileAttributes attributes = attributes(file);
+            if (attributes == null) {
+                continue;
+            }
+            Path archive = isArchive(file, attributes, crawl.archives) ? mount(file, crawl.archives) : null;
+            if (archive != null) {
+                crawl.submit(archive, mount(archive), roots);
+            } else if (attributes.isRegularFile()) {
+                crawl.add(file, attributes, roots);
+            } else if (attributes.isDirectory()) {
+                crawl.submit(file, mount(file), roots);
+            }
+        }
+        List<Path> result = new ArrayList<Path>();
+        if (!crawl.await()) {
+            // interrupted, some tasks may still be running
+            return result;
+        }
+        
+        roots.flatten(result);
+        crawled = result;
+        CRAWL.stop(start);
+        return result;
+    }
+    
+    /**
+     * @param folder a folder
+     * @return the semaphore of the mount the folder belongs to
+     */
+    protected Semaphore mount(Path folder) {
+        Object key;
+        try {
+            key = Files.getFileStore(folder);
+        } catch (IOException ex) {
+            key = "";
+        }
+        Semaphore semaphore = mounts.get(key);
+        if (semaphore == null) {
+            semaphore = new Semaphore(listingsPerMount);
+            Semaphore existing = mounts.putIfAbsent(key, semaphore);
+            if (existing != null) {
+                semaphore = existing;
+            }
+        }
+        return semaphore;
+    }
+    
+    /**
+     * The content of a folder in listing order: files and listings of the
+     * sub folders (which may be filled later)
+     */
+    protected static class Listing {
+        
+        protected final List<Object> entries = new ArrayList<Object>();
+        
+        protected void flatten(List<Path> result) {
+            for (Object entry : entries) {
+                if (entry instanceof Listing) {
+                    ((Listing) entry).flatten(result);
+                } else {
+                    result.add((Path) entry);
+                }
+            }
+        }
+        
+    }
+    
+    /**
+     * A single crawl: keeps track of the running tasks
+     */
+    protected class Crawl {
+        
+        protected final boolean recursive;
+        protected final IFileFilter filter;
+        protected final ArchiveFileSystems archives;
+        /** number of folders that have not been listed yet */
+        protected final AtomicInteger pending = new AtomicInteger(1);
+        protected final CountDownLatch done = new CountDownLatch(1);
+        protected volatile boolean cancelled = false;
+
+        public Crawl(boolean recursive, IFileFilter filter, ArchiveFileSystems archives) {
+            this.recursive = recursive;
+            this.filter = filter;
+            this.archives = archives;
+        }
+        
+        /**
+         * Adds a file to a listing, if it passes the filter
+         */
+        protected void add(Path file, BasicFileAttributes attributes, Listing listing) {
+            if (accept(file, attributes, filter)) {
+                listing.entries.add(file);
+            }
+        }
+        
+        /**
+         * Lists a folder in the background. The listing is added to the
+         * parent at once, in the right position, and filled by the task.
+         */
+        protected void submit(final Path folder, final Semaphore mount, Listing parent) {
+            final Listing listing = new Listing();
+            parent.entries.add(listing);
+            pending.incrementAndGet();
+            try {
+                executor.execute(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        try {
+                            list(folder, mount, listing);
+                        } catch (InterruptedException ex) {
+                            cancelled = true;
+                        } catch (RuntimeException ex) {
+                            Logger.getLogger(ParallelCrawler.class.getName()).log(Level.SEVERE, null, ex);
+                        } finally {
+                            finish();
+                        }
+                    }
+                });
+            } catch (RejectedExecutionException ex) {
+                Logger.getLogger(ParallelCrawler.class.getName()).log(Level.SEVERE, null, ex);
+                finish();
+            }
+        }
+        
+        protected void list(Path folder, Semaphore mount, Listing listing) throws InterruptedException {
+            if (cancelled) {
+                return;
+            }
+            // reading the attributes takes round trips as well
+            mount.acquire();
+            try {
+                List<Path> children = Crawler.list(folder);
+                if (children == null) {
+                    return;
+                }
+                for (Path child : children) {
+                    BasicFileAttributes attributes = attributes(child);
+                    if (attributes == null) {
+                        continue;
+                    }
+                    if (isArchive(child, attributes, archives)) {
+                        // like a folder, the archive is read from the same mount
+                        Path archive = recursive ? Crawler.mount(child, archives) : null;
+                        if (archive != null) {
+                            submit(archive, mount, listing);
+                        } else if (recursive) {
+                            add(child, attributes, listing);
+                        }
+                    } else if (attributes.isRegularFile()) {
+                        add(child, attributes, listing);
+                    } else if (recursive && attributes.isDirectory()) {
+                        submit(child, mount, listing);
+                    }
+                }
+            } finally {
+                mount.release();
+            }
+        }
+        
+        protected void finish() {
+            if (pending.decrementAndGet() == 0) {
+                done.countDown();
+            }
+        }
+        
+        /**
+         * Waits until all folders have been listed. If the thread is
+         * interrupted, the crawl is cancelled.
+         * @return true, if the crawl is complete
+         */
+        protected boolean await() {
+            finish();
+            try {
+                done.await();
+                return true;
+            } catch (InterruptedException ex) {
+                cancelled = true;
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        
+    }
+    
+}
@@ -18,12 +18,19 @@ package vbp.model;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.ini4j.Ini;
 import org.ini4j.Profile.Section;
+import vbp.model.export.ScriptDialect;
+import vbp.model.preset.Encoder;
+import vbp.model.preset.PresetLibrary;
+import vbp.util.fs.PathUtils;
+import vbp.util.timing.Metrics;
+import vbp.util.timing.Timer;
 
 /**
  * Load from and save program configuration in settings files
@@ -32,6 +39,11 @@ import org.ini4j.Profile.Section;
  */
 public class Settings {
     
+    // metrics
+    protected static final Timer READ = Metrics.timer("settings.read");
+    protected static final Timer WRITE = Metrics.timer("settings.write");
+    protected static final Timer PATHS = Metrics.timer("settings.paths");
+    
     // sections
     private static String secInput = "input";
     private static String secOutput = "output";
@@ -48,6 +60,7 @@ public class Settings {
         Ini ini = new Ini();
         writeCommonSettings(model, ini);
         writeToDisk(ini, getSettingsFile());
+        writePresets(model.presets, getPresetFile());
     }
     
     /**
@@ -79,6 +92,7 @@ public class Settings {
     protected static Ini writeCommonSettings(Model model, Ini ini) {
         
         ini.put(secInput, "recursive", model.recursive);
+        ini.put(secInput, "archives", model.crawlArchives);
         
         Section output = ini.add(secOutput);
         output.put("method", model.outputMethod.toString());
@@ -96,7 +110,14 @@ public class Settings {
         search.put("extensionFilter", model.extensionFilter);
         search.put("regex", model.regex);
         
-        ini.put(secEncoding, "handbrake", model.handBrakeQuery);
+        ini.put(secEncoding, "ffmpegPreset", model.getPreset(Encoder.FFMPEG).getName());
+        ini.put(secEncoding, "handbrakePreset", model.getPreset(Encoder.HANDBRAKE).getName());
+        // the query is kept, so projects work with the presets of other users
+        ini.put(secEncoding, "handbrake", model.getHandBrakeQuery());
+        ini.put(secEncoding, "ffmpegScript", model.ffmpegDialect.getFileExtension());
+        ini.put(secEncoding, "ffmpegJobs", model.ffmpegParallelJobs);
+        ini.put(secEncoding, "schedule", model.resourceScheduling);
+        ini.put(secEncoding, "ffmpegSegment", model.ffmpegSegmentLength);
         
         return ini;
     }
@@ -111,16 +132,55 @@ public class Settings {
         // read .ini file
         if(getSettingsFile().canRead()) {
             try {
+                long start = READ.start();
                 Ini ini = new Ini(getSettingsFile());
+                READ.stop(start);
+                model.presets = loadPresets(getPresetFile());
                 loadCommonSettings(model, ini);
             } catch (IOException ex) {
                 Logger.getLogger(Settings.class.getName()).log(Level.SEVERE, null, ex);
             }
         } else {
+            model.presets = loadPresets(getPresetFile());
             loadDefaultSettings(model);
         }
     }
     
+    /**
+     * Reads the preset library. If there is none, the built-in presets are used.
+     * @param file the preset file
+     * @return the presets
+     */
+    public static PresetLibrary loadPresets(File file) {
+        if (file.canRead()) {
+            try {
+                long start = READ.start();
+                PresetLibrary library = PresetLibrary.load(file);
+                READ.stop(start);
+                return library;
+            } catch (IOException ex) {
+                Logger.getLogger(Settings.class.getName()).log(Level.SEVERE, null, ex);
+            }
+        }
+        return PresetLibrary.defaults();
+    }
+    
+    /**
+     * Writes the preset library. Overwrites without asking!
+     * @param presets the presets
+     * @param file the preset file
+     */
+    protected static void writePresets(PresetLibrary presets, File file) {
+        long start = WRITE.start();
+        try {
+            presets.save(file);
+        } catch (IOException ex) {
+            Logger.getLogger(Settings.class.getName()).log(Level.SEVERE, null, ex);
+        } finally {
+            WRITE.stop(start);
+        }
+    }
+    
     /**
      * Load a project file from the specified location.
      * @param model the model where the settings will be written into
@@ -130,16 +190,18 @@ public class Settings {
     public static boolean loadProject(Model model, File location) {
         if(location.canRead()) {
             try {
+                long start = READ.start();
                 Ini ini = new Ini(location);
+                READ.stop(start);
                 loadCommonSettings(model, ini);
                 
                 Section input = ini.get(secInput);
                 String[] inputFiles = input.getAll("file", String[].class);
-                model.inputFiles = stringToFileList(inputFiles);
+                model.inputFiles = stringToFileList(model, inputFiles);
                 
                 Section transcode = ini.get(secTranscode);
                 String[] filesToTranscode = transcode.getAll("file", String[].class);
-                model.filesToTranscode = stringToFileList(filesToTranscode);
+                model.filesToTranscode = stringToFileList(model, filesToTranscode);
                 
                 return true;
             } catch (IOException ex) {
@@ -157,6 +219,9 @@ public class Settings {
      */
     protected static void loadCommonSettings(Model model, Ini ini) {
         model.recursive = ini.get(secInput, "recursive", boolean.class);
+        // older settings files don't know archives: keep scanning them like before
+        Boolean archives = ini.get(secInput, "archives", Boolean.class);
+        model.crawlArchives = (archives != null) ? archives : false;
 
         Section output = ini.get(secOutput);
         model.outputMethod = Model.OutputMethod.valueOf(output.get("method", String.class));
@@ -175,7 +240,30 @@ public class Settings {
         model.extensionFilter = search.get("extensionFilter", String.class);
         model.regex = search.get("regex", String.class);
 
-        model.handBrakeQuery = ini.get(secEncoding, "handbrake", String.class);
+        if (model.presets == null) {
+            model.presets = PresetLibrary.defaults();
+        }
+        // older settings files don't know presets, just the handbrake query
+        String ffmpegPreset = ini.get(secEncoding, "ffmpegPreset", String.class);
+        model.ffmpegPreset = (ffmpegPreset != null) ? ffmpegPreset : PresetLibrary.DEFAULT_FFMPEG;
+        String handBrakePreset = ini.get(secEncoding, "handbrakePreset", String.class);
+        model.handBrakePreset = (handBrakePreset != null) ? handBrakePreset : PresetLibrary.DEFAULT_HANDBRAKE;
+        String query = ini.get(secEncoding, "handbrake", String.class);
+        // a query that differs from the preset belongs to this file only
+        model.handBrakeQueryPreset = null;
+        if (query != null && !query.equals(model.getHandBrakeQuery())) {
+            model.useHandBrakeQuery(query);
+        }
+        
+        // older settings files don't contain the script dialect
+        ScriptDialect dialect = ScriptDialect.forFileExtension(ini.get(secEncoding, "ffmpegScript", String.class));
+        model.ffmpegDialect = (dialect != null) ? dialect : ScriptDialect.platformDefault();
+        Integer jobs = ini.get(secEncoding, "ffmpegJobs", Integer.class);
+        model.ffmpegParallelJobs = (jobs != null) ? jobs : 1;
+        Boolean schedule = ini.get(secEncoding, "schedule", Boolean.class);
+        model.resourceScheduling = (schedule != null) ? schedule : true;
+        Integer segment = ini.get(secEncoding, "ffmpegSegment", Integer.class);
+        model.ffmpegSegmentLength = (segment != null) ? segment : 0;
     }
     
     /**
@@ -185,6 +273,7 @@ public class Settings {
      */
     public static void loadDefaultSettings(Model model) {
         model.recursive = true;
+        model.crawlArchives = false;
 
         model.outputMethod = Model.OutputMethod.INPLACE;
         model.renamePattern = "{name}-conv";
@@ -199,7 +288,17 @@ public class Settings {
         model.extensionFilter = "3gp|flv|mov|qt|divx|mkv|asf|wmv|avi|mpg|mpeg|mp2|mp4|m4v|rm|ogg|ogv|yuv";
         model.regex = ".*(\\.(avi|mkv|mp4))";
 
-        model.handBrakeQuery = "-f mkv --strict-anamorphic -e x264 -q 25 -a 1 -E lame -6 dpl2 -R Auto -B 128 -D 0.0 -x ref=2:bframes=2:subq=6:mixed-refs=0:weightb=0:8x8dct=0:trellis=0 --verbose=1";
+        // the presets are a library, not settings: they are kept
+        if (model.presets == null) {
+            model.presets = PresetLibrary.defaults();
+        }
+        model.ffmpegPreset = PresetLibrary.DEFAULT_FFMPEG;
+        model.handBrakePreset = PresetLibrary.DEFAULT_HANDBRAKE;
+        model.handBrakeQueryPreset = null;
+        model.ffmpegDialect = ScriptDialect.platformDefault();
+        model.ffmpegParallelJobs = 1;
+        model.resourceScheduling = true;
+        model.ffmpegSegmentLength = 0;
     }
     
     /**
@@ -208,10 +307,13 @@ public class Settings {
      * @param file the designated file location
      */
     protected static void writeToDisk(Ini ini, File file) {
+        long start = WRITE.start();
         try {
             ini.store(file);
         } catch (IOException ex) {
             Logger.getLogger(Settings.class.getName()).log(Level.SEVERE, null, ex);
+        } finally {
+            WRITE.stop(start);
         }
     }
     
@@ -223,6 +325,14 @@ public class Settings {
         return new File(getSettingsDirectory(), "settings.ini");
     }
     
+    /**
+     * @return the presets.ini in the settings directory. This is just a reference,
+     *         the file might not exist! (check with canRead())
+     */
+    protected static File getPresetFile() {
+        return new File(getSettingsDirectory(), PresetLibrary.FILE_NAME);
+    }
+    
     /**
      * Returns the settings-directory (.vbp) in the user home directory and
      * creates this directory if it doesn't exist.
@@ -245,28 +355,42 @@ public class Settings {
 
     /**
      * Turns a File list into a String list, where the string is generated with
-     * <code>file.toString()</code>.
+     * <code>file.toString()</code>. Files in archives are written as
+     * "archive!/path/in/archive" (see PathUtils.canonicalPath()).
      * @param files input file list
      * @return same list with string representation of every file
      */
-    protected static List<String> fileToStringList(List<File> files) {
+    protected static List<String> fileToStringList(List<Path> files) {
+        long start = PATHS.start();
         List<String> strings = new ArrayList<String>();
-        for (File file : files) {
-            strings.add(file.toString());
+        for (Path file : files) {
+            if (PathUtils.container(file) != null) {
+                try {
+                    strings.add(PathUtils.canonicalPath(file));
+                } catch (IOException ex) {
+                    Logger.getLogger(Settings.class.getName()).log(Level.WARNING, null, ex);
+                }
+            } else {
+                strings.add(file.toString());
+            }
         }
+        PATHS.stop(start);
         return strings;
     }
     
     /**
      * Turns a String-Array of file paths into a file-list.
+     * @param model the model that resolves the paths (see Model.toPath())
      * @param strings input string array of file paths
      * @return file list of these file paths
      */
-    protected static List<File> stringToFileList(String[] strings) {
-        List<File> files = new ArrayList<File>();
+    protected static List<Path> stringToFileList(Model model, String[] strings) {
+        long start = PATHS.start();
+        List<Path> files = new ArrayList<Path>();
         for (String string : strings) {
-            files.add(new File(string));
+            files.add(model.toPath(string));
         }
+        PATHS.stop(start);
         return files;
     }
     
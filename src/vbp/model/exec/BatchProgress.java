@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2011 Sebastian Straub <sebastian-straub@gmx.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package vbp.model.exec;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Combines the progress of all jobs of a batch. Finished jobs are only
+ * counted, so an update costs as much as the number of running jobs, not
+ * the size of the batch. Every job that reaches a final state is counted
+ * once, even if it never ran (e.g. skipped jobs). The ETA is extrapolated from the time elapsed so far.
+ * 
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+public class BatchProgress {
+    
+    /** number of jobs in the batch */
+    protected final int total;
+    /** the finished jobs (successful or not) */
+    protected final Set<TranscodeJob> finished = new HashSet<TranscodeJob>();
+    /** the jobs that are running right now */
+    protected final Set<TranscodeJob> running = new HashSet<TranscodeJob>();
+    /** start of the batch in ms since epoch */
+    protected final long startTime;
+
+    /**
+     * @param total number of jobs in the batch
+     */
+    public BatchProgress(int total) {
+        this.total = total;
+        this.startTime = System.currentTimeMillis();
+    }
+    
+    /**
+     * Updates the batch after a job has been started, has made progress or
+     * has finished
+     * @param job the job that has changed
+     * @return the progress of the whole batch
+     */
+    public synchronized Progress update(TranscodeJob job) {
+        if (job.isFinished()) {
+            running.remove(job);
+            finished.add(job);
+        } else if (job.getState() == TranscodeJob.State.RUNNING) {
+            running.add(job);
+        }
+        return getProgress();
+    }
+    
+    /**
+     * @return the progress of the whole batch. fps and speed are the sums of
+     *         all running jobs.
+     */
+    public synchronized Progress getProgress() {
+        if (total == 0) {
+            return new Progress(100, -1, -1, 0);
+        }
+        double done = finished.size();
+        double fps = -1;
+        double speed = -1;
+        for (TranscodeJob job : running) {
+            Progress progress = job.getProgress();
+            if (progress.getPercent() > 0) {
+                done += progress.getPercent() / 100;
+            }
+            if (progress.getFps() >= 0) {
+                fps = Math.max(fps, 0) + progress.getFps();
+            }
+            if (progress.getSpeed() >= 0) {
+                speed = Math.max(speed, 0) + progress.getSpeed();
+            }
+        }
+        double fraction = done / total;
+        long eta = -1;
+        if (fraction > 0) {
+            long elapsed = System.currentTimeMillis() - startTime;
+            eta = (long) (elapsed * (1 - fraction) / fraction);
+        }
+        return new Progress(fraction * 100, fps, speed, eta);
+    }
+    
+    public int getTotal() {
+        return total;
+    }
+    
+    public synchronized int getFinished() {
+        return finished.size();
+    }
+    
+}
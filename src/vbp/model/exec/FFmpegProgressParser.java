@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2011 Sebastian Straub <sebastian-straub@gmx.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package vbp.model.exec;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Reads the progress of ffmpeg. ffmpeg is called with <code>-progress pipe:1
+ * -nostats</code>, so it writes blocks of key=value pairs to stdout, each
+ * block ends with <code>progress=continue</code> (or <code>end</code>). The
+ * duration of the input, which is needed for percent and ETA, is taken from
+ * the "Duration:" line that ffmpeg writes to stderr.
+ * 
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+public class FFmpegProgressParser extends ProgressParser {
+    
+    private static final Pattern DURATION = Pattern.compile("^\\s*Duration: (\\d+):(\\d{2}):(\\d{2}(?:\\.\\d+)?)");
+    
+    /** duration of the input in µs, -1 if unknown */
+    protected long duration = -1;
+    /** timestamp of the encoded output in µs, -1 if unknown */
+    protected long outTime = -1;
+    protected double fps = -1;
+    protected double speed = -1;
+
+    @Override
+    public ProgressParser create() {
+        return new FFmpegProgressParser();
+    }
+
+    @Override
+    public List<String> prepareCommand(List<String> command) {
+        List<String> argv = new ArrayList<String>(command.size() + 3);
+        argv.add(command.get(0));
+        argv.add("-progress");
+        argv.add("pipe:1");
+        argv.add("-nostats");
+        argv.addAll(command.subList(1, command.size()));
+        return argv;
+    }
+
+    @Override
+    protected boolean parse(String line) {
+        int eq = line.indexOf('=');
+        if (eq < 0) {
+            if (duration < 0 && line.contains("Duration:")) {
+                Matcher m = DURATION.matcher(line);
+                if (m.find()) {
+                    duration = (Long.parseLong(m.group(1)) * 3600 + Long.parseLong(m.group(2)) * 60) * 1000000
+                            + (long) (Double.parseDouble(m.group(3)) * 1000000);
+                }
+            }
+            return false;
+        }
+        
+        String key = line.substring(0, eq).trim();
+        String value = line.substring(eq + 1).trim();
+        if (key.equals("fps")) {
+            fps = parseNumber(value);
+        } else if (key.equals("out_time_us") || key.equals("out_time_ms")) {
+            // out_time_ms is in µs as well (older versions only write this one)
+            outTime = (long) parseNumber(value);
+        } else if (key.equals("speed")) {
+            speed = parseNumber(value.endsWith("x") ? value.substring(0, value.length() - 1) : value);
+        } else if (key.equals("progress")) {
+            if (value.equals("end")) {
+                progress = new Progress(100, fps, speed, 0);
+            } else {
+                progress = new Progress(percent(), fps, speed, eta());
+            }
+            return true;
+        }
+        return false;
+    }
+    
+    /**
+     * @return percent complete, -1 if unknown
+     */
+    protected double percent() {
+        if (duration <= 0 || outTime < 0) {
+            return -1;
+        }
+        return Math.min(100, outTime * 100.0 / duration);
+    }
+    
+    /**
+     * @return estimated time until completion in ms, -1 if unknown
+     */
+    protected long eta() {
+        if (duration <= 0 || outTime < 0 || speed <= 0) {
+            return -1;
+        }
+        return (long) (Math.max(0, duration - outTime) / 1000 / speed);
+    }
+    
+    /**
+     * @param value a number as written by ffmpeg ("N/A" if unknown)
+     * @return the number or -1 if unknown
+     */
+    private static double parseNumber(String value) {
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException ex) {
+            return -1;
+        }
+    }
+    
+}
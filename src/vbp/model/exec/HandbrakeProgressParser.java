@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2011 Sebastian Straub <sebastian-straub@gmx.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package vbp.model.exec;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Reads the progress of HandBrakeCLI, which writes lines like
+ * <code>Encoding: task 1 of 2, 45.67 % (30.12 fps, avg 28.50 fps, ETA 00h01m23s)</code>
+ * to stdout (separated by \r). For multi-pass encodes, the percentage covers
+ * all passes, but the ETA is only known during the last pass.
+ * 
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+public class HandbrakeProgressParser extends ProgressParser {
+    
+    private static final Pattern ENCODING = Pattern.compile(
+            "Encoding: task (\\d+) of (\\d+), (\\d+(?:\\.\\d+)?) %"
+            + "(?: \\((\\d+(?:\\.\\d+)?) fps, avg \\d+(?:\\.\\d+)? fps, ETA (\\d+)h(\\d+)m(\\d+)s\\))?");
+
+    @Override
+    public ProgressParser create() {
+        return new HandbrakeProgressParser();
+    }
+
+    @Override
+    protected boolean parse(String line) {
+        if (!line.contains("Encoding: task")) {
+            return false;
+        }
+        Matcher m = ENCODING.matcher(line);
+        if (!m.find()) {
+            return false;
+        }
+        
+        int task = Integer.parseInt(m.group(1));
+        int tasks = Integer.parseInt(m.group(2));
+        double percent = Double.parseDouble(m.group(3));
+        if (tasks > 1) {
+            percent = ((task - 1) * 100 + percent) / tasks;
+        }
+        
+        double fps = -1;
+        long eta = -1;
+        if (m.group(4) != null) {
+            fps = Double.parseDouble(m.group(4));
+            if (task == tasks) {
+                eta = (Long.parseLong(m.group(5)) * 3600 + Long.parseLong(m.group(6)) * 60
+                        + Long.parseLong(m.group(7))) * 1000;
+            }
+        }
+        progress = new Progress(Math.min(100, percent), fps, -1, eta);
+        return true;
+    }
+    
+}
@@ -0,0 +1,337 @@
+/*
+ * Copyright (C) 2011 Sebastian Straub <sebastian-straub@gmx.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package vbp.model.exec;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * <p>An append-only journal of the state transitions of all jobs in a batch. If
+ * the batch dies halfway (crash, power loss, killed process), the journal tells
+ * which outputs are complete, so a restarted batch can skip them.</p>
+ * 
+ * <p>Every transition is one line: time, state, exit code, source, destination
+ * and whether the destination has been created by the job (tab separated,
+ * backslash escaped). Jobs are identified by their destination.
+ * A torn last line, as left by a crash, is ignored when the journal is read
+ * and cut off before new records are appended.</p>
+ * 
+ * <p>Writing to disk is only guaranteed after fsync, which is expensive, so
+ * records are synced in batches (after a number of records or some time has
+ * passed). The only exception is RUNNING: it is synced as soon as the encoder
+ * has been started. On resume, only outputs that the encoder of the job has
+ * created are deleted. Files that existed before the job (and outputs of jobs
+ * that failed before their encoder started) are never touched. A lost record
+ * just means that the job runs again.</p>
+ * 
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+public class JobJournal {
+    
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    
+    /** the journal file */
+    protected final File file;
+    /** the last known state of every job in the journal (destination -> state) */
+    protected final Map<String, TranscodeJob.State> states = new HashMap<String, TranscodeJob.State>();
+    /** the destinations that have been created by their job (not pre-existing files) */
+    protected final Set<String> owned = new HashSet<String>();
+    
+    protected FileChannel channel;
+    /** number of records written since the last sync */
+    protected int unsynced;
+    /** time of the last sync (ms since epoch) */
+    protected long lastSync;
+    /** sync after this many records */
+    protected int syncBatchSize = 64;
+    /** sync if the last sync is older than this (ms) */
+    protected long syncInterval = 1000;
+    
+    /**
+     * Opens the journal. If it exists already, the state of all jobs is restored.
+     * @param file the journal file
+     * @throws IOException if the journal can't be read or opened for writing
+     */
+    public JobJournal(File file) throws IOException {
+        this.file = file;
+        if (file.exists()) {
+            read();
+            truncateTornRecord();
+        }
+        this.channel = new FileOutputStream(file, true).getChannel();
+        this.lastSync = System.currentTimeMillis();
+    }
+    
+    /**
+     * Prepares a batch that may have been interrupted before: Jobs that are
+     * known to be done (and whose output exists) will be skipped, they are
+     * marked as DONE. All other jobs will be requeued. If their encoder has
+     * created the output file, this partial output is deleted.
+     * @param jobs all jobs of the batch
+     * @return the jobs that still need to be run
+     */
+    public synchronized List<TranscodeJob> resume(List<TranscodeJob> jobs) {
+        List<TranscodeJob> remaining = new ArrayList<TranscodeJob>(jobs.size());
+        for (TranscodeJob job : jobs) {
+            TranscodeJob.State state = states.get(key(job));
+            if (state == TranscodeJob.State.DONE && job.getDestination().isFile()) {
+                job.state = TranscodeJob.State.DONE;
+                job.exitCode = 0;
+                continue;
+            }
+            if ((state == TranscodeJob.State.RUNNING || state == TranscodeJob.State.FAILED)
+                    && owned.contains(key(job))) {
+                File partial = job.getDestination();
+                if (partial.exists() && !partial.delete()) {
+                    Logger.getLogger(JobJournal.class.getName()).log(Level.WARNING,
+                            "could not delete partial output {0}", partial);
+                }
+            }
+            remaining.add(job);
+        }
+        return remaining;
+    }
+    
+    /**
+     * Appends the current state of the job to the journal. RUNNING is synced
+     * to disk immediately, all other states are synced in batches.
+     * @param job the job whose state has changed
+     * @throws IOException if the journal can't be written
+     */
+    public synchronized void record(TranscodeJob job) throws IOException {
+        TranscodeJob.State state = job.getState();
+        StringBuilder line = new StringBuilder();
+        line.append(System.currentTimeMillis()).append('\t');
+        line.append(state).append('\t');
+        line.append(job.getExitCode()).append('\t');
+        line.append(escape(job.getSource().getPath())).append('\t');
+        line.append(escape(key(job))).append('\t');
+        line.append(job.ownsDestination() ? '1' : '0').append('\n');
+        
+        ByteBuffer buffer = ByteBuffer.wrap(line.toString().getBytes(UTF8));
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        states.put(key(job), state);
+        setOwned(key(job), job.ownsDestination());
+        unsynced++;
+        
+        if (state == TranscodeJob.State.RUNNING || unsynced >= syncBatchSize
+                || System.currentTimeMillis() - lastSync >= syncInterval) {
+            sync();
+        }
+    }
+    
+    /**
+     * Forces all records written so far to disk
+     * @throws IOException if the journal can't be synced
+     */
+    public synchronized void sync() throws IOException {
+        if (unsynced > 0) {
+            channel.force(false);
+            unsynced = 0;
+        }
+        lastSync = System.currentTimeMillis();
+    }
+    
+    /**
+     * Syncs and closes the journal
+     * @throws IOException if the journal can't be synced or closed
+     */
+    public synchronized void close() throws IOException {
+        try {
+            sync();
+        } finally {
+            channel.close();
+        }
+    }
+    
+    /**
+     * Closes and deletes the journal, e.g. after the batch has been completed.
+     * @return true if the journal file has been deleted
+     */
+    public synchronized boolean delete() {
+        try {
+            channel.close();
+        } catch (IOException ex) {
+            Logger.getLogger(JobJournal.class.getName()).log(Level.WARNING, null, ex);
+        }
+        return file.delete();
+    }
+    
+    /**
+     * @param job a job
+     * @return the last state of the job stored in the journal, or null if the
+     *         job is unknown
+     */
+    public synchronized TranscodeJob.State getState(TranscodeJob job) {
+        return states.get(key(job));
+    }
+    
+    public File getFile() {
+        return file;
+    }
+    
+    // ++++++++++ helpers ++++++++++
+    
+    /**
+     * Reads the existing journal and restores the last state of every job.
+     * @throws IOException if the journal can't be read
+     */
+    protected final void read() throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), UTF8));
+        try {
+            StringBuilder line = new StringBuilder();
+            int c;
+            while ((c = reader.read()) != -1) {
+                if (c == '\n') {
+                    parseRecord(line.toString());
+                    line.setLength(0);
+                } else {
+                    line.append((char) c);
+                }
+            }
+            // whatever remains is a torn record without line break -> ignore
+        } finally {
+            reader.close();
+        }
+    }
+    
+    /**
+     * Cuts off a torn last record, otherwise the next record would be appended
+     * to it and get lost as well.
+     * @throws IOException if the journal can't be truncated
+     */
+    private void truncateTornRecord() throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            // a line break is a single byte in utf-8, it can't be part of another character
+            long end = raf.length();
+            while (end > 0) {
+                raf.seek(end - 1);
+                if (raf.read() == '\n') {
+                    break;
+                }
+                end--;
+            }
+            if (end < raf.length()) {
+                Logger.getLogger(JobJournal.class.getName()).log(Level.INFO,
+                        "removing torn record at the end of {0}", file);
+                raf.setLength(end);
+                raf.getChannel().force(true);
+            }
+        } finally {
+            raf.close();
+        }
+    }
+    
+    /**
+     * Parses a single record and updates the state of its job
+     * @param line the record (without line break)
+     */
+    private void parseRecord(String line) {
+        String[] fields = line.split("\t", -1);
+        if (fields.length != 6) {
+            return;     // malformed, or written by an older version
+        }
+        try {
+            TranscodeJob.State state = TranscodeJob.State.valueOf(fields[1]);
+            String key = unescape(fields[4]);
+            states.put(key, state);
+            setOwned(key, fields[5].equals("1"));
+        } catch (IllegalArgumentException ex) {
+            // unknown state, ignore record
+        }
+    }
+    
+    private void setOwned(String key, boolean ownsDestination) {
+        if (ownsDestination) {
+            owned.add(key);
+        } else {
+            owned.remove(key);
+        }
+    }
+    
+    /**
+     * @param job a job
+     * @return the key that identifies the job in the journal
+     */
+    protected static String key(TranscodeJob job) {
+        return job.getDestination().getPath();
+    }
+    
+    /**
+     * Escapes backslash, tab and line breaks, so a path fits into a single field
+     * @param raw the raw string
+     * @return the escaped string
+     */
+    protected static String escape(String raw) {
+        StringBuilder strb = new StringBuilder(raw.length());
+        for (int i = 0; i < raw.length(); i++) {
+            char c = raw.charAt(i);
+            switch (c) {
+                case '\\': strb.append("\\\\"); break;
+                case '\t': strb.append("\\t"); break;
+                case '\n': strb.append("\\n"); break;
+                case '\r': strb.append("\\r"); break;
+                default: strb.append(c);
+            }
+        }
+        return strb.toString();
+    }
+    
+    /**
+     * Reverts escape()
+     * @param escaped the escaped string
+     * @return the raw string
+     */
+    protected static String unescape(String escaped) {
+        StringBuilder strb = new StringBuilder(escaped.length());
+        for (int i = 0; i < escaped.length(); i++) {
+            char c = escaped.charAt(i);
+            if (c == '\\' && i + 1 < escaped.length()) {
+                char next = escaped.charAt(++i);
+                switch (next) {
+                    case 't': strb.append('\t'); break;
+                    case 'n': strb.append('\n'); break;
+                    case 'r': strb.append('\r'); break;
+                    default: strb.append(next);
+                }
+            } else {
+                strb.append(c);
+            }
+        }
+        return strb.toString();
+    }
+    
+}
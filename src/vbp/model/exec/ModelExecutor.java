@@ -0,0 +1,183 @@
+/*
+ * Copyright (C) 2011 Sebastian Straub <sebastian-straub@gmx.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package vbp.model.exec;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs background tasks of the model (started from the gui) on a few lanes
+ * instead of a new thread per task. Each lane has a fixed number of named
+ * daemon threads and a bounded queue:
+ * <ul>
+ * <li>IO: crawls and everything else that changes the lists of the model. A
+ * single thread, so the changes happen in the order they were requested</li>
+ * <li>CPU: building and saving exports, running batches</li>
+ * <li>PERSISTENCE: loading and writing settings and projects, one at a
+ * time</li>
+ * </ul>
+ * Tasks that don't fit into the queue of their lane (or arrive after the
+ * shutdown) are not executed, they get a cancelled future instead.
+ * 
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+public class ModelExecutor {
+    
+    public enum Lane {
+        IO(1, 32),
+        CPU(Math.max(2, Runtime.getRuntime().availableProcessors()), 64),
+        PERSISTENCE(1, 16);
+        
+        /** number of threads */
+        protected final int threads;
+        /** max. number of waiting tasks */
+        protected final int capacity;
+
+        private Lane(int threads, int capacity) {
+            this.threads = threads;
+            this.capacity = capacity;
+        }
+        
+    }
+    
+    /** idle threads are stopped after this time (s) */
+    protected static final int KEEP_ALIVE = 30;
+    
+    protected final Map<Lane, ThreadPoolExecutor> lanes = new EnumMap<Lane, ThreadPoolExecutor>(Lane.class);
+
+    public ModelExecutor() {
+        for (Lane lane : Lane.values()) {
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(lane.threads, lane.threads,
+                    KEEP_ALIVE, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(lane.capacity),
+                    threadFactory("vbp-" + lane.name().toLowerCase() + "-"));
+            pool.allowCoreThreadTimeOut(true);
+            lanes.put(lane, pool);
+        }
+    }
+    
+    /**
+     * Queues a task
+     * @param lane the lane to run the task on
+     * @param task the task
+     * @return the future of the task (cancelled, if the task was rejected)
+     */
+    public Future<?> submit(Lane lane, final Runnable task) {
+        return submit(lane, new Callable<Void>() {
+
+            @Override
+            public Void call() {
+                task.run();
+                return null;
+            }
+        });
+    }
+    
+    /**
+     * Queues a task. Exceptions of the task are logged (and can be retrieved
+     * from the future).
+     * @param lane the lane to run the task on
+     * @param task the task
+     * @return the future of the task (cancelled, if the task was rejected)
+     */
+    public <V> Future<V> submit(Lane lane, final Callable<V> task) {
+        Callable<V> logged = new Callable<V>() {
+
+            @Override
+            public V call() throws Exception {
+                try {
+                    return task.call();
+                } catch (Exception ex) {
+                    Logger.getLogger(ModelExecutor.class.getName()).log(Level.SEVERE, null, ex);
+                    throw ex;
+                }
+            }
+        };
+        try {
+            return lanes.get(lane).submit(logged);
+        } catch (RejectedExecutionException ex) {
+            Logger.getLogger(ModelExecutor.class.getName()).log(Level.WARNING,
+                    "task rejected, the " + lane + " lane is full or shut down");
+            FutureTask<V> rejected = new FutureTask<V>(logged);
+            rejected.cancel(false);
+            return rejected;
+        }
+    }
+    
+    /**
+     * Stops all lanes: running crawls and exports are interrupted and waiting
+     * ones are discarded, but pending persistence tasks are finished, so
+     * nothing that was about to be saved gets lost.
+     * @param timeout max. time to wait for the lanes to terminate
+     * @param unit unit of the timeout
+     * @return true, if all lanes have terminated
+     */
+    public boolean shutdown(long timeout, TimeUnit unit) {
+        for (Lane lane : Lane.values()) {
+            if (lane == Lane.PERSISTENCE) {
+                lanes.get(lane).shutdown();
+            } else {
+                lanes.get(lane).shutdownNow();
+            }
+        }
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        try {
+            for (ThreadPoolExecutor pool : lanes.values()) {
+                if (!pool.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                    return false;
+                }
+            }
+        } catch (InterruptedException ex) {
+            Logger.getLogger(ModelExecutor.class.getName()).log(Level.WARNING, null, ex);
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        return true;
+    }
+    
+    /**
+     * @return true, if shutdown() has been called
+     */
+    public boolean isShutdown() {
+        return lanes.get(Lane.IO).isShutdown();
+    }
+    
+    protected static ThreadFactory threadFactory(final String prefix) {
+        return new ThreadFactory() {
+
+            private final AtomicInteger counter = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, prefix + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+    
+}
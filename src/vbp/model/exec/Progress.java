@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2011 Sebastian Straub <sebastian-straub@gmx.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package vbp.model.exec;
+
+/**
+ * A snapshot of the progress of a job (or of a whole batch). All values are
+ * negative if they are unknown, e.g. because the encoder doesn't report them.
+ * 
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+public class Progress {
+    
+    /** nothing is known yet */
+    public static final Progress UNKNOWN = new Progress(-1, -1, -1, -1);
+    
+    /** percent complete (0-100) */
+    protected final double percent;
+    /** encoded frames per second */
+    protected final double fps;
+    /** encoding speed relative to the playback speed (2.0 = twice as fast) */
+    protected final double speed;
+    /** estimated time until completion in ms */
+    protected final long eta;
+
+    public Progress(double percent, double fps, double speed, long eta) {
+        this.percent = percent;
+        this.fps = fps;
+        this.speed = speed;
+        this.eta = eta;
+    }
+
+    /**
+     * @return percent complete (0-100), negative if unknown
+     */
+    public double getPercent() {
+        return percent;
+    }
+
+    /**
+     * @return encoded frames per second, negative if unknown
+     */
+    public double getFps() {
+        return fps;
+    }
+
+    /**
+     * @return encoding speed relative to the playback speed, negative if unknown
+     */
+    public double getSpeed() {
+        return speed;
+    }
+
+    /**
+     * @return estimated time until completion in ms, negative if unknown
+     */
+    public long getEta() {
+        return eta;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder strb = new StringBuilder();
+        strb.append((percent < 0) ? "?" : String.format("%.1f", percent)).append('%');
+        if (fps >= 0) {
+            strb.append(String.format(", %.1f fps", fps));
+        }
+        if (speed >= 0) {
+            strb.append(String.format(", %.2fx", speed));
+        }
+        if (eta >= 0) {
+            long seconds = eta / 1000;
+            strb.append(String.format(", ETA %d:%02d:%02d", seconds / 3600, (seconds / 60) % 60, seconds % 60));
+        }
+        return strb.toString();
+    }
+    
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2011 Sebastian Straub <sebastian-straub@gmx.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package vbp.model.exec;
+
+import java.util.List;
+
+/**
+ * Extracts the progress of a job from the output of its encoder. The output
+ * is fed line by line while the encoder is running (lines may end with \n or
+ * \r), so nothing has to be buffered. There is one parser per job, the
+ * {@link TranscodeExecutor} creates them from a prototype with
+ * {@link #create()}.
+ * 
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+public abstract class ProgressParser {
+    
+    /** the latest progress of the job */
+    protected Progress progress = Progress.UNKNOWN;
+    
+    /**
+     * @return a new parser of the same type, for another job
+     */
+    public abstract ProgressParser create();
+    
+    /**
+     * Adds the arguments that make the encoder report its progress, if any
+     * @param command the encoder and all of its arguments
+     * @return the command to execute (may be the same list)
+     */
+    public List<String> prepareCommand(List<String> command) {
+        return command;
+    }
+    
+    /**
+     * Parses a line of the encoder's output (from stdout or stderr). Lines
+     * are fed from different threads, but never at the same time.
+     * @param line the line without line break
+     * @return true if the progress has changed
+     */
+    public synchronized boolean feed(String line) {
+        return parse(line);
+    }
+    
+    /**
+     * Parses a line of the encoder's output and updates the progress
+     * @param line the line without line break
+     * @return true if the progress has changed
+     */
+    protected abstract boolean parse(String line);
+    
+    /**
+     * @return the latest progress of the job
+     */
+    public synchronized Progress getProgress() {
+        return progress;
+    }
+    
+}
@@ -0,0 +1,301 @@
+/*
+ * Copyright (C) 2011 Sebastian Straub <sebastian-straub@gmx.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package vbp.model.exec;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.util.Collection;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * <p>Decides whether the {@link TranscodeExecutor} may start another job, based
+ * on the resources of the machine:</p>
+ * <ul>
+ * <li><b>cpu load:</b> the number of concurrent jobs follows the system load
+ * average. The load includes our own encoders, every running job is assumed
+ * to cause the load per job (about one core by default), the rest is foreign
+ * load. The limit starts with the number of cores that are not used by
+ * foreign load. It is decreased by one whenever the load exceeds the number
+ * of cores and at least one core is used by foreign load (e.g. because the
+ * machine is shared), so our own jobs never throttle themselves. It is
+ * increased by one when at least one core is idle again. The load average reacts slowly, so the limit
+ * changes at most once per adjustment interval.</li>
+ * <li><b>disk space:</b> every job needs about as much space as its source
+ * file (times the size factor) on the file store of its destination. A job is
+ * only admitted if it fits into the usable space, minus the space that running
+ * jobs are still going to write.</li>
+ * </ul>
+ * <p>If a job is not admitted, the executor pauses and asks again after the
+ * poll interval. A job that doesn't fit while no other job is running can
+ * never be started (nothing will free the space), it is skipped.</p>
+ * 
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+public class ResourceScheduler {
+    
+    /** upper limit for concurrent jobs */
+    protected int maxConcurrency;
+    /** the current limit of concurrent jobs, adjusted by the load */
+    protected int concurrency;
+    /** expected size of the output file in relation to the source file */
+    protected double sizeFactor = 1.0;
+    /** space that shall be left free on the destination file store, in bytes */
+    protected long reservedSpace = 0;
+    /** average load that one running job causes */
+    protected double loadPerJob = 1.0;
+    /** time in ms between two adjustments of the concurrency */
+    protected long adjustInterval = 15000;
+    /** time in ms the executor waits before asking again, if a job was not admitted */
+    protected long pollInterval = 2000;
+    
+    /** time of the last adjustment (ms since epoch) */
+    protected long lastAdjustment;
+    /** true if the last job was rejected because of missing disk space */
+    protected boolean pausedForSpace;
+    
+    /**
+     * Creates a new scheduler
+     * @param maxConcurrency upper limit for concurrent jobs
+     *        (values < 1: one job per cpu core)
+     */
+    public ResourceScheduler(int maxConcurrency) {
+        this.maxConcurrency = (maxConcurrency > 0) ? maxConcurrency : TranscodeExecutor.defaultConcurrency();
+        this.concurrency = -1;
+    }
+    
+    /**
+     * Decides whether the job may be started now.
+     * @param job the job that shall be started next
+     * @param running all jobs that are running right now
+     * @return true if the job may be started
+     */
+    public synchronized boolean admit(TranscodeJob job, Collection<TranscodeJob> running) {
+        if (running.size() >= adjustConcurrency(running.size())) {
+            return false;
+        }
+        
+        boolean fits = fitsOnDisk(job, running);
+        if (!fits && !pausedForSpace && !running.isEmpty()) {
+            Logger.getLogger(ResourceScheduler.class.getName()).log(Level.WARNING,
+                    "not enough free disk space for {0}, waiting", job.getDestination());
+        }
+        pausedForSpace = !fits;
+        return fits;
+    }
+    
+    // ++++++++++ cpu load ++++++++++
+    
+    /**
+     * Updates the concurrency limit, if the adjustment interval has passed.
+     * @param active number of jobs running right now
+     * @return the current concurrency limit
+     */
+    protected int adjustConcurrency(int active) {
+        double load = getLoadAverage();
+        if (load < 0) {
+            // load average not available on this platform: use the upper limit
+            concurrency = maxConcurrency;
+            return concurrency;
+        }
+        
+        // our own jobs must not throttle themselves
+        double foreign = Math.max(0, load - active * loadPerJob);
+        int cores = getAvailableProcessors();
+        long now = System.currentTimeMillis();
+        if (concurrency < 0) {
+            // first call: start with the number of cores without foreign load
+            concurrency = clamp((int) Math.floor(cores - foreign));
+            lastAdjustment = now;
+        } else if (now - lastAdjustment >= adjustInterval) {
+            if (load > cores && foreign >= 1) {
+                concurrency = clamp(Math.min(concurrency, active) - 1);
+            } else if (load <= cores - 1) {
+                concurrency = clamp(concurrency + 1);
+            }
+            lastAdjustment = now;
+        }
+        return concurrency;
+    }
+    
+    /**
+     * @param limit the desired concurrency limit
+     * @return the limit, but at least 1 and at most maxConcurrency
+     */
+    private int clamp(int limit) {
+        return Math.max(1, Math.min(maxConcurrency, limit));
+    }
+    
+    /**
+     * @return the system load average of the last minute, or a negative value
+     *         if not available
+     */
+    protected double getLoadAverage() {
+        return ManagementFactory.getOperatingSystemMXBean().getSystemLoadAverage();
+    }
+    
+    /**
+     * @return the number of cpu cores
+     */
+    protected int getAvailableProcessors() {
+        return Runtime.getRuntime().availableProcessors();
+    }
+    
+    // ++++++++++ disk space ++++++++++
+    
+    /**
+     * Checks if the output of the job fits into the usable space of the file
+     * store of its destination.
+     * @param job the job that shall be started next
+     * @param running all jobs that are running right now
+     * @return true if there is enough space (or the space can't be determined)
+     */
+    protected boolean fitsOnDisk(TranscodeJob job, Collection<TranscodeJob> running) {
+        try {
+            FileStore store = getFileStore(job.getDestination());
+            
+            // the running jobs on the same file store are still going to write
+            long pending = 0;
+            for (TranscodeJob other : running) {
+                if (store.equals(getFileStore(other.getDestination()))) {
+                    pending += Math.max(0, estimateSize(other) - other.getDestination().length());
+                }
+            }
+            
+            long usable = getUsableSpace(store);
+            return usable - pending - reservedSpace >= estimateSize(job);
+        } catch (IOException ex) {
+            Logger.getLogger(ResourceScheduler.class.getName()).log(Level.WARNING, null, ex);
+            return true;
+        }
+    }
+    
+    /**
+     * @param job a transcoding job
+     * @return estimated size of the output file in bytes
+     */
+    protected long estimateSize(TranscodeJob job) {
+        return (long) (job.getSource().length() * sizeFactor);
+    }
+    
+    /**
+     * @param store a file store
+     * @return usable space on the file store in bytes
+     * @throws IOException if the space can't be determined
+     */
+    protected long getUsableSpace(FileStore store) throws IOException {
+        return store.getUsableSpace();
+    }
+    
+    /**
+     * Returns the file store where the file will be written. The file and its
+     * parent folders may not exist yet, so the nearest existing ancestor is used.
+     * @param file the (future) file
+     * @return the file store of the file
+     * @throws IOException if no ancestor exists or can't be read
+     */
+    protected static FileStore getFileStore(File file) throws IOException {
+        File existing = file.getAbsoluteFile();
+        while (existing != null && !existing.exists()) {
+            existing = existing.getParentFile();
+        }
+        if (existing == null) {
+            throw new IOException("no existing parent folder for " + file);
+        }
+        return Files.getFileStore(existing.toPath());
+    }
+    
+    // ++++++++++ getters and setters ++++++++++
+    
+    /**
+     * @return the current limit of concurrent jobs (-1 before the first job)
+     */
+    public synchronized int getConcurrency() {
+        return concurrency;
+    }
+
+    public synchronized int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    /**
+     * @return true if the last job was rejected because of missing disk space
+     */
+    public synchronized boolean isPausedForSpace() {
+        return pausedForSpace;
+    }
+    
+    /**
+     * Tells if waiting for a job that has not been admitted is pointless: it
+     * was rejected for disk space, but there are no running jobs whose space
+     * could be freed.
+     * @param running all jobs that were running when the job was rejected
+     * @return true if the job will never be admitted
+     */
+    public synchronized boolean isUnsatisfiable(Collection<TranscodeJob> running) {
+        return pausedForSpace && running.isEmpty();
+    }
+
+    /**
+     * @param sizeFactor expected size of the output file in relation to the source file
+     */
+    public synchronized void setSizeFactor(double sizeFactor) {
+        this.sizeFactor = sizeFactor;
+    }
+
+    /**
+     * @param reservedSpace space that shall be left free on the destination
+     *        file store, in bytes
+     */
+    public synchronized void setReservedSpace(long reservedSpace) {
+        this.reservedSpace = reservedSpace;
+    }
+
+    /**
+     * @param loadPerJob average load that one running job causes, e.g. the
+     *        number of threads of a multi-threaded encoder
+     */
+    public synchronized void setLoadPerJob(double loadPerJob) {
+        this.loadPerJob = loadPerJob;
+    }
+
+    /**
+     * @param adjustInterval time in ms between two adjustments of the concurrency
+     */
+    public synchronized void setAdjustInterval(long adjustInterval) {
+        this.adjustInterval = adjustInterval;
+    }
+
+    /**
+     * @return time in ms the executor waits before asking again, if a job was not admitted
+     */
+    public synchronized long getPollInterval() {
+        return pollInterval;
+    }
+
+    /**
+     * @param pollInterval time in ms the executor waits before asking again,
+     *        if a job was not admitted
+     */
+    public synchronized void setPollInterval(long pollInterval) {
+        this.pollInterval = pollInterval;
+    }
+    
+}
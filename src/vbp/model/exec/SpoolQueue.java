@@ -0,0 +1,430 @@
+/*
+ * Copyright (C) 2011 Sebastian Straub <sebastian-straub@gmx.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package vbp.model.exec;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.regex.Pattern;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * <p>A work queue in a shared directory (e.g. on an NFS share), so several
+ * machines can work on the same batch. Every job is a small file, its state is
+ * the folder it is stored in:</p>
+ * <ul>
+ * <li><code>pending/&lt;id&gt;~&lt;attempt&gt;.job</code>: waiting for a worker</li>
+ * <li><code>running/&lt;id&gt;~&lt;attempt&gt;@&lt;worker&gt;</code>: claimed by a
+ * worker (the lease). The worker touches the file regularly (heartbeat).</li>
+ * <li><code>done/&lt;id&gt;.job</code> and <code>failed/&lt;id&gt;.job</code>:
+ * finished, with a <code>&lt;id&gt;.result</code> file next to it</li>
+ * <li><code>logs/&lt;id&gt;/</code>: the output of the encoder</li>
+ * </ul>
+ * <p>All state changes are renames, which are atomic inside of one file
+ * system: if several workers try to claim the same job, exactly one of them
+ * succeeds. A lease whose heartbeat is older than the lease timeout is
+ * considered stale (the worker died) and the job is moved back to pending.
+ * As soon as the encoder of a job has started, the worker leaves a
+ * <code>logs/&lt;id&gt;/started</code> marker: only then the attempt counter
+ * is increased when the job goes back to pending, and the next worker removes
+ * the partial output. Files in the queue folders that don't follow these
+ * names are ignored. The clocks of all machines should be in sync,
+ * the lease timeout must be a lot larger than the heartbeat interval.</p>
+ * <p>Source and destination paths are stored as they are, so they must be
+ * valid on every machine (mount the share at the same place).</p>
+ * 
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+public class SpoolQueue {
+    
+    protected static final String JOB_EXTENSION = ".job";
+    protected static final String RESULT_EXTENSION = ".result";
+    protected static final String STARTED_MARKER = "started";
+    /** name of a pending job file: &lt;id&gt;~&lt;attempt&gt;.job */
+    protected static final Pattern PENDING_NAME = Pattern.compile("[^.~@][^~@]*~\\d+\\.job");
+    /** name of a lease file: &lt;id&gt;~&lt;attempt&gt;@&lt;worker&gt; */
+    protected static final Pattern LEASE_NAME = Pattern.compile("[^.~@][^~@]*~\\d+@[^~@]+");
+    
+    protected final File pending;
+    protected final File running;
+    protected final File done;
+    protected final File failed;
+    protected final File logs;
+
+    /**
+     * Opens the queue in the spool directory, missing folders are created
+     * @param spoolDirectory the shared directory
+     * @throws IOException if the folders can't be created
+     */
+    public SpoolQueue(File spoolDirectory) throws IOException {
+        this.pending = new File(spoolDirectory, "pending");
+        this.running = new File(spoolDirectory, "running");
+        this.done = new File(spoolDirectory, "done");
+        this.failed = new File(spoolDirectory, "failed");
+        this.logs = new File(spoolDirectory, "logs");
+        for (File dir : new File[] { pending, running, done, failed, logs }) {
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                throw new IOException("can't create spool directory " + dir);
+            }
+        }
+    }
+    
+    /**
+     * Adds the jobs to the queue. Each job file is written under a temporary
+     * name and renamed afterwards, so workers never see incomplete jobs.
+     * @param batch name of the batch, makes the job ids unique in the spool
+     *        directory (no '~' or '@')
+     * @param jobs the jobs to add
+     * @throws IOException if a job file can't be written
+     */
+    public void submit(String batch, List<TranscodeJob> jobs) throws IOException {
+        for (TranscodeJob job : jobs) {
+            Properties props = new Properties();
+            props.setProperty("source", job.getSource().getPath());
+            props.setProperty("destination", job.getDestination().getPath());
+            List<String> command = job.getCommand();
+            for (int i = 0; i < command.size(); i++) {
+                props.setProperty("command." + i, command.get(i));
+            }
+            
+            String id = String.format("%s-%06d", batch, job.getId());
+            File temp = new File(pending, "." + id + ".tmp");
+            store(props, temp);
+            move(temp, new File(pending, id + "~0" + JOB_EXTENSION));
+        }
+    }
+    
+    /**
+     * Claims the next pending job (in order of the job ids)
+     * @param worker name of the claiming worker
+     * @return the lease on the job, or null if there is no pending job
+     * @throws IOException if the spool directory can't be accessed
+     */
+    public Lease claim(String worker) throws IOException {
+        String[] names = pending.list();
+        if (names == null) {
+            throw new IOException("can't read spool directory " + pending);
+        }
+        Arrays.sort(names);
+        for (String name : names) {
+            if (!PENDING_NAME.matcher(name).matches()) {
+                continue;
+            }
+            File file = new File(pending, name);
+            // the lease starts now, not when the job file was written
+            if (!file.setLastModified(System.currentTimeMillis())) {
+                continue;   // claimed by someone else in the meantime
+            }
+            String job = name.substring(0, name.length() - JOB_EXTENSION.length());
+            File lease = new File(running, job + "@" + worker);
+            try {
+                move(file, lease);
+            } catch (NoSuchFileException ex) {
+                continue;   // lost the race
+            }
+            return new Lease(lease, load(lease));
+        }
+        return null;
+    }
+    
+    /**
+     * Renews the lease
+     * @param lease a lease of this worker
+     * @return false if the lease has been lost (it was stale and released)
+     */
+    public boolean heartbeat(Lease lease) {
+        return lease.file.setLastModified(System.currentTimeMillis());
+    }
+    
+    /**
+     * Moves a finished job to done or failed and writes its result
+     * @param lease the lease on the job
+     * @param job the job after its execution
+     * @return false if the lease has been lost before
+     * @throws IOException if the spool directory can't be accessed
+     */
+    public boolean complete(Lease lease, TranscodeJob job) throws IOException {
+        File target = (job.getState() == TranscodeJob.State.DONE) ? done : failed;
+        try {
+            move(lease.file, new File(target, lease.id + JOB_EXTENSION));
+        } catch (NoSuchFileException ex) {
+            return false;
+        }
+        Properties result = new Properties();
+        result.setProperty("worker", lease.worker);
+        result.setProperty("exitCode", String.valueOf(job.getExitCode()));
+        result.setProperty("duration", String.valueOf(job.getDuration()));
+        store(result, new File(target, lease.id + RESULT_EXTENSION));
+        clearStarted(lease);
+        return true;
+    }
+    
+    /**
+     * Gives a job back to the queue, e.g. when the worker is stopped. The
+     * attempt counter is only increased if the encoder of the job has been
+     * started (see {@link #markStarted(Lease)}).
+     * @param lease the lease on the job
+     * @return false if the lease has been lost before
+     * @throws IOException if the spool directory can't be accessed
+     */
+    public boolean release(Lease lease) throws IOException {
+        try {
+            int attempt = isStarted(lease) ? lease.attempt + 1 : lease.attempt;
+            move(lease.file, new File(pending, lease.id + "~" + attempt + JOB_EXTENSION));
+            return true;
+        } catch (NoSuchFileException ex) {
+            return false;
+        }
+    }
+    
+    /**
+     * Moves all jobs whose lease is older than the timeout back to pending
+     * @param timeout lease timeout in ms
+     * @return the number of released jobs
+     * @throws IOException if the spool directory can't be accessed
+     */
+    public int releaseStale(long timeout) throws IOException {
+        File[] leases = running.listFiles();
+        if (leases == null) {
+            throw new IOException("can't read spool directory " + running);
+        }
+        int released = 0;
+        long now = System.currentTimeMillis();
+        for (File file : leases) {
+            long modified = file.lastModified();
+            if (modified == 0 || now - modified <= timeout || !LEASE_NAME.matcher(file.getName()).matches()) {
+                continue;
+            }
+            Lease lease = new Lease(file, null);
+            if (release(lease)) {
+                Logger.getLogger(SpoolQueue.class.getName()).log(Level.WARNING,
+                        "released stale lease {0}", file.getName());
+                released++;
+            }
+        }
+        return released;
+    }
+    
+    /**
+     * Remembers that the encoder of the job has been started, so it may have
+     * left a partial output if the attempt is interrupted
+     * @param lease the lease on the job
+     * @throws IOException if the marker can't be written
+     */
+    public void markStarted(Lease lease) throws IOException {
+        File dir = getLogDirectory(lease);
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("can't create log directory " + dir);
+        }
+        File marker = new File(dir, STARTED_MARKER);
+        if (!marker.exists() && !marker.createNewFile()) {
+            throw new IOException("can't create " + marker);
+        }
+    }
+    
+    /**
+     * @param lease the lease on a job
+     * @return true if the encoder of the job has been started in an earlier
+     *         (or the current) attempt and the output was not removed since
+     */
+    public boolean isStarted(Lease lease) {
+        return new File(getLogDirectory(lease), STARTED_MARKER).exists();
+    }
+    
+    /**
+     * Forgets that the encoder of the job has been started, call this after
+     * the partial output has been removed
+     * @param lease the lease on the job
+     * @return false if the marker could not be removed
+     */
+    public boolean clearStarted(Lease lease) {
+        File marker = new File(getLogDirectory(lease), STARTED_MARKER);
+        return !marker.exists() || marker.delete();
+    }
+    
+    /**
+     * @param lease the lease on a job
+     * @return the directory for the log files of the job
+     */
+    public File getLogDirectory(Lease lease) {
+        return new File(logs, lease.id);
+    }
+    
+    public int countPending() {
+        return count(pending, PENDING_NAME);
+    }
+    
+    public int countRunning() {
+        return count(running, LEASE_NAME);
+    }
+    
+    public int countDone() {
+        return count(done, JOB_EXTENSION);
+    }
+    
+    public int countFailed() {
+        return count(failed, JOB_EXTENSION);
+    }
+    
+    /**
+     * A claimed job. The lease is valid as long as the lease file exists in
+     * the running folder.
+     */
+    public static class Lease {
+        
+        /** the lease file */
+        protected final File file;
+        /** the job id (batch-number) */
+        protected final String id;
+        /** number of earlier attempts that were interrupted after the encoder started */
+        protected final int attempt;
+        protected final String worker;
+        /** the job to run, null if unknown */
+        protected final TranscodeJob job;
+
+        protected Lease(File file, TranscodeJob job) {
+            String name = file.getName();
+            int at = name.lastIndexOf('@');
+            int tilde = name.lastIndexOf('~', at);
+            this.file = file;
+            this.id = name.substring(0, tilde);
+            this.attempt = Integer.parseInt(name.substring(tilde + 1, at));
+            this.worker = name.substring(at + 1);
+            this.job = job;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        /**
+         * @return number of earlier attempts that have been interrupted after
+         *         the encoder started
+         */
+        public int getAttempt() {
+            return attempt;
+        }
+
+        public String getWorker() {
+            return worker;
+        }
+
+        public TranscodeJob getJob() {
+            return job;
+        }
+
+        @Override
+        public String toString() {
+            return file.getName();
+        }
+        
+    }
+    
+    // ++++++++++ helpers ++++++++++
+    
+    /**
+     * Reads a job file
+     * @param file the job file
+     * @return the job
+     * @throws IOException if the file can't be read
+     */
+    protected static TranscodeJob load(File file) throws IOException {
+        Properties props = new Properties();
+        InputStream in = new FileInputStream(file);
+        try {
+            props.load(in);
+        } finally {
+            in.close();
+        }
+        List<String> command = new ArrayList<String>();
+        String arg;
+        for (int i = 0; (arg = props.getProperty("command." + i)) != null; i++) {
+            command.add(arg);
+        }
+        return new TranscodeJob(0, new File(props.getProperty("source")),
+                new File(props.getProperty("destination")), command);
+    }
+    
+    private static void store(Properties props, File file) throws IOException {
+        OutputStream out = new FileOutputStream(file);
+        try {
+            props.store(out, "vbp");
+        } finally {
+            out.close();
+        }
+    }
+    
+    /**
+     * Renames a file atomically, an existing target is never replaced
+     * @param from the file to move
+     * @param to the new name
+     * @throws NoSuchFileException if the file doesn't exist (any more)
+     * @throws IOException if the file can't be moved
+     */
+    protected static void move(File from, File to) throws IOException {
+        if (to.exists()) {
+            throw new FileAlreadyExistsException(to.getPath());
+        }
+        try {
+            Files.move(from.toPath(), to.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException ex) {
+            throw new IOException("the spool directory must be on a single file system", ex);
+        }
+    }
+    
+    private static int count(File dir, String extension) {
+        String[] names = dir.list();
+        if (names == null) {
+            return 0;
+        }
+        int count = 0;
+        for (String name : names) {
+            if (!name.startsWith(".") && name.endsWith(extension)) {
+                count++;
+            }
+        }
+        return count;
+    }
+    
+    private static int count(File dir, Pattern pattern) {
+        String[] names = dir.list();
+        if (names == null) {
+            return 0;
+        }
+        int count = 0;
+        for (String name : names) {
+            if (pattern.matcher(name).matches()) {
+                count++;
+            }
+        }
+        return count;
+    }
+    
+}
@@ -0,0 +1,286 @@
+/*
+ * Copyright (C) 2011 Sebastian Straub <sebastian-straub@gmx.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package vbp.model.exec;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import sebi.util.observer.ObserverArgs;
+
+/**
+ * Works on the jobs of a {@link SpoolQueue}: claims pending jobs, runs them
+ * (up to the configured number at once) and keeps their leases alive with
+ * heartbeats. While there is nothing to claim, stale leases of dead workers
+ * are released. Any number of workers may work on the same queue, on one or
+ * more machines.
+ * 
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+public class SpoolWorker {
+    
+    protected final SpoolQueue queue;
+    /** unique name of this worker */
+    protected final String name;
+    /** number of jobs this worker runs at the same time */
+    protected final int concurrency;
+    
+    /** time between two heartbeats (ms) */
+    protected long heartbeatInterval = 10000;
+    /** leases without heartbeat for this time are stale (ms) */
+    protected long leaseTimeout = 60000;
+    /** time to wait if there is no pending job (ms) */
+    protected long pollInterval = 5000;
+    
+    /** the jobs running right now and their executors */
+    protected final Map<SpoolQueue.Lease, TranscodeExecutor> leases = new ConcurrentHashMap<SpoolQueue.Lease, TranscodeExecutor>();
+    /** number of jobs this worker has finished */
+    protected final AtomicInteger completed = new AtomicInteger();
+    protected final Object lock = new Object();
+    protected volatile boolean stopped;
+
+    /**
+     * @param queue the queue to work on
+     * @param concurrency number of jobs running at the same time (values < 1:
+     *        one job per cpu core)
+     */
+    public SpoolWorker(SpoolQueue queue, int concurrency) {
+        this(queue, concurrency, defaultName());
+    }
+    
+    /**
+     * @param queue the queue to work on
+     * @param concurrency number of jobs running at the same time (values < 1:
+     *        one job per cpu core)
+     * @param name unique name of this worker (only letters, digits, '.', '_'
+     *        and '-', everything else is replaced)
+     */
+    public SpoolWorker(SpoolQueue queue, int concurrency, String name) {
+        this.queue = queue;
+        this.concurrency = (concurrency > 0) ? concurrency : TranscodeExecutor.defaultConcurrency();
+        this.name = name.replaceAll("[^A-Za-z0-9._-]", "_");
+    }
+    
+    /**
+     * Works on the queue and blocks until the worker is stopped
+     * @param untilEmpty true: also stop when there are no more pending or
+     *        running jobs in the queue
+     * @return the number of jobs this worker has finished
+     * @throws InterruptedException if the thread was interrupted while waiting.
+     *         All running jobs are given back to the queue.
+     */
+    public int run(final boolean untilEmpty) throws InterruptedException {
+        ThreadFactory daemons = new ThreadFactory() {
+            
+            private final AtomicInteger counter = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "vbp-worker-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+        
+        ScheduledExecutorService heartbeat = Executors.newSingleThreadScheduledExecutor(daemons);
+        heartbeat.scheduleWithFixedDelay(new Runnable() {
+
+            @Override
+            public void run() {
+                heartbeat();
+            }
+        }, heartbeatInterval, heartbeatInterval, TimeUnit.MILLISECONDS);
+        
+        ExecutorService slots = Executors.newFixedThreadPool(concurrency, daemons);
+        try {
+            for (int i = 0; i < concurrency; i++) {
+                slots.execute(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        work(untilEmpty);
+                    }
+                });
+            }
+            slots.shutdown();
+            slots.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ex) {
+            stop();
+            throw ex;
+        } finally {
+            slots.shutdownNow();
+            heartbeat.shutdownNow();
+        }
+        return completed.get();
+    }
+    
+    /**
+     * Stops the worker: no more jobs are claimed, running jobs are cancelled
+     * and given back to the queue.
+     */
+    public void stop() {
+        stopped = true;
+        for (TranscodeExecutor executor : leases.values()) {
+            executor.cancel();
+        }
+        synchronized (lock) {
+            lock.notifyAll();
+        }
+    }
+    
+    /**
+     * Claims and runs jobs until the worker is stopped (or the queue is empty)
+     * @param untilEmpty stop when there are no more pending or running jobs
+     */
+    protected void work(boolean untilEmpty) {
+        while (!stopped) {
+            try {
+                SpoolQueue.Lease lease = queue.claim(name);
+                if (lease != null) {
+                    execute(lease);
+                    continue;
+                }
+                queue.releaseStale(leaseTimeout);
+                if (untilEmpty && queue.countPending() == 0 && queue.countRunning() == 0) {
+                    return;
+                }
+            } catch (IOException ex) {
+                Logger.getLogger(SpoolWorker.class.getName()).log(Level.WARNING, null, ex);
+            }
+            synchronized (lock) {
+                try {
+                    if (!stopped) {
+                        lock.wait(pollInterval);
+                    }
+                } catch (InterruptedException ex) {
+                    return;
+                }
+            }
+        }
+    }
+    
+    /**
+     * Runs a claimed job and moves it to done/failed, or back to pending if
+     * the worker has been stopped in the meantime
+     * @param lease the lease on the job
+     * @throws IOException if the spool directory can't be accessed
+     */
+    protected void execute(final SpoolQueue.Lease lease) throws IOException {
+        TranscodeJob job = lease.getJob();
+        if (queue.isStarted(lease)) {
+            // the encoder of an earlier attempt has been interrupted
+            File partial = job.getDestination();
+            if (partial.exists() && !partial.delete()) {
+                Logger.getLogger(SpoolWorker.class.getName()).log(Level.WARNING,
+                        "could not delete partial output {0}", partial);
+            } else {
+                queue.clearStarted(lease);
+            }
+        }
+        
+        TranscodeExecutor executor = new TranscodeExecutor(1, queue.getLogDirectory(lease));
+        executor.eventJobUpdate().addObserver(new ObserverArgs<TranscodeJob>() {
+
+            @Override
+            public void update(TranscodeJob job) {
+                // only outputs that this attempt created are removed later
+                if (job.getState() == TranscodeJob.State.RUNNING && job.ownsDestination()) {
+                    try {
+                        queue.markStarted(lease);
+                    } catch (IOException ex) {
+                        Logger.getLogger(SpoolWorker.class.getName()).log(Level.WARNING, null, ex);
+                    }
+                }
+            }
+        });
+        leases.put(lease, executor);
+        try {
+            if (!stopped) {
+                executor.execute(Collections.singletonList(job));
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } finally {
+            leases.remove(lease);
+        }
+        
+        if (stopped || !job.isFinished()) {
+            queue.release(lease);
+        } else if (queue.complete(lease, job)) {
+            completed.incrementAndGet();
+        } else {
+            Logger.getLogger(SpoolWorker.class.getName()).log(Level.WARNING, "lost the lease on {0}", lease);
+        }
+    }
+    
+    /**
+     * Renews the leases of all running jobs. Jobs whose lease has been lost
+     * (another worker considered them stale) are cancelled.
+     */
+    protected void heartbeat() {
+        for (Map.Entry<SpoolQueue.Lease, TranscodeExecutor> entry : leases.entrySet()) {
+            if (!queue.heartbeat(entry.getKey())) {
+                Logger.getLogger(SpoolWorker.class.getName()).log(Level.WARNING,
+                        "lost the lease on {0}, cancelling the job", entry.getKey());
+                entry.getValue().cancel();
+            }
+        }
+    }
+    
+    public String getName() {
+        return name;
+    }
+    
+    /**
+     * @return number of jobs this worker has finished (successful or not)
+     */
+    public int getCompleted() {
+        return completed.get();
+    }
+
+    public void setHeartbeatInterval(long heartbeatInterval) {
+        this.heartbeatInterval = heartbeatInterval;
+    }
+
+    public void setLeaseTimeout(long leaseTimeout) {
+        this.leaseTimeout = leaseTimeout;
+    }
+
+    public void setPollInterval(long pollInterval) {
+        this.pollInterval = pollInterval;
+    }
+    
+    /**
+     * @return a name that is unique for this process: pid and host name
+     */
+    public static String defaultName() {
+        // "pid@host" on most vms
+        String[] parts = ManagementFactory.getRuntimeMXBean().getName().split("@", 2);
+        return (parts.length == 2) ? parts[1] + "-" + parts[0] : parts[0];
+    }
+    
+}
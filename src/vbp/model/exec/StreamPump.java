@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2011 Sebastian Straub <sebastian-straub@gmx.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package vbp.model.exec;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Copies an output stream of the encoder into its log file and feeds it line
+ * by line to a progress parser, while the encoder is running. Only the current
+ * line is kept in memory; overlong lines are cut (in the parser, not in the log).
+ * 
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+class StreamPump implements Runnable {
+    
+    /** maximum length of a line that is fed to the parser */
+    static final int MAX_LINE = 4096;
+    
+    private final InputStream in;
+    private final File log;
+    private final ProgressParser parser;
+    /** called whenever the parser reports a change */
+    private final Runnable onProgress;
+    
+    private final byte[] line = new byte[MAX_LINE];
+    private int lineLength;
+
+    /**
+     * @param in the stream to read (will be closed at the end)
+     * @param log the log file to write (null: no log)
+     * @param parser the parser of the job
+     * @param onProgress called whenever the parser reports a change
+     */
+    StreamPump(InputStream in, File log, ProgressParser parser, Runnable onProgress) {
+        this.in = in;
+        this.log = log;
+        this.parser = parser;
+        this.onProgress = onProgress;
+    }
+
+    @Override
+    public void run() {
+        OutputStream out = null;
+        try {
+            if (log != null) {
+                try {
+                    out = new FileOutputStream(log);
+                } catch (IOException ex) {
+                    // keep on reading, or the encoder would block
+                    Logger.getLogger(StreamPump.class.getName()).log(Level.WARNING, null, ex);
+                }
+            }
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                if (out != null) {
+                    out.write(buffer, 0, read);
+                }
+                for (int i = 0; i < read; i++) {
+                    byte b = buffer[i];
+                    if (b == '\n' || b == '\r') {
+                        endLine();
+                    } else if (lineLength < MAX_LINE) {
+                        line[lineLength++] = b;
+                    }
+                }
+            }
+            endLine();
+        } catch (IOException ex) {
+            Logger.getLogger(StreamPump.class.getName()).log(Level.WARNING, null, ex);
+        } finally {
+            close(in);
+            close(out);
+        }
+    }
+    
+    /**
+     * Feeds the current line to the parser (if it's not empty) and starts a new one
+     */
+    private void endLine() {
+        if (lineLength > 0) {
+            String text = new String(line, 0, lineLength);
+            lineLength = 0;
+            if (parser.feed(text)) {
+                onProgress.run();
+            }
+        }
+    }
+    
+    private static void close(java.io.Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException ex) {
+                Logger.getLogger(StreamPump.class.getName()).log(Level.WARNING, null, ex);
+            }
+        }
+    }
+    
+}
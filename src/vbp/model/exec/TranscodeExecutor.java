@@ -0,0 +1,521 @@
+/*
+ * Copyright (C) 2011 Sebastian Straub <sebastian-straub@gmx.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package vbp.model.exec;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import sebi.util.observer.EventArgs;
+
+/**
+ * Runs transcoding jobs on the local machine. Every job is started as a separate
+ * process of the encoder, but never more than the configured number of jobs
+ * run at the same time. The output of each encoder process is written into
+ * two log files (stdout and stderr) in the log directory, the exit code is
+ * stored in the job. A {@link ResourceScheduler} may be attached to adapt the
+ * number of jobs to the load and free disk space of the machine, a
+ * {@link ProgressParser} to follow the progress of the running jobs.
+ * An executor is meant to run a single batch, once cancelled it won't start
+ * any more jobs.
+ * 
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+public class TranscodeExecutor {
+    
+    /** maximum number of jobs running at the same time */
+    protected int concurrency;
+    /** the directory where the output of the encoder is logged */
+    protected File logDirectory;
+    
+    /** guards active and concurrency */
+    protected final Object lock = new Object();
+    /** number of jobs running right now */
+    protected int active;
+    /** highest number of jobs that have been running at the same time */
+    protected int peakConcurrency;
+    /** all jobs running right now */
+    protected final Set<TranscodeJob> running = new HashSet<TranscodeJob>();
+    /** decides if a job may be started, based on the machine's resources (optional) */
+    protected volatile ResourceScheduler scheduler;
+    /** records the state transitions of all jobs, for resuming (optional) */
+    protected volatile JobJournal journal;
+    /** prototype of the parser that reads the progress of each job (optional) */
+    protected volatile ProgressParser progressParser;
+    
+    /** all encoder processes running right now */
+    protected final Set<Process> processes = Collections.synchronizedSet(new HashSet<Process>());
+    protected volatile boolean cancelled;
+    
+    /**
+     * Creates a new executor
+     * @param concurrency maximum number of jobs running at the same time
+     *        (values < 1: one job per cpu core)
+     * @param logDirectory the directory where the output of the encoder is logged
+     *        (will be created if it doesn't exist)
+     */
+    public TranscodeExecutor(int concurrency, File logDirectory) {
+        this.concurrency = (concurrency > 0) ? concurrency : defaultConcurrency();
+        this.logDirectory = logDirectory;
+    }
+    
+    /**
+     * Runs all jobs and blocks until every job has finished (or the execution
+     * has been cancelled). Jobs are started in list order.
+     * @param jobs the jobs to run
+     * @return the same list of jobs, each job is either DONE or FAILED (or still
+     *         QUEUED, if the execution has been cancelled)
+     * @throws InterruptedException if the thread was interrupted while waiting.
+     *         All running encoder processes will be killed.
+     */
+    public List<TranscodeJob> execute(List<TranscodeJob> jobs) throws InterruptedException {
+        if (!logDirectory.isDirectory() && !logDirectory.mkdirs()) {
+            throw new IllegalStateException("can't create log directory " + logDirectory);
+        }
+        
+        ExecutorService waiters = Executors.newCachedThreadPool(new ThreadFactory() {
+            
+            private final AtomicInteger counter = new AtomicInteger();
+            
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "vbp-job-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        
+        for (TranscodeJob job : jobs) {
+            journal(job);
+        }
+        
+        try {
+            for (TranscodeJob job : jobs) {
+                if (!acquireSlot(job)) {
+                    skip(job, "not enough free disk space for " + job.getDestination());
+                    continue;
+                }
+                if (cancelled) {
+                    releaseSlot(job);
+                    break;
+                }
+                start(job, waiters);
+            }
+            awaitIdle();
+        } catch (InterruptedException ex) {
+            cancel();
+            throw ex;
+        } finally {
+            waiters.shutdown();
+            syncJournal();
+        }
+        
+        return jobs;
+    }
+    
+    /**
+     * Stops the execution: no more jobs will be started, all running encoder
+     * processes are killed.
+     */
+    public void cancel() {
+        cancelled = true;
+        synchronized (processes) {
+            for (Process process : processes) {
+                process.destroy();
+            }
+        }
+        synchronized (lock) {
+            lock.notifyAll();
+        }
+    }
+    
+    // ++++++++++ job handling ++++++++++
+    
+    /**
+     * Starts the encoder process of a job and a thread that waits for its
+     * termination.
+     * @param job the job to start
+     * @param waiters thread pool for the waiting threads
+     */
+    protected void start(final TranscodeJob job, ExecutorService waiters) {
+        job.stdoutLog = new File(logDirectory, job.getId() + ".out.log");
+        job.stderrLog = new File(logDirectory, job.getId() + ".err.log");
+        job.startTime = System.currentTimeMillis();
+        // an existing file is not ours, even if the encoder overwrites it
+        boolean existed = job.getDestination().exists();
+        
+        final ProgressParser parser = (progressParser != null) ? progressParser.create() : null;
+        final Process process;
+        try {
+            File parent = job.getDestination().getParentFile();
+            if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+                throw new IOException("can't create output directory " + parent);
+            }
+            ProcessBuilder builder;
+            if (parser == null) {
+                builder = new ProcessBuilder(job.getCommand());
+                builder.redirectOutput(job.stdoutLog);
+                builder.redirectError(job.stderrLog);
+            } else {
+                // the output is read (and logged) by stream pumps
+                builder = new ProcessBuilder(parser.prepareCommand(job.getCommand()));
+            }
+            process = builder.start();
+            processes.add(process);
+            if (cancelled) {
+                // cancel() may have missed the process before it was added
+                process.destroy();
+            }
+        } catch (IOException ex) {
+            Logger.getLogger(TranscodeExecutor.class.getName()).log(Level.WARNING, null, ex);
+            logFailure(job.stderrLog, ex);
+            finish(job, -1);
+            return;
+        }
+        job.ownsDestination = !existed;
+        job.state = TranscodeJob.State.RUNNING;
+        journal(job);
+        jobUpdate.fire(job);
+        
+        final List<Future<?>> pumps = new ArrayList<Future<?>>(2);
+        if (parser != null) {
+            Runnable onProgress = new Runnable() {
+
+                @Override
+                public void run() {
+                    job.progress = parser.getProgress();
+                    jobProgress.fire(job);
+                }
+            };
+            pumps.add(waiters.submit(new StreamPump(process.getInputStream(), job.stdoutLog, parser, onProgress)));
+            pumps.add(waiters.submit(new StreamPump(process.getErrorStream(), job.stderrLog, parser, onProgress)));
+        }
+        
+        waiters.execute(new Runnable() {
+
+            @Override
+            public void run() {
+                int exitCode = -1;
+                try {
+                    // the encoder must not wait for user input
+                    process.getOutputStream().close();
+                    exitCode = process.waitFor();
+                    // the logs are complete when the pumps are done
+                    for (Future<?> pump : pumps) {
+                        pump.get();
+                    }
+                } catch (IOException ex) {
+                    Logger.getLogger(TranscodeExecutor.class.getName()).log(Level.WARNING, null, ex);
+                } catch (ExecutionException ex) {
+                    Logger.getLogger(TranscodeExecutor.class.getName()).log(Level.WARNING, null, ex);
+                } catch (InterruptedException ex) {
+                    process.destroy();
+                } finally {
+                    processes.remove(process);
+                    finish(job, exitCode);
+                }
+            }
+        });
+    }
+    
+    /**
+     * Marks a job as failed without starting it
+     * @param job the job that can't be started
+     * @param reason why the job can't be started
+     */
+    protected void skip(TranscodeJob job, String reason) {
+        Logger.getLogger(TranscodeExecutor.class.getName()).log(Level.WARNING, "job {0} skipped: {1}",
+                new Object[] { job.getId(), reason });
+        job.stderrLog = new File(logDirectory, job.getId() + ".err.log");
+        logFailure(job.stderrLog, new IOException(reason));
+        job.exitCode = -1;
+        job.endTime = System.currentTimeMillis();
+        job.state = TranscodeJob.State.FAILED;
+        journal(job);
+        jobUpdate.fire(job);
+    }
+    
+    /**
+     * Marks a job as finished and frees its slot
+     * @param job the finished job
+     * @param exitCode exit code of the encoder
+     */
+    protected void finish(TranscodeJob job, int exitCode) {
+        job.exitCode = exitCode;
+        job.endTime = System.currentTimeMillis();
+        job.state = (exitCode == 0) ? TranscodeJob.State.DONE : TranscodeJob.State.FAILED;
+        journal(job);
+        releaseSlot(job);
+        jobUpdate.fire(job);
+    }
+    
+    /**
+     * Writes the current state of the job to the journal, if there is one.
+     * A failing journal does not stop the execution.
+     * @param job the job whose state has changed
+     */
+    protected void journal(TranscodeJob job) {
+        JobJournal jnl = journal;
+        if (jnl != null) {
+            try {
+                jnl.record(job);
+            } catch (IOException ex) {
+                Logger.getLogger(TranscodeExecutor.class.getName()).log(Level.SEVERE, null, ex);
+            }
+        }
+    }
+    
+    /**
+     * Forces all journal records to disk, if there is a journal
+     */
+    protected void syncJournal() {
+        JobJournal jnl = journal;
+        if (jnl != null) {
+            try {
+                jnl.sync();
+            } catch (IOException ex) {
+                Logger.getLogger(TranscodeExecutor.class.getName()).log(Level.SEVERE, null, ex);
+            }
+        }
+    }
+    
+    // ++++++++++ concurrency ++++++++++
+    
+    /**
+     * Blocks until the job may be started (less than the allowed number of jobs
+     * are running and the scheduler admits the job, if any) or the execution
+     * has been cancelled.
+     * @param job the job that shall be started next
+     * @return true if a slot has been taken for the job, false if the
+     *         scheduler will never admit it
+     * @throws InterruptedException if interrupted while waiting
+     */
+    protected boolean acquireSlot(TranscodeJob job) throws InterruptedException {
+        while (true) {
+            List<TranscodeJob> snapshot;
+            synchronized (lock) {
+                while (active >= concurrency && !cancelled) {
+                    lock.wait();
+                }
+                if (scheduler == null || cancelled) {
+                    occupySlot(job);
+                    return true;
+                }
+                snapshot = new ArrayList<TranscodeJob>(running);
+            }
+            
+            // ask the scheduler outside of the lock, it may read from disk
+            ResourceScheduler sched = scheduler;
+            boolean admitted = sched == null || sched.admit(job, snapshot);
+            
+            synchronized (lock) {
+                if (cancelled || (admitted && active < concurrency)) {
+                    occupySlot(job);
+                    return true;
+                } else if (!admitted && sched.isUnsatisfiable(snapshot)) {
+                    return false;
+                } else if (!admitted) {
+                    lock.wait(sched.getPollInterval());
+                }
+            }
+        }
+    }
+    
+    /**
+     * Takes a slot for the job (must hold the lock)
+     * @param job the job that is started next
+     */
+    private void occupySlot(TranscodeJob job) {
+        active++;
+        running.add(job);
+        peakConcurrency = Math.max(peakConcurrency, active);
+    }
+    
+    /**
+     * Frees the slot of a finished job
+     * @param job the finished job
+     */
+    protected void releaseSlot(TranscodeJob job) {
+        synchronized (lock) {
+            active--;
+            running.remove(job);
+            lock.notifyAll();
+        }
+    }
+    
+    /**
+     * Blocks until no job is running anymore
+     * @throws InterruptedException if interrupted while waiting
+     */
+    protected void awaitIdle() throws InterruptedException {
+        synchronized (lock) {
+            while (active > 0) {
+                lock.wait();
+            }
+        }
+    }
+    
+    // ++++++++++ getters and setters ++++++++++
+
+    /**
+     * @return maximum number of jobs running at the same time
+     */
+    public int getConcurrency() {
+        synchronized (lock) {
+            return concurrency;
+        }
+    }
+
+    /**
+     * Changes the number of jobs that may run at the same time. Takes effect
+     * immediately, running jobs will not be stopped if the number is reduced.
+     * @param concurrency maximum number of jobs running at the same time (at least 1)
+     */
+    public void setConcurrency(int concurrency) {
+        synchronized (lock) {
+            this.concurrency = Math.max(1, concurrency);
+            lock.notifyAll();
+        }
+    }
+    
+    /**
+     * @return number of jobs running right now
+     */
+    public int getActive() {
+        synchronized (lock) {
+            return active;
+        }
+    }
+
+    /**
+     * @return highest number of jobs that have been running at the same time
+     */
+    public int getPeakConcurrency() {
+        synchronized (lock) {
+            return peakConcurrency;
+        }
+    }
+    
+    /**
+     * @param scheduler decides if a job may be started, based on the machine's
+     *        resources (null: only the concurrency limit applies)
+     */
+    public void setScheduler(ResourceScheduler scheduler) {
+        this.scheduler = scheduler;
+        synchronized (lock) {
+            lock.notifyAll();
+        }
+    }
+    
+    public ResourceScheduler getScheduler() {
+        return scheduler;
+    }
+    
+    /**
+     * @param journal records the state transitions of all jobs (null: no journal)
+     */
+    public void setJournal(JobJournal journal) {
+        this.journal = journal;
+    }
+    
+    public JobJournal getJournal() {
+        return journal;
+    }
+    
+    /**
+     * @param progressParser prototype of the parser that reads the progress of
+     *        each job from the encoder's output (null: no progress, the output
+     *        is written directly into the log files)
+     */
+    public void setProgressParser(ProgressParser progressParser) {
+        this.progressParser = progressParser;
+    }
+    
+    public ProgressParser getProgressParser() {
+        return progressParser;
+    }
+    
+    public File getLogDirectory() {
+        return logDirectory;
+    }
+    
+    // ++++++++++ events ++++++++++
+    
+    protected EventArgs<TranscodeJob> jobUpdate = new EventArgs<TranscodeJob>();
+
+    /**
+     * This event is fired whenever a job is started or has finished. It is fired
+     * from the executing threads, not from the event dispatch thread!
+     * @return the event, shall be assigned to a listener
+     */
+    public EventArgs<TranscodeJob> eventJobUpdate() {
+        return jobUpdate;
+    }
+    
+    protected EventArgs<TranscodeJob> jobProgress = new EventArgs<TranscodeJob>();
+
+    /**
+     * This event is fired whenever the encoder of a running job reports progress
+     * (only if there is a progress parser). It is fired from the threads that
+     * read the encoder's output, not from the event dispatch thread!
+     * @return the event, shall be assigned to a listener
+     */
+    public EventArgs<TranscodeJob> eventJobProgress() {
+        return jobProgress;
+    }
+    
+    // ++++++++++ static helpers ++++++++++
+    
+    /**
+     * @return the default number of concurrent jobs: one per cpu core
+     */
+    public static int defaultConcurrency() {
+        return Runtime.getRuntime().availableProcessors();
+    }
+    
+    /**
+     * Writes the reason why a job could not be started into its error log
+     * @param log the error log of the job
+     * @param ex the exception that prevented the start
+     */
+    private static void logFailure(File log, Exception ex) {
+        try {
+            Writer writer = new FileWriter(log);
+            try {
+                writer.write("vbp: could not start encoder: " + ex.getMessage() + "\n");
+            } finally {
+                writer.close();
+            }
+        } catch (IOException ex2) {
+            Logger.getLogger(TranscodeExecutor.class.getName()).log(Level.WARNING, null, ex2);
+        }
+    }
+    
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2011 Sebastian Straub <sebastian-straub@gmx.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package vbp.model.exec;
+
+import java.io.File;
+import java.util.List;
+
+/**
+ * A single transcoding job: one call of the encoder, that converts one source
+ * file into one destination file. Jobs are created by
+ * {@link vbp.model.export.Export#buildJobs()} and run by the
+ * {@link TranscodeExecutor}, which updates the state of the job.
+ * 
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+public class TranscodeJob {
+    
+    /** unique id of this job inside of the batch */
+    protected final int id;
+    /** the file to transcode */
+    protected final File source;
+    /** the transcoded file */
+    protected final File destination;
+    /** the encoder and all of its arguments */
+    protected final List<String> command;
+    
+    protected volatile State state = State.QUEUED;
+    /** exit code of the encoder, only valid when the job is DONE or FAILED */
+    protected volatile int exitCode = -1;
+    /** start and end time of the job in ms since epoch, 0 if not started/finished yet */
+    protected volatile long startTime;
+    protected volatile long endTime;
+    /** true if the encoder has been started and the destination didn't exist
+     *  before: a partial output was written by this job and may be deleted */
+    protected volatile boolean ownsDestination;
+    /** the latest progress reported by the encoder */
+    protected volatile Progress progress = Progress.UNKNOWN;
+    /** log files for the output of the encoder, set when the job is started */
+    protected File stdoutLog;
+    protected File stderrLog;
+    
+    /**
+     * Creates a new job, ready to be executed
+     * @param id unique id of this job inside of the batch
+     * @param source the file to transcode
+     * @param destination the transcoded file
+     * @param command the encoder and all of its arguments
+     */
+    public TranscodeJob(int id, File source, File destination, List<String> command) {
+        this.id = id;
+        this.source = source;
+        this.destination = destination;
+        this.command = command;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public File getSource() {
+        return source;
+    }
+
+    public File getDestination() {
+        return destination;
+    }
+
+    /**
+     * @return the encoder and all of its arguments (unquoted)
+     */
+    public List<String> getCommand() {
+        return command;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * @return exit code of the encoder, only valid when the job is DONE or FAILED
+     */
+    public int getExitCode() {
+        return exitCode;
+    }
+    
+    /**
+     * @return time in ms the job has been running (so far), 0 if not started
+     */
+    public long getDuration() {
+        if (startTime == 0) {
+            return 0;
+        }
+        return ((endTime == 0) ? System.currentTimeMillis() : endTime) - startTime;
+    }
+
+    /**
+     * @return true if the destination has been created by the encoder of this
+     *         job (it didn't exist when the encoder was started)
+     */
+    public boolean ownsDestination() {
+        return ownsDestination;
+    }
+
+    /**
+     * @return the latest progress reported by the encoder, never null
+     */
+    public Progress getProgress() {
+        return progress;
+    }
+
+    /**
+     * @return the log file with the standard output of the encoder, or null if
+     *         the job hasn't been started yet
+     */
+    public File getStdoutLog() {
+        return stdoutLog;
+    }
+
+    /**
+     * @return the log file with the error output of the encoder, or null if
+     *         the job hasn't been started yet
+     */
+    public File getStderrLog() {
+        return stderrLog;
+    }
+    
+    /**
+     * @return true if the job has been finished, no matter if successful or not
+     */
+    public boolean isFinished() {
+        return state == State.DONE || state == State.FAILED;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("job %d [%s] %s", id, state, source);
+    }
+    
+    public enum State {
+        QUEUED,
+        RUNNING,
+        DONE,
+        FAILED;
+    }
+    
+}
@@ -0,0 +1,5 @@
+/**
+ * Execution of transcoding jobs on the local machine
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+package vbp.model.exec;
\ No newline at end of file
@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2011 Sebastian Straub <sebastian-straub@gmx.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package vbp.model.export;
+
+/**
+ * Windows batch files (cmd.exe).
+ * cmd.exe does not split arguments itself, the called program does (following
+ * the rules of the Microsoft C runtime). So every argument is put in double
+ * quotes, inner quotes are escaped with a backslash and backslashes preceding
+ * a quote are doubled. Percent signs are doubled, as cmd.exe would expand them
+ * as variables even inside of quotes.
+ * An escaped inner quote ends the quoted part for cmd.exe (it doesn't know
+ * about backslashes), so characters like &amp; or | would become commands.
+ * Arguments with inner quotes are therefore escaped for cmd.exe as a whole:
+ * every quote and special character is prefixed with a caret.
+ * 
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+public class BatchScript extends ScriptDialect {
+
+    @Override
+    public String getFileExtension() {
+        return "bat";
+    }
+
+    @Override
+    public String getDescription() {
+        return "Windows (*.bat)";
+    }
+
+    @Override
+    public String getLineSeparator() {
+        return "\r\n";
+    }
+
+    @Override
+    public String header() {
+        return "@echo off" + getLineSeparator();
+    }
+
+    /** characters that cmd.exe interprets outside of quotes */
+    private static final String SPECIAL_CHARS = "\"^&|<>()";
+
+    @Override
+    public String quote(String arg) {
+        rejectLineBreaks(arg);
+        boolean caret = arg.indexOf('"') >= 0;
+        
+        StringBuilder strb = new StringBuilder(arg.length() + 2);
+        strb.append('"');
+        int backslashes = 0;
+        for (int i = 0; i < arg.length(); i++) {
+            char c = arg.charAt(i);
+            if (c == '\\') {
+                backslashes++;
+                continue;
+            }
+            if (c == '"') {
+                // backslashes followed by a quote: double them and escape the quote
+                appendBackslashes(strb, backslashes * 2 + 1);
+            } else {
+                appendBackslashes(strb, backslashes);
+            }
+            backslashes = 0;
+            
+            if (c == '%') {
+                strb.append("%%");
+            } else {
+                if (caret && SPECIAL_CHARS.indexOf(c) >= 0) {
+                    strb.append('^');
+                }
+                strb.append(c);
+            }
+        }
+        // trailing backslashes would escape the closing quote
+        appendBackslashes(strb, backslashes * 2);
+        if (caret) {
+            strb.insert(0, '^').append('^');
+        }
+        strb.append('"');
+        return strb.toString();
+    }
+
+    @Override
+    public String comment(String text) {
+        rejectLineBreaks(text);
+        return "rem " + text.replace("%", "%%") + getLineSeparator();
+    }
+    
+    private static void appendBackslashes(StringBuilder strb, int count) {
+        for (int i = 0; i < count; i++) {
+            strb.append('\\');
+        }
+    }
+    
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2011 Sebastian Straub <sebastian-straub@gmx.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package vbp.model.export;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * <p>An encoder call, compiled once per export: the program and all of its
+ * arguments, with two slots for the source and destination file. Every job
+ * just fills the two slots of a copy of this skeleton.</p>
+ * 
+ * <p>For scripts, the fixed arguments are quoted only once per dialect, so
+ * rendering a command line means concatenating the quoted parts with the
+ * quoted source and destination.</p>
+ * 
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+public class CommandTemplate {
+    
+    /** program and arguments, the slots are empty */
+    protected final String[] skeleton;
+    /** index of the source file in the skeleton */
+    protected final int sourceSlot;
+    /** index of the destination file in the skeleton */
+    protected final int destinationSlot;
+    
+    /** the quoted fixed parts, for the dialect used last */
+    private Segments segments;
+    
+    /**
+     * Compiles the encoder call. The elements at the slot indices are ignored.
+     * @param argv program and arguments
+     * @param sourceSlot index of the source file
+     * @param destinationSlot index of the destination file
+     */
+    public CommandTemplate(List<String> argv, int sourceSlot, int destinationSlot) {
+        if (sourceSlot == destinationSlot) {
+            throw new IllegalArgumentException("source and destination need slots of their own");
+        }
+        this.skeleton = argv.toArray(new String[argv.size()]);
+        this.sourceSlot = sourceSlot;
+        this.destinationSlot = destinationSlot;
+        skeleton[sourceSlot] = null;
+        skeleton[destinationSlot] = null;
+    }
+    
+    /**
+     * @param source the source file
+     * @param destination the destination file
+     * @return program and arguments, ready for a ProcessBuilder
+     */
+    public String[] argv(String source, String destination) {
+        String[] argv = skeleton.clone();
+        argv[sourceSlot] = source;
+        argv[destinationSlot] = destination;
+        return argv;
+    }
+    
+    /**
+     * @param source the source file
+     * @param destination the destination file
+     * @return program and arguments, as a fixed-size list backed by a fresh argv()
+     */
+    public List<String> command(String source, String destination) {
+        return Arrays.asList(argv(source, destination));
+    }
+    
+    /**
+     * Renders the command line for a script (without line separator). All
+     * fixed arguments are quoted by the dialect, source and destination are
+     * inserted as given, so they can be quoted by the dialect as well as be
+     * shell expressions like "$1".
+     * @param dialect quotes the fixed arguments
+     * @param source the quoted source file
+     * @param destination the quoted destination file
+     * @return the command line
+     */
+    public String render(ScriptDialect dialect, String source, String destination) {
+        return appendTo(new StringBuilder(), dialect, source, destination).toString();
+    }
+    
+    /**
+     * Renders the command line for a script (without line separator) directly
+     * into the script. See {@link #render(ScriptDialect, String, String)}.
+     * @param strb the script
+     * @param dialect quotes the fixed arguments
+     * @param source the quoted source file
+     * @param destination the quoted destination file
+     * @return strb
+     */
+    public StringBuilder appendTo(StringBuilder strb, ScriptDialect dialect, String source, String destination) {
+        String[] parts = segments(dialect).parts;
+        boolean sourceFirst = sourceSlot < destinationSlot;
+        return strb.append(parts[0]).append(sourceFirst ? source : destination)
+                .append(parts[1]).append(sourceFirst ? destination : source)
+                .append(parts[2]);
+    }
+    
+    /**
+     * @return the number of arguments, including program and slots
+     */
+    public int size() {
+        return skeleton.length;
+    }
+    
+    protected Segments segments(ScriptDialect dialect) {
+        Segments current = segments;
+        if (current == null || current.dialect != dialect) {
+            current = new Segments(dialect, skeleton, sourceSlot, destinationSlot);
+            segments = current;
+        }
+        return current;
+    }
+    
+    /**
+     * The quoted text before, between and after the two slots (including the
+     * call operator of the dialect).
+     */
+    protected static class Segments {
+        
+        protected final ScriptDialect dialect;
+        protected final String[] parts = new String[3];
+
+        protected Segments(ScriptDialect dialect, String[] skeleton, int sourceSlot, int destinationSlot) {
+            this.dialect = dialect;
+            StringBuilder strb = new StringBuilder(dialect.callOperator());
+            int part = 0;
+            for (int i = 0; i < skeleton.length; i++) {
+                if (i > 0) {
+                    strb.append(' ');
+                }
+                if (i == sourceSlot || i == destinationSlot) {
+                    parts[part++] = strb.toString();
+                    strb.setLength(0);
+                } else {
+                    strb.append(dialect.quote(skeleton[i]));
+                }
+            }
+            parts[part] = strb.toString();
+        }
+        
+    }
+    
+}
@@ -20,33 +20,70 @@ import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.Writer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.regex.Matcher;
 import javax.swing.JFileChooser;
 import sebi.util.threads.FutureBuilder;
 import vbp.gui.FileFilters;
 import vbp.model.Model.OutputMethod;
+import vbp.model.exec.TranscodeJob;
+import vbp.model.preset.Encoder;
+import vbp.model.preset.Preset;
+import vbp.util.arg.EncoderCommand;
+import vbp.util.arg.ShellGrammar;
+import vbp.util.fs.Extent;
+import vbp.util.fs.PathUtils;
+import vbp.util.timing.Counter;
+import vbp.util.timing.Metrics;
+import vbp.util.timing.Timer;
 
 /**
  * This class is an abstract implementation of a script to generate batch files
  * or other exchangeable documents that carry the necessary information for the
  * target application to transcode all files selected by the user.
  * 
+ * The input files may belong to any java.nio file system, the output is always
+ * written to the local file system (that's where the encoder runs).
+ * 
  * @author Sebastian Straub <sebastian-straub@gmx.net>
  */
 public abstract class Export {
     
+    // metrics
+    protected static final Timer MAPPING = Metrics.timer("export.mapping");
+    protected static final Timer PARSE = Metrics.timer("export.parse");
+    protected static final Timer SOURCE = Metrics.timer("export.source");
+    protected static final Timer BUILD = Metrics.timer("export.build");
+    protected static final Timer WRITE = Metrics.timer("export.write");
+    protected static final Counter FILES = Metrics.counter("export.files");
+    protected static final Counter SCRIPT_CHARS = Metrics.counter("export.script.chars");
+    
     /** all files to transcode */
-    protected List<File> files;
+    protected List<Path> files;
     /* the extension of the resulting script file */
     protected String scriptFileExtension;
     /** the command line containing the software-specific transcoding settings */
     protected String commandLine;
+    /** the preset of all files, unless the assignment says otherwise - created from
+     the command line in {@link buildOutputMapping()}, if not set */
+    protected Preset preset;
+    /** files that get another preset than the default one (may be null) */
+    protected Map<Path, Preset> assignment;
+    /** the parsed command line of the default preset */
+    protected EncoderCommand command;
+    /** splits the command line into words */
+    protected ShellGrammar grammar = ShellGrammar.platformDefault();
     /** path to the software used to execute the commands */
     protected String executerPath;
     /** how the files should be saved */
@@ -72,7 +109,7 @@ public abstract class Export {
      * @param commandLine the command line containing the software-specific transcoding settings
      * @param renamePattern rename pattern, used when files are stored in the same folder
      */
-    public Export(List<File> files, String scriptFileExtension, String commandLine, String renamePattern) {
+    public Export(List<Path> files, String scriptFileExtension, String commandLine, String renamePattern) {
         this.files = files;
         this.scriptFileExtension = scriptFileExtension;
         this.commandLine = commandLine;
@@ -91,7 +128,7 @@ public abstract class Export {
      * @param executerPath path to the software used to execute the commands
      * @param renamePattern rename pattern, used when files are stored in the same folder
      */
-    public Export(List<File> files, String scriptFileExtension, String commandLine, String executerPath, String renamePattern) {
+    public Export(List<Path> files, String scriptFileExtension, String commandLine, String executerPath, String renamePattern) {
         this.files = files;
         this.scriptFileExtension = scriptFileExtension;
         this.commandLine = commandLine;
@@ -112,7 +149,7 @@ public abstract class Export {
      * @param outputFolder folder where all transcoded files shall be saved
      * @param preserveFolders false: put all files directly in the output folder, true: write the file path to the source file into the output folder
      */
-    public Export(List<File> files, String scriptFileExtension, String commandLine, File outputFolder, boolean preserveFolders) {
+    public Export(List<Path> files, String scriptFileExtension, String commandLine, File outputFolder, boolean preserveFolders) {
         this.files = files;
         this.scriptFileExtension = scriptFileExtension;
         this.commandLine = commandLine;
@@ -134,7 +171,7 @@ public abstract class Export {
      * @param outputFolder folder where all transcoded files shall be saved
      * @param preserveFolders false: put all files directly in the output folder, true: write the file path to the source file into the output folder
      */
-    public Export(List<File> files, String scriptFileExtension, String commandLine, String executerPath, File outputFolder, boolean preserveFolders) {
+    public Export(List<Path> files, String scriptFileExtension, String commandLine, String executerPath, File outputFolder, boolean preserveFolders) {
         this.files = files;
         this.scriptFileExtension = scriptFileExtension;
         this.commandLine = commandLine;
@@ -175,25 +212,13 @@ public abstract class Export {
         // open dialogue and write file as soon as export finishes
         if (fileChooser.showSaveDialog(null) == JFileChooser.APPROVE_OPTION) {
             try {
-                Writer fileWriter = null;
-                try {
-                    File output = fileChooser.getSelectedFile();
-                    if(enforceExtension) {
-                        output = FileFilters.enforceFileExtension(output, scriptFileExtension);
-                    }
-                    fileWriter = new FileWriter(output);
-                    fileWriter.write(queue.get());
-                } catch (IOException ex) {
-                    Logger.getLogger(Export.class.getName()).log(Level.SEVERE, null, ex);
-                } finally {
-                    if (fileWriter != null) {
-                        try {
-                            fileWriter.close();
-                        } catch (IOException ex) {
-                            Logger.getLogger(Export.class.getName()).log(Level.SEVERE, null, ex);
-                        }
-                    }
+                File output = fileChooser.getSelectedFile();
+                if(enforceExtension) {
+                    output = FileFilters.enforceFileExtension(output, scriptFileExtension);
                 }
+                writeScript(output, queue.get());
+            } catch (IOException ex) {
+                Logger.getLogger(Export.class.getName()).log(Level.SEVERE, null, ex);
             } catch (InterruptedException ex) {
                 Logger.getLogger(Export.class.getName()).log(Level.SEVERE, null, ex);
             } catch (ExecutionException ex) {
@@ -204,38 +229,254 @@ public abstract class Export {
         }
     }
     
+    /**
+     * Generates the script and writes it into the specified file, without any
+     * dialogue. Overwrites without asking!
+     * @param output the designated file location
+     * @return true if the script has been written
+     */
+    public boolean saveScript(File output) {
+        try {
+            writeScript(output, buildScript());
+            return true;
+        } catch (IOException ex) {
+            Logger.getLogger(Export.class.getName()).log(Level.SEVERE, null, ex);
+            return false;
+        }
+    }
+    
+    /**
+     * Writes the script into the specified file. Overwrites without asking!
+     * Exports that consist of more than one file may override this method to
+     * write their additional files next to the script.
+     * @param output the designated file location
+     * @param script the full script, as generated by buildScript()
+     * @throws IOException if the file can't be written
+     */
+    protected void writeScript(File output, String script) throws IOException {
+        long start = WRITE.start();
+        Writer fileWriter = new FileWriter(output);
+        try {
+            fileWriter.write(script);
+        } finally {
+            fileWriter.close();
+            WRITE.stop(start);
+        }
+    }
+    
     /**
      * Generates a script file according to the settings used when this class has
      * been initialized.
      * @return the full script as String
      */
     public String buildScript() {
+        Map<Path,String> outputMapping = buildOutputMapping();
+        long start = BUILD.start();
+        String script = buildScriptImplementation(outputMapping);
+        BUILD.stop(start);
+        SCRIPT_CHARS.add(script.length());
+        return script;
+    }
+    
+    /**
+     * Generates a transcoding job for every file, according to the settings used
+     * when this class has been initialized. The jobs can be run directly by a
+     * {@link vbp.model.exec.TranscodeExecutor}, without writing a script first.
+     * @return one job per file to transcode, in list order
+     */
+    public List<TranscodeJob> buildJobs() {
+        Map<Path,String> outputMapping = buildOutputMapping();
+        
+        List<TranscodeJob> jobs = new ArrayList<TranscodeJob>(files.size());
+        int id = 0;
+        for (Path file : files) {
+            try {
+                String source = source(file);
+                String destination = outputMapping.get(file);
+                jobs.add(new TranscodeJob(id++, new File(PathUtils.canonicalPath(file)), new File(destination),
+                        buildArguments(file, source, destination)));
+            } catch (IOException ex) {
+                Logger.getLogger(Export.class.getName()).log(Level.SEVERE, null, ex);
+            }
+        }
+        return jobs;
+    }
+    
+    /**
+     * Determines the output file for every input file, as specified by the
+     * output method.
+     * @return a Path -> String map, that contains a key for every input file.
+     *         Each key refers to the corresponding canonical output file path.
+     */
+    protected Map<Path,String> buildOutputMapping() {
+        long start = MAPPING.start();
+        if (preset == null) {
+            // parsed once per export
+            long parse = PARSE.start();
+            this.preset = new Preset("", getEncoder(), commandLine, null, Collections.<String>emptyList(), grammar);
+            PARSE.stop(parse);
+        }
+        this.command = preset.getCommand();
         this.destinationFileExtension = extractFileExtension();
+        prepare();
         
-        Map<File,String> outputMapping = new HashMap<File, String>(files.size());
+        FILES.add(files.size());
+        Map<Path,String> outputMapping = new HashMap<Path, String>(files.size());
         switch (outputMethod) {
             case INPLACE:
-                for (File input : files) {
+                for (Path input : files) {
                     outputMapping.put(input, applyRenamePattern(input));
                 }
                 break;
             case SPECIFIC_FOLDER:
-                for (File input : files) {
+                for (Path input : files) {
                     outputMapping.put(input, generateOutputFile(input));
                 }
                 break;
         }
-        return buildScriptImplementation(outputMapping);
+        MAPPING.stop(start);
+        return outputMapping;
+    }
+    
+    /**
+     * Called once before any script line or job is built. Override this to
+     * precompute anything that is shared by all lines.
+     * (does nothing by default)
+     */
+    protected void prepare() {
+        // nothing to do
+    }
+    
+    /**
+     * @return the encoder of this export, its options are used to parse the
+     *         command line
+     */
+    protected abstract Encoder getEncoder();
+    
+    /**
+     * @return the preset of all files, unless the assignment says otherwise
+     *         (null, if not set and no script has been built yet)
+     */
+    public Preset getPreset() {
+        return preset;
+    }
+    
+    /**
+     * Uses the preset instead of the command line of the constructor.
+     * @param preset the preset of all files, unless the assignment says otherwise
+     */
+    public void setPreset(Preset preset) {
+        checkEncoder(preset);
+        this.preset = preset;
+        this.commandLine = preset.getCommandLine();
+    }
+    
+    /**
+     * @param assignment files that get another preset than the default one
+     *        (see PresetLibrary.assign())
+     */
+    public void setAssignment(Map<Path, Preset> assignment) {
+        for (Preset assigned : assignment.values()) {
+            checkEncoder(assigned);
+        }
+        this.assignment = assignment;
+    }
+    
+    /**
+     * @param file one of the files to transcode
+     * @return the preset of this file
+     */
+    protected Preset presetFor(Path file) {
+        if (assignment != null) {
+            Preset assigned = assignment.get(file);
+            if (assigned != null) {
+                return assigned;
+            }
+        }
+        return preset;
+    }
+    
+    /**
+     * @return true if some files get another preset than the default one
+     */
+    protected boolean hasMixedPresets() {
+        return assignment != null && !assignment.isEmpty();
+    }
+    
+    /**
+     * @return all presets used by this export, the default preset first
+     */
+    protected Set<Preset> usedPresets() {
+        Set<Preset> used = new LinkedHashSet<Preset>();
+        used.add(preset);
+        if (assignment != null) {
+            used.addAll(assignment.values());
+        }
+        return used;
+    }
+    
+    private void checkEncoder(Preset preset) {
+        if (preset.getEncoder() != getEncoder()) {
+            throw new IllegalArgumentException(preset.getName() + " is a preset for " + preset.getEncoder().getKey());
+        }
+    }
+    
+    /**
+     * @return the grammar that splits the command line into words
+     */
+    public ShellGrammar getGrammar() {
+        return grammar;
+    }
+    
+    /**
+     * @param grammar the grammar that splits the command line into words
+     *        (default: the one of the platform we are running on). Must be
+     *        set before a script is built, presets are parsed by their own grammar
+     */
+    public void setGrammar(ShellGrammar grammar) {
+        this.grammar = grammar;
     }
     
     /**
      * Implementation of the build script, independent of the output method.
-     * @param outputMapping a File -> String map, that contains a key for every
+     * @param outputMapping a Path -> String map, that contains a key for every
      *        input file that shall be transcoded. Each key refers to the corresponding
      *        canonical output file path.
      * @return the full script as String
      */
-    protected abstract String buildScriptImplementation(Map<File,String> outputMapping);
+    protected abstract String buildScriptImplementation(Map<Path,String> outputMapping);
+    
+    /**
+     * The input of the encoder for the specified file: the canonical path, or
+     * for files inside of an archive, whatever the encoder can read them from
+     * (see archiveSource()).
+     * @param file the input file
+     * @return the input of the encoder
+     * @throws IOException if the path can't be resolved or the encoder can't
+     *         read the file
+     */
+    protected String source(Path file) throws IOException {
+        long start = SOURCE.start();
+        try {
+            Extent extent = PathUtils.extent(file);
+            return (extent == null) ? PathUtils.canonicalPath(file) : archiveSource(extent, file);
+        } finally {
+            SOURCE.stop(start);
+        }
+    }
+    
+    /**
+     * The input of the encoder for a file inside of an archive. Override this,
+     * if the encoder can read parts of a file directly.
+     * (no encoder can by default)
+     * @param extent the location of the file inside the archive
+     * @param file the file
+     * @return the input of the encoder
+     * @throws IOException if the encoder can't read the file
+     */
+    protected String archiveSource(Extent extent, Path file) throws IOException {
+        throw new IOException(PathUtils.canonicalPath(file) + " can't be read from an archive");
+    }
     
     // ++++++++++ Generate Output Files ++++++++++
     
@@ -246,16 +487,16 @@ public abstract class Export {
      * @param source the source file path
      * @return the destination file path, renamed and with correct extension.
      */
-    protected String applyRenamePattern(File source) {
+    protected String applyRenamePattern(Path source) {
         
         // gather properties
-        String fullName = removeExtension(source.getName());
-        String path = source.getParent();
+        String fullName = removeExtension(PathUtils.fileName(source));
+        String path = PathUtils.parent(PathUtils.local(source));
         
         // replace generics (e.g. {name} )
-        String name = renamePattern.replaceAll("\\{name\\}", fullName);
+        String name = renamePattern.replaceAll("\\{name\\}", Matcher.quoteReplacement(fullName));
         
-        return composeOutputFile(path, name);
+        return composeOutputFile(path, name, presetFor(source).getExtension());
     }
     
     /**
@@ -264,19 +505,19 @@ public abstract class Export {
      * @param input the input file
      * @return the destination file path, with correct file extension.
      */
-    protected String generateOutputFile(File input) {
+    protected String generateOutputFile(Path input) {
         
-        String fileName = removeExtension(input.getName());
+        String fileName = removeExtension(PathUtils.fileName(input));
         String path = outputFolder.getPath();
         
         if (preserveFolders) {
             String pathParent = path;
-            String pathChild = input.getParent().replaceAll(":", "");
+            String pathChild = PathUtils.parent(PathUtils.local(input)).replaceAll(":", "");
             File pathBoth = new File(String.format("%s/%s", pathParent, pathChild));
             path = pathBoth.getPath();
         }
         
-        return composeOutputFile(path, fileName);
+        return composeOutputFile(path, fileName, presetFor(input).getExtension());
     }
     
     // ++++++++++ Helpers ++++++++++
@@ -290,38 +531,52 @@ public abstract class Export {
      */
     protected abstract String buildScriptLine(String source, String destination);
     
+    /**
+     * Generates the unquoted program call for the given input and output file.
+     * The first element is the path to the encoder, followed by its arguments.
+     * @param file the input file (decides about the preset)
+     * @param source the canonical path to the source file
+     * @param destination the canonical path to the destination file
+     * @return encoder and all of its arguments
+     */
+    protected abstract List<String> buildArguments(Path file, String source, String destination);
+    
     /**
      * Composes the correct output String from the filepath, the filename and the
      * file extension according to the transcoding command.
      * @param path absolute path to your destonation file's parent folder
      * @param name name of your destination file (without extension)
+     * @param extension the file extension of the preset
      * @return the complete file path (canonical, as string)
      */
-    protected String composeOutputFile(String path, String name) {
+    protected String composeOutputFile(String path, String name, String extension) {
         // add correct file extension
-        File result = new File(String.format("%s/%s.%s", path, name, destinationFileExtension));
+        File result = new File(String.format("%s/%s.%s", path, name, extension));
         
         // generate canonical path
         try {
             return result.getCanonicalPath();
         } catch (IOException ex) {
             // backup: just put strings together
-            return String.format("%s%s.%s", path, name, destinationFileExtension);
+            return String.format("%s%s.%s", path, name, extension);
         }
     }
     
     /**
      * Define the file extension for the given command line. This extension will
      * be used for all transcoded files instead of the original file extension
-     * (if there was any)
-     * @return file extension for the files to transcode
+     * (if there was any). The extension is determined by the preset, when it is
+     * created, so nothing is parsed here.
+     * @return file extension for the files to transcode (of the default preset)
      */
-    protected abstract String extractFileExtension();
+    protected String extractFileExtension() {
+        return preset.getExtension();
+    }
     
     /**
      * removes the file extension from a file name, if the name has an extension.
      * If not the unchanged filename will be returned
-     * @param fileName name of the file as String (use File.getName() to get it)
+     * @param fileName name of the file as String (use PathUtils.fileName() to get it)
      * @return filename without extension
      */
     protected static String removeExtension(String fileName) {
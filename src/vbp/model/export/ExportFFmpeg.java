@@ -18,46 +18,98 @@ package vbp.model.export;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import vbp.util.arg.CLParser;
+import vbp.model.preset.Encoder;
+import vbp.model.preset.Preset;
+import vbp.util.fs.Extent;
+import vbp.util.fs.PathUtils;
 
 /**
- *
+ * Generates a script that calls ffmpeg once for every file to transcode. The
+ * script is written in a {@link ScriptDialect} of your choice (batch, shell,
+ * PowerShell), which takes care of quoting the file names correctly.
+ * 
  * @author Sebastian Straub <sebastian-straub@gmx.net>
  */
 public class ExportFFmpeg extends Export {
     
-    /** This command line does not contain the "ffmpeg" and no information about
-     input and output files. */
-    protected String reducedCommandLine;
+    /** the ffmpeg call with all options of the default preset, compiled once per export */
+    protected CommandTemplate template;
+    /** the ffmpeg calls of all presets used by this export */
+    protected Map<Preset, CommandTemplate> templates;
+    /** the dialect of the resulting script */
+    protected ScriptDialect dialect;
+
+    public ExportFFmpeg(List<Path> files, String commandLine, String executerPath, String renamePattern) {
+        this(files, commandLine, executerPath, renamePattern, ScriptDialect.platformDefault());
+    }
 
-    public ExportFFmpeg(List<File> files, String commandLine, String executerPath, String renamePattern) {
-        super(files, "bat", commandLine, executerPath, renamePattern);
+    public ExportFFmpeg(List<Path> files, String commandLine, String executerPath, File outputFolder, boolean preserveFolders) {
+        this(files, commandLine, executerPath, outputFolder, preserveFolders, ScriptDialect.platformDefault());
+    }
+    
+    public ExportFFmpeg(List<Path> files, String commandLine, String executerPath, String renamePattern, ScriptDialect dialect) {
+        super(files, dialect.getFileExtension(), commandLine, executerPath, renamePattern);
+        this.dialect = dialect;
     }
 
-    public ExportFFmpeg(List<File> files, String commandLine, String executerPath, File outputFolder, boolean preserveFolders) {
-        super(files, "bat", commandLine, executerPath, outputFolder, preserveFolders);
+    public ExportFFmpeg(List<Path> files, String commandLine, String executerPath, File outputFolder, boolean preserveFolders, ScriptDialect dialect) {
+        super(files, dialect.getFileExtension(), commandLine, executerPath, outputFolder, preserveFolders);
+        this.dialect = dialect;
     }
     
     @Override
-    protected String buildScriptImplementation(Map<File, String> outputMapping) {
-        
-        /*
-         * TODO improve cli, linux sh script, connect to gui
-         */
+    protected void prepare() {
+        this.scriptFileExtension = dialect.getFileExtension();
+        this.templates = new HashMap<Preset, CommandTemplate>();
+        for (Preset used : usedPresets()) {
+            templates.put(used, compileTemplate(used));
+        }
+        this.template = templates.get(preset);
+    }
+    
+    /**
+     * Compiles the ffmpeg call: <code>ffmpeg [input options] -i SOURCE
+     * [options] DESTINATION</code>
+     * @param preset the preset
+     * @return the compiled call
+     */
+    protected CommandTemplate compileTemplate(Preset preset) {
+        List<String> argv = new ArrayList<String>();
+        argv.add(executerPath);
+        argv.addAll(preset.getCommand().getInputArguments());
+        argv.add("-i");
+        int source = argv.size();
+        argv.add(null);
+        argv.addAll(preset.getCommand().getArguments());
+        int destination = argv.size();
+        argv.add(null);
+        return new CommandTemplate(argv, source, destination);
+    }
+    
+    @Override
+    protected Encoder getEncoder() {
+        return Encoder.FFMPEG;
+    }
+    
+    @Override
+    protected String buildScriptImplementation(Map<Path, String> outputMapping) {
         
-        this.scriptFileExtension = "bat";
-        this.reducedCommandLine = reduceCommandLine(commandLine);
         StringBuilder strb = new StringBuilder();
+        strb.append(dialect.header());
         
-        for (File file : files) {
+        for (Path file : files) {
             try {
-                String source = file.getCanonicalPath();
+                String source = source(file);
                 String destination = outputMapping.get(file);
-                strb.append(buildScriptLine(source, destination));
+                templates.get(presetFor(file)).appendTo(strb, dialect, dialect.quote(source), dialect.quote(destination))
+                        .append(dialect.getLineSeparator());
             } catch (IOException ex) {
                 Logger.getLogger(ExportFFmpeg.class.getName()).log(Level.SEVERE, null, ex);
             }
@@ -69,75 +121,45 @@ public class ExportFFmpeg extends Export {
 
     @Override
     protected String buildScriptLine(String source, String destination) {
-        if(reducedCommandLine != null) {
-            return String.format("%s -i \"%s\" %s \"%s\"\n", executerPath, source, reducedCommandLine, destination);
-        } else {
-            return String.format("%s -i \"%s\" \"%s\"\n", executerPath, source, destination);
-        }
-        
+        return template.appendTo(new StringBuilder(), dialect, dialect.quote(source), dialect.quote(destination))
+                .append(dialect.getLineSeparator()).toString();
     }
-
+    
+    /**
+     * Builds a command for an inline shell script, where source and destination
+     * are shell expressions (like "$1"). These must be expanded (double quotes)
+     * instead of being passed literally.
+     * @param source shell expression for the source file
+     * @param destination shell expression for the destination file
+     * @return the command, without line break
+     */
+    protected String buildInlineCommand(String source, String destination) {
+        return template.render(dialect, '"' + source + '"', '"' + destination + '"');
+    }
+    
+    /**
+     * Files that are stored uncompressed in an archive are read by ffmpeg
+     * directly from the archive, with the subfile protocol.
+     */
     @Override
-    protected String extractFileExtension() {
-        
-        /*
-         * ffmpeg gets the file format from two possible sources:
-         * 1. guessed file format by the output file extension (output is always the last entry)
-         * 2. forced file format determined by the -f trigger
-         * 
-         * This funcion will use the file extension of the given output file name
-         * if available, or use the forced file format name as extension (though
-         * this can look ugly...)
-         * 
-         * Therefore, to get the correct file extension, this method needs the unfiltered
-         * ffmpeg command line. The extension will be determined only once. Afterwards
-         * the command line will be cut, so it can be formatted later as
-         * "ffmpeg "+INPUT+COMMANDLINE+OUTPUT
-         */
-        
-        if(destinationFileExtension == null) {
-            CLParser parser = new CLParser(commandLine);
-            String destinationFileName = parser.getLastArg();
-            
-            if(isFile(destinationFileName)) {
-                int extIndex = destinationFileName.lastIndexOf('.') + 1;
-                destinationFileExtension = destinationFileName.substring(extIndex);
-            } else if (parser.exists("-f")) {
-                destinationFileExtension = parser.getSubsequentArg("-f");
-            } else {
-                destinationFileExtension = "avi";
-            }
+    protected String archiveSource(Extent extent, Path file) throws IOException {
+        if (!extent.isStored()) {
+            throw new IOException(PathUtils.canonicalPath(file) + " is compressed or fragmented in its archive");
         }
-        
-        return destinationFileExtension;
+        return String.format("subfile,,start,%d,end,%d,,:%s", extent.getOffset(), extent.getEnd(),
+                PathUtils.canonicalPath(extent.getContainer()));
     }
     
-    // -------------- helpers --------------
-    
-    protected static String reduceCommandLine(String commandLine) {
-        
-        CLParser clp = new CLParser(commandLine);
-        
-        if(clp.getFirstArg().toLowerCase().equals("ffmpeg")) {
-            clp.removeFirstArg();
-        }
-        clp.removeSubsequentArg("-i");
-        if(isFile(clp.getLastArg())) {
-            clp.removeLastArg();
-        }
-        
-        return null;
+    @Override
+    protected List<String> buildArguments(Path file, String source, String destination) {
+        return templates.get(presetFor(file)).command(source, destination);
     }
     
     /**
-     * Guesses if a String could represent a file name. Not very accurate...
-     * @param name
-     * @return 
+     * @return the dialect of the resulting script
      */
-    protected static boolean isFile(String name) {
-        if(name.contains(".") && name.charAt(0) != '-') {
-            return true;
-        }
-        return false;
+    public ScriptDialect getDialect() {
+        return dialect;
     }
+    
 }
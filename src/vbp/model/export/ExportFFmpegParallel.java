@@ -0,0 +1,199 @@
+/*
+ * Copyright (C) 2011 Sebastian Straub <sebastian-straub@gmx.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package vbp.model.export;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import vbp.util.fs.PathUtils;
+
+/**
+ * <p>Generates a shell script that runs several ffmpeg jobs at once, instead of
+ * one after another. The export consists of three files, which share the same
+ * base name:</p>
+ * <ul>
+ * <li><code>name.sh</code>: the driver script, which feeds the jobs to
+ * <code>xargs -P</code></li>
+ * <li><code>name.jobs</code>: the job manifest. Every job is a record of three
+ * NUL-terminated fields: job id, source file, destination file. NUL is the only
+ * character that can't be part of a file name, so no quoting is needed.</li>
+ * <li><code>name.results</code>: written by the driver. One line per finished
+ * job: job id, exit code and source file, separated by tabs.</li>
+ * </ul>
+ * <p>Jobs are ordered by the size of their source file, largest first, so the
+ * long running jobs don't end up as stragglers at the end of the batch. The
+ * number of concurrent jobs can be overridden with the environment variable
+ * <code>VBP_JOBS</code> when the script is run.</p>
+ * 
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+public class ExportFFmpegParallel extends ExportFFmpeg {
+    
+    /** file extension of the job manifest */
+    public static final String MANIFEST_EXTENSION = "jobs";
+    /** file extension of the results file */
+    public static final String RESULTS_EXTENSION = "results";
+    
+    /** number of concurrent jobs, 0: number of cpu cores of the executing machine */
+    protected int parallelJobs;
+    /** the job manifest, generated together with the script */
+    protected byte[] manifest;
+
+    public ExportFFmpegParallel(List<Path> files, String commandLine, String executerPath, String renamePattern, int parallelJobs) {
+        super(files, commandLine, executerPath, renamePattern, ScriptDialect.SHELL);
+        this.parallelJobs = parallelJobs;
+    }
+
+    public ExportFFmpegParallel(List<Path> files, String commandLine, String executerPath, File outputFolder, boolean preserveFolders, int parallelJobs) {
+        super(files, commandLine, executerPath, outputFolder, preserveFolders, ScriptDialect.SHELL);
+        this.parallelJobs = parallelJobs;
+    }
+
+    @Override
+    protected String buildScriptImplementation(Map<Path, String> outputMapping) {
+        if (!(dialect instanceof ShellScript)) {
+            throw new UnsupportedOperationException("parallel jobs are only supported in shell scripts");
+        }
+        if (hasMixedPresets()) {
+            // all jobs share a single inline command
+            throw new UnsupportedOperationException("all files must use the same preset");
+        }
+        
+        // build the manifest, largest files first
+        Charset charset = Charset.defaultCharset();
+        ByteArrayOutputStream jobs = new ByteArrayOutputStream();
+        int id = 0;
+        for (Path file : sortBySize(files)) {
+            try {
+                String source = source(file);
+                String destination = outputMapping.get(file);
+                writeField(jobs, String.valueOf(id++), charset);
+                writeField(jobs, source, charset);
+                writeField(jobs, destination, charset);
+            } catch (IOException ex) {
+                Logger.getLogger(ExportFFmpegParallel.class.getName()).log(Level.SEVERE, null, ex);
+            }
+        }
+        this.manifest = jobs.toByteArray();
+        
+        return buildDriver();
+    }
+    
+    /**
+     * Generates the driver script. The job itself is an inline script that gets
+     * the job id, source and destination as positional parameters ($1 to $3)
+     * from xargs.
+     * @return the full driver script
+     */
+    protected String buildDriver() {
+        
+        String results = "\"$VBP_RESULTS\"";
+        String job = buildScriptLine("$2", "$3").trim() + " < /dev/null; "
+                + "code=$?; "
+                + "printf '%s\\t%s\\t%s\\n' \"$1\" \"$code\" \"$2\" >> " + results + "; "
+                + "[ \"$code\" -eq 0 ]";
+        String jobs = (parallelJobs > 0) ? String.valueOf(parallelJobs)
+                : "$(getconf _NPROCESSORS_ONLN 2>/dev/null || echo 2)";
+        
+        StringBuilder strb = new StringBuilder();
+        strb.append(dialect.header());
+        strb.append(dialect.comment("runs the jobs from the ." + MANIFEST_EXTENSION + " manifest next to this script, "
+                + "exit codes are written to ." + RESULTS_EXTENSION));
+        strb.append(dialect.comment("set VBP_JOBS to change the number of concurrent jobs"));
+        strb.append("base=\"${0%.*}\"\n");
+        strb.append("VBP_RESULTS=\"$base.").append(RESULTS_EXTENSION).append("\"\n");
+        strb.append("export VBP_RESULTS\n");
+        strb.append(": > ").append(results).append('\n');
+        strb.append("xargs -0 -n 3 -P \"${VBP_JOBS:-").append(jobs).append("}\" sh -c ")
+                .append(dialect.quote(job)).append(" vbp-job < \"$base.").append(MANIFEST_EXTENSION).append("\"\n");
+        return strb.toString();
+    }
+    
+    /**
+     * The job runs inside of an inline script, where source and destination are
+     * shell variables.
+     */
+    @Override
+    protected String buildScriptLine(String source, String destination) {
+        return buildInlineCommand(source, destination) + dialect.getLineSeparator();
+    }
+
+    @Override
+    protected void writeScript(File output, String script) throws IOException {
+        super.writeScript(output, script);
+        output.setExecutable(true);
+        
+        String base = removeExtension(output.getName());
+        OutputStream out = new FileOutputStream(new File(output.getParentFile(), base + "." + MANIFEST_EXTENSION));
+        try {
+            out.write(manifest);
+        } finally {
+            out.close();
+        }
+    }
+    
+    /**
+     * @return the job manifest, available after buildScript() has been called
+     */
+    public byte[] getManifest() {
+        return manifest;
+    }
+    
+    // helpers
+    
+    /**
+     * @param files the files to sort
+     * @return a copy of the list, sorted by file size (largest first)
+     */
+    protected static List<Path> sortBySize(List<Path> files) {
+        // read every file size only once, not on each comparison
+        final Map<Path,Long> sizes = new HashMap<Path, Long>(files.size());
+        for (Path file : files) {
+            sizes.put(file, PathUtils.size(file));
+        }
+        
+        List<Path> sorted = new ArrayList<Path>(files);
+        Collections.sort(sorted, new Comparator<Path>() {
+            
+            @Override
+            public int compare(Path f1, Path f2) {
+                long l1 = sizes.get(f1);
+                long l2 = sizes.get(f2);
+                return (l1 < l2) ? 1 : ((l1 == l2) ? 0 : -1);
+            }
+        });
+        return sorted;
+    }
+    
+    private static void writeField(ByteArrayOutputStream out, String field, Charset charset) throws IOException {
+        out.write(field.getBytes(charset));
+        out.write(0);
+    }
+    
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2011 Sebastian Straub <sebastian-straub@gmx.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package vbp.model.export;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * <p>Generates a shell script that encodes every single file with several
+ * ffmpeg processes at once, which keeps all cpu cores busy even for one long
+ * recording. Each file is handled in three steps:</p>
+ * <ol>
+ * <li>split: the source is cut into segments of about the configured length
+ * (stream copy, so the cuts are at keyframes)</li>
+ * <li>encode: the segments are encoded concurrently by <code>xargs -P</code>,
+ * using the ffmpeg command line of this export</li>
+ * <li>concat: the encoded segments are joined losslessly with ffmpeg's concat
+ * demuxer (stream copy again)</li>
+ * </ol>
+ * <p>Segments are stored in a temporary folder, which is removed afterwards.
+ * The number of concurrent encoders can be overridden with the environment
+ * variable <code>VBP_JOBS</code> when the script is run.</p>
+ * 
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+public class ExportFFmpegSegmented extends ExportFFmpeg {
+    
+    /** default segment length in seconds */
+    public static final int DEFAULT_SEGMENT_LENGTH = 300;
+    /** container of the split segments, matroska can hold (almost) any codec */
+    protected static final String SEGMENT_EXTENSION = "mkv";
+    
+    /** length of the segments in seconds */
+    protected int segmentLength;
+    /** number of concurrent encoders, 0: number of cpu cores of the executing machine */
+    protected int parallelJobs;
+
+    public ExportFFmpegSegmented(List<Path> files, String commandLine, String executerPath, String renamePattern, int segmentLength, int parallelJobs) {
+        super(files, commandLine, executerPath, renamePattern, ScriptDialect.SHELL);
+        this.segmentLength = (segmentLength > 0) ? segmentLength : DEFAULT_SEGMENT_LENGTH;
+        this.parallelJobs = parallelJobs;
+    }
+
+    public ExportFFmpegSegmented(List<Path> files, String commandLine, String executerPath, File outputFolder, boolean preserveFolders, int segmentLength, int parallelJobs) {
+        super(files, commandLine, executerPath, outputFolder, preserveFolders, ScriptDialect.SHELL);
+        this.segmentLength = (segmentLength > 0) ? segmentLength : DEFAULT_SEGMENT_LENGTH;
+        this.parallelJobs = parallelJobs;
+    }
+
+    @Override
+    protected String buildScriptImplementation(Map<Path, String> outputMapping) {
+        if (!(dialect instanceof ShellScript)) {
+            throw new UnsupportedOperationException("segmented encoding is only supported in shell scripts");
+        }
+        if (hasMixedPresets()) {
+            // all jobs share a single inline command
+            throw new UnsupportedOperationException("all files must use the same preset");
+        }
+        
+        StringBuilder strb = new StringBuilder();
+        strb.append(dialect.header());
+        strb.append(dialect.comment("every file is split into segments of " + segmentLength
+                + " s, which are encoded concurrently and joined again"));
+        strb.append(dialect.comment("set VBP_JOBS to change the number of concurrent encoders"));
+        strb.append(buildFunction());
+        
+        for (Path file : files) {
+            try {
+                String source = source(file);
+                String destination = outputMapping.get(file);
+                strb.append("vbp_segmented ").append(dialect.quote(source)).append(' ')
+                        .append(dialect.quote(destination)).append(dialect.getLineSeparator());
+            } catch (IOException ex) {
+                Logger.getLogger(ExportFFmpegSegmented.class.getName()).log(Level.SEVERE, null, ex);
+            }
+        }
+        
+        return strb.toString();
+    }
+    
+    /**
+     * Generates the shell function that encodes a single file (source: $1,
+     * destination: $2) segment by segment.
+     * @return the function definition
+     */
+    protected String buildFunction() {
+        String ffmpeg = dialect.quote(executerPath);
+        String part = ".part." + extractFileExtension();
+        String encode = buildInlineCommand("$1", "${1%." + SEGMENT_EXTENSION + "}" + part) + " < /dev/null";
+        String jobs = (parallelJobs > 0) ? String.valueOf(parallelJobs)
+                : "$(getconf _NPROCESSORS_ONLN 2>/dev/null || echo 2)";
+        
+        StringBuilder strb = new StringBuilder();
+        strb.append("vbp_segmented() {\n");
+        strb.append("    work=$(mktemp -d \"${TMPDIR:-/tmp}/vbp-segments.XXXXXX\") || return 1\n");
+        // split
+        strb.append("    ").append(ffmpeg).append(" -i \"$1\" -c copy -f segment -segment_time ").append(segmentLength)
+                .append(" -reset_timestamps 1 \"$work/%05d.").append(SEGMENT_EXTENSION).append("\" < /dev/null \\\n");
+        // encode
+        strb.append("        && printf '%s\\0' \"$work\"/*.").append(SEGMENT_EXTENSION)
+                .append(" | xargs -0 -n 1 -P \"${VBP_JOBS:-").append(jobs).append("}\" sh -c ")
+                .append(dialect.quote(encode)).append(" vbp-segment \\\n");
+        // concat
+        strb.append("        && (cd \"$work\" && for part in *").append(part)
+                .append("; do printf \"file '%s'\\n\" \"$part\"; done > segments.txt) \\\n");
+        strb.append("        && ").append(ffmpeg)
+                .append(" -f concat -safe 0 -i \"$work/segments.txt\" -c copy \"$2\" < /dev/null\n");
+        strb.append("    code=$?\n");
+        strb.append("    rm -rf \"$work\"\n");
+        strb.append("    return $code\n");
+        strb.append("}\n");
+        return strb.toString();
+    }
+    
+    /**
+     * @return length of the segments in seconds
+     */
+    public int getSegmentLength() {
+        return segmentLength;
+    }
+    
+}
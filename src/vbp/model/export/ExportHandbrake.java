@@ -18,6 +18,9 @@ package vbp.model.export;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.logging.Level;
@@ -26,6 +29,9 @@ import org.jdom.Document;
 import org.jdom.Element;
 import org.jdom.Namespace;
 import org.jdom.output.Format;
+import vbp.model.preset.Encoder;
+import vbp.model.preset.Preset;
+import vbp.util.arg.ShellGrammar;
 import vbp.util.xml.XMLUtil;
 
 /**
@@ -33,17 +39,49 @@ import vbp.util.xml.XMLUtil;
  * @author Sebastian Straub <sebastian-straub@gmx.net>
  */
 public class ExportHandbrake extends Export {
+    
+    /** name of the Handbrake command line interface, used when no executer path is set */
+    public static final String DEFAULT_EXECUTABLE = "HandBrakeCLI";
+    
+    /** the HandBrakeCLI calls of all presets used by this export, compiled once per export */
+    protected Map<Preset, CommandTemplate> templates;
+    /** the arguments of all presets as written into the queue (Windows quoting) */
+    protected Map<Preset, String> queries;
 
-    public ExportHandbrake(List<File> files, String commandLine, String renamePattern) {
+    public ExportHandbrake(List<Path> files, String commandLine, String renamePattern) {
         super(files, "queue", commandLine, renamePattern);
     }
 
-    public ExportHandbrake(List<File> files, String commandLine, File outputFolder, boolean preserveFolders) {
+    public ExportHandbrake(List<Path> files, String commandLine, File outputFolder, boolean preserveFolders) {
         super(files, "queue", commandLine, outputFolder, preserveFolders);
     }
     
     @Override
-    protected String buildScriptImplementation(Map<File, String> outputMapping) {
+    protected void prepare() {
+        this.templates = new HashMap<Preset, CommandTemplate>();
+        this.queries = new HashMap<Preset, String>();
+        for (Preset used : usedPresets()) {
+            List<String> arguments = used.getCommand().getArguments();
+            queries.put(used, ShellGrammar.WINDOWS.join(arguments));
+            
+            List<String> argv = new ArrayList<String>(arguments.size() + 5);
+            argv.add((executerPath != null) ? executerPath : DEFAULT_EXECUTABLE);
+            argv.add("-i");
+            argv.add(null);     // source
+            argv.add("-o");
+            argv.add(null);     // destination
+            argv.addAll(arguments);
+            templates.put(used, new CommandTemplate(argv, 2, 4));
+        }
+    }
+    
+    @Override
+    protected Encoder getEncoder() {
+        return Encoder.HANDBRAKE;
+    }
+    
+    @Override
+    protected String buildScriptImplementation(Map<Path, String> outputMapping) {
         
         // basic document
         Document doc = buildBasicDocument();
@@ -54,10 +92,10 @@ public class ExportHandbrake extends Export {
         String title = "1";
         boolean customQuery = true;
 
-        for (File file : files) {
+        for (Path file : files) {
             try {
                 // build missing contents
-                String source = file.getCanonicalPath();
+                String source = source(file);
                 String destination = outputMapping.get(file);
 
                 // build job wrapper in xml
@@ -67,7 +105,7 @@ public class ExportHandbrake extends Export {
                 // add specific properties
                 job.addContent(new Element("Id").setText(String.valueOf(counter)));
                 job.addContent(new Element("Title").setText(title));
-                job.addContent(new Element("Query").setText(buildScriptLine(source, destination)));
+                job.addContent(new Element("Query").setText(buildQuery(queries.get(presetFor(file)), source, destination)));
                 job.addContent(new Element("CustomQuery").setText(Boolean.toString(customQuery)));
                 job.addContent(new Element("Source").setText(source));
                 job.addContent(new Element("Destination").setText(destination));
@@ -80,31 +118,32 @@ public class ExportHandbrake extends Export {
             }
 
         }
-        
-        // Debugging
-        System.out.println(XMLUtil.xmlToString(doc, Format.getPrettyFormat()));
 
         return XMLUtil.xmlToString(doc, Format.getPrettyFormat());
     }
 
     @Override
     protected String buildScriptLine(String source, String destination) {
-        return String.format("-i \"%s\" -o \"%s\" %s", source, destination, commandLine);
+        return buildQuery(queries.get(preset), source, destination);
+    }
+    
+    /**
+     * @param query the arguments of the preset, as written into the queue
+     * @param source the canonical path to the source file
+     * @param destination the canonical path to the destination file
+     * @return the query of a single job
+     */
+    protected static String buildQuery(String query, String source, String destination) {
+        return new StringBuilder(source.length() + destination.length() + query.length() + 16)
+                .append("-i \"").append(source).append("\" -o \"").append(destination).append("\" ")
+                .append(query).toString();
     }
 
     @Override
-    protected String extractFileExtension() {
-        int formatBegin = commandLine.indexOf("-f ") + 3;
-        while(commandLine.charAt(formatBegin) == ' ') {
-            formatBegin++;
-        }
-        int formatEnd = formatBegin+1;
-        while(commandLine.charAt(formatEnd) != ' ') {
-            formatEnd++;
-        }
-        return commandLine.substring(formatBegin, formatEnd);
+    protected List<String> buildArguments(Path file, String source, String destination) {
+        return templates.get(presetFor(file)).command(source, destination);
     }
-    
+
     // helpers
     
     /**
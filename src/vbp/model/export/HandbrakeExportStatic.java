@@ -21,6 +21,7 @@ import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.Writer;
+import java.nio.file.Path;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -35,6 +36,7 @@ import org.jdom.Namespace;
 import org.jdom.output.Format;
 import sebi.util.threads.FutureBuilder;
 import vbp.gui.FileFilters;
+import vbp.util.fs.PathUtils;
 
 /**
  * This is the export script to create Handbrake-Queue files out of a list of
@@ -58,7 +60,7 @@ public class HandbrakeExportStatic {
      *        they will be saved in the same folder as the originals the cannot have
      *        the exact same name, including extension)
      */
-    public static void saveQueue(JFileChooser fileChooser, final List<File> files, final String query, final String renamePattern) {
+    public static void saveQueue(JFileChooser fileChooser, final List<Path> files, final String query, final String renamePattern) {
         
         Future<String> queue = new FutureBuilder<String>() {
             @Override
@@ -70,7 +72,7 @@ public class HandbrakeExportStatic {
     }
     
     // comment
-    public static void saveQueue(JFileChooser fileChooser, final List<File> files, final String query, final File outputFolder, final boolean preserveFolders) {
+    public static void saveQueue(JFileChooser fileChooser, final List<Path> files, final String query, final File outputFolder, final boolean preserveFolders) {
         
         Future<String> queue = new FutureBuilder<String>() {
             @Override
@@ -125,10 +127,10 @@ public class HandbrakeExportStatic {
      *        the exact same name, including extension)
      * @return the full query-file as string
      */
-    protected static String buildQueue(List<File> files, String query, String renamePattern) {
+    protected static String buildQueue(List<Path> files, String query, String renamePattern) {
 
-        Map<File,String> output = new HashMap<File, String>(files.size());
-        for (File input : files) {
+        Map<Path,String> output = new HashMap<Path, String>(files.size());
+        for (Path input : files) {
             output.put(input, applyRenamePattern(input, renamePattern, query));
         }
         
@@ -149,10 +151,10 @@ public class HandbrakeExportStatic {
      *        true: write the file path to the source file into the output folder
      * @return the full query-file as string
      */
-    public static String buildQueue(List<File> files, String query, File outputFolder, boolean preserveStructure) {
+    public static String buildQueue(List<Path> files, String query, File outputFolder, boolean preserveStructure) {
         
-        Map<File,String> output = new HashMap<File, String>(files.size());
-        for (File input : files) {
+        Map<Path,String> output = new HashMap<Path, String>(files.size());
+        for (Path input : files) {
             output.put(input, generateOutputFile(input, outputFolder, preserveStructure, query));
         }
         
@@ -168,7 +170,7 @@ public class HandbrakeExportStatic {
      * @param output a map containing the exact output location for every file
      * @return the full query-file as string
      */
-    private static String buildQueueWorker(List<File> input, String query, Map<File,String> output) {
+    private static String buildQueueWorker(List<Path> input, String query, Map<Path,String> output) {
         
         // basic document
         Document doc = buildBasicDocument();
@@ -179,10 +181,10 @@ public class HandbrakeExportStatic {
         String title = "1";
         boolean customQuery = true;
 
-        for (File file : input) {
+        for (Path file : input) {
             try {
                 // build missing contents
-                String source = file.getCanonicalPath();
+                String source = PathUtils.canonicalPath(file);
                 String destination = output.get(file);
 
                 // build job wrapper in xml
@@ -251,11 +253,11 @@ public class HandbrakeExportStatic {
      * @param query the handbrake query
      * @return the destination file path, renamed and with correct extension.
      */
-    protected static String applyRenamePattern(File source, String pattern, String query) {
+    protected static String applyRenamePattern(Path source, String pattern, String query) {
         
         // gather properties
-        String fullName = removeExtension(source.getName());
-        String path = source.getParent();
+        String fullName = removeExtension(PathUtils.fileName(source));
+        String path = PathUtils.parent(source);
         
         // replace generics (e.g. {name} )
         String name = pattern.replaceAll("\\{name\\}", fullName);
@@ -274,14 +276,14 @@ public class HandbrakeExportStatic {
      * @param query the handbrake query
      * @return the destination file path, with correct extension.
      */
-    protected static String generateOutputFile(File input, File outputFolder, boolean preserveStructure, String query) {
+    protected static String generateOutputFile(Path input, File outputFolder, boolean preserveStructure, String query) {
         
-        String fileName = removeExtension(input.getName());
+        String fileName = removeExtension(PathUtils.fileName(input));
         String path = outputFolder.getPath();
         
         if (preserveStructure) {
             String pathParent = path;
-            String pathChild = input.getParent().replaceAll(":", "");
+            String pathChild = PathUtils.parent(input).replaceAll(":", "");
             File pathBoth = new File(String.format("%s/%s", pathParent, pathChild));
             path = pathBoth.getPath();
         }
@@ -333,7 +335,7 @@ public class HandbrakeExportStatic {
     /**
      * removes the file extension from a file name, if the name has an extension.
      * If not the unchanged filename will be returned
-     * @param fileName name of the file as String (use File.getName() to get it)
+     * @param fileName name of the file as String (use PathUtils.fileName() to get it)
      * @return filename without extension
      */
     protected static String removeExtension(String fileName) {
@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2011 Sebastian Straub <sebastian-straub@gmx.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package vbp.model.export;
+
+/**
+ * Windows PowerShell scripts.
+ * Arguments are written as verbatim strings in single quotes, where variables
+ * ($) and escape sequences (`) are not interpreted. A single quote (including
+ * the typographic variants PowerShell accepts as quotes) is escaped by doubling
+ * it. Each command is prefixed with the call operator, so the program path
+ * may be quoted as well.
+ * 
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+public class PowerShellScript extends ScriptDialect {
+    
+    /** all characters that PowerShell treats as single quotes */
+    private static final String SINGLE_QUOTES = "'\u2018\u2019\u201A\u201B";
+
+    @Override
+    public String getFileExtension() {
+        return "ps1";
+    }
+
+    @Override
+    public String getDescription() {
+        return "Windows PowerShell (*.ps1)";
+    }
+
+    @Override
+    public String getLineSeparator() {
+        return "\r\n";
+    }
+
+    @Override
+    public String header() {
+        return "";
+    }
+
+    @Override
+    public String quote(String arg) {
+        rejectLineBreaks(arg);
+        
+        StringBuilder strb = new StringBuilder(arg.length() + 2);
+        strb.append('\'');
+        for (int i = 0; i < arg.length(); i++) {
+            char c = arg.charAt(i);
+            if (SINGLE_QUOTES.indexOf(c) >= 0) {
+                strb.append(c);
+            }
+            strb.append(c);
+        }
+        strb.append('\'');
+        return strb.toString();
+    }
+
+    @Override
+    public String comment(String text) {
+        rejectLineBreaks(text);
+        return "# " + text + getLineSeparator();
+    }
+
+    /**
+     * A quoted program name is just a string, the call operator runs it.
+     */
+    @Override
+    protected String callOperator() {
+        return "& ";
+    }
+    
+}
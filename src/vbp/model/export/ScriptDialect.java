@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2011 Sebastian Straub <sebastian-straub@gmx.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package vbp.model.export;
+
+import java.util.List;
+import sebi.util.system.Platform;
+
+/**
+ * A script dialect describes how a list of commands is written down for a
+ * specific command interpreter (cmd.exe, sh, PowerShell...). The most important
+ * part is the correct quoting of arguments: every argument passed to
+ * {@link #command(List)} will reach the called program unchanged, no matter
+ * which special characters it contains.
+ * 
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+public abstract class ScriptDialect {
+    
+    /** Windows batch file (cmd.exe) */
+    public static final ScriptDialect BATCH = new BatchScript();
+    /** POSIX shell script (sh, bash, dash, ...) */
+    public static final ScriptDialect SHELL = new ShellScript();
+    /** Windows PowerShell script */
+    public static final ScriptDialect POWERSHELL = new PowerShellScript();
+    
+    /**
+     * @return the file extension of scripts in this dialect (without '.')
+     */
+    public abstract String getFileExtension();
+    
+    /**
+     * @return a short human readable description, e.g. for a selection box
+     */
+    public abstract String getDescription();
+    
+    /**
+     * @return the line separator that is expected by the interpreter
+     */
+    public abstract String getLineSeparator();
+    
+    /**
+     * @return the first lines of every script (may be empty, never null)
+     */
+    public abstract String header();
+    
+    /**
+     * Quotes a single argument, so the interpreter passes it unchanged to the
+     * called program.
+     * @param arg the raw argument
+     * @return the argument, quoted and escaped if necessary
+     */
+    public abstract String quote(String arg);
+    
+    /**
+     * Generates a comment line (including line separator)
+     * @param text the comment, must not contain line breaks
+     * @return the comment line
+     */
+    public abstract String comment(String text);
+    
+    /**
+     * Generates a single command line (including line separator). The first
+     * element is the program to call, all following elements are its arguments.
+     * Every element will be quoted as required by this dialect.
+     * @param argv program and arguments
+     * @return the command line
+     */
+    public String command(List<String> argv) {
+        StringBuilder strb = new StringBuilder(callOperator());
+        for (int i = 0; i < argv.size(); i++) {
+            if (i > 0) {
+                strb.append(' ');
+            }
+            strb.append(quote(argv.get(i)));
+        }
+        strb.append(getLineSeparator());
+        return strb.toString();
+    }
+    
+    /**
+     * @return the text in front of every command (may be empty, never null)
+     */
+    protected String callOperator() {
+        return "";
+    }
+    
+    @Override
+    public String toString() {
+        return getDescription();
+    }
+    
+    // ++++++++++ static helpers ++++++++++
+    
+    /**
+     * @return all available dialects
+     */
+    public static ScriptDialect[] values() {
+        return new ScriptDialect[] { BATCH, SHELL, POWERSHELL };
+    }
+    
+    /**
+     * Searches the dialect that writes scripts with the given file extension
+     * @param fileExtension the file extension (without '.'), e.g. "sh"
+     * @return the matching dialect or null if there is none
+     */
+    public static ScriptDialect forFileExtension(String fileExtension) {
+        for (ScriptDialect dialect : values()) {
+            if (dialect.getFileExtension().equalsIgnoreCase(fileExtension)) {
+                return dialect;
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * @return the native dialect of the current operating system
+     */
+    public static ScriptDialect platformDefault() {
+        return Platform.isWindows() ? BATCH : SHELL;
+    }
+    
+    /**
+     * Makes sure that an argument does not contain any line breaks, which can't
+     * be represented in line based scripts.
+     * @param arg the argument to check
+     * @throws IllegalArgumentException if the argument contains a line break
+     */
+    protected static void rejectLineBreaks(String arg) {
+        if (arg.indexOf('\n') >= 0 || arg.indexOf('\r') >= 0) {
+            throw new IllegalArgumentException("line breaks can not be represented in this script dialect: " + arg);
+        }
+    }
+    
+}
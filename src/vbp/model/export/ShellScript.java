@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2011 Sebastian Straub <sebastian-straub@gmx.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package vbp.model.export;
+
+/**
+ * POSIX shell scripts (runs in sh, bash, dash, zsh, ...).
+ * Arguments are enclosed in single quotes, where nothing is interpreted by the
+ * shell ($, `, \ and " lose their special meaning). A single quote itself is
+ * written as <code>'\''</code> (end quote, escaped quote, reopen quote).
+ * 
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+public class ShellScript extends ScriptDialect {
+
+    @Override
+    public String getFileExtension() {
+        return "sh";
+    }
+
+    @Override
+    public String getDescription() {
+        return "Linux / Unix (*.sh)";
+    }
+
+    @Override
+    public String getLineSeparator() {
+        return "\n";
+    }
+
+    @Override
+    public String header() {
+        return "#!/bin/sh\n";
+    }
+
+    @Override
+    public String quote(String arg) {
+        if (arg.length() > 0 && isSafe(arg)) {
+            return arg;
+        }
+        StringBuilder strb = new StringBuilder(arg.length() + 2);
+        strb.append('\'');
+        for (int i = 0; i < arg.length(); i++) {
+            char c = arg.charAt(i);
+            if (c == '\'') {
+                strb.append("'\\''");
+            } else {
+                strb.append(c);
+            }
+        }
+        strb.append('\'');
+        return strb.toString();
+    }
+
+    @Override
+    public String comment(String text) {
+        rejectLineBreaks(text);
+        return "# " + text + getLineSeparator();
+    }
+    
+    /**
+     * @param arg the argument to check
+     * @return true if the argument contains only characters that the shell
+     *         never interprets, so it doesn't have to be quoted at all
+     */
+    protected static boolean isSafe(String arg) {
+        for (int i = 0; i < arg.length(); i++) {
+            char c = arg.charAt(i);
+            if (!((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                    || "_@%+=:,./-".indexOf(c) >= 0)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2011 Sebastian Straub <sebastian-straub@gmx.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package vbp.model.preset;
+
+import vbp.util.arg.EncoderCommand;
+import vbp.util.arg.OptionSyntax;
+
+/**
+ * The encoders a preset can be written for. Each encoder knows the syntax of
+ * its options and how it chooses the container of the output file.
+ * 
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+public enum Encoder {
+    
+    FFMPEG("ffmpeg", OptionSyntax.FFMPEG) {
+        
+        /**
+         * ffmpeg guesses the format from the output file extension, unless it
+         * is forced with -f (the forced format name is used as extension, though
+         * this can look ugly - common formats are mapped to their usual extension)
+         */
+        @Override
+        public String inferExtension(EncoderCommand command) {
+            String extension = command.getOutputExtension();
+            if (extension != null) {
+                return extension;
+            }
+            String format = command.getValue("-f");
+            if (format == null) {
+                return "avi";
+            } else if (format.equals("matroska")) {
+                return "mkv";
+            } else if (format.equals("mpegts")) {
+                return "ts";
+            } else if (format.equals("mpeg")) {
+                return "mpg";
+            }
+            return format;
+        }
+    },
+    
+    HANDBRAKE("handbrake", OptionSyntax.HANDBRAKE) {
+        
+        /**
+         * the forced format (newer versions call it e.g. "av_mkv"), or the
+         * format guessed by the output file name, or HandBrake's default
+         */
+        @Override
+        public String inferExtension(EncoderCommand command) {
+            String format = command.getValue("-f", "--format");
+            if (format != null) {
+                return format.startsWith("av_") ? format.substring(3) : format;
+            }
+            String extension = command.getOutputExtension();
+            return (extension != null) ? extension : "mp4";
+        }
+    };
+    
+    /** name of the encoder in settings files and on the command line */
+    protected final String key;
+    /** the options of the encoder */
+    protected final OptionSyntax syntax;
+
+    private Encoder(String key, OptionSyntax syntax) {
+        this.key = key;
+        this.syntax = syntax;
+    }
+    
+    /**
+     * Determines the file extension of the output files from the encoder's
+     * command line.
+     * @param command the parsed command line
+     * @return the file extension (without '.')
+     */
+    public abstract String inferExtension(EncoderCommand command);
+    
+    /**
+     * @return name of the encoder in settings files and on the command line
+     */
+    public String getKey() {
+        return key;
+    }
+    
+    /**
+     * @return the options of the encoder
+     */
+    public OptionSyntax getSyntax() {
+        return syntax;
+    }
+    
+    /**
+     * @param key name of the encoder (case-insensitive)
+     * @return the encoder with this name, or null
+     */
+    public static Encoder forKey(String key) {
+        for (Encoder encoder : values()) {
+            if (encoder.key.equalsIgnoreCase(key)) {
+                return encoder;
+            }
+        }
+        return null;
+    }
+    
+}
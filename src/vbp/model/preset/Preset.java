@@ -0,0 +1,239 @@
+/*
+ * Copyright (C) 2011 Sebastian Straub <sebastian-straub@gmx.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package vbp.model.preset;
+
+import java.nio.file.FileSystems;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+import vbp.util.arg.EncoderCommand;
+import vbp.util.arg.ShellGrammar;
+import vbp.util.fs.PathUtils;
+
+/**
+ * <p>A named set of encoder options. The command line is parsed once, when the
+ * preset is created, which also determines the extension of the output files
+ * (unless it is given explicitly).</p>
+ * 
+ * <p>A preset can be assigned to files by rule: files whose name matches one
+ * of its patterns (glob syntax, e.g. <code>*.mov</code>, case-insensitive) get
+ * this preset instead of the one selected for the batch.</p>
+ * 
+ * <p>Presets are immutable, use withCommandLine() to change the options.</p>
+ * 
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+public class Preset {
+    
+    /** valid file extensions */
+    protected static final Pattern EXTENSION = Pattern.compile("[A-Za-z0-9_]+");
+    
+    /** name of the preset, unique in a library */
+    protected final String name;
+    /** the encoder this preset is written for */
+    protected final Encoder encoder;
+    /** the command line, as entered by the user */
+    protected final String commandLine;
+    /** the extension of the output files, if given explicitly (may be null) */
+    protected final String explicitExtension;
+    /** file name patterns of the files this preset is assigned to */
+    protected final List<String> patterns;
+    /** splits the command line into words */
+    protected final ShellGrammar grammar;
+    
+    // derived
+    /** the parsed command line */
+    protected final EncoderCommand command;
+    /** the extension of the output files */
+    protected final String extension;
+    /** the compiled patterns (invalid patterns are left out) */
+    protected final List<PathMatcher> matchers;
+    /** problems found while compiling the patterns */
+    protected final List<String> patternProblems = new ArrayList<String>(0);
+    
+    /**
+     * Creates a preset without patterns, with inferred extension
+     * @param name name of the preset
+     * @param encoder the encoder this preset is written for
+     * @param commandLine the command line
+     */
+    public Preset(String name, Encoder encoder, String commandLine) {
+        this(name, encoder, commandLine, null, Collections.<String>emptyList(), ShellGrammar.platformDefault());
+    }
+    
+    /**
+     * Creates a preset
+     * @param name name of the preset
+     * @param encoder the encoder this preset is written for
+     * @param commandLine the command line
+     * @param extension the extension of the output files, or null to infer it
+     *        from the command line
+     * @param patterns file name patterns of the files this preset is assigned to
+     * @param grammar splits the command line into words
+     */
+    public Preset(String name, Encoder encoder, String commandLine, String extension, List<String> patterns, ShellGrammar grammar) {
+        this.name = name;
+        this.encoder = encoder;
+        this.commandLine = commandLine;
+        this.explicitExtension = extension;
+        this.patterns = Collections.unmodifiableList(new ArrayList<String>(patterns));
+        this.grammar = grammar;
+        
+        this.command = EncoderCommand.parse(commandLine, encoder.getSyntax(), grammar);
+        this.extension = (extension != null) ? extension : encoder.inferExtension(command);
+        this.matchers = compile(this.patterns);
+    }
+    
+    /**
+     * @param commandLine the new command line
+     * @return a copy of this preset with another command line
+     */
+    public Preset withCommandLine(String commandLine) {
+        return new Preset(name, encoder, commandLine, explicitExtension, patterns, grammar);
+    }
+    
+    /**
+     * Checks if the preset can be used for an export.
+     * @return all problems (empty if the preset is valid)
+     */
+    public List<String> validate() {
+        List<String> problems = new ArrayList<String>();
+        if (name == null || name.trim().isEmpty()) {
+            problems.add("the preset has no name");
+        } else if (!name.equals(name.trim()) || name.indexOf('[') >= 0 || name.indexOf(']') >= 0) {
+            problems.add("invalid name: " + name);
+        }
+        
+        List<EncoderCommand.Option> options = new ArrayList<EncoderCommand.Option>(command.getInputOptions());
+        options.addAll(command.getOptions());
+        for (EncoderCommand.Option option : options) {
+            if (option.getName() == null) {
+                problems.add("unexpected argument: " + option.getValue());
+            } else if (option.getValue() == null && !encoder.getSyntax().isFlag(option.getName())
+                    && !encoder.getSyntax().isOptional(option.getName())) {
+                problems.add("option " + option.getName() + " requires a value");
+            }
+        }
+        
+        if (!EXTENSION.matcher(extension).matches()) {
+            problems.add("invalid file extension: " + extension);
+        }
+        problems.addAll(patternProblems);
+        return problems;
+    }
+    
+    /**
+     * @param file any file
+     * @return true if the name of the file matches one of the patterns
+     */
+    public boolean matches(Path file) {
+        if (matchers.isEmpty()) {
+            return false;
+        }
+        Path fileName;
+        try {
+            fileName = Paths.get(PathUtils.fileName(file).toLowerCase());
+        } catch (InvalidPathException ex) {
+            return false;   // can't be matched on this platform
+        }
+        for (PathMatcher matcher : matchers) {
+            if (matcher.matches(fileName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    // <editor-fold desc="getter">
+    
+    /**
+     * @return name of the preset, unique in a library
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the encoder this preset is written for
+     */
+    public Encoder getEncoder() {
+        return encoder;
+    }
+
+    /**
+     * @return the command line, as entered by the user
+     */
+    public String getCommandLine() {
+        return commandLine;
+    }
+
+    /**
+     * @return the parsed command line
+     */
+    public EncoderCommand getCommand() {
+        return command;
+    }
+
+    /**
+     * @return the extension of the output files (explicit or inferred)
+     */
+    public String getExtension() {
+        return extension;
+    }
+
+    /**
+     * @return the extension of the output files, if given explicitly (may be null)
+     */
+    public String getExplicitExtension() {
+        return explicitExtension;
+    }
+
+    /**
+     * @return file name patterns of the files this preset is assigned to
+     */
+    public List<String> getPatterns() {
+        return patterns;
+    }
+    
+    // </editor-fold>
+    
+    @Override
+    public String toString() {
+        return name;
+    }
+    
+    // -------------- helpers --------------
+    
+    private List<PathMatcher> compile(List<String> patterns) {
+        List<PathMatcher> compiled = new ArrayList<PathMatcher>(patterns.size());
+        for (String pattern : patterns) {
+            try {
+                compiled.add(FileSystems.getDefault().getPathMatcher("glob:" + pattern.toLowerCase()));
+            } catch (IllegalArgumentException ex) {
+                // PatternSyntaxException included
+                patternProblems.add("invalid pattern: " + pattern);
+            }
+        }
+        return compiled;
+    }
+    
+}
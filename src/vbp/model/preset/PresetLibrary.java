@@ -0,0 +1,239 @@
+/*
+ * Copyright (C) 2011 Sebastian Straub <sebastian-straub@gmx.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package vbp.model.preset;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.ini4j.Ini;
+import org.ini4j.Profile.Section;
+import vbp.util.arg.ShellGrammar;
+import vbp.util.timing.Counter;
+import vbp.util.timing.Metrics;
+import vbp.util.timing.Timer;
+
+/**
+ * <p>All presets of the user, stored in the settings directory. Only valid
+ * presets are accepted (see {@link Preset#validate()}).</p>
+ * 
+ * <p>The order of the presets is the order of the rules: a file gets the first
+ * preset (of the right encoder) whose pattern matches its name.</p>
+ * 
+ * <p>File format (ini, one section per preset):</p>
+ * <pre>
+ * [x264]
+ * encoder = ffmpeg
+ * command = ffmpeg -i in.avi -c:v libx264 -crf 22 out.mkv
+ * extension = mkv      (optional, inferred from the command by default)
+ * match = *.mov        (optional, may be repeated)
+ * </pre>
+ * 
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+public class PresetLibrary {
+    
+    // metrics
+    protected static final Timer ASSIGN = Metrics.timer("presets.assign");
+    protected static final Counter ASSIGNED = Metrics.counter("presets.assigned");
+    
+    /** name of the preset file in the settings directory */
+    public static final String FILE_NAME = "presets.ini";
+    
+    /** name of the default ffmpeg preset */
+    public static final String DEFAULT_FFMPEG = "mpeg";
+    /** name of the default HandBrake preset */
+    public static final String DEFAULT_HANDBRAKE = "x264-mkv";
+    
+    /** all presets by name, in rule order */
+    protected final Map<String, Preset> presets = new LinkedHashMap<String, Preset>();
+    
+    /**
+     * @return a library with the built-in presets
+     */
+    public static PresetLibrary defaults() {
+        PresetLibrary library = new PresetLibrary();
+        library.put(new Preset(DEFAULT_FFMPEG, Encoder.FFMPEG, "ffmpeg -i video_origine.avi video_finale.mpg"));
+        library.put(new Preset("x264", Encoder.FFMPEG,
+                "ffmpeg -i input.avi -c:v libx264 -preset slow -crf 22 -c:a aac -b:a 160k output.mkv"));
+        library.put(new Preset(DEFAULT_HANDBRAKE, Encoder.HANDBRAKE, "-f mkv --strict-anamorphic -e x264 -q 25 -a 1 "
+                + "-E lame -6 dpl2 -R Auto -B 128 -D 0.0 -x ref=2:bframes=2:subq=6:mixed-refs=0:weightb=0:8x8dct=0:trellis=0 --verbose=1"));
+        return library;
+    }
+    
+    /**
+     * Adds the preset, or replaces the preset with the same name (which keeps
+     * its position).
+     * @param preset the preset
+     * @throws IllegalArgumentException if the preset is not valid
+     */
+    public void put(Preset preset) {
+        List<String> problems = preset.validate();
+        if (!problems.isEmpty()) {
+            throw new IllegalArgumentException(preset.getName() + ": " + join(problems));
+        }
+        presets.put(preset.getName(), preset);
+    }
+    
+    /**
+     * @param name name of the preset
+     * @return the preset, or null if there is none with this name
+     */
+    public Preset get(String name) {
+        return presets.get(name);
+    }
+    
+    /**
+     * @param name name of the preset
+     * @return true if the preset has been removed
+     */
+    public boolean remove(String name) {
+        return presets.remove(name) != null;
+    }
+    
+    /**
+     * @return all presets, in rule order
+     */
+    public List<Preset> getPresets() {
+        return new ArrayList<Preset>(presets.values());
+    }
+    
+    /**
+     * @param encoder the encoder
+     * @return all presets for the encoder, in rule order
+     */
+    public List<Preset> getPresets(Encoder encoder) {
+        List<Preset> list = new ArrayList<Preset>();
+        for (Preset preset : presets.values()) {
+            if (preset.getEncoder() == encoder) {
+                list.add(preset);
+            }
+        }
+        return list;
+    }
+    
+    /**
+     * Assigns a preset to every file, by rule: the first preset for the same
+     * encoder whose pattern matches the file.
+     * @param files the files of a batch
+     * @param selected the preset selected for the batch, used for all other files
+     * @return the files that get another preset than the selected one (empty
+     *         if the selected preset is used for every file)
+     */
+    public Map<Path, Preset> assign(List<Path> files, Preset selected) {
+        List<Preset> rules = new ArrayList<Preset>();
+        for (Preset preset : presets.values()) {
+            if (preset.getEncoder() == selected.getEncoder() && !preset.getPatterns().isEmpty()) {
+                rules.add(preset);
+            }
+        }
+        if (rules.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        
+        long start = ASSIGN.start();
+        Map<Path, Preset> assignment = new HashMap<Path, Preset>();
+        for (Path file : files) {
+            for (Preset rule : rules) {
+                if (rule.matches(file)) {
+                    if (rule.getName().equals(selected.getName())) {
+                        break;  // the selected preset anyway
+                    }
+                    assignment.put(file, rule);
+                    break;
+                }
+            }
+        }
+        ASSIGN.stop(start);
+        ASSIGNED.add(assignment.size());
+        return assignment;
+    }
+    
+    // ++++++++++ load and save ++++++++++
+    
+    /**
+     * Reads the presets from a file. Invalid presets are skipped (and logged).
+     * @param file the preset file
+     * @return the library
+     * @throws IOException if the file can't be read
+     */
+    public static PresetLibrary load(File file) throws IOException {
+        PresetLibrary library = new PresetLibrary();
+        Ini ini = new Ini(file);
+        for (Section section : ini.values()) {
+            Encoder encoder = Encoder.forKey(section.get("encoder"));
+            String command = section.get("command");
+            if (encoder == null || command == null) {
+                Logger.getLogger(PresetLibrary.class.getName()).log(Level.WARNING,
+                        "preset {0}: encoder or command missing", section.getName());
+                continue;
+            }
+            String[] patterns = section.getAll("match", String[].class);
+            try {
+                library.put(new Preset(section.getName(), encoder, command, section.get("extension"),
+                        (patterns != null) ? Arrays.asList(patterns) : Collections.<String>emptyList(),
+                        ShellGrammar.platformDefault()));
+            } catch (IllegalArgumentException ex) {
+                Logger.getLogger(PresetLibrary.class.getName()).log(Level.WARNING, ex.getMessage());
+            }
+        }
+        return library;
+    }
+    
+    /**
+     * Writes all presets into a file. Overwrites without asking!
+     * @param file the preset file
+     * @throws IOException if the file can't be written
+     */
+    public void save(File file) throws IOException {
+        Ini ini = new Ini();
+        for (Preset preset : presets.values()) {
+            Section section = ini.add(preset.getName());
+            section.put("encoder", preset.getEncoder().getKey());
+            section.put("command", preset.getCommandLine());
+            if (preset.getExplicitExtension() != null) {
+                section.put("extension", preset.getExplicitExtension());
+            }
+            if (!preset.getPatterns().isEmpty()) {
+                section.putAll("match", preset.getPatterns().toArray(new String[0]));
+            }
+        }
+        ini.store(file);
+    }
+    
+    // -------------- helpers --------------
+    
+    private static String join(List<String> problems) {
+        StringBuilder strb = new StringBuilder();
+        for (String problem : problems) {
+            if (strb.length() > 0) {
+                strb.append(", ");
+            }
+            strb.append(problem);
+        }
+        return strb.toString();
+    }
+    
+}
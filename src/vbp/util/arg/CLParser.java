@@ -16,66 +16,77 @@
  */
 package vbp.util.arg;
 
-import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.List;
-import vbp.util.data.StringIterator;
-
 /**
  * This class implements a basic command line parser. No CLI-Interaction possible,
  * just String manipulation.
  * 
+ * The arguments are not copied: the parser only records where each argument
+ * starts and ends in the command line, and the strings are cut out when an
+ * argument is requested.
+ * 
  * @author Sebastian Straub <sebastian-straub@gmx.net>
  */
 public class CLParser {
     
-    /** List of all Arguments in this command line. The first arg can be the program to be called */
-    protected List<Arg> args = new ArrayList<Arg>();
+    /** the parsed command line */
+    protected final String commandLine;
+    /**
+     * Bounds of all arguments in the command line (including quotation marks):
+     * argument i starts at bounds[2i] and ends before bounds[2i+1]. The first
+     * arg can be the program to be called
+     */
+    protected int[] bounds;
+    /** number of arguments */
+    protected int size;
     
     /**
      * Initializes the CLIParser and parses the commandLine given as an argument.
      * @param commandLine the input command line
      */
     public CLParser(String commandLine) {
-
-        Iterator<Character> it = new StringIterator(commandLine).iterator();
-        boolean leave;
-
-        while (it.hasNext()) {
-            leave = false;
-            char c = it.next();
+        this.commandLine = commandLine;
+        // count first, so the bounds are allocated only once
+        this.size = tokenize(commandLine, null);
+        this.bounds = new int[2*size];
+        tokenize(commandLine, bounds);
+    }
+    
+    /**
+     * Splits the command line into arguments: at spaces, unless they are
+     * surrounded by quotation marks
+     * @param commandLine the command line
+     * @param bounds receives start and end of every argument (may be null)
+     * @return the number of arguments
+     */
+    protected static int tokenize(String commandLine, int[] bounds) {
+        int length = commandLine.length();
+        int count = 0;
+        int i = 0;
+        while (i < length) {
+            char c = commandLine.charAt(i);
             if (c == ' ') {
-                // skip
+                i++;    // skip
+                continue;
+            }
+            
+            int start = i++;
+            if (c == '"') {
+                // up to and including the closing quotation mark
+                while (i < length && commandLine.charAt(i++) != '"') {
+                    // next char
+                }
             } else {
-                Arg arg = new Arg();
-                args.add(arg);
-                StringBuilder str = new StringBuilder();
-                str.append(c);
-
-                if (c == '"') {
-                    arg.surrounded = true;
-                    while (it.hasNext() && leave == false) {
-                        char c2 = it.next();
-                        str.append(c2);
-                        if (c2 == '"') {
-                            leave = true;
-                        }
-                    }
-
-                } else {
-                    while (it.hasNext() && leave == false) {
-                        char c2 = it.next();
-                        if (c2 == ' ') {
-                            leave = true;
-                        } else {
-                            str.append(c2);
-                        }
-                    }
+                while (i < length && commandLine.charAt(i) != ' ') {
+                    i++;
                 }
-
-                arg.value = str.toString();
             }
+            if (bounds != null) {
+                bounds[2*count] = start;
+                bounds[2*count+1] = i;
+            }
+            count++;
         }
+        return count;
     }
     
     // <editor-fold desc="retreive">
@@ -86,8 +97,8 @@ public class CLParser {
      *         or null if input was empty
      */
     public String getFirstArg() {
-        if(args.size() > 0) {
-            return args.get(0).getValue();
+        if(size > 0) {
+            return value(0);
         }
         return null;
     }
@@ -97,8 +108,8 @@ public class CLParser {
      * @return the last argument of the command line or null if no arguments exist
      */
     public String getLastArg() {
-        if(args.size() > 0) {
-            return args.get(args.size()-1).getValue();
+        if(size > 0) {
+            return value(size-1);
         }
         return null;
     }
@@ -109,8 +120,8 @@ public class CLParser {
      * @return the String representation of the argument, or null if nonexistent
      */
     public String getNthArg(int n) {
-        if(n < args.size() && n >= 0) {
-            return args.get(n).getValue();
+        if(n < size && n >= 0) {
+            return value(n);
         } else {
             return null;
         }
@@ -123,8 +134,8 @@ public class CLParser {
      */
     public String getSubsequentArg(String preceding) {
         int index = getArgIndex(preceding) + 1;
-        if(index < args.size()) {
-            return args.get(index).getValue();
+        if(index < size) {
+            return value(index);
         }
         return null;
     }
@@ -138,13 +149,14 @@ public class CLParser {
      * @return command line as String
      */
     public String printString() {
-        StringBuilder strb = new StringBuilder();
+        StringBuilder strb = new StringBuilder(commandLine.length());
         
-        for (Arg arg : args) {
-            strb.append(arg.value);
-            strb.append(' ');
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                strb.append(' ');
+            }
+            strb.append(commandLine, bounds[2*i], bounds[2*i+1]);
         }
-        strb.deleteCharAt(strb.length()-1);
         
         return strb.toString();
     }
@@ -179,8 +191,9 @@ public class CLParser {
      * @return true on success, false means usually the argument does not exist
      */
     public boolean removeArg(String arg) {
-        if(exists(arg)) {
-            args.remove(getArgIndex(arg));
+        int index = getArgIndex(arg);
+        if(index >= 0) {
+            remove(index);
             return true;
         } else {
             return false;   // arg not found
@@ -194,11 +207,11 @@ public class CLParser {
      *         therefore not removed
      */
     public boolean removeSubsequentArg(String arg) {
-        if(exists(arg)) {
-            int index = getArgIndex(arg);
-            args.remove(index);     // remove arg
-            if(index < args.size()) {
-                args.remove(index);     // remove subsequent
+        int index = getArgIndex(arg);
+        if(index >= 0) {
+            remove(index);     // remove arg
+            if(index < size) {
+                remove(index);     // remove subsequent
                 return true;
             } else {
                 return false;   // no subsequent arg exists
@@ -214,8 +227,8 @@ public class CLParser {
      * @return true on success, false means index out of bounds
      */
     public boolean removeNthArg(int n) {
-        if(n < args.size() && n >= 0) {
-            args.remove(n);
+        if(n < size && n >= 0) {
+            remove(n);
             return true;
         } else {
             return false;   // out of bounds
@@ -227,8 +240,8 @@ public class CLParser {
      * @return true on success, false means no args left.
      */
     public boolean removeFirstArg() {
-        if(!args.isEmpty()) {
-            args.remove(0);
+        if(size > 0) {
+            remove(0);
             return true;
         } else {
             return false;   // empty
@@ -240,8 +253,8 @@ public class CLParser {
      * @return true on success, false means no args left.
      */
     public boolean removeLastArg() {
-        if(!args.isEmpty()) {
-            args.remove(args.size()-1);
+        if(size > 0) {
+            size--;
             return true;
         } else {
             return false;   // empty
@@ -259,12 +272,7 @@ public class CLParser {
      *         (only exact fit, whitespaces will not be ignored)
      */
     public boolean exists(String arg) {
-        for (Arg argo : args) {
-            if(arg.equals(argo.getValue()) || arg.equals(argo.value)) {
-                return true;
-            }
-        }
-        return false;
+        return getArgIndex(arg) >= 0;
     }
     
     /**
@@ -273,8 +281,10 @@ public class CLParser {
      * @return the index of the arg in the list of arguments
      */
     public int getArgIndex(String arg) {
-        for (int i=0; i<args.size(); i++) {
-            if(arg.equals(args.get(i).getValue()) || arg.equals(args.get(i).value)) {
+        for (int i=0; i<size; i++) {
+            int start = bounds[2*i];
+            int end = bounds[2*i+1];
+            if(matches(arg, start, end) || (isQuoted(start, end) && matches(arg, start+1, end-1))) {
                 return i;
             }
         }
@@ -293,21 +303,44 @@ public class CLParser {
     
     // </editor-fold>
     
-    // <editor-fold desc="Inner Classes">
+    // <editor-fold desc="arguments">
     
-    protected class Arg {
-        
-        protected boolean surrounded = false;
-        protected String value;
-        
-        public String getValue() {
-            if(surrounded) {
-                return value.substring(1, value.length()-1);
-            } else {
-                return value;
-            }
+    /**
+     * Removes an argument, the following arguments move up
+     * @param n index of the argument
+     */
+    protected void remove(int n) {
+        System.arraycopy(bounds, 2*n+2, bounds, 2*n, 2*(size-n-1));
+        size--;
+    }
+    
+    /**
+     * @param n index of the argument
+     * @return the argument without surrounding quotation marks
+     */
+    protected String value(int n) {
+        int start = bounds[2*n];
+        int end = bounds[2*n+1];
+        if (isQuoted(start, end)) {
+            return commandLine.substring(start+1, end-1);
+        } else if (commandLine.charAt(start) == '"') {
+            return commandLine.substring(start+1, end);     // not closed
         }
-        
+        return commandLine.substring(start, end);
+    }
+    
+    /**
+     * @return true, if the argument is surrounded by quotation marks
+     */
+    protected boolean isQuoted(int start, int end) {
+        return end - start >= 2 && commandLine.charAt(start) == '"' && commandLine.charAt(end-1) == '"';
+    }
+    
+    /**
+     * @return true, if the part of the command line equals the string
+     */
+    protected boolean matches(String string, int start, int end) {
+        return string.length() == end - start && commandLine.regionMatches(start, string, 0, end - start);
     }
     
     // </editor-fold>
@@ -0,0 +1,314 @@
+/*
+ * Copyright (C) 2011 Sebastian Straub <sebastian-straub@gmx.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package vbp.util.arg;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * <p>An encoder command line, split into the parts an export needs: the
+ * program, the input files, the options and the output file. The command line
+ * is split into words by a {@link ShellGrammar}, the words are assigned to
+ * options by an {@link OptionSyntax}.</p>
+ * 
+ * <p>Example (ffmpeg): <code>ffmpeg -ss 10 -i "in file.avi" -c:v libx264 -f
+ * matroska out.mkv</code> has the input <code>in file.avi</code>, the input
+ * option <code>-ss 10</code>, the options <code>-c:v libx264 -f matroska</code>
+ * and the output <code>out.mkv</code>.</p>
+ * 
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+public class EncoderCommand {
+    
+    /** the program, or null if the command line starts with an option */
+    protected String program;
+    /** all input files */
+    protected List<String> inputs = new ArrayList<String>();
+    /** the options that apply to the (last) input, in order */
+    protected List<Option> inputOptions = new ArrayList<Option>();
+    /** all other options and operands, in order */
+    protected List<Option> options = new ArrayList<Option>();
+    /** the output file, or null */
+    protected String output;
+    
+    protected EncoderCommand() {
+        // use parse()
+    }
+    
+    /**
+     * Parses the command line with the grammar of the platform we are running on.
+     * @param commandLine the command line (may contain the program, inputs and output)
+     * @param syntax the options of the encoder
+     * @return the parsed command line
+     */
+    public static EncoderCommand parse(String commandLine, OptionSyntax syntax) {
+        return parse(commandLine, syntax, ShellGrammar.platformDefault());
+    }
+    
+    /**
+     * Parses the command line.
+     * @param commandLine the command line (may contain the program, inputs and output)
+     * @param syntax the options of the encoder
+     * @param grammar splits the command line into words
+     * @return the parsed command line
+     */
+    public static EncoderCommand parse(String commandLine, OptionSyntax syntax, ShellGrammar grammar) {
+        EncoderCommand cmd = new EncoderCommand();
+        List<String> words = grammar.split(commandLine);
+        
+        int i = 0;
+        if (!words.isEmpty() && syntax.isProgram(words.get(0))) {
+            cmd.program = words.get(i++);
+        }
+        
+        int operand = -1;   // index of the last operand in options
+        while (i < words.size()) {
+            String word = words.get(i++);
+            
+            if (!syntax.isOption(word)) {
+                operand = cmd.options.size();
+                cmd.options.add(new Option(null, word, null));
+                continue;
+            }
+            
+            for (Option option : split(word, syntax)) {
+                if (option.value == null && !syntax.isFlag(option.name) && !syntax.isOptional(option.name)
+                        && i < words.size()) {
+                    option.value = words.get(i++);
+                }
+                if (syntax.isInput(option.name) && option.value != null) {
+                    cmd.inputs.add(option.value);
+                    if (syntax.isInputScoped()) {
+                        // everything up to here belongs to this input
+                        cmd.inputOptions.addAll(cmd.options);
+                        cmd.options.clear();
+                        operand = -1;
+                    }
+                } else if (syntax.isOutput(option.name) && option.value != null) {
+                    cmd.output = option.value;
+                } else {
+                    cmd.options.add(option);
+                }
+            }
+        }
+        
+        if (syntax.isPositionalOutput() && operand >= 0) {
+            cmd.output = cmd.options.remove(operand).value;
+        }
+        return cmd;
+    }
+    
+    /**
+     * Splits a word into options: "--name=value" has an attached value, and in
+     * getopt syntax "-abc" are several options or an option with attached value.
+     */
+    protected static List<Option> split(String word, OptionSyntax syntax) {
+        if (word.startsWith("--")) {
+            int eq = word.indexOf('=');
+            if (eq > 2) {
+                return Collections.singletonList(new Option(word.substring(0, eq), word.substring(eq + 1), "="));
+            }
+        } else if (syntax.isGetopt() && word.length() > 2) {
+            List<Option> cluster = new ArrayList<Option>(2);
+            for (int i = 1; i < word.length(); i++) {
+                String name = "-" + word.charAt(i);
+                if (syntax.isFlag(name)) {
+                    cluster.add(new Option(name, null, null));
+                } else if (i + 1 < word.length()) {
+                    cluster.add(new Option(name, word.substring(i + 1), ""));
+                    break;
+                } else {
+                    cluster.add(new Option(name, null, null));
+                }
+            }
+            return cluster;
+        }
+        return Collections.singletonList(new Option(word, null, null));
+    }
+    
+    // <editor-fold desc="retreive">
+    
+    /**
+     * @return the program, or null if the command line starts with an option
+     */
+    public String getProgram() {
+        return program;
+    }
+    
+    /**
+     * @return all input files (empty if there are none)
+     */
+    public List<String> getInputs() {
+        return inputs;
+    }
+    
+    /**
+     * @return the output file, or null
+     */
+    public String getOutput() {
+        return output;
+    }
+    
+    /**
+     * @return the extension of the output file (without '.'), or null if there
+     *         is no output or it has no extension
+     */
+    public String getOutputExtension() {
+        if (output == null) {
+            return null;
+        }
+        int name = Math.max(output.lastIndexOf('/'), output.lastIndexOf('\\')) + 1;
+        int ext = output.lastIndexOf('.');
+        return (ext > name && ext < output.length() - 1) ? output.substring(ext + 1) : null;
+    }
+    
+    /**
+     * @return the options that apply to the last input, in order
+     */
+    public List<Option> getInputOptions() {
+        return inputOptions;
+    }
+    
+    /**
+     * @return all options that don't apply to an input, in order
+     */
+    public List<Option> getOptions() {
+        return options;
+    }
+    
+    /**
+     * Returns the value of an option that doesn't apply to an input. If it is
+     * given more than once, the last one wins (like in most programs).
+     * @param names the option and its aliases, e.g. "-f", "--format"
+     * @return the value of the option, or null if it does not exist or has no value
+     */
+    public String getValue(String... names) {
+        String value = null;
+        for (Option option : options) {
+            for (String name : names) {
+                if (name.equals(option.name)) {
+                    value = option.value;
+                }
+            }
+        }
+        return value;
+    }
+    
+    /**
+     * @param names the option and its aliases, e.g. "-f", "--format"
+     * @return true, if the option exists (and doesn't apply to an input)
+     */
+    public boolean exists(String... names) {
+        for (Option option : options) {
+            for (String name : names) {
+                if (name.equals(option.name)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+    
+    // </editor-fold>
+    
+    // <editor-fold desc="print">
+    
+    /**
+     * @return the arguments of the input options, as the program receives them
+     */
+    public List<String> getInputArguments() {
+        return arguments(inputOptions);
+    }
+    
+    /**
+     * @return the arguments of all other options, as the program receives them
+     *         (without program, inputs and output)
+     */
+    public List<String> getArguments() {
+        return arguments(options);
+    }
+    
+    protected static List<String> arguments(List<Option> options) {
+        List<String> argv = new ArrayList<String>(options.size() * 2);
+        for (Option option : options) {
+            option.addTo(argv);
+        }
+        return argv;
+    }
+    
+    // </editor-fold>
+    
+    /**
+     * A single option with its value, or an operand (then the name is null).
+     */
+    public static class Option {
+        
+        /** name of the option (including dashes), null for operands */
+        protected final String name;
+        /** the value, or null */
+        protected String value;
+        /** separator of an attached value ("=" or ""), null if the value is a word of its own */
+        protected final String attached;
+
+        protected Option(String name, String value, String attached) {
+            this.name = name;
+            this.value = value;
+            this.attached = attached;
+        }
+        
+        /**
+         * @return name of the option (including dashes), null for operands
+         */
+        public String getName() {
+            return name;
+        }
+        
+        /**
+         * @return the value, or null
+         */
+        public String getValue() {
+            return value;
+        }
+        
+        /**
+         * Adds the option to the argument list, the same way it was written.
+         * @param argv the argument list
+         */
+        protected void addTo(List<String> argv) {
+            if (name == null) {
+                argv.add(value);
+            } else if (attached != null) {
+                argv.add(name + attached + value);
+            } else {
+                argv.add(name);
+                if (value != null) {
+                    argv.add(value);
+                }
+            }
+        }
+        
+        @Override
+        public String toString() {
+            List<String> argv = new ArrayList<String>(2);
+            addTo(argv);
+            return ShellGrammar.POSIX.join(argv);
+        }
+        
+    }
+    
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright (C) 2011 Sebastian Straub <sebastian-straub@gmx.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package vbp.util.arg;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Describes the options an encoder understands: which of them take a value,
+ * which name the input and output files, and how values may be attached to
+ * their option. Options that are not known take the next word as value, so
+ * only the options without value have to be listed.
+ * 
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+public class OptionSyntax {
+    
+    /**
+     * ffmpeg (and avconv): every option consists of a single dash and a name,
+     * optionally with stream specifier (<code>-c:v</code>). Options before an
+     * input apply to this input, the output is the last word that is no option.
+     */
+    public static final OptionSyntax FFMPEG = new OptionSyntax(
+            set("ffmpeg", "avconv"),
+            set("-i"),
+            set(),
+            set("-y", "-n", "-an", "-vn", "-sn", "-dn", "-re", "-shortest", "-hide_banner", "-nostdin",
+                "-stats", "-nostats", "-copyts", "-start_at_zero", "-accurate_seek", "-noaccurate_seek",
+                "-benchmark", "-benchmark_all", "-dump", "-hex", "-ignore_unknown", "-copy_unknown",
+                "-xerror", "-report", "-vstats", "-autorotate", "-noautorotate", "-bitexact",
+                "-sameq", "-deinterlace", "-intra", "-psnr", "-version", "-help", "-h", "-L",
+                "-formats", "-codecs", "-encoders", "-decoders", "-filters", "-pix_fmts", "-sample_fmts"),
+            set(),
+            false, true, true);
+    
+    /**
+     * HandBrakeCLI: getopt syntax. Long options may carry their value after a
+     * '=' (<code>--verbose=1</code>), short options directly after the letter
+     * (<code>-q20</code>), and short options without value can be combined
+     * (<code>-2T</code>).
+     */
+    public static final OptionSyntax HANDBRAKE = new OptionSyntax(
+            set("HandBrakeCLI"),
+            set("-i", "--input"),
+            set("-o", "--output"),
+            set("-h", "--help", "-u", "--update", "-z", "--preset-list", "--no-dvdnav", "--scan",
+                "--main-feature", "--json", "-O", "--optimize", "--no-optimize", "-I", "--ipod-atom",
+                "--no-ipod-atom", "-m", "-2", "--two-pass", "--no-two-pass", "-T", "--turbo", "--no-turbo",
+                "-4", "--large-file", "-g", "--grayscale", "--no-grayscale", "-p", "--strict-anamorphic",
+                "-P", "--loose-anamorphic", "--non-anamorphic", "--auto-anamorphic", "--custom-anamorphic",
+                "--keep-display-aspect", "--all-audio", "--first-audio", "--all-subtitles",
+                "--first-subtitle", "--native-dub", "--vfr", "--cfr", "--pfr", "--align-av",
+                "--inline-parameter-sets", "--no-markers", "--no-deinterlace", "--no-decomb",
+                "--no-detelecine", "--no-hqdn3d", "--no-nlmeans", "--no-deblock", "--no-comb-detect"),
+            set("-v", "--verbose", "--markers", "-d", "--deinterlace", "-5", "--decomb", "-9",
+                "--detelecine", "-8", "--denoise", "--hqdn3d", "--nlmeans", "-7", "--deblock",
+                "--comb-detect", "--subtitle-burned", "--subtitle-forced", "--subtitle-default"),
+            true, false, false);
+    
+    /** names of the program (without path and ".exe"), compared case-insensitive */
+    protected final Set<String> programs;
+    /** options whose value is an input file */
+    protected final Set<String> inputs;
+    /** options whose value is the output file */
+    protected final Set<String> outputs;
+    /** options that never take a value */
+    protected final Set<String> flags;
+    /** options that take a value only if it is attached (<code>--opt=value</code>, <code>-ovalue</code>) */
+    protected final Set<String> optionals;
+    /** true: getopt style, single letter short options, "--" long options */
+    protected final boolean getopt;
+    /** true: options apply to the subsequent input (if any) */
+    protected final boolean inputScoped;
+    /** true: the last word that is no option is the output */
+    protected final boolean positionalOutput;
+
+    protected OptionSyntax(Set<String> programs, Set<String> inputs, Set<String> outputs, Set<String> flags,
+            Set<String> optionals, boolean getopt, boolean inputScoped, boolean positionalOutput) {
+        this.programs = programs;
+        this.inputs = inputs;
+        this.outputs = outputs;
+        this.flags = flags;
+        this.optionals = optionals;
+        this.getopt = getopt;
+        this.inputScoped = inputScoped;
+        this.positionalOutput = positionalOutput;
+    }
+    
+    /**
+     * @param word a word of the command line
+     * @return true, if the word is an option (and not a value or a file name)
+     */
+    public boolean isOption(String word) {
+        return word.length() > 1 && word.charAt(0) == '-';
+    }
+    
+    /**
+     * @param word the first word of the command line
+     * @return true, if the word calls the program, e.g. "/usr/bin/ffmpeg"
+     */
+    public boolean isProgram(String word) {
+        String name = word.substring(Math.max(word.lastIndexOf('/'), word.lastIndexOf('\\')) + 1);
+        if (name.toLowerCase().endsWith(".exe")) {
+            name = name.substring(0, name.length() - 4);
+        }
+        for (String program : programs) {
+            if (program.equalsIgnoreCase(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * @param option the option
+     * @return true, if the option never takes a value
+     */
+    public boolean isFlag(String option) {
+        return flags.contains(baseName(option));
+    }
+    
+    /**
+     * @param option the option
+     * @return true, if the option only takes an attached value
+     */
+    public boolean isOptional(String option) {
+        return optionals.contains(baseName(option));
+    }
+    
+    public boolean isInput(String option) {
+        return inputs.contains(option);
+    }
+    
+    public boolean isOutput(String option) {
+        return outputs.contains(option);
+    }
+    
+    /**
+     * @return true: getopt style, single letter short options, "--" long options
+     */
+    public boolean isGetopt() {
+        return getopt;
+    }
+
+    /**
+     * @return true: options apply to the subsequent input (if any)
+     */
+    public boolean isInputScoped() {
+        return inputScoped;
+    }
+
+    /**
+     * @return true: the last word that is no option is the output
+     */
+    public boolean isPositionalOutput() {
+        return positionalOutput;
+    }
+    
+    // -------------- helpers --------------
+    
+    /**
+     * @return the option without stream specifier ("-c:v" -> "-c")
+     */
+    protected static String baseName(String option) {
+        int colon = option.indexOf(':');
+        return (colon > 0) ? option.substring(0, colon) : option;
+    }
+    
+    protected static Set<String> set(String... names) {
+        return Collections.unmodifiableSet(new HashSet<String>(Arrays.asList(names)));
+    }
+    
+}
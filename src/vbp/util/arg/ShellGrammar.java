@@ -0,0 +1,217 @@
+/*
+ * Copyright (C) 2011 Sebastian Straub <sebastian-straub@gmx.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package vbp.util.arg;
+
+import java.util.ArrayList;
+import java.util.List;
+import sebi.util.system.Platform;
+
+/**
+ * <p>The rules that split a command line into words, the same way the
+ * operating system would pass them to the called program:</p>
+ * <ul>
+ * <li>POSIX: words are separated by blanks. Single quotes preserve everything
+ * literally, double quotes preserve everything except <code>\"</code>,
+ * <code>\\</code>, <code>\$</code> and <code>\`</code>. Outside of quotes, a
+ * backslash escapes the next character.</li>
+ * <li>WINDOWS: the rules of CommandLineToArgvW. Backslashes are literal,
+ * unless they precede a double quote: 2n backslashes become n backslashes and
+ * the quote starts or ends a quoted part, 2n+1 backslashes become n backslashes
+ * and a literal quote. <code>""</code> inside of quotes is a literal quote.</li>
+ * </ul>
+ * <p>Quotes may start or end anywhere in a word (<code>--name="a b"</code> is
+ * the single word <code>--name=a b</code>). A quote that is not closed runs up
+ * to the end of the command line.</p>
+ * 
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+public enum ShellGrammar {
+    
+    POSIX, WINDOWS;
+    
+    /**
+     * @return the grammar of the platform we are running on
+     */
+    public static ShellGrammar platformDefault() {
+        return Platform.isWindows() ? WINDOWS : POSIX;
+    }
+    
+    /**
+     * Splits the command line into words, in a single pass. Quotes and escape
+     * characters are removed.
+     * @param commandLine the command line
+     * @return all words, in order (empty if the command line is blank)
+     */
+    public List<String> split(String commandLine) {
+        List<String> words = new ArrayList<String>();
+        StringBuilder word = new StringBuilder();
+        boolean inWord = false;     // distinguishes "" from no word at all
+        char quote = 0;             // the open quotation mark, or 0
+        
+        int length = commandLine.length();
+        for (int i = 0; i < length; i++) {
+            char c = commandLine.charAt(i);
+            
+            if (this == WINDOWS && c == '\\') {
+                int n = 1;
+                while (i + n < length && commandLine.charAt(i + n) == '\\') {
+                    n++;
+                }
+                boolean beforeQuote = i + n < length && commandLine.charAt(i + n) == '"';
+                appendBackslashes(word, beforeQuote ? n / 2 : n);
+                i += n - 1;
+                if (beforeQuote && n % 2 == 1) {
+                    word.append('"');   // escaped quote
+                    i++;
+                }
+                inWord = true;
+            } else if (quote == '\'') {
+                if (c == '\'') {
+                    quote = 0;
+                } else {
+                    word.append(c);
+                }
+            } else if (quote == '"') {
+                if (c == '"') {
+                    if (this == WINDOWS && i + 1 < length && commandLine.charAt(i + 1) == '"') {
+                        word.append('"');
+                        i++;
+                    } else {
+                        quote = 0;
+                    }
+                } else if (c == '\\' && i + 1 < length && "\"\\$`\n".indexOf(commandLine.charAt(i + 1)) >= 0) {
+                    char next = commandLine.charAt(++i);
+                    if (next != '\n') {
+                        word.append(next);  // escaped line breaks are removed
+                    }
+                } else {
+                    word.append(c);
+                }
+            } else if (isBlank(c)) {
+                if (inWord) {
+                    words.add(word.toString());
+                    word.setLength(0);
+                    inWord = false;
+                }
+            } else {
+                inWord = true;
+                if (c == '"' || (c == '\'' && this == POSIX)) {
+                    quote = c;
+                } else if (c == '\\' && i + 1 < length) {
+                    char next = commandLine.charAt(++i);
+                    if (next != '\n') {
+                        word.append(next);
+                    } else if (word.length() == 0) {
+                        inWord = false;     // line continuation between words
+                    }
+                } else {
+                    word.append(c);
+                }
+            }
+        }
+        if (inWord) {
+            words.add(word.toString());
+        }
+        return words;
+    }
+    
+    /**
+     * Quotes a single word, so that split() returns it unchanged.
+     * @param word the raw word
+     * @return the word, quoted and escaped if necessary
+     */
+    public String quote(String word) {
+        if (word.length() > 0 && isSafe(word)) {
+            return word;
+        }
+        StringBuilder strb = new StringBuilder(word.length() + 2);
+        if (this == POSIX) {
+            strb.append('\'');
+            for (int i = 0; i < word.length(); i++) {
+                char c = word.charAt(i);
+                if (c == '\'') {
+                    strb.append("'\\''");
+                } else {
+                    strb.append(c);
+                }
+            }
+            strb.append('\'');
+        } else {
+            strb.append('"');
+            int backslashes = 0;
+            for (int i = 0; i < word.length(); i++) {
+                char c = word.charAt(i);
+                if (c == '\\') {
+                    backslashes++;
+                    continue;
+                }
+                if (c == '"') {
+                    appendBackslashes(strb, 2 * backslashes + 1);
+                } else {
+                    appendBackslashes(strb, backslashes);
+                }
+                backslashes = 0;
+                strb.append(c);
+            }
+            appendBackslashes(strb, 2 * backslashes);    // before the closing quote
+            strb.append('"');
+        }
+        return strb.toString();
+    }
+    
+    /**
+     * Joins the words into a command line, quoting them where necessary.
+     * @param words the words
+     * @return the command line, split() returns the same words
+     */
+    public String join(List<String> words) {
+        StringBuilder strb = new StringBuilder();
+        for (String word : words) {
+            if (strb.length() > 0) {
+                strb.append(' ');
+            }
+            strb.append(quote(word));
+        }
+        return strb.toString();
+    }
+    
+    // -------------- helpers --------------
+    
+    protected static boolean isBlank(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r';
+    }
+    
+    /**
+     * @return true, if the word does not need quotes in this grammar
+     */
+    protected boolean isSafe(String word) {
+        for (int i = 0; i < word.length(); i++) {
+            char c = word.charAt(i);
+            if (isBlank(c) || c == '"' || (this == POSIX && "'\\$`!*?[]{}()<>|&;#~".indexOf(c) >= 0)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    protected static void appendBackslashes(StringBuilder strb, int n) {
+        for (int i = 0; i < n; i++) {
+            strb.append('\\');
+        }
+    }
+    
+}
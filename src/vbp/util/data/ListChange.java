@@ -0,0 +1,285 @@
+/*
+ * Copyright (C) 2011 Sebastian Straub <sebastian-straub@gmx.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package vbp.util.data;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The difference between two versions of a list, as a sequence of added and
+ * removed ranges. The ranges have to be applied in order: the index of each
+ * range refers to the list after all previous ranges have been applied. A
+ * moved element is described as removal and insertion (which is also how list
+ * views in Swing express it).
+ * 
+ * The change keeps references to both versions of the list, so they must not
+ * be modified afterwards. This allows receivers to check whether a change fits
+ * the version of the list they know.
+ * 
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+public class ListChange<E> {
+    
+    public enum Type {
+        ADDED,
+        REMOVED;
+    }
+    
+    /**
+     * A range of consecutive elements that have been added or removed
+     */
+    public static class Range<E> {
+        
+        protected final Type type;
+        protected final int index;
+        protected final List<E> elements;
+
+        protected Range(Type type, int index, List<E> elements) {
+            this.type = type;
+            this.index = index;
+            this.elements = elements;
+        }
+
+        public Type getType() {
+            return type;
+        }
+
+        /**
+         * @return index of the first element
+         */
+        public int getIndex() {
+            return index;
+        }
+        
+        /**
+         * @return index of the last element
+         */
+        public int getLastIndex() {
+            return index + elements.size() - 1;
+        }
+
+        /**
+         * @return the added or removed elements
+         */
+        public List<E> getElements() {
+            return elements;
+        }
+
+        @Override
+        public String toString() {
+            return type + "@" + index + elements;
+        }
+        
+    }
+    
+    protected final List<Range<E>> ranges;
+    protected final List<E> previous;
+    protected final List<E> list;
+
+    protected ListChange(List<Range<E>> ranges, List<E> previous, List<E> list) {
+        this.ranges = ranges;
+        this.previous = previous;
+        this.list = list;
+    }
+    
+    /**
+     * Computes the changes from one version of a list to the next in linear
+     * time. Elements are compared with equals(). If the common elements keep
+     * their relative order (e.g. a crawl of the same folders with different
+     * filters) the result is minimal, otherwise elements that changed their
+     * position are removed and inserted again. Elements may occur more than
+     * once (e.g. the files of overlapping folders): the occurrences are
+     * matched in order.
+     * @param before the old list
+     * @param after the new list
+     * @return the changes from before to after
+     */
+    public static <E> ListChange<E> diff(List<E> before, List<E> after) {
+        // occurrences that have not been passed yet
+        Map<E, Integer> restBefore = count(before);
+        Map<E, Integer> restAfter = count(after);
+        // common elements that are removed and inserted at their new position
+        Map<E, Integer> moved = new HashMap<E, Integer>();
+        
+        Builder<E> builder = new Builder<E>();
+        int i = 0, j = 0;
+        while (i < before.size() || j < after.size()) {
+            E old = (i < before.size()) ? before.get(i) : null;
+            E now = (j < after.size()) ? after.get(j) : null;
+            if (i < before.size() && get(restAfter, old) <= get(moved, old)) {
+                // no occurrence left in after
+                builder.remove(old);
+                change(restBefore, old, -1);
+                i++;
+            } else if (j < after.size() && (get(restBefore, now) == 0 || get(moved, now) > 0)) {
+                // new, or the reinsertion of a moved element
+                if (get(moved, now) > 0) {
+                    change(moved, now, -1);
+                }
+                builder.add(now);
+                change(restAfter, now, -1);
+                j++;
+            } else if (old.equals(now)) {
+                builder.keep();
+                change(restBefore, old, -1);
+                change(restAfter, now, -1);
+                i++;
+                j++;
+            } else {
+                change(moved, old, 1);
+                builder.remove(old);
+                change(restBefore, old, -1);
+                i++;
+            }
+        }
+        return builder.build(before, after);
+    }
+    
+    private static <E> Map<E, Integer> count(List<E> list) {
+        Map<E, Integer> counts = new HashMap<E, Integer>(list.size() * 4 / 3 + 1);
+        for (E e : list) {
+            change(counts, e, 1);
+        }
+        return counts;
+    }
+    
+    private static <E> int get(Map<E, Integer> counts, E e) {
+        Integer count = counts.get(e);
+        return (count != null) ? count : 0;
+    }
+    
+    private static <E> void change(Map<E, Integer> counts, E e, int delta) {
+        counts.put(e, get(counts, e) + delta);
+    }
+    
+    /**
+     * @param before the old list
+     * @param list the new version of the list
+     * @return a change that replaces all elements of before with list
+     */
+    public static <E> ListChange<E> replace(List<E> before, List<E> list) {
+        Builder<E> builder = new Builder<E>();
+        for (E e : before) {
+            builder.remove(e);
+        }
+        for (E e : list) {
+            builder.add(e);
+        }
+        return builder.build(before, list);
+    }
+    
+    /**
+     * Applies the change to a copy of the old version of the list
+     * @param target the old version of the list, will be modified
+     */
+    public void apply(List<E> target) {
+        for (Range<E> range : ranges) {
+            if (range.type == Type.REMOVED) {
+                target.subList(range.index, range.index + range.elements.size()).clear();
+            } else {
+                target.addAll(range.index, range.elements);
+            }
+        }
+    }
+
+    /**
+     * @return the added and removed ranges, in the order they have to be applied
+     */
+    public List<Range<E>> getRanges() {
+        return ranges;
+    }
+
+    /**
+     * @return the old version of the list
+     */
+    public List<E> getPrevious() {
+        return previous;
+    }
+
+    /**
+     * @return the new version of the list
+     */
+    public List<E> getList() {
+        return list;
+    }
+    
+    /**
+     * @return true, if nothing has changed
+     */
+    public boolean isEmpty() {
+        return ranges.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return ranges.toString();
+    }
+    
+    /**
+     * Collects single operations and merges them into ranges
+     */
+    protected static class Builder<E> {
+        
+        protected final List<Range<E>> ranges = new ArrayList<Range<E>>();
+        /** current position in the list that is being changed */
+        protected int position = 0;
+        protected Type type;
+        protected int start;
+        protected List<E> elements;
+        
+        public void remove(E element) {
+            extend(Type.REMOVED).add(element);
+        }
+        
+        public void add(E element) {
+            extend(Type.ADDED).add(element);
+            position++;
+        }
+        
+        public void keep() {
+            flush();
+            position++;
+        }
+        
+        public ListChange<E> build(List<E> previous, List<E> list) {
+            flush();
+            return new ListChange<E>(Collections.unmodifiableList(ranges), previous, list);
+        }
+        
+        protected List<E> extend(Type type) {
+            if (this.type != type) {
+                flush();
+                this.type = type;
+                this.start = position;
+                this.elements = new ArrayList<E>();
+            }
+            return elements;
+        }
+        
+        protected void flush() {
+            if (type != null) {
+                ranges.add(new Range<E>(type, start, Collections.unmodifiableList(elements)));
+                type = null;
+            }
+        }
+        
+    }
+    
+}
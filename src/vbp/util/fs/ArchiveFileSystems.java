@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2011 Sebastian Straub <sebastian-straub@gmx.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package vbp.util.fs;
+
+import java.io.IOException;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Mounts archives (ZIP archives and ISO 9660 images) as read-only virtual
+ * folders: a MemoryFileSystem with an entry for every file of the archive,
+ * whose content is read from the archive (see Extent). Only the tables of the
+ * archive are read, nothing is extracted.
+ * <p>
+ * The mounts are cached and reused until the archive changes (size or time
+ * of the last modification), so a new crawl doesn't read the tables again.
+ * All methods are thread safe.
+ * 
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+public class ArchiveFileSystems {
+    
+    /** separates the archive from the path of a file inside the archive */
+    public static final String SEPARATOR = "!";
+    
+    private static final AtomicInteger MOUNTS = new AtomicInteger();
+    
+    /**
+     * A mounted archive
+     */
+    protected static class Mount {
+        
+        protected final MemoryFileSystem fs;
+        protected final long size;
+        protected final long modified;
+
+        protected Mount(MemoryFileSystem fs, long size, long modified) {
+            this.fs = fs;
+            this.size = size;
+            this.modified = modified;
+        }
+        
+    }
+    
+    /** mounted archives by absolute path */
+    protected final Map<Path, Mount> mounts = new HashMap<Path, Mount>();
+    
+    /**
+     * @param file a file
+     * @return true, if the file can be mounted (by the extension of its name)
+     */
+    public static boolean isArchive(Path file) {
+        if (file.getFileSystem() != FileSystems.getDefault()) {
+            return false;   // archives in archives can't be read directly
+        }
+        String name = PathUtils.fileName(file).toLowerCase(Locale.ENGLISH);
+        return name.endsWith(".zip") || name.endsWith(".iso");
+    }
+    
+    /**
+     * Mounts an archive, or returns the mount of a previous call if the
+     * archive hasn't changed since
+     * @param archive a ZIP archive or an ISO image (see isArchive())
+     * @return the root folder of the archive
+     * @throws IOException if the archive can't be read or is damaged
+     */
+    public Path mount(Path archive) throws IOException {
+        Path key = archive.toAbsolutePath().normalize();
+        BasicFileAttributes attributes = Files.readAttributes(key, BasicFileAttributes.class);
+        long modified = attributes.lastModifiedTime().toMillis();
+        
+        synchronized (this) {
+            Mount mount = mounts.get(key);
+            if (mount != null && mount.size == attributes.size() && mount.modified == modified) {
+                return root(mount.fs);
+            }
+            if (mount != null) {
+                mounts.remove(key);
+                mount.fs.close();
+            }
+            
+            MemoryFileSystem fs = MemoryFileSystemProvider.INSTANCE.create(
+                    "archive-" + MOUNTS.incrementAndGet(), key);
+            try {
+                if (PathUtils.fileName(key).toLowerCase(Locale.ENGLISH).endsWith(".iso")) {
+                    IsoIndex.index(key, fs);
+                } else {
+                    ZipIndex.index(key, fs);
+                }
+            } catch (IOException ex) {
+                fs.close();
+                throw ex;
+            }
+            mounts.put(key, new Mount(fs, attributes.size(), modified));
+            return root(fs);
+        }
+    }
+    
+    /**
+     * Turns a path string into a path. Files in archives are written as
+     * "archive!/path/in/archive" (see PathUtils.canonicalPath()), the archive
+     * is mounted to resolve them.
+     * @param fileSystem the file system of all other paths
+     * @param path a path string
+     * @return the path (in the file system of the archive, if the path
+     *         refers to a file of an archive)
+     */
+    public Path resolve(FileSystem fileSystem, String path) {
+        int separator = path.lastIndexOf(SEPARATOR + "/");
+        if (separator > 0) {
+            Path archive = fileSystem.getPath(path.substring(0, separator));
+            if (isArchive(archive) && Files.isRegularFile(archive)) {
+                try {
+                    return mount(archive).resolve(path.substring(separator + 2));
+                } catch (IOException ex) {
+                    // not readable (anymore), the path is kept as it is
+                }
+            }
+        }
+        return fileSystem.getPath(path);
+    }
+    
+    /**
+     * Closes all mounts
+     */
+    public synchronized void clear() {
+        for (Mount mount : mounts.values()) {
+            mount.fs.close();
+        }
+        mounts.clear();
+    }
+    
+    private static Path root(MemoryFileSystem fs) {
+        return fs.getRootDirectories().iterator().next();
+    }
+    
+}
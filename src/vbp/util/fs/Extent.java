@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2011 Sebastian Straub <sebastian-straub@gmx.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package vbp.util.fs;
+
+import java.nio.file.Path;
+
+/**
+ * The location of a file inside an archive: a range of bytes of the archive
+ * file (the container). If the file is stored as it is (not compressed and in
+ * one piece), the range is its content and any program can read it directly
+ * from the container, without extracting it first.
+ * 
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+public class Extent {
+    
+    protected final Path container;
+    protected final long offset;
+    protected final long length;
+    protected final boolean stored;
+
+    /**
+     * @param container the archive file (on the default file system)
+     * @param offset position of the first byte in the container
+     * @param length number of bytes in the container
+     * @param stored true, if the bytes are the content of the file (not
+     *        compressed and in one piece)
+     */
+    public Extent(Path container, long offset, long length, boolean stored) {
+        this.container = container;
+        this.offset = offset;
+        this.length = length;
+        this.stored = stored;
+    }
+
+    /**
+     * @return the archive file (on the default file system)
+     */
+    public Path getContainer() {
+        return container;
+    }
+
+    /**
+     * @return position of the first byte in the container
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return number of bytes in the container
+     */
+    public long getLength() {
+        return length;
+    }
+    
+    /**
+     * @return position after the last byte in the container
+     */
+    public long getEnd() {
+        return offset + length;
+    }
+
+    /**
+     * @return true, if the bytes are the content of the file (not compressed
+     *         and in one piece), so it can be read directly from the container
+     */
+    public boolean isStored() {
+        return stored;
+    }
+    
+    @Override
+    public String toString() {
+        return container + "[" + offset + ".." + getEnd() + (stored ? "]" : ", compressed]");
+    }
+    
+}
@@ -0,0 +1,327 @@
+/*
+ * Copyright (C) 2011 Sebastian Straub <sebastian-straub@gmx.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package vbp.util.fs;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Generates synthetic folder trees for tests and benchmarks: folders with
+ * video files and other files (subtitles, images, notes) of realistic sizes.
+ * The shape (depth, fan-out, files per folder, share of videos) is
+ * configurable, the names and sizes are random but seeded, so the same
+ * settings always produce the same tree - on disk or in a MemoryFileSystem.
+ * <p>
+ * Files are sparse: only the last byte is written, so a tree with millions of
+ * "videos" takes almost no space (on file systems that support sparse files)
+ * while the file size filter still sees realistic sizes.
+ * 
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+public class FixtureGenerator {
+    
+    /** statistics of a generated tree */
+    public static class Stats {
+        
+        protected int folders = 0;
+        protected int files = 0;
+        protected int videos = 0;
+        protected long bytes = 0;
+
+        /**
+         * @return number of folders, without the root
+         */
+        public int getFolders() {
+            return folders;
+        }
+
+        /**
+         * @return number of files (videos and others)
+         */
+        public int getFiles() {
+            return files;
+        }
+
+        /**
+         * @return number of files with a video extension
+         */
+        public int getVideos() {
+            return videos;
+        }
+
+        /**
+         * @return sum of all file sizes (not the space used on disk)
+         */
+        public long getBytes() {
+            return bytes;
+        }
+
+        @Override
+        public String toString() {
+            return folders + " folders, " + files + " files (" + videos + " videos), " + bytes + " bytes";
+        }
+        
+    }
+    
+    private static final String[] WORDS = { "the", "night", "return", "of", "blue", "planet", "city", "lost",
+        "river", "holiday", "birthday", "concert", "final", "episode", "part", "live", "documentary", "summer" };
+    
+    protected long seed;
+    protected int depth = 3;
+    protected int folders = 5;
+    protected int files = 20;
+    protected double jitter = 0.5;
+    protected double videoShare = 0.6;
+    protected String[] videoExtensions = { "avi", "mkv", "mp4", "mov", "m4v", "mpg", "wmv" };
+    protected String[] otherExtensions = { "txt", "nfo", "jpg", "png", "srt", "sub" };
+    protected long minVideoSize = 50L << 20;
+    protected long maxVideoSize = 8L << 30;
+    protected long maxOtherSize = 1L << 20;
+    protected boolean sparse = true;
+
+    /**
+     * @param seed seed of the random names and sizes
+     */
+    public FixtureGenerator(long seed) {
+        this.seed = seed;
+    }
+    
+    /**
+     * Generates a tree
+     * @param root the folder to generate the tree in (created if missing)
+     * @return statistics of the tree
+     * @throws IOException if a file can't be created
+     */
+    public Stats generate(Path root) throws IOException {
+        Stats stats = new Stats();
+        Files.createDirectories(root);
+        generate(root, 1, new Random(seed), stats);
+        return stats;
+    }
+    
+    protected void generate(Path folder, int level, Random random, Stats stats) throws IOException {
+        Set<String> names = new HashSet<String>();
+        int fileCount = vary(files, random);
+        for (int i = 0; i < fileCount; i++) {
+            boolean video = random.nextDouble() < videoShare;
+            String[] extensions = video ? videoExtensions : otherExtensions;
+            String name = unique(words(random) + "." + extensions[random.nextInt(extensions.length)], names);
+            long size = video ? logUniform(minVideoSize, maxVideoSize, random) : (long) (random.nextDouble() * maxOtherSize);
+            if (!sparse) {
+                size = 0;
+            }
+            createFile(folder.resolve(name), size);
+            stats.files++;
+            stats.bytes += size;
+            if (video) {
+                stats.videos++;
+            }
+        }
+        
+        if (level < depth) {
+            int folderCount = vary(folders, random);
+            for (int i = 0; i < folderCount; i++) {
+                Path child = folder.resolve(unique(words(random), names));
+                Files.createDirectory(child);
+                stats.folders++;
+                generate(child, level + 1, random, stats);
+            }
+        }
+    }
+    
+    /**
+     * Creates a sparse file of the given size: only the last byte is written
+     */
+    protected void createFile(Path file, long size) throws IOException {
+        SeekableByteChannel channel = Files.newByteChannel(file,
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE, StandardOpenOption.SPARSE);
+        try {
+            if (size > 0) {
+                channel.position(size - 1);
+                channel.write(ByteBuffer.wrap(new byte[1]));
+            }
+        } finally {
+            channel.close();
+        }
+    }
+    
+    /**
+     * @return value +- jitter (at least 0)
+     */
+    protected int vary(int value, Random random) {
+        int range = (int) Math.round(value * jitter);
+        return Math.max(0, value - range + (range > 0 ? random.nextInt(2 * range + 1) : 0));
+    }
+    
+    private static long logUniform(long min, long max, Random random) {
+        double log = Math.log(min) + random.nextDouble() * (Math.log(max) - Math.log(min));
+        return (long) Math.exp(log);
+    }
+    
+    private static String words(Random random) {
+        StringBuilder strb = new StringBuilder();
+        int count = 1 + random.nextInt(4);
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                strb.append(random.nextInt(5) == 0 ? " - " : " ");
+            }
+            strb.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        if (random.nextInt(3) == 0) {
+            strb.append(String.format(" S%02dE%02d", 1 + random.nextInt(9), 1 + random.nextInt(24)));
+        }
+        if (random.nextInt(20) == 0) {
+            strb.append(" (it's $special)");
+        }
+        return strb.toString();
+    }
+    
+    /**
+     * @return the name, with a counter if it is already in use
+     */
+    private static String unique(String name, Set<String> names) {
+        String result = name;
+        for (int i = 2; !names.add(result.toLowerCase()); i++) {
+            int dot = name.lastIndexOf('.');
+            result = (dot < 0) ? name + " " + i : name.substring(0, dot) + " " + i + name.substring(dot);
+        }
+        return result;
+    }
+    
+    // <editor-fold defaultstate="collapsed" desc="Getters and Setters">
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * @param depth number of folder levels, including the root (1: only files
+     *        in the root)
+     */
+    public void setDepth(int depth) {
+        this.depth = depth;
+    }
+
+    public int getFolders() {
+        return folders;
+    }
+
+    /**
+     * @param folders average number of sub folders per folder
+     */
+    public void setFolders(int folders) {
+        this.folders = folders;
+    }
+
+    public int getFiles() {
+        return files;
+    }
+
+    /**
+     * @param files average number of files per folder
+     */
+    public void setFiles(int files) {
+        this.files = files;
+    }
+
+    public double getJitter() {
+        return jitter;
+    }
+
+    /**
+     * @param jitter max. deviation of the folder and file counts from the
+     *        average, relative (0: every folder has exactly the average
+     *        number of files and sub folders)
+     */
+    public void setJitter(double jitter) {
+        this.jitter = jitter;
+    }
+
+    public double getVideoShare() {
+        return videoShare;
+    }
+
+    /**
+     * @param videoShare share of video files among all files (0 to 1)
+     */
+    public void setVideoShare(double videoShare) {
+        this.videoShare = videoShare;
+    }
+
+    public String[] getVideoExtensions() {
+        return videoExtensions;
+    }
+
+    public void setVideoExtensions(String... videoExtensions) {
+        this.videoExtensions = videoExtensions;
+    }
+
+    public String[] getOtherExtensions() {
+        return otherExtensions;
+    }
+
+    public void setOtherExtensions(String... otherExtensions) {
+        this.otherExtensions = otherExtensions;
+    }
+
+    /**
+     * @param min min. size of a video (bytes)
+     * @param max max. size of a video (bytes), sizes are distributed
+     *        logarithmically in between
+     */
+    public void setVideoSize(long min, long max) {
+        this.minVideoSize = min;
+        this.maxVideoSize = max;
+    }
+
+    /**
+     * @param maxOtherSize max. size of the other files (bytes)
+     */
+    public void setMaxOtherSize(long maxOtherSize) {
+        this.maxOtherSize = maxOtherSize;
+    }
+
+    public boolean isSparse() {
+        return sparse;
+    }
+
+    /**
+     * @param sparse true: files get their (random) size, false: all files
+     *        are empty
+     */
+    public void setSparse(boolean sparse) {
+        this.sparse = sparse;
+    }
+    
+    // </editor-fold>
+    
+}
@@ -0,0 +1,267 @@
+/*
+ * Copyright (C) 2011 Sebastian Straub <sebastian-straub@gmx.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package vbp.util.fs;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.util.Calendar;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.TimeZone;
+
+/**
+ * Reads the directory tables of an ISO 9660 image (e.g. a DVD with its
+ * VIDEO_TS folder) and creates an entry in a MemoryFileSystem for each file,
+ * without reading the content. Uses the Joliet tables (long unicode names),
+ * if the image has them.
+ * <p>
+ * Files in an ISO 9660 image are stored uncompressed and in one piece, so
+ * they can be read directly from the image (see Extent). Images that only
+ * have UDF tables (e.g. most Blu-ray discs) are not supported.
+ * 
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+public class IsoIndex {
+    
+    /** size of a sector, the volume descriptors start at sector 16 */
+    protected static final int SECTOR = 2048;
+    protected static final int FIRST_DESCRIPTOR = 16;
+    /** stop searching for the terminator after this many descriptors */
+    protected static final int MAX_DESCRIPTORS = 64;
+    /** directories nested deeper are ignored */
+    protected static final int MAX_DEPTH = 64;
+    /** directories larger than this are damaged */
+    protected static final int MAX_DIRECTORY = 16 << 20;
+    
+    protected static final int TYPE_PRIMARY = 1;
+    protected static final int TYPE_SUPPLEMENTARY = 2;
+    protected static final int TYPE_TERMINATOR = 255;
+    protected static final int FLAG_DIRECTORY = 2;
+    protected static final int FLAG_MULTI_EXTENT = 0x80;
+    
+    protected static final Charset LATIN1 = Charset.forName("ISO-8859-1");
+    protected static final Charset UTF16 = Charset.forName("UTF-16BE");
+    
+    /**
+     * A record of a directory table
+     */
+    protected static class Record {
+        
+        protected String name;
+        protected long offset;
+        protected long length;
+        protected int flags;
+        protected long time;
+        /** false, if the extents are not in one piece (interleaved or split) */
+        protected boolean contiguous = true;
+        
+        protected boolean isDirectory() {
+            return (flags & FLAG_DIRECTORY) != 0;
+        }
+        
+    }
+    
+    protected final Path archive;
+    protected final FileChannel channel;
+    protected final MemoryFileSystem fs;
+    protected int blockSize = SECTOR;
+    protected boolean joliet = false;
+    /** directories that have been listed (by offset), so loops end */
+    protected final Set<Long> visited = new HashSet<Long>();
+    protected int files = 0;
+
+    protected IsoIndex(Path archive, FileChannel channel, MemoryFileSystem fs) {
+        this.archive = archive;
+        this.channel = channel;
+        this.fs = fs;
+    }
+    
+    /**
+     * Creates an entry in the file system for every file of the image
+     * @param archive the ISO image (on the default file system)
+     * @param fs the file system to create the entries in
+     * @return the number of files
+     * @throws IOException if the image can't be read or is damaged
+     */
+    public static int index(Path archive, MemoryFileSystem fs) throws IOException {
+        FileChannel channel = FileChannel.open(archive);
+        try {
+            IsoIndex index = new IsoIndex(archive, channel, fs);
+            index.list(index.findRoot(), "/", 0);
+            return index.files;
+        } catch (IndexOutOfBoundsException ex) {
+            throw new IOException("damaged ISO 9660 image: " + archive);
+        } finally {
+            channel.close();
+        }
+    }
+    
+    /**
+     * Reads the volume descriptors
+     * @return the root directory, of the Joliet tables if available
+     */
+    protected Record findRoot() throws IOException {
+        Record primary = null;
+        Record unicode = null;
+        for (int i = 0; i < MAX_DESCRIPTORS; i++) {
+            ByteBuffer descriptor = ZipIndex.read(channel, (long) (FIRST_DESCRIPTOR + i) * SECTOR, SECTOR);
+            if (!"CD001".equals(string(descriptor, 1, 5, LATIN1))) {
+                throw new IOException("not an ISO 9660 image: " + archive);
+            }
+            int type = descriptor.get(0) & 0xff;
+            if (type == TYPE_TERMINATOR) {
+                break;
+            } else if (type == TYPE_PRIMARY && primary == null) {
+                blockSize = descriptor.getShort(128) & 0xffff;
+                primary = record(descriptor, 156, false);
+            } else if (type == TYPE_SUPPLEMENTARY && unicode == null && isJoliet(descriptor)) {
+                unicode = record(descriptor, 156, true);
+            }
+        }
+        if (primary == null) {
+            throw new IOException("no primary volume descriptor: " + archive);
+        }
+        joliet = (unicode != null);
+        return joliet ? unicode : primary;
+    }
+    
+    /**
+     * @return true, if the supplementary descriptor has a Joliet escape sequence
+     */
+    protected static boolean isJoliet(ByteBuffer descriptor) {
+        int level = descriptor.get(90);
+        return descriptor.get(88) == '%' && descriptor.get(89) == '/'
+                && (level == '@' || level == 'C' || level == 'E');
+    }
+    
+    /**
+     * Creates the entries of a directory and its sub directories
+     * @param directory the directory record
+     * @param path path of the directory in the file system (ends with "/")
+     * @param depth nesting level of the directory
+     */
+    protected void list(Record directory, String path, int depth) throws IOException {
+        if (depth > MAX_DEPTH || !visited.add(directory.offset)) {
+            return;
+        }
+        if (directory.length > MAX_DIRECTORY) {
+            throw new IOException("damaged directory " + path + ": " + archive);
+        }
+        ByteBuffer table = ZipIndex.read(channel, directory.offset, (int) directory.length);
+        Record pending = null;
+        int pos = 0;
+        while (pos < table.limit()) {
+            int length = table.get(pos) & 0xff;
+            if (length == 0) {
+                // records don't cross sectors, the rest of the sector is empty
+                pos = (pos / blockSize + 1) * blockSize;
+                continue;
+            }
+            Record record = record(table, pos, joliet);
+            pos += length;
+            if (record.name == null) {
+                continue;   // the directory itself or its parent
+            }
+            
+            if (pending != null && pending.name.equals(record.name)) {
+                // the next part of a file that is split into several extents
+                pending.contiguous &= (record.offset == pending.offset + pending.length);
+                pending.length += record.length;
+                pending.flags = record.flags;
+            } else {
+                pending = record;
+            }
+            if ((pending.flags & FLAG_MULTI_EXTENT) != 0) {
+                continue;
+            }
+            
+            if (pending.isDirectory()) {
+                list(pending, path + pending.name + "/", depth + 1);
+            } else {
+                fs.createFile(fs.getPath(path + pending.name), pending.length, pending.time,
+                        new Extent(archive, pending.offset, pending.length, pending.contiguous));
+                files++;
+            }
+            pending = null;
+        }
+    }
+    
+    /**
+     * Reads a directory record
+     * @param buffer buffer that contains the record
+     * @param pos position of the record in the buffer
+     * @param unicode true: the name is UTF-16 (Joliet)
+     * @return the record (name is null for the entries "." and "..")
+     */
+    protected Record record(ByteBuffer buffer, int pos, boolean unicode) {
+        Record record = new Record();
+        record.offset = (buffer.getInt(pos + 2) & 0xffffffffL) * blockSize;
+        record.length = buffer.getInt(pos + 10) & 0xffffffffL;
+        record.time = time(buffer, pos + 18);
+        record.flags = buffer.get(pos + 25) & 0xff;
+        // interleaved files are not in one piece
+        record.contiguous = (buffer.get(pos + 26) == 0);
+        
+        int nameLength = buffer.get(pos + 32) & 0xff;
+        if (nameLength == 1 && (buffer.get(pos + 33) == 0 || buffer.get(pos + 33) == 1)) {
+            return record;
+        }
+        String name = string(buffer, pos + 33, nameLength, unicode ? UTF16 : LATIN1);
+        // remove the version ("NAME.EXT;1") and the dot of names without extension
+        int version = name.lastIndexOf(';');
+        if (version >= 0) {
+            name = name.substring(0, version);
+        }
+        if (name.endsWith(".")) {
+            name = name.substring(0, name.length() - 1);
+        }
+        if (!name.isEmpty() && !name.contains("/") && !name.equals("..")) {
+            record.name = name;
+        }
+        return record;
+    }
+    
+    /**
+     * @return the recording date of a directory record in ms since epoch (0 if not set)
+     */
+    protected static long time(ByteBuffer buffer, int pos) {
+        int year = buffer.get(pos) & 0xff;
+        int month = buffer.get(pos + 1);
+        if (year == 0 && month == 0) {
+            return 0;
+        }
+        Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        calendar.clear();
+        calendar.set(1900 + year, month - 1, buffer.get(pos + 2), buffer.get(pos + 3),
+                buffer.get(pos + 4), buffer.get(pos + 5));
+        // offset from UTC in 15 min intervals
+        return calendar.getTimeInMillis() - buffer.get(pos + 6) * 15L * 60 * 1000;
+    }
+    
+    private static String string(ByteBuffer buffer, int pos, int length, Charset charset) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = buffer.get(pos + i);
+        }
+        return new String(bytes, charset);
+    }
+    
+}
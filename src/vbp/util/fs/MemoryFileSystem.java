@@ -0,0 +1,403 @@
+/*
+ * Copyright (C) 2011 Sebastian Straub <sebastian-straub@gmx.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package vbp.util.fs;
+
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileStore;
+import java.nio.file.FileSystem;
+import java.nio.file.NotDirectoryException;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributeView;
+import java.nio.file.attribute.FileAttributeView;
+import java.nio.file.attribute.FileStoreAttributeView;
+import java.nio.file.attribute.UserPrincipalLookupService;
+import java.nio.file.spi.FileSystemProvider;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * A file system that only exists in memory, for tests and benchmarks that
+ * shall not touch real disks. Supports folders and regular files (with their
+ * content) and the basic file attributes. Files may be sparse: a file can be
+ * much larger than the data that has been written into it, so synthetic
+ * videos of several GB cost (almost) no memory.
+ * <p>
+ * Directories list their entries in the order of creation. All operations are
+ * thread safe.
+ * <p>
+ * Archives are mounted as MemoryFileSystems as well (see ArchiveFileSystems):
+ * their files only hold an Extent, the content is read from the archive.
+ * <pre>
+ * FileSystem fs = MemoryFileSystem.create("test");
+ * Files.createDirectories(fs.getPath("/videos/series"));
+ * </pre>
+ * 
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+public class MemoryFileSystem extends FileSystem {
+    
+    /**
+     * A file or folder
+     */
+    protected static class Node {
+        
+        protected final boolean directory;
+        /** entries of a folder, in order of creation (null for files) */
+        protected final Map<String, Node> children;
+        /** size of a file (may be larger than data) */
+        protected long size = 0;
+        /** content of a file, the rest up to size is zero */
+        protected byte[] data = new byte[0];
+        /** content of a file in an archive (read-only), null if the content is data */
+        protected Extent extent;
+        protected long created = System.currentTimeMillis();
+        protected long modified = created;
+        protected long accessed = created;
+
+        protected Node(boolean directory) {
+            this.directory = directory;
+            this.children = directory ? new LinkedHashMap<String, Node>() : null;
+        }
+        
+    }
+    
+    protected final MemoryFileSystemProvider provider;
+    protected final String name;
+    /** the archive that is mounted (null for a plain in-memory file system) */
+    protected final Path container;
+    protected final Node root = new Node(true);
+    protected final MemoryFileStore store = new MemoryFileStore(this);
+    protected volatile boolean open = true;
+
+    protected MemoryFileSystem(MemoryFileSystemProvider provider, String name, Path container) {
+        this.provider = provider;
+        this.name = name;
+        this.container = container;
+    }
+    
+    /**
+     * Creates a new, empty file system
+     * @param name name of the file system (the authority of its URIs)
+     * @return the file system
+     */
+    public static MemoryFileSystem create(String name) {
+        return MemoryFileSystemProvider.INSTANCE.create(name, null);
+    }
+    
+    /**
+     * @return the name of the file system
+     */
+    public String getName() {
+        return name;
+    }
+    
+    /**
+     * @return the archive that is mounted as this file system, null if this
+     *         is a plain in-memory file system
+     */
+    public Path getContainer() {
+        return container;
+    }
+    
+    /**
+     * Creates a file whose content is a range of an archive, with all missing
+     * parent folders. An existing file is replaced. The file is read-only.
+     * @param path the file to create
+     * @param size size of the (uncompressed) content
+     * @param modified time of the last modification (ms since epoch)
+     * @param extent the content in the archive
+     * @throws IOException if the path is the root or a parent is a file
+     */
+    public synchronized void createFile(Path path, long size, long modified, Extent extent) throws IOException {
+        MemoryPath normal = (MemoryPath) MemoryFileSystemProvider.check(path).toAbsolutePath().normalize();
+        if (normal.names.length == 0) {
+            throw new FileAlreadyExistsException(path.toString(), null, "root");
+        }
+        Node folder = root;
+        for (int i = 0; i < normal.names.length - 1; i++) {
+            Node child = folder.children.get(normal.names[i]);
+            if (child == null) {
+                child = new Node(true);
+                child.created = child.modified = child.accessed = modified;
+                folder.children.put(normal.names[i], child);
+            } else if (!child.directory) {
+                throw new NotDirectoryException(normal.subpath(0, i + 1).toString());
+            }
+            folder = child;
+        }
+        Node file = new Node(false);
+        file.size = size;
+        file.extent = extent;
+        file.created = file.modified = file.accessed = modified;
+        folder.children.put(normal.names[normal.names.length - 1], file);
+    }
+    
+    /**
+     * @param path a path of this file system
+     * @return where the content of the file is stored in the archive, null
+     *         if the path is not a file of an archive
+     */
+    public synchronized Extent getExtent(Path path) {
+        Node node = find(MemoryFileSystemProvider.check(path));
+        return (node == null) ? null : node.extent;
+    }
+
+    @Override
+    public FileSystemProvider provider() {
+        return provider;
+    }
+
+    /**
+     * Closes the file system and releases all files
+     */
+    @Override
+    public void close() {
+        if (open) {
+            open = false;
+            provider.remove(this);
+            synchronized (this) {
+                root.children.clear();
+            }
+        }
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public boolean isReadOnly() {
+        return false;
+    }
+
+    @Override
+    public String getSeparator() {
+        return "/";
+    }
+
+    @Override
+    public Iterable<Path> getRootDirectories() {
+        return Collections.<Path>singletonList(new MemoryPath(this, true));
+    }
+
+    @Override
+    public Iterable<FileStore> getFileStores() {
+        return Collections.<FileStore>singletonList(store);
+    }
+
+    @Override
+    public Set<String> supportedFileAttributeViews() {
+        return Collections.singleton("basic");
+    }
+
+    @Override
+    public Path getPath(String first, String... more) {
+        StringBuilder path = new StringBuilder(first);
+        for (String name : more) {
+            path.append('/').append(name);
+        }
+        return MemoryPath.parse(this, path.toString());
+    }
+
+    /**
+     * Supports the syntaxes "glob" (*, **, ?, {a,b} and [...]) and "regex".
+     */
+    @Override
+    public PathMatcher getPathMatcher(String syntaxAndPattern) {
+        int colon = syntaxAndPattern.indexOf(':');
+        if (colon <= 0) {
+            throw new IllegalArgumentException("syntax:pattern expected: " + syntaxAndPattern);
+        }
+        String syntax = syntaxAndPattern.substring(0, colon);
+        String pattern = syntaxAndPattern.substring(colon + 1);
+        final Pattern regex;
+        if ("regex".equals(syntax)) {
+            regex = Pattern.compile(pattern);
+        } else if ("glob".equals(syntax)) {
+            regex = Pattern.compile(globToRegex(pattern));
+        } else {
+            throw new UnsupportedOperationException("syntax not supported: " + syntax);
+        }
+        return new PathMatcher() {
+
+            @Override
+            public boolean matches(Path path) {
+                return regex.matcher(path.toString()).matches();
+            }
+        };
+    }
+    
+    /**
+     * @param glob a glob pattern
+     * @return the equivalent regular expression
+     */
+    protected static String globToRegex(String glob) {
+        StringBuilder regex = new StringBuilder();
+        boolean group = false;
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            switch (c) {
+                case '*':
+                    if (i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+                        regex.append(".*");
+                        i++;
+                    } else {
+                        regex.append("[^/]*");
+                    }
+                    break;
+                case '?':
+                    regex.append("[^/]");
+                    break;
+                case '{':
+                    regex.append("(?:");
+                    group = true;
+                    break;
+                case '}':
+                    regex.append(')');
+                    group = false;
+                    break;
+                case ',':
+                    regex.append(group ? "|" : ",");
+                    break;
+                case '[':
+                case ']':
+                    regex.append(c);
+                    break;
+                case '\\':
+                    if (i + 1 < glob.length()) {
+                        regex.append(Pattern.quote(String.valueOf(glob.charAt(++i))));
+                    }
+                    break;
+                default:
+                    regex.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        return regex.toString();
+    }
+
+    @Override
+    public UserPrincipalLookupService getUserPrincipalLookupService() {
+        throw new UnsupportedOperationException("not supported");
+    }
+
+    @Override
+    public WatchService newWatchService() throws IOException {
+        throw new UnsupportedOperationException("not supported");
+    }
+    
+    @Override
+    public String toString() {
+        return MemoryFileSystemProvider.SCHEME + "://" + name;
+    }
+    
+    // ++++++++++++++ nodes (guarded by this) +++++++++++++++
+    
+    /**
+     * @param path a path of this file system
+     * @return the node of the path, null if it doesn't exist
+     */
+    protected synchronized Node find(MemoryPath path) {
+        Node node = root;
+        MemoryPath normal = (MemoryPath) path.toAbsolutePath().normalize();
+        for (String name : normal.names) {
+            if (!node.directory) {
+                return null;
+            }
+            node = node.children.get(name);
+            if (node == null) {
+                return null;
+            }
+        }
+        return node;
+    }
+    
+    /**
+     * The file store (there is only one) of a MemoryFileSystem
+     */
+    protected static class MemoryFileStore extends FileStore {
+        
+        protected final MemoryFileSystem fs;
+
+        protected MemoryFileStore(MemoryFileSystem fs) {
+            this.fs = fs;
+        }
+
+        @Override
+        public String name() {
+            return fs.getName();
+        }
+
+        @Override
+        public String type() {
+            return MemoryFileSystemProvider.SCHEME;
+        }
+
+        @Override
+        public boolean isReadOnly() {
+            return false;
+        }
+
+        @Override
+        public long getTotalSpace() {
+            return Runtime.getRuntime().maxMemory();
+        }
+
+        @Override
+        public long getUsableSpace() {
+            return Runtime.getRuntime().freeMemory();
+        }
+
+        @Override
+        public long getUnallocatedSpace() {
+            return Runtime.getRuntime().freeMemory();
+        }
+
+        @Override
+        public boolean supportsFileAttributeView(Class<? extends FileAttributeView> type) {
+            return type == BasicFileAttributeView.class;
+        }
+
+        @Override
+        public boolean supportsFileAttributeView(String name) {
+            return "basic".equals(name);
+        }
+
+        @Override
+        public <V extends FileStoreAttributeView> V getFileStoreAttributeView(Class<V> type) {
+            return null;
+        }
+
+        @Override
+        public Object getAttribute(String attribute) {
+            throw new UnsupportedOperationException("not supported: " + attribute);
+        }
+        
+        @Override
+        public String toString() {
+            return fs.toString();
+        }
+        
+    }
+    
+}
@@ -0,0 +1,728 @@
+/*
+ * Copyright (C) 2011 Sebastian Straub <sebastian-straub@gmx.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package vbp.util.fs;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.NonReadableChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.AccessMode;
+import java.nio.file.CopyOption;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileStore;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystemAlreadyExistsException;
+import java.nio.file.FileSystemNotFoundException;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.NotDirectoryException;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributeView;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.FileAttributeView;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.spi.FileSystemProvider;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import vbp.util.fs.MemoryFileSystem.Node;
+
+/**
+ * The provider of all MemoryFileSystems (scheme "vbpmem", the authority of a
+ * URI is the name of the file system). Not registered as installed provider,
+ * file systems are created with MemoryFileSystem.create().
+ * 
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+public class MemoryFileSystemProvider extends FileSystemProvider {
+    
+    public static final String SCHEME = "vbpmem";
+    
+    protected static final MemoryFileSystemProvider INSTANCE = new MemoryFileSystemProvider();
+    
+    /** all open file systems by name */
+    protected final ConcurrentMap<String, MemoryFileSystem> systems = new ConcurrentHashMap<String, MemoryFileSystem>();
+    
+    /**
+     * @param name name of the new file system
+     * @param container the archive that is mounted (null: plain in-memory file system)
+     * @return the new file system
+     * @throws FileSystemAlreadyExistsException if the name is already in use
+     */
+    protected MemoryFileSystem create(String name, Path container) {
+        MemoryFileSystem fs = new MemoryFileSystem(this, name, container);
+        if (systems.putIfAbsent(name, fs) != null) {
+            throw new FileSystemAlreadyExistsException(name);
+        }
+        return fs;
+    }
+    
+    protected void remove(MemoryFileSystem fs) {
+        systems.remove(fs.getName(), fs);
+    }
+
+    @Override
+    public String getScheme() {
+        return SCHEME;
+    }
+
+    @Override
+    public FileSystem newFileSystem(URI uri, Map<String, ?> env) {
+        return create(uri.getAuthority(), null);
+    }
+
+    @Override
+    public FileSystem getFileSystem(URI uri) {
+        MemoryFileSystem fs = systems.get(uri.getAuthority());
+        if (fs == null) {
+            throw new FileSystemNotFoundException(uri.toString());
+        }
+        return fs;
+    }
+
+    @Override
+    public Path getPath(URI uri) {
+        return getFileSystem(uri).getPath(uri.getPath());
+    }
+    
+    protected static MemoryPath check(Path path) {
+        if (!(path instanceof MemoryPath)) {
+            throw new IllegalArgumentException("not an in-memory path: " + path);
+        }
+        return (MemoryPath) path;
+    }
+    
+    protected static Node find(Path path) throws NoSuchFileException {
+        MemoryPath p = check(path);
+        Node node = p.fs.find(p);
+        if (node == null) {
+            throw new NoSuchFileException(path.toString());
+        }
+        return node;
+    }
+    
+    /**
+     * @return the folder that contains the path
+     */
+    protected static Node parent(MemoryPath path) throws IOException {
+        MemoryPath normal = (MemoryPath) path.toAbsolutePath().normalize();
+        if (normal.names.length == 0) {
+            throw new FileAlreadyExistsException(path.toString(), null, "root");
+        }
+        Path parentPath = normal.getParent();
+        Node parent = find(parentPath);
+        if (!parent.directory) {
+            throw new NotDirectoryException(parentPath.toString());
+        }
+        return parent;
+    }
+    
+    protected static String name(MemoryPath path) {
+        MemoryPath normal = (MemoryPath) path.toAbsolutePath().normalize();
+        return normal.names[normal.names.length - 1];
+    }
+
+    @Override
+    public SeekableByteChannel newByteChannel(Path path, Set<? extends OpenOption> options, FileAttribute<?>... attrs) throws IOException {
+        MemoryPath p = check(path);
+        boolean write = options.contains(StandardOpenOption.WRITE) || options.contains(StandardOpenOption.APPEND);
+        Node node;
+        synchronized (p.fs) {
+            node = p.fs.find(p);
+            if (node == null) {
+                if (!write || !(options.contains(StandardOpenOption.CREATE) || options.contains(StandardOpenOption.CREATE_NEW))) {
+                    throw new NoSuchFileException(path.toString());
+                }
+                node = new Node(false);
+                parent(p).children.put(name(p), node);
+            } else if (write && options.contains(StandardOpenOption.CREATE_NEW)) {
+                throw new FileAlreadyExistsException(path.toString());
+            } else if (node.directory) {
+                throw new IOException("is a directory: " + path);
+            }
+            if (node.extent != null) {
+                if (write) {
+                    throw new AccessDeniedException(path.toString(), null, "file of an archive");
+                } else if (!node.extent.isStored()) {
+                    throw new IOException("compressed file of an archive: " + path);
+                }
+                return new ExtentChannel(node.extent, node.size);
+            }
+            if (write && options.contains(StandardOpenOption.TRUNCATE_EXISTING)) {
+                node.size = 0;
+                node.data = new byte[0];
+            }
+        }
+        MemoryChannel channel = new MemoryChannel(p.fs, node, !write || options.contains(StandardOpenOption.READ), write);
+        if (options.contains(StandardOpenOption.APPEND)) {
+            channel.position(channel.size());
+        }
+        return channel;
+    }
+
+    @Override
+    public DirectoryStream<Path> newDirectoryStream(final Path dir, final DirectoryStream.Filter<? super Path> filter) throws IOException {
+        MemoryPath p = check(dir);
+        final List<Path> entries = new ArrayList<Path>();
+        synchronized (p.fs) {
+            Node node = find(dir);
+            if (!node.directory) {
+                throw new NotDirectoryException(dir.toString());
+            }
+            for (String name : node.children.keySet()) {
+                entries.add(dir.resolve(name));
+            }
+        }
+        return new DirectoryStream<Path>() {
+            
+            private boolean iterated = false;
+
+            @Override
+            public Iterator<Path> iterator() {
+                if (iterated) {
+                    throw new IllegalStateException("iterator already obtained");
+                }
+                iterated = true;
+                List<Path> accepted = new ArrayList<Path>(entries.size());
+                for (Path entry : entries) {
+                    try {
+                        if (filter == null || filter.accept(entry)) {
+                            accepted.add(entry);
+                        }
+                    } catch (IOException ex) {
+                        throw new java.nio.file.DirectoryIteratorException(ex);
+                    }
+                }
+                return accepted.iterator();
+            }
+
+            @Override
+            public void close() {
+                // nothing to release
+            }
+        };
+    }
+
+    @Override
+    public void createDirectory(Path dir, FileAttribute<?>... attrs) throws IOException {
+        MemoryPath p = check(dir);
+        synchronized (p.fs) {
+            Node parent = parent(p);
+            String name = name(p);
+            if (parent.children.containsKey(name)) {
+                throw new FileAlreadyExistsException(dir.toString());
+            }
+            parent.children.put(name, new Node(true));
+            parent.modified = System.currentTimeMillis();
+        }
+    }
+
+    @Override
+    public void delete(Path path) throws IOException {
+        MemoryPath p = check(path);
+        synchronized (p.fs) {
+            Node node = find(p);
+            if (node.directory && !node.children.isEmpty()) {
+                throw new DirectoryNotEmptyException(path.toString());
+            }
+            Node parent = parent(p);
+            parent.children.remove(name(p));
+            parent.modified = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Copies files (with their content) and empty folders within one file
+     * system
+     */
+    @Override
+    public void copy(Path source, Path target, CopyOption... options) throws IOException {
+        MemoryPath from = check(source);
+        MemoryPath to = check(target);
+        if (from.fs != to.fs) {
+            throw new UnsupportedOperationException("copy between file systems");
+        }
+        synchronized (from.fs) {
+            Node node = find(from);
+            Node copy = new Node(node.directory);
+            copy.size = node.size;
+            copy.data = node.data.clone();
+            copy.extent = node.extent;
+            put(to, copy, Arrays.asList(options).contains(StandardCopyOption.REPLACE_EXISTING));
+        }
+    }
+
+    /**
+     * Moves files and folders within one file system (always atomic)
+     */
+    @Override
+    public void move(Path source, Path target, CopyOption... options) throws IOException {
+        MemoryPath from = check(source);
+        MemoryPath to = check(target);
+        if (from.fs != to.fs) {
+            throw new UnsupportedOperationException("move between file systems");
+        }
+        synchronized (from.fs) {
+            Node node = find(from);
+            if (isSameFile(from, to)) {
+                return;
+            }
+            if (node.directory && to.toAbsolutePath().normalize().startsWith(from.toAbsolutePath().normalize())) {
+                throw new IOException("can't move " + source + " into itself");
+            }
+            put(to, node, Arrays.asList(options).contains(StandardCopyOption.REPLACE_EXISTING));
+            parent(from).children.remove(name(from));
+        }
+    }
+    
+    private static void put(MemoryPath target, Node node, boolean replace) throws IOException {
+        Node parent = parent(target);
+        String name = name(target);
+        Node existing = parent.children.get(name);
+        if (existing != null) {
+            if (!replace) {
+                throw new FileAlreadyExistsException(target.toString());
+            } else if (existing.directory && !existing.children.isEmpty()) {
+                throw new DirectoryNotEmptyException(target.toString());
+            }
+        }
+        parent.children.put(name, node);
+        parent.modified = System.currentTimeMillis();
+    }
+
+    @Override
+    public boolean isSameFile(Path path, Path path2) {
+        return check(path).toAbsolutePath().normalize().equals(path2.toAbsolutePath().normalize());
+    }
+
+    @Override
+    public boolean isHidden(Path path) {
+        Path name = path.getFileName();
+        return name != null && name.toString().startsWith(".");
+    }
+
+    @Override
+    public FileStore getFileStore(Path path) throws IOException {
+        find(path);
+        return check(path).fs.store;
+    }
+
+    @Override
+    public void checkAccess(Path path, AccessMode... modes) throws IOException {
+        find(path);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <V extends FileAttributeView> V getFileAttributeView(final Path path, Class<V> type, LinkOption... options) {
+        if (type != BasicFileAttributeView.class) {
+            return null;
+        }
+        return (V) new BasicFileAttributeView() {
+
+            @Override
+            public String name() {
+                return "basic";
+            }
+
+            @Override
+            public BasicFileAttributes readAttributes() throws IOException {
+                return MemoryFileSystemProvider.this.readAttributes(path, BasicFileAttributes.class);
+            }
+
+            @Override
+            public void setTimes(FileTime lastModifiedTime, FileTime lastAccessTime, FileTime createTime) throws IOException {
+                MemoryPath p = check(path);
+                synchronized (p.fs) {
+                    Node node = find(p);
+                    if (lastModifiedTime != null) {
+                        node.modified = lastModifiedTime.toMillis();
+                    }
+                    if (lastAccessTime != null) {
+                        node.accessed = lastAccessTime.toMillis();
+                    }
+                    if (createTime != null) {
+                        node.created = createTime.toMillis();
+                    }
+                }
+            }
+        };
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <A extends BasicFileAttributes> A readAttributes(Path path, Class<A> type, LinkOption... options) throws IOException {
+        if (type != BasicFileAttributes.class) {
+            throw new UnsupportedOperationException("not supported: " + type.getName());
+        }
+        MemoryPath p = check(path);
+        synchronized (p.fs) {
+            return (A) new Attributes(find(p));
+        }
+    }
+
+    @Override
+    public Map<String, Object> readAttributes(Path path, String attributes, LinkOption... options) throws IOException {
+        String names = attributes;
+        if (names.startsWith("basic:")) {
+            names = names.substring("basic:".length());
+        } else if (names.contains(":")) {
+            throw new UnsupportedOperationException("only basic attributes are supported: " + attributes);
+        }
+        Attributes attrs = (Attributes) readAttributes(path, BasicFileAttributes.class);
+        Map<String, Object> all = new HashMap<String, Object>();
+        all.put("size", attrs.size());
+        all.put("lastModifiedTime", attrs.lastModifiedTime());
+        all.put("lastAccessTime", attrs.lastAccessTime());
+        all.put("creationTime", attrs.creationTime());
+        all.put("isDirectory", attrs.isDirectory());
+        all.put("isRegularFile", attrs.isRegularFile());
+        all.put("isSymbolicLink", false);
+        all.put("isOther", false);
+        all.put("fileKey", null);
+        if ("*".equals(names)) {
+            return all;
+        }
+        Map<String, Object> result = new HashMap<String, Object>();
+        for (String name : names.split(",")) {
+            if (!all.containsKey(name)) {
+                throw new IllegalArgumentException("unknown attribute: " + name);
+            }
+            result.put(name, all.get(name));
+        }
+        return result;
+    }
+
+    @Override
+    public void setAttribute(Path path, String attribute, Object value, LinkOption... options) throws IOException {
+        String name = attribute.startsWith("basic:") ? attribute.substring("basic:".length()) : attribute;
+        BasicFileAttributeView view = getFileAttributeView(path, BasicFileAttributeView.class);
+        if ("lastModifiedTime".equals(name)) {
+            view.setTimes((FileTime) value, null, null);
+        } else if ("lastAccessTime".equals(name)) {
+            view.setTimes(null, (FileTime) value, null);
+        } else if ("creationTime".equals(name)) {
+            view.setTimes(null, null, (FileTime) value);
+        } else {
+            throw new UnsupportedOperationException("not supported: " + attribute);
+        }
+    }
+    
+    /**
+     * A snapshot of the attributes of a node
+     */
+    protected static class Attributes implements BasicFileAttributes {
+        
+        protected final boolean directory;
+        protected final long size;
+        protected final long created;
+        protected final long modified;
+        protected final long accessed;
+
+        protected Attributes(Node node) {
+            this.directory = node.directory;
+            this.size = node.size;
+            this.created = node.created;
+            this.modified = node.modified;
+            this.accessed = node.accessed;
+        }
+
+        @Override
+        public FileTime lastModifiedTime() {
+            return FileTime.from(modified, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public FileTime lastAccessTime() {
+            return FileTime.from(accessed, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public FileTime creationTime() {
+            return FileTime.from(created, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public boolean isRegularFile() {
+            return !directory;
+        }
+
+        @Override
+        public boolean isDirectory() {
+            return directory;
+        }
+
+        @Override
+        public boolean isSymbolicLink() {
+            return false;
+        }
+
+        @Override
+        public boolean isOther() {
+            return false;
+        }
+
+        @Override
+        public long size() {
+            return size;
+        }
+
+        @Override
+        public Object fileKey() {
+            return null;
+        }
+        
+    }
+    
+    /**
+     * Reads and writes the content of a file. Writing zeros beyond the data
+     * only increases the size, so files stay sparse.
+     */
+    protected static class MemoryChannel implements SeekableByteChannel {
+        
+        protected final MemoryFileSystem fs;
+        protected final Node node;
+        protected final boolean read;
+        protected final boolean write;
+        protected long position = 0;
+        protected boolean open = true;
+
+        protected MemoryChannel(MemoryFileSystem fs, Node node, boolean read, boolean write) {
+            this.fs = fs;
+            this.node = node;
+            this.read = read;
+            this.write = write;
+        }
+        
+        private void checkOpen() throws ClosedChannelException {
+            if (!open) {
+                throw new ClosedChannelException();
+            }
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            checkOpen();
+            if (!read) {
+                throw new NonReadableChannelException();
+            }
+            synchronized (fs) {
+                if (position >= node.size) {
+                    return -1;
+                }
+                int count = (int) Math.min(dst.remaining(), node.size - position);
+                for (int i = 0; i < count; i++) {
+                    long at = position + i;
+                    dst.put(at < node.data.length ? node.data[(int) at] : 0);
+                }
+                position += count;
+                node.accessed = System.currentTimeMillis();
+                return count;
+            }
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            checkOpen();
+            if (!write) {
+                throw new NonWritableChannelException();
+            }
+            synchronized (fs) {
+                int count = src.remaining();
+                byte[] bytes = new byte[count];
+                src.get(bytes);
+                // only store the data up to the last byte that isn't zero
+                int last = count - 1;
+                while (last >= 0 && bytes[last] == 0) {
+                    last--;
+                }
+                long end = position + last + 1;
+                if (last >= 0 && end > node.data.length) {
+                    node.data = Arrays.copyOf(node.data, (int) Math.max(end, node.data.length * 2L));
+                }
+                int stored = (int) Math.max(0, Math.min(count, node.data.length - position));
+                if (stored > 0) {
+                    System.arraycopy(bytes, 0, node.data, (int) position, stored);
+                }
+                position += count;
+                node.size = Math.max(node.size, position);
+                node.modified = System.currentTimeMillis();
+                return count;
+            }
+        }
+
+        @Override
+        public long position() throws IOException {
+            checkOpen();
+            return position;
+        }
+
+        @Override
+        public SeekableByteChannel position(long newPosition) throws IOException {
+            checkOpen();
+            if (newPosition < 0) {
+                throw new IllegalArgumentException("negative position");
+            }
+            position = newPosition;
+            return this;
+        }
+
+        @Override
+        public long size() throws IOException {
+            checkOpen();
+            synchronized (fs) {
+                return node.size;
+            }
+        }
+
+        @Override
+        public SeekableByteChannel truncate(long size) throws IOException {
+            checkOpen();
+            if (!write) {
+                throw new NonWritableChannelException();
+            }
+            synchronized (fs) {
+                if (size < node.size) {
+                    node.size = size;
+                    if (size < node.data.length) {
+                        node.data = Arrays.copyOf(node.data, (int) size);
+                    }
+                }
+                position = Math.min(position, size);
+                return this;
+            }
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public void close() {
+            open = false;
+        }
+        
+    }
+    
+    /**
+     * Reads the content of a file of an archive from the archive (read-only)
+     */
+    protected static class ExtentChannel implements SeekableByteChannel {
+        
+        protected final Extent extent;
+        protected final long size;
+        protected FileChannel channel;
+        protected long position = 0;
+        protected boolean open = true;
+
+        protected ExtentChannel(Extent extent, long size) {
+            this.extent = extent;
+            this.size = size;
+        }
+        
+        private void checkOpen() throws ClosedChannelException {
+            if (!open) {
+                throw new ClosedChannelException();
+            }
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            checkOpen();
+            if (position >= size) {
+                return -1;
+            }
+            if (channel == null) {
+                channel = FileChannel.open(extent.getContainer(), StandardOpenOption.READ);
+            }
+            ByteBuffer window = dst.duplicate();
+            window.limit(window.position() + (int) Math.min(dst.remaining(), size - position));
+            int count = channel.read(window, extent.getOffset() + position);
+            if (count > 0) {
+                dst.position(window.position());
+                position += count;
+            }
+            return count;
+        }
+
+        @Override
+        public int write(ByteBuffer src) {
+            throw new NonWritableChannelException();
+        }
+
+        @Override
+        public long position() throws IOException {
+            checkOpen();
+            return position;
+        }
+
+        @Override
+        public SeekableByteChannel position(long newPosition) throws IOException {
+            checkOpen();
+            if (newPosition < 0) {
+                throw new IllegalArgumentException("negative position");
+            }
+            position = newPosition;
+            return this;
+        }
+
+        @Override
+        public long size() throws IOException {
+            checkOpen();
+            return size;
+        }
+
+        @Override
+        public SeekableByteChannel truncate(long size) {
+            throw new NonWritableChannelException();
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public void close() throws IOException {
+            open = false;
+            if (channel != null) {
+                channel.close();
+            }
+        }
+        
+    }
+    
+}
@@ -0,0 +1,320 @@
+/*
+ * Copyright (C) 2011 Sebastian Straub <sebastian-straub@gmx.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package vbp.util.fs;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.file.FileSystem;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * A path of the MemoryFileSystem: a sequence of names, absolute if it starts
+ * with the root "/".
+ * 
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+public class MemoryPath implements Path {
+    
+    protected final MemoryFileSystem fs;
+    protected final boolean absolute;
+    protected final String[] names;
+
+    protected MemoryPath(MemoryFileSystem fs, boolean absolute, String... names) {
+        this.fs = fs;
+        this.absolute = absolute;
+        this.names = names;
+    }
+    
+    /**
+     * Parses a path string. Empty names (e.g. from "a//b") are ignored.
+     * @param fs the file system
+     * @param path the path, separated by "/"
+     * @return the path
+     */
+    protected static MemoryPath parse(MemoryFileSystem fs, String path) {
+        List<String> list = new ArrayList<String>();
+        for (String name : path.split("/")) {
+            if (!name.isEmpty()) {
+                list.add(name);
+            }
+        }
+        return new MemoryPath(fs, path.startsWith("/"), list.toArray(new String[list.size()]));
+    }
+    
+    protected MemoryPath check(Path other) {
+        if (!(other instanceof MemoryPath) || ((MemoryPath) other).fs != fs) {
+            throw new IllegalArgumentException("not a path of " + fs + ": " + other);
+        }
+        return (MemoryPath) other;
+    }
+
+    @Override
+    public FileSystem getFileSystem() {
+        return fs;
+    }
+
+    @Override
+    public boolean isAbsolute() {
+        return absolute;
+    }
+
+    @Override
+    public Path getRoot() {
+        return absolute ? new MemoryPath(fs, true) : null;
+    }
+
+    @Override
+    public Path getFileName() {
+        return (names.length == 0) ? null : new MemoryPath(fs, false, names[names.length - 1]);
+    }
+
+    @Override
+    public Path getParent() {
+        if (names.length == 0 || (names.length == 1 && !absolute)) {
+            return null;
+        }
+        return new MemoryPath(fs, absolute, Arrays.copyOf(names, names.length - 1));
+    }
+
+    @Override
+    public int getNameCount() {
+        return names.length;
+    }
+
+    @Override
+    public Path getName(int index) {
+        if (index < 0 || index >= names.length) {
+            throw new IllegalArgumentException("no name at " + index);
+        }
+        return new MemoryPath(fs, false, names[index]);
+    }
+
+    @Override
+    public Path subpath(int beginIndex, int endIndex) {
+        if (beginIndex < 0 || endIndex > names.length || beginIndex >= endIndex) {
+            throw new IllegalArgumentException("invalid range " + beginIndex + "-" + endIndex);
+        }
+        return new MemoryPath(fs, false, Arrays.copyOfRange(names, beginIndex, endIndex));
+    }
+
+    @Override
+    public boolean startsWith(Path other) {
+        if (!(other instanceof MemoryPath) || ((MemoryPath) other).fs != fs) {
+            return false;
+        }
+        MemoryPath path = (MemoryPath) other;
+        if (path.absolute != absolute || path.names.length > names.length) {
+            return false;
+        }
+        for (int i = 0; i < path.names.length; i++) {
+            if (!names[i].equals(path.names[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean startsWith(String other) {
+        return startsWith(parse(fs, other));
+    }
+
+    @Override
+    public boolean endsWith(Path other) {
+        if (!(other instanceof MemoryPath) || ((MemoryPath) other).fs != fs) {
+            return false;
+        }
+        MemoryPath path = (MemoryPath) other;
+        if (path.absolute) {
+            return equals(path);
+        }
+        if (path.names.length > names.length) {
+            return false;
+        }
+        int offset = names.length - path.names.length;
+        for (int i = 0; i < path.names.length; i++) {
+            if (!names[offset + i].equals(path.names[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean endsWith(String other) {
+        return endsWith(parse(fs, other));
+    }
+
+    @Override
+    public Path normalize() {
+        List<String> list = new ArrayList<String>();
+        for (String name : names) {
+            if (".".equals(name)) {
+                continue;
+            } else if ("..".equals(name) && !list.isEmpty() && !"..".equals(list.get(list.size() - 1))) {
+                list.remove(list.size() - 1);
+            } else if ("..".equals(name) && absolute) {
+                continue;   // the parent of the root is the root
+            } else {
+                list.add(name);
+            }
+        }
+        return new MemoryPath(fs, absolute, list.toArray(new String[list.size()]));
+    }
+
+    @Override
+    public Path resolve(Path other) {
+        MemoryPath path = check(other);
+        if (path.absolute) {
+            return path;
+        }
+        String[] joined = Arrays.copyOf(names, names.length + path.names.length);
+        System.arraycopy(path.names, 0, joined, names.length, path.names.length);
+        return new MemoryPath(fs, absolute, joined);
+    }
+
+    @Override
+    public Path resolve(String other) {
+        return resolve(parse(fs, other));
+    }
+
+    @Override
+    public Path resolveSibling(Path other) {
+        Path parent = getParent();
+        return (parent == null) ? check(other) : parent.resolve(other);
+    }
+
+    @Override
+    public Path resolveSibling(String other) {
+        return resolveSibling(parse(fs, other));
+    }
+
+    @Override
+    public Path relativize(Path other) {
+        MemoryPath path = check(other);
+        if (path.absolute != absolute) {
+            throw new IllegalArgumentException("can't relativize " + other + " against " + this);
+        }
+        int common = 0;
+        while (common < names.length && common < path.names.length && names[common].equals(path.names[common])) {
+            common++;
+        }
+        List<String> list = new ArrayList<String>();
+        for (int i = common; i < names.length; i++) {
+            list.add("..");
+        }
+        list.addAll(Arrays.asList(path.names).subList(common, path.names.length));
+        return new MemoryPath(fs, false, list.toArray(new String[list.size()]));
+    }
+
+    @Override
+    public URI toUri() {
+        try {
+            return new URI(MemoryFileSystemProvider.SCHEME, fs.getName(), toAbsolutePath().toString(), null);
+        } catch (URISyntaxException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * @return the path, resolved against the root (there is no working
+     *         directory)
+     */
+    @Override
+    public Path toAbsolutePath() {
+        return absolute ? this : new MemoryPath(fs, true, names);
+    }
+
+    @Override
+    public Path toRealPath(LinkOption... options) throws IOException {
+        Path real = toAbsolutePath().normalize();
+        fs.provider().checkAccess(real);
+        return real;
+    }
+
+    /**
+     * @throws UnsupportedOperationException always, the files exist only in
+     *         memory
+     */
+    @Override
+    public java.io.File toFile() {
+        throw new UnsupportedOperationException("in-memory path: " + this);
+    }
+
+    @Override
+    public WatchKey register(WatchService watcher, WatchEvent.Kind<?>[] events, WatchEvent.Modifier... modifiers) {
+        throw new UnsupportedOperationException("not supported");
+    }
+
+    @Override
+    public WatchKey register(WatchService watcher, WatchEvent.Kind<?>... events) {
+        throw new UnsupportedOperationException("not supported");
+    }
+
+    @Override
+    public Iterator<Path> iterator() {
+        List<Path> list = new ArrayList<Path>(names.length);
+        for (String name : names) {
+            list.add(new MemoryPath(fs, false, name));
+        }
+        return list.iterator();
+    }
+
+    @Override
+    public int compareTo(Path other) {
+        return toString().compareTo(check(other).toString());
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof MemoryPath)) {
+            return false;
+        }
+        MemoryPath other = (MemoryPath) obj;
+        return other.fs == fs && other.absolute == absolute && Arrays.equals(other.names, names);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(names) * 31 + (absolute ? 1 : 0);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder strb = new StringBuilder();
+        if (absolute) {
+            strb.append('/');
+        }
+        for (int i = 0; i < names.length; i++) {
+            if (i > 0) {
+                strb.append('/');
+            }
+            strb.append(names[i]);
+        }
+        return strb.toString();
+    }
+    
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2011 Sebastian Straub <sebastian-straub@gmx.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package vbp.util.fs;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Helpers for java.nio paths, that behave like their java.io.File counterparts
+ * on the default file system and also work on any other file system (e.g. the
+ * MemoryFileSystem or the content of an archive).
+ * 
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+public class PathUtils {
+    
+    private PathUtils() {
+        // static helpers only
+    }
+    
+    /**
+     * Same as File.getCanonicalPath() on the default file system: the file
+     * doesn't have to exist. Files in an archive are written as
+     * "archive!/path/in/archive" (see ArchiveFileSystems.resolve()). On other
+     * file systems, the absolute and normalized path is returned.
+     * @param path the path to resolve
+     * @return the canonical path as string
+     * @throws IOException if the path can't be resolved
+     */
+    public static String canonicalPath(Path path) throws IOException {
+        if (path.getFileSystem() == FileSystems.getDefault()) {
+            return path.toFile().getCanonicalPath();
+        }
+        Path container = container(path);
+        if (container != null) {
+            return canonicalPath(container) + ArchiveFileSystems.SEPARATOR + path.toAbsolutePath().normalize();
+        }
+        return path.toAbsolutePath().normalize().toString();
+    }
+    
+    /**
+     * @param path a path
+     * @return the archive the path belongs to, null if it's not a path of a
+     *         mounted archive
+     */
+    public static Path container(Path path) {
+        if (path.getFileSystem() instanceof MemoryFileSystem) {
+            return ((MemoryFileSystem) path.getFileSystem()).getContainer();
+        }
+        return null;
+    }
+    
+    /**
+     * @param path a path
+     * @return where the content of the file is stored in its archive, null if
+     *         it's not a file of a mounted archive
+     */
+    public static Extent extent(Path path) {
+        if (container(path) != null) {
+            return ((MemoryFileSystem) path.getFileSystem()).getExtent(path);
+        }
+        return null;
+    }
+    
+    /**
+     * The place of a file on the local disk. For files in an archive, that's
+     * where the file would be if the archive was extracted next to it, into
+     * a folder with the name of the archive ("/videos/season 1.zip!/e01.mkv"
+     * is "/videos/season 1/e01.mkv"). All other paths are returned as they are.
+     * @param path a path
+     * @return the local path
+     */
+    public static Path local(Path path) {
+        Path container = container(path);
+        if (container == null) {
+            return path;
+        }
+        String name = fileName(container);
+        int extension = name.lastIndexOf('.');
+        Path local = container.resolveSibling((extension > 0) ? name.substring(0, extension) : name);
+        for (Path part : path.toAbsolutePath().normalize()) {
+            local = local.resolve(part.toString());
+        }
+        return local;
+    }
+    
+    /**
+     * @param path a path
+     * @return the name of the file, or an empty string if the path has no
+     *         name (same as File.getName())
+     */
+    public static String fileName(Path path) {
+        Path name = path.getFileName();
+        return (name == null) ? "" : name.toString();
+    }
+    
+    /**
+     * @param path a path
+     * @return the parent path as string, or null if there is no parent (same
+     *         as File.getParent())
+     */
+    public static String parent(Path path) {
+        Path parent = path.getParent();
+        return (parent == null) ? null : parent.toString();
+    }
+    
+    /**
+     * @param path a file
+     * @return the size of the file in bytes, 0 if it can't be read (same as
+     *         File.length())
+     */
+    public static long size(Path path) {
+        try {
+            return Files.size(path);
+        } catch (IOException ex) {
+            return 0;
+        }
+    }
+    
+    /**
+     * @param files files of the default file system
+     * @return the files as paths, in the same order
+     */
+    public static List<Path> toPaths(File[] files) {
+        List<Path> paths = new ArrayList<Path>(files.length);
+        for (File file : files) {
+            paths.add(file.toPath());
+        }
+        return paths;
+    }
+    
+    /**
+     * @param fileSystem the file system to resolve the paths in
+     * @param paths path strings
+     * @return the paths, in the same order
+     */
+    public static List<Path> toPaths(FileSystem fileSystem, String[] paths) {
+        List<Path> list = new ArrayList<Path>(paths.length);
+        for (String path : paths) {
+            list.add(fileSystem.getPath(path));
+        }
+        return list;
+    }
+    
+}
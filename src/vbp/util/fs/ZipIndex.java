@@ -0,0 +1,244 @@
+/*
+ * Copyright (C) 2011 Sebastian Straub <sebastian-straub@gmx.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package vbp.util.fs;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.util.Calendar;
+import java.util.zip.ZipException;
+
+/**
+ * Reads the central directory of a ZIP archive (with ZIP64 extensions, for
+ * files larger than 4 GB) and creates an entry in a MemoryFileSystem for each
+ * file, without reading or extracting the content. Only the local header of
+ * each file is read, to find the start of its content.
+ * <p>
+ * Videos are usually stored uncompressed (compressing them doesn't save any
+ * space), so they can be read directly from the archive (see Extent).
+ * 
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+public class ZipIndex {
+    
+    protected static final int END = 0x06054b50;
+    protected static final int END64 = 0x06064b50;
+    protected static final int END64_LOCATOR = 0x07064b50;
+    protected static final int CENTRAL = 0x02014b50;
+    protected static final int LOCAL = 0x04034b50;
+    
+    /** size of the end of central directory record (without comment) */
+    protected static final int END_SIZE = 22;
+    /** max. size of the comment at the end of the archive */
+    protected static final int MAX_COMMENT = 0xffff;
+    protected static final int LOCAL_SIZE = 30;
+    
+    protected static final int METHOD_STORED = 0;
+    protected static final int FLAG_ENCRYPTED = 1;
+    protected static final int FLAG_UTF8 = 1 << 11;
+    protected static final int EXTRA_ZIP64 = 0x0001;
+    
+    /** names without the UTF-8 flag use the IBM PC charset */
+    protected static final Charset CP437 = charset("IBM437");
+    protected static final Charset UTF8 = Charset.forName("UTF-8");
+    
+    private ZipIndex() {
+        // static helpers only
+    }
+    
+    /**
+     * Creates an entry in the file system for every file of the archive
+     * @param archive the ZIP archive (on the default file system)
+     * @param fs the file system to create the entries in
+     * @return the number of files
+     * @throws IOException if the archive can't be read or is damaged
+     */
+    public static int index(Path archive, MemoryFileSystem fs) throws IOException {
+        FileChannel channel = FileChannel.open(archive);
+        try {
+            return index(archive, channel, fs);
+        } catch (IndexOutOfBoundsException ex) {
+            throw new ZipException("damaged archive: " + archive);
+        } finally {
+            channel.close();
+        }
+    }
+    
+    protected static int index(Path archive, FileChannel channel, MemoryFileSystem fs) throws IOException {
+        // the end record is followed by a comment of unknown length
+        long size = channel.size();
+        int tail = (int) Math.min(size, END_SIZE + MAX_COMMENT);
+        ByteBuffer end = read(channel, size - tail, tail);
+        int at = -1;
+        for (int i = tail - END_SIZE; i >= 0; i--) {
+            if (end.getInt(i) == END) {
+                at = i;
+                break;
+            }
+        }
+        if (at < 0) {
+            throw new ZipException("not a zip archive: " + archive);
+        }
+        
+        long entries = end.getShort(at + 10) & 0xffff;
+        long directorySize = end.getInt(at + 12) & 0xffffffffL;
+        long directoryOffset = end.getInt(at + 16) & 0xffffffffL;
+        if (entries == 0xffff || directorySize == 0xffffffffL || directoryOffset == 0xffffffffL) {
+            // ZIP64: the real values are in another record
+            long locator = size - tail + at - 20;
+            ByteBuffer loc = read(channel, locator, 20);
+            if (loc.getInt(0) != END64_LOCATOR) {
+                throw new ZipException("zip64 locator missing: " + archive);
+            }
+            ByteBuffer end64 = read(channel, loc.getLong(8), 56);
+            if (end64.getInt(0) != END64) {
+                throw new ZipException("zip64 end record missing: " + archive);
+            }
+            entries = end64.getLong(32);
+            directorySize = end64.getLong(40);
+            directoryOffset = end64.getLong(48);
+        }
+        if (directorySize > Integer.MAX_VALUE) {
+            throw new ZipException("central directory too large: " + archive);
+        }
+        
+        ByteBuffer directory = read(channel, directoryOffset, (int) directorySize);
+        int files = 0;
+        int pos = 0;
+        for (long i = 0; i < entries; i++) {
+            if (directory.getInt(pos) != CENTRAL) {
+                throw new ZipException("damaged central directory: " + archive);
+            }
+            int flags = directory.getShort(pos + 8) & 0xffff;
+            int method = directory.getShort(pos + 10) & 0xffff;
+            int time = directory.getShort(pos + 12) & 0xffff;
+            int date = directory.getShort(pos + 14) & 0xffff;
+            long compressed = directory.getInt(pos + 20) & 0xffffffffL;
+            long uncompressed = directory.getInt(pos + 24) & 0xffffffffL;
+            int nameLength = directory.getShort(pos + 28) & 0xffff;
+            int extraLength = directory.getShort(pos + 30) & 0xffff;
+            int commentLength = directory.getShort(pos + 32) & 0xffff;
+            long header = directory.getInt(pos + 42) & 0xffffffffL;
+            
+            byte[] nameBytes = new byte[nameLength];
+            directory.position(pos + 46);
+            directory.get(nameBytes);
+            String name = new String(nameBytes, (flags & FLAG_UTF8) != 0 ? UTF8 : CP437);
+            
+            // ZIP64: the values that don't fit are in an extra field, in this order
+            int extra = pos + 46 + nameLength;
+            int extraEnd = extra + extraLength;
+            while (extra + 4 <= extraEnd) {
+                int id = directory.getShort(extra) & 0xffff;
+                int length = directory.getShort(extra + 2) & 0xffff;
+                if (id == EXTRA_ZIP64) {
+                    int field = extra + 4;
+                    if (uncompressed == 0xffffffffL) {
+                        uncompressed = directory.getLong(field);
+                        field += 8;
+                    }
+                    if (compressed == 0xffffffffL) {
+                        compressed = directory.getLong(field);
+                        field += 8;
+                    }
+                    if (header == 0xffffffffL) {
+                        header = directory.getLong(field);
+                    }
+                }
+                extra += 4 + length;
+            }
+            pos += 46 + nameLength + extraLength + commentLength;
+            
+            if (name.endsWith("/") || !isSafe(name)) {
+                // folders are created with their files, unsafe names are skipped
+                continue;
+            }
+            
+            // the local header may have a different extra field than the central one
+            ByteBuffer local = read(channel, header, LOCAL_SIZE);
+            if (local.getInt(0) != LOCAL) {
+                throw new ZipException("damaged local header of " + name + ": " + archive);
+            }
+            long data = header + LOCAL_SIZE + (local.getShort(26) & 0xffff) + (local.getShort(28) & 0xffff);
+            boolean stored = method == METHOD_STORED && (flags & FLAG_ENCRYPTED) == 0;
+            
+            fs.createFile(fs.getPath("/" + name), uncompressed, dosTime(date, time),
+                    new Extent(archive, data, compressed, stored));
+            files++;
+        }
+        return files;
+    }
+    
+    /**
+     * @param name name of an entry
+     * @return false if the name leaves the root folder (e.g. "../a")
+     */
+    protected static boolean isSafe(String name) {
+        int depth = 0;
+        for (String part : name.replace('\\', '/').split("/")) {
+            if (part.equals("..")) {
+                depth--;
+            } else if (!part.isEmpty() && !part.equals(".")) {
+                depth++;
+            }
+            if (depth < 0) {
+                return false;
+            }
+        }
+        return depth > 0;
+    }
+    
+    /**
+     * @return the MS-DOS date and time (local time) in ms since epoch
+     */
+    protected static long dosTime(int date, int time) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.clear();
+        calendar.set(1980 + (date >> 9), ((date >> 5) & 0xf) - 1, date & 0x1f,
+                time >> 11, (time >> 5) & 0x3f, (time & 0x1f) * 2);
+        return calendar.getTimeInMillis();
+    }
+    
+    /**
+     * Reads bytes from a position of the channel
+     * @return the bytes (little endian, as all numbers in a ZIP archive)
+     * @throws EOFException if the channel ends before
+     */
+    protected static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("unexpected end of archive");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+    
+    private static Charset charset(String name) {
+        try {
+            return Charset.forName(name);
+        } catch (IllegalArgumentException ex) {
+            return Charset.forName("ISO-8859-1");
+        }
+    }
+    
+}
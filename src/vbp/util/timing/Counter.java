@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2011 Sebastian Straub <sebastian-straub@gmx.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package vbp.util.timing;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A metric that counts events or sums up amounts (e.g. bytes). Does nothing
+ * while the metrics are disabled (see Metrics).
+ * 
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+public class Counter {
+    
+    protected final String name;
+    protected final AtomicLong value = new AtomicLong();
+
+    protected Counter(String name) {
+        this.name = name;
+    }
+    
+    /**
+     * Adds 1 to the counter
+     */
+    public void increment() {
+        if (Metrics.enabled) {
+            value.incrementAndGet();
+        }
+    }
+    
+    /**
+     * @param amount the amount to add to the counter
+     */
+    public void add(long amount) {
+        if (Metrics.enabled) {
+            value.addAndGet(amount);
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getValue() {
+        return value.get();
+    }
+    
+    protected void reset() {
+        value.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return name + ": " + value.get();
+    }
+    
+}
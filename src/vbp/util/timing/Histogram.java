@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2011 Sebastian Straub <sebastian-straub@gmx.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package vbp.util.timing;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A metric that records the distribution of values (e.g. the number of
+ * entries of a folder). The values are counted in buckets of powers of 2, so
+ * recording a value takes constant time and memory, and the percentiles are
+ * accurate up to a factor of 2. Negative values are recorded as 0. Does
+ * nothing while the metrics are disabled (see Metrics).
+ * 
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+public class Histogram {
+    
+    protected final String name;
+    protected final AtomicLong count = new AtomicLong();
+    protected final AtomicLong sum = new AtomicLong();
+    protected final AtomicLong max = new AtomicLong();
+    /** bucket i counts the values of [2^(i-1), 2^i - 1], bucket 0 counts 0 */
+    protected final AtomicLongArray buckets = new AtomicLongArray(64);
+
+    protected Histogram(String name) {
+        this.name = name;
+    }
+    
+    /**
+     * @param value the value to record
+     */
+    public void record(long value) {
+        if (Metrics.enabled) {
+            value = Math.max(value, 0);
+            count.incrementAndGet();
+            sum.addAndGet(value);
+            buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(value));
+            long current;
+            while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+                // retry
+            }
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+    
+    /**
+     * @return the number of recorded values
+     */
+    public long getCount() {
+        return count.get();
+    }
+    
+    /**
+     * @return the sum of all recorded values
+     */
+    public long getSum() {
+        return sum.get();
+    }
+    
+    /**
+     * @return the largest recorded value (0 if there are none)
+     */
+    public long getMax() {
+        return max.get();
+    }
+    
+    /**
+     * @return the mean of the recorded values (0 if there are none)
+     */
+    public double getMean() {
+        long n = count.get();
+        return (n == 0) ? 0 : (double) sum.get() / n;
+    }
+    
+    /**
+     * @param percentile the percentile (0 - 100)
+     * @return an upper bound of the percentile: the largest value of the
+     *         bucket that contains it, but at most the largest recorded value
+     *         (0 if there are no values)
+     */
+    public long getPercentile(double percentile) {
+        long n = count.get();
+        long rank = (long) Math.ceil(n * percentile / 100);
+        long seen = 0;
+        for (int i = 0; i < buckets.length(); i++) {
+            seen += buckets.get(i);
+            if (seen >= rank && seen > 0) {
+                long upper = (i == 0) ? 0 : (i == 63) ? Long.MAX_VALUE : (1L << i) - 1;
+                return Math.min(upper, max.get());
+            }
+        }
+        return max.get();
+    }
+    
+    protected void reset() {
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+        for (int i = 0; i < buckets.length(); i++) {
+            buckets.set(i, 0);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: n=%d, mean=%.1f, p50=%d, p99=%d, max=%d", name, getCount(),
+                getMean(), getPercentile(50), getPercentile(99), getMax());
+    }
+    
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2011 Sebastian Straub <sebastian-straub@gmx.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package vbp.util.timing;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Records the metrics as custom events of the Java Flight Recorder (Java 11
+ * and newer), e.g. with "java -XX:StartFlightRecording:filename=vbp.jfr".
+ * The events cost almost nothing while no recording is running. Don't use
+ * this class directly, older runtimes can't load it (see Metrics).
+ * 
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+public class JfrMetricEvents implements MetricEvents {
+    
+    @Name("vbp.Timer")
+    @Label("Timer")
+    @Category("Video Batch Processor")
+    @Description("A single measurement of a timer")
+    @StackTrace(false)
+    protected static class TimerEvent extends Event {
+        
+        @Label("Timer")
+        protected String timer;
+        @Label("Duration")
+        @Timespan
+        protected long nanos;
+        
+    }
+    
+    @Name("vbp.MetricSummary")
+    @Label("Metric Summary")
+    @Category("Video Batch Processor")
+    @Description("The values of a metric at the end of a run")
+    @StackTrace(false)
+    protected static class SummaryEvent extends Event {
+        
+        @Label("Run")
+        protected String run;
+        @Label("Metric")
+        protected String metric;
+        @Label("Count")
+        protected long count;
+        @Label("Total")
+        protected long total;
+        @Label("Max")
+        protected long max;
+        
+    }
+    
+    /** to check if the events are recorded, without creating a new one */
+    private final TimerEvent timerProbe = new TimerEvent();
+
+    @Override
+    public void timer(String timer, long nanos) {
+        if (timerProbe.isEnabled()) {
+            TimerEvent event = new TimerEvent();
+            event.timer = timer;
+            event.nanos = nanos;
+            event.commit();
+        }
+    }
+
+    @Override
+    public void summary(String run, String metric, long count, long total, long max) {
+        SummaryEvent event = new SummaryEvent();
+        if (event.isEnabled()) {
+            event.run = run;
+            event.metric = metric;
+            event.count = count;
+            event.total = total;
+            event.max = max;
+            event.commit();
+        }
+    }
+    
+}
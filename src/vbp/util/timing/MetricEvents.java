@@ -0,0 +1,44 @@
+/*
+ * Copyright (C) 2011 Sebastian Straub <sebastian-straub@gmx.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package vbp.util.timing;
+
+/**
+ * Receives the measurements of the metrics as events, e.g. to record them
+ * with the Java Flight Recorder (see JfrMetricEvents).
+ * 
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+public interface MetricEvents {
+    
+    /**
+     * A single measurement of a timer
+     * @param timer name of the timer
+     * @param nanos the duration in ns
+     */
+    public void timer(String timer, long nanos);
+    
+    /**
+     * The summary of a metric at the end of a run
+     * @param run name of the run
+     * @param metric name of the metric
+     * @param count number of events (the value of a counter)
+     * @param total sum of all values (ns for timers)
+     * @param max largest value (ns for timers)
+     */
+    public void summary(String run, String metric, long count, long total, long max);
+    
+}
@@ -0,0 +1,318 @@
+/*
+ * Copyright (C) 2011 Sebastian Straub <sebastian-straub@gmx.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package vbp.util.timing;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The registry of all metrics (counters, timers and histograms) of the hot
+ * paths: crawling, filtering, exporting and reading/writing the settings.
+ * <p>
+ * The metrics are disabled by default and then cost a single field read per
+ * call (set the system property "vbp.metrics" to true or call setEnabled()).
+ * When enabled, every timer measurement is also recorded as event of the Java
+ * Flight Recorder, if it's available and running. At the end of a run,
+ * summary() returns all values as JSON, with sorted keys so the summaries of
+ * different versions can be compared with diff.
+ * <p>
+ * The metrics are created once and kept in static fields of the measured
+ * classes:
+ * <pre>
+ * private static final Timer LIST = Metrics.timer("crawl.list");
+ * </pre>
+ * 
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+public final class Metrics {
+    
+    /** system property that enables the metrics at startup */
+    public static final String PROPERTY = "vbp.metrics";
+    
+    static volatile boolean enabled;
+    static volatile MetricEvents events;
+    
+    private static final ConcurrentMap<String, Counter> counters = new ConcurrentHashMap<String, Counter>();
+    private static final ConcurrentMap<String, Timer> timers = new ConcurrentHashMap<String, Timer>();
+    private static final ConcurrentMap<String, Histogram> histograms = new ConcurrentHashMap<String, Histogram>();
+    
+    /** start of the current run (System.nanoTime() and ms since epoch) */
+    private static volatile long runStart = System.nanoTime();
+    private static volatile long runStartMillis = System.currentTimeMillis();
+    
+    static {
+        setEnabled(Boolean.getBoolean(PROPERTY));
+    }
+    
+    private Metrics() {
+        // static registry only
+    }
+    
+    /**
+     * @return true, if the metrics are recorded
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+    
+    /**
+     * @param enabled record the metrics? (the values are kept, when the
+     *        metrics are disabled)
+     */
+    public static synchronized void setEnabled(boolean enabled) {
+        if (enabled && events == null) {
+            events = createEvents();
+        }
+        Metrics.enabled = enabled;
+    }
+    
+    /**
+     * @param name name of the counter
+     * @return the counter with this name (created on first use)
+     */
+    public static Counter counter(String name) {
+        Counter counter = counters.get(name);
+        if (counter == null) {
+            Counter created = new Counter(name);
+            counter = counters.putIfAbsent(name, created);
+            if (counter == null) {
+                counter = created;
+            }
+        }
+        return counter;
+    }
+    
+    /**
+     * @param name name of the timer
+     * @return the timer with this name (created on first use)
+     */
+    public static Timer timer(String name) {
+        Timer timer = timers.get(name);
+        if (timer == null) {
+            Timer created = new Timer(name);
+            timer = timers.putIfAbsent(name, created);
+            if (timer == null) {
+                timer = created;
+            }
+        }
+        return timer;
+    }
+    
+    /**
+     * @param name name of the histogram
+     * @return the histogram with this name (created on first use)
+     */
+    public static Histogram histogram(String name) {
+        Histogram histogram = histograms.get(name);
+        if (histogram == null) {
+            Histogram created = new Histogram(name);
+            histogram = histograms.putIfAbsent(name, created);
+            if (histogram == null) {
+                histogram = created;
+            }
+        }
+        return histogram;
+    }
+    
+    /**
+     * Starts a new run: sets all metrics to 0
+     */
+    public static void reset() {
+        for (Counter counter : counters.values()) {
+            counter.reset();
+        }
+        for (Timer timer : timers.values()) {
+            timer.reset();
+        }
+        for (Histogram histogram : histograms.values()) {
+            histogram.reset();
+        }
+        runStart = System.nanoTime();
+        runStartMillis = System.currentTimeMillis();
+    }
+    
+    /**
+     * Ends a run: records a summary event of every metric that has been used
+     * (see MetricEvents) and returns all values as JSON. Times are in ms
+     * (totals) and µs (everything else). Metrics that haven't been used in
+     * this run are left out.
+     * @param run name of the run
+     * @return the summary as JSON object
+     */
+    public static String summary(String run) {
+        MetricEvents events = Metrics.events;
+        SimpleDateFormat iso = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'", Locale.ROOT);
+        iso.setTimeZone(TimeZone.getTimeZone("UTC"));
+        
+        StringBuilder json = new StringBuilder();
+        json.append("{\n");
+        json.append("  \"run\": ").append(quote(run)).append(",\n");
+        json.append("  \"started\": ").append(quote(iso.format(new Date(runStartMillis)))).append(",\n");
+        json.append("  \"durationMs\": ").append(decimal((System.nanoTime() - runStart) / 1e6)).append(",\n");
+        
+        json.append("  \"counters\": {");
+        String separator = "\n";
+        for (Counter counter : new TreeMap<String, Counter>(counters).values()) {
+            if (counter.getValue() != 0) {
+                json.append(separator).append("    ").append(quote(counter.name)).append(": ").append(counter.getValue());
+                separator = ",\n";
+                if (events != null) {
+                    events.summary(run, counter.name, counter.getValue(), counter.getValue(), 0);
+                }
+            }
+        }
+        json.append("\n  },\n");
+        
+        json.append("  \"timers\": {");
+        separator = "\n";
+        for (Timer timer : new TreeMap<String, Timer>(timers).values()) {
+            Histogram h = timer.durations;
+            if (h.getCount() != 0) {
+                json.append(separator).append("    ").append(quote(timer.name)).append(": {")
+                        .append("\"count\": ").append(h.getCount())
+                        .append(", \"totalMs\": ").append(decimal(h.getSum() / 1e6))
+                        .append(", \"meanUs\": ").append(decimal(h.getMean() / 1e3))
+                        .append(", \"p50Us\": ").append(decimal(h.getPercentile(50) / 1e3))
+                        .append(", \"p99Us\": ").append(decimal(h.getPercentile(99) / 1e3))
+                        .append(", \"maxUs\": ").append(decimal(h.getMax() / 1e3))
+                        .append('}');
+                separator = ",\n";
+                if (events != null) {
+                    events.summary(run, timer.name, h.getCount(), h.getSum(), h.getMax());
+                }
+            }
+        }
+        json.append("\n  },\n");
+        
+        json.append("  \"histograms\": {");
+        separator = "\n";
+        for (Histogram h : new TreeMap<String, Histogram>(histograms).values()) {
+            if (h.getCount() != 0) {
+                json.append(separator).append("    ").append(quote(h.name)).append(": {")
+                        .append("\"count\": ").append(h.getCount())
+                        .append(", \"sum\": ").append(h.getSum())
+                        .append(", \"mean\": ").append(decimal(h.getMean()))
+                        .append(", \"p50\": ").append(h.getPercentile(50))
+                        .append(", \"p99\": ").append(h.getPercentile(99))
+                        .append(", \"max\": ").append(h.getMax())
+                        .append('}');
+                separator = ",\n";
+                if (events != null) {
+                    events.summary(run, h.name, h.getCount(), h.getSum(), h.getMax());
+                }
+            }
+        }
+        json.append("\n  }\n");
+        json.append("}\n");
+        return json.toString();
+    }
+    
+    /**
+     * Ends a run and writes the summary (see summary()) into a file
+     * @param run name of the run
+     * @param file the JSON file (is overwritten)
+     * @throws IOException if the file can't be written
+     */
+    public static void writeSummary(String run, File file) throws IOException {
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            writer.write(summary(run));
+        } finally {
+            writer.close();
+        }
+    }
+    
+    /**
+     * @return a copy of all counters and their values, sorted by name
+     */
+    public static Map<String, Long> getCounters() {
+        Map<String, Long> values = new TreeMap<String, Long>();
+        for (Counter counter : counters.values()) {
+            values.put(counter.name, counter.getValue());
+        }
+        return values;
+    }
+    
+    /**
+     * @return the current values of all counters and timers (see
+     *         MetricsSnapshot.since() for the difference of two snapshots)
+     */
+    public static MetricsSnapshot snapshot() {
+        Map<String, Long> counterValues = new HashMap<String, Long>();
+        for (Counter counter : counters.values()) {
+            counterValues.put(counter.name, counter.getValue());
+        }
+        Map<String, Long> timerValues = new HashMap<String, Long>();
+        for (Timer timer : timers.values()) {
+            timerValues.put(timer.name, timer.getTotal());
+        }
+        return new MetricsSnapshot(counterValues, timerValues);
+    }
+    
+    /**
+     * The events of the flight recorder, if the runtime has it (Java 11+)
+     */
+    private static MetricEvents createEvents() {
+        try {
+            Class.forName("jdk.jfr.Event");
+            return (MetricEvents) Class.forName("vbp.util.timing.JfrMetricEvents")
+                    .getDeclaredConstructor().newInstance();
+        } catch (ClassNotFoundException ex) {
+            return null;    // no flight recorder
+        } catch (Exception ex) {
+            Logger.getLogger(Metrics.class.getName()).log(Level.FINE, null, ex);
+            return null;
+        } catch (LinkageError ex) {
+            Logger.getLogger(Metrics.class.getName()).log(Level.FINE, null, ex);
+            return null;
+        }
+    }
+    
+    private static String decimal(double value) {
+        return String.format(Locale.ROOT, "%.3f", value);
+    }
+    
+    private static String quote(String string) {
+        StringBuilder strb = new StringBuilder(string.length() + 2).append('"');
+        for (int i = 0; i < string.length(); i++) {
+            char c = string.charAt(i);
+            if (c == '"' || c == '\\') {
+                strb.append('\\').append(c);
+            } else if (c < 0x20) {
+                strb.append(String.format("\\u%04x", (int) c));
+            } else {
+                strb.append(c);
+            }
+        }
+        return strb.append('"').toString();
+    }
+    
+}
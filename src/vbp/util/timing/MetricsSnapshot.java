@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2011 Sebastian Straub <sebastian-straub@gmx.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package vbp.util.timing;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The values of all counters and the total time of all timers at one point in
+ * time (see Metrics.snapshot()). The difference of two snapshots shows what
+ * happened in between, e.g. during a single crawl.
+ * 
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+public class MetricsSnapshot {
+    
+    protected final Map<String, Long> counters;
+    protected final Map<String, Long> timers;
+
+    protected MetricsSnapshot(Map<String, Long> counters, Map<String, Long> timers) {
+        this.counters = counters;
+        this.timers = timers;
+    }
+    
+    /**
+     * @param name name of a counter
+     * @return the value of the counter (0 if it doesn't exist)
+     */
+    public long counter(String name) {
+        Long value = counters.get(name);
+        return (value == null) ? 0 : value;
+    }
+    
+    /**
+     * @param name name of a timer
+     * @return the total time of the timer in ns (0 if it doesn't exist)
+     */
+    public long timer(String name) {
+        Long value = timers.get(name);
+        return (value == null) ? 0 : value;
+    }
+    
+    /**
+     * @param earlier an earlier snapshot
+     * @return the difference of this snapshot to the earlier one
+     */
+    public MetricsSnapshot since(MetricsSnapshot earlier) {
+        return new MetricsSnapshot(difference(counters, earlier.counters), difference(timers, earlier.timers));
+    }
+    
+    private static Map<String, Long> difference(Map<String, Long> later, Map<String, Long> earlier) {
+        Map<String, Long> difference = new HashMap<String, Long>(later);
+        for (Map.Entry<String, Long> entry : earlier.entrySet()) {
+            Long value = difference.get(entry.getKey());
+            difference.put(entry.getKey(), ((value == null) ? 0 : value) - entry.getValue());
+        }
+        return difference;
+    }
+    
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2011 Sebastian Straub <sebastian-straub@gmx.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package vbp.util.timing;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures the phases of a process, e.g. of the program start. Phases may run
+ * in parallel on different threads, so for each phase not only the duration
+ * but also start and end (relative to the creation of the timer) and the
+ * thread are recorded.
+ * 
+ * <pre>
+ * PhaseTimer.Phase phase = timer.begin("settings");
+ * ...
+ * phase.end();
+ * </pre>
+ * 
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+public class PhaseTimer {
+    
+    /** creation of the timer (System.nanoTime()) */
+    protected final long origin;
+    /** creation of the timer (ms since epoch) */
+    protected final long originMillis;
+    /** all finished phases, in order of their end */
+    protected final List<Phase> phases = new ArrayList<Phase>();
+
+    public PhaseTimer() {
+        this.origin = System.nanoTime();
+        this.originMillis = System.currentTimeMillis();
+    }
+    
+    /**
+     * Starts a new phase on the current thread
+     * @param name name of the phase
+     * @return the phase, call end() when it's finished
+     */
+    public Phase begin(String name) {
+        return new Phase(name);
+    }
+    
+    /**
+     * @return a copy of all finished phases, in order of their end
+     */
+    public synchronized List<Phase> getPhases() {
+        return new ArrayList<Phase>(phases);
+    }
+    
+    /**
+     * @return time since the creation of the timer in ns
+     */
+    public long elapsed() {
+        return System.nanoTime() - origin;
+    }
+    
+    /**
+     * @return a table of all finished phases: start and end (ms after the
+     *         creation of the timer), duration and thread, followed by the
+     *         total time and the startup time of the jvm
+     */
+    public String report() {
+        StringBuilder strb = new StringBuilder();
+        for (Phase phase : getPhases()) {
+            strb.append(String.format("  %-16s %8.1f - %8.1f  %8.1f ms  [%s]%n", phase.name,
+                    phase.start / 1e6, phase.end / 1e6, phase.getDuration() / 1e6, phase.thread));
+        }
+        long jvm = originMillis - ManagementFactory.getRuntimeMXBean().getStartTime();
+        strb.append(String.format("  total %.1f ms (+ %d ms jvm startup)%n", elapsed() / 1e6, jvm));
+        return strb.toString();
+    }
+    
+    /**
+     * A single phase. Start and end are relative to the creation of the timer.
+     */
+    public class Phase {
+        
+        protected final String name;
+        protected final String thread;
+        protected final long start;
+        protected long end = -1;
+
+        protected Phase(String name) {
+            this.name = name;
+            this.thread = Thread.currentThread().getName();
+            this.start = elapsed();
+        }
+        
+        /**
+         * Ends the phase and adds it to the timer (only the first call counts)
+         */
+        public void end() {
+            synchronized (PhaseTimer.this) {
+                if (end < 0) {
+                    end = elapsed();
+                    phases.add(this);
+                }
+            }
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return duration of the phase in ns, -1 if it hasn't ended yet
+         */
+        public long getDuration() {
+            return (end < 0) ? -1 : end - start;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %.1f ms", name, getDuration() / 1e6);
+        }
+        
+    }
+    
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2011 Sebastian Straub <sebastian-straub@gmx.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package vbp.util.timing;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A short report of a run (e.g. a scan of the input files or an export): how
+ * much work has been done (counts) and how long each stage took. Stages may
+ * run in parallel on several threads, so their sum can be larger than the
+ * elapsed time.
+ * 
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+public class RunReport {
+    
+    protected final String name;
+    protected final long finished = System.currentTimeMillis();
+    protected final long elapsed;
+    protected final long items;
+    protected final Map<String, Long> counts = new LinkedHashMap<String, Long>();
+    protected final Map<String, Long> stages = new LinkedHashMap<String, Long>();
+
+    /**
+     * @param name name of the run (e.g. "scan")
+     * @param elapsed the duration of the run in ns
+     * @param items the number of processed items (files), for the throughput
+     */
+    public RunReport(String name, long elapsed, long items) {
+        this.name = name;
+        this.elapsed = elapsed;
+        this.items = items;
+    }
+    
+    /**
+     * Adds a count to the report (in order)
+     * @param label what has been counted
+     * @param value the count
+     * @return this report
+     */
+    public RunReport count(String label, long value) {
+        counts.put(label, value);
+        return this;
+    }
+    
+    /**
+     * Adds a stage to the report (in order), or adds the time to the stage
+     * with this label
+     * @param label name of the stage
+     * @param nanos duration of the stage in ns
+     * @return this report
+     */
+    public RunReport stage(String label, long nanos) {
+        Long previous = stages.get(label);
+        stages.put(label, (previous == null) ? nanos : previous + nanos);
+        return this;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return end of the run (ms since epoch)
+     */
+    public long getFinished() {
+        return finished;
+    }
+
+    /**
+     * @return the duration of the run in ns
+     */
+    public long getElapsed() {
+        return elapsed;
+    }
+    
+    /**
+     * @return the processed items per second (0 if nothing has been measured)
+     */
+    public double getThroughput() {
+        return (elapsed <= 0) ? 0 : items * 1e9 / elapsed;
+    }
+
+    /**
+     * @return all counts by label, in order
+     */
+    public Map<String, Long> getCounts() {
+        return Collections.unmodifiableMap(counts);
+    }
+
+    /**
+     * @return the duration (ns) of all stages by name, in order
+     */
+    public Map<String, Long> getStages() {
+        return Collections.unmodifiableMap(stages);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder strb = new StringBuilder();
+        strb.append(String.format("%s: %.1f ms, %.0f files/s%n", name, elapsed / 1e6, getThroughput()));
+        for (Map.Entry<String, Long> count : counts.entrySet()) {
+            strb.append(String.format("  %-20s %12d%n", count.getKey(), count.getValue()));
+        }
+        for (Map.Entry<String, Long> stage : stages.entrySet()) {
+            strb.append(String.format("  %-20s %9.1f ms%n", stage.getKey(), stage.getValue() / 1e6));
+        }
+        return strb.toString();
+    }
+    
+}
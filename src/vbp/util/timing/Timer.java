@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2011 Sebastian Straub <sebastian-straub@gmx.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package vbp.util.timing;
+
+/**
+ * A metric that measures the duration of an operation that is run many times
+ * (e.g. reading the attributes of a file). The durations (ns) are recorded in
+ * a histogram.
+ * 
+ * <pre>
+ * long start = TIMER.start();
+ * ...
+ * TIMER.stop(start);
+ * </pre>
+ * 
+ * While the metrics are disabled (see Metrics), start() returns 0 without
+ * reading the clock and stop(0) does nothing.
+ * 
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+public class Timer {
+    
+    protected final String name;
+    protected final Histogram durations;
+
+    protected Timer(String name) {
+        this.name = name;
+        this.durations = new Histogram(name);
+    }
+    
+    /**
+     * @return the start of the measurement, pass it to stop()
+     */
+    public long start() {
+        return Metrics.enabled ? System.nanoTime() : 0;
+    }
+    
+    /**
+     * Ends a measurement
+     * @param start the return value of start()
+     */
+    public void stop(long start) {
+        if (start != 0) {
+            record(System.nanoTime() - start);
+        }
+    }
+    
+    /**
+     * @param nanos a duration in ns
+     */
+    public void record(long nanos) {
+        if (!Metrics.enabled) {
+            return;
+        }
+        durations.record(nanos);
+        MetricEvents events = Metrics.events;
+        if (events != null) {
+            events.timer(name, nanos);
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+    
+    /**
+     * @return the number of measurements
+     */
+    public long getCount() {
+        return durations.getCount();
+    }
+    
+    /**
+     * @return the sum of all durations in ns
+     */
+    public long getTotal() {
+        return durations.getSum();
+    }
+    
+    /**
+     * @return the distribution of the durations in ns
+     */
+    public Histogram getDurations() {
+        return durations;
+    }
+    
+    protected void reset() {
+        durations.reset();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: n=%d, total=%.1f ms", name, getCount(), getTotal() / 1e6);
+    }
+    
+}
@@ -0,0 +1,5 @@
+/**
+ * Measurement of startup and processing phases
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+package vbp.util.timing;
\ No newline at end of file
@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2011 Sebastian Straub <sebastian-straub@gmx.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package vbp.app;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import vbp.util.timing.Metrics;
+import vbp.util.timing.PhaseTimer;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+public class HeadlessTest {
+    
+    private File tempDir;
+    private ByteArrayOutputStream out;
+    private ByteArrayOutputStream err;
+    
+    @Before
+    public void setUp() throws IOException {
+        tempDir = File.createTempFile("vbp-headless", "");
+        tempDir.delete();
+        tempDir.mkdir();
+        tempDir = tempDir.getCanonicalFile();
+        new File(tempDir, "sub").mkdir();
+        for (String name : new String[] { "a.avi", "b.mkv", "notes.txt", "sub/c.mp4" }) {
+            write(new File(tempDir, name), name);
+        }
+        out = new ByteArrayOutputStream();
+        err = new ByteArrayOutputStream();
+    }
+    
+    @After
+    public void tearDown() {
+        delete(tempDir);
+    }
+    
+    @Test
+    public void testList() {
+        assertEquals(Headless.EXIT_OK, run(tempDir.getPath()));
+        assertEquals(Arrays.asList(path("a.avi"), path("b.mkv"), path("sub/c.mp4")), sortedLines(out));
+        
+        out.reset();
+        assertEquals(Headless.EXIT_OK, run("--list", "--no-recursive", "--extensions", "avi", tempDir.getPath()));
+        assertEquals(Arrays.asList(path("a.avi")), sortedLines(out));
+    }
+    
+    @Test
+    public void testExport() throws IOException {
+        File script = new File(tempDir, "batch.sh");
+        assertEquals(Headless.EXIT_OK, run("--output", "/videos", "--export", script.getPath(), tempDir.getPath()));
+        
+        List<String> lines = readLines(script);
+        assertEquals("#!/bin/sh", lines.get(0));
+        assertEquals(4, lines.size());
+        assertTrue(lines.contains("ffmpeg -i " + path("a.avi") + " /videos/a.mpg"));
+        
+        File queue = new File(tempDir, "batch.queue");
+        assertEquals(Headless.EXIT_OK, run("-e", "handbrake", "-x", queue.getPath(), tempDir.getPath()));
+        assertTrue(queue.length() > 0);
+    }
+    
+    @Test
+    public void testMetrics() throws IOException {
+        File json = new File(tempDir, "metrics.json");
+        try {
+            assertEquals(Headless.EXIT_OK, run("--metrics", json.getPath(), tempDir.getPath()));
+        } finally {
+            Metrics.setEnabled(false);
+        }
+        List<String> lines = readLines(json);
+        assertEquals("  \"run\": \"cli\",", lines.get(1));
+        assertTrue(lines.contains("    \"crawl.matched\": 3,"));
+        assertTrue(lines.contains("    \"crawl.directories\": 2,"));
+    }
+    
+    @Test
+    public void testUsageErrors() {
+        assertEquals(Headless.EXIT_USAGE, run("--unknown"));
+        assertEquals(Headless.EXIT_USAGE, run("--jobs", "many"));
+        assertEquals(Headless.EXIT_USAGE, run("--export"));
+        assertEquals(Headless.EXIT_USAGE, run("--list", "--execute"));
+        assertEquals(Headless.EXIT_USAGE, run("-e", "vlc"));
+        assertEquals(Headless.EXIT_FAILED, run("--project", new File(tempDir, "missing.vbpp").getPath()));
+        
+        assertEquals(Headless.EXIT_OK, run("--help"));
+        assertTrue(out.toString().startsWith("Usage: vbp"));
+    }
+    
+    /**
+     * The headless mode must not load any class of AWT or Swing
+     */
+    @Test
+    public void testNoAwt() throws Exception {
+        String java = new File(new File(System.getProperty("java.home"), "bin"), "java").getPath();
+        Process process = new ProcessBuilder(java, "-verbose:class", "-cp", System.getProperty("java.class.path"),
+                "vbp.app.Launch", "--timing", "--export", new File(tempDir, "batch.sh").getPath(), tempDir.getPath())
+                .redirectErrorStream(true).start();
+        
+        List<String> loaded = new ArrayList<String>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.contains("java.awt.") || line.contains("javax.swing.") || line.contains("vbp.gui.")) {
+                    loaded.add(line);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        assertEquals(0, process.waitFor());
+        assertEquals(Collections.<String>emptyList(), loaded);
+    }
+    
+    // helpers
+    
+    private int run(String... args) {
+        return new Headless(new PrintStream(out, true), new PrintStream(err, true), new PhaseTimer()).run(args);
+    }
+    
+    private String path(String name) {
+        return new File(tempDir, name).getPath();
+    }
+    
+    private static List<String> sortedLines(ByteArrayOutputStream stream) {
+        List<String> lines = new ArrayList<String>(Arrays.asList(stream.toString().split("\n")));
+        Collections.sort(lines);
+        return lines;
+    }
+    
+    private static void write(File file, String content) throws IOException {
+        FileWriter writer = new FileWriter(file);
+        try {
+            writer.write(content);
+        } finally {
+            writer.close();
+        }
+    }
+    
+    private static List<String> readLines(File file) throws IOException {
+        List<String> lines = new ArrayList<String>();
+        BufferedReader reader = new BufferedReader(new FileReader(file));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+        } finally {
+            reader.close();
+        }
+        return lines;
+    }
+    
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+    
+}
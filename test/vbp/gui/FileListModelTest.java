@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2011 Sebastian Straub <sebastian-straub@gmx.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package vbp.gui;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import javax.swing.event.ListDataEvent;
+import javax.swing.event.ListDataListener;
+import org.junit.Test;
+import vbp.util.data.ListChange;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+public class FileListModelTest {
+    
+    /**
+     * Counts the events and records the last one
+     */
+    private static class Listener implements ListDataListener {
+        
+        int events = 0;
+        ListDataEvent last;
+
+        public void intervalAdded(ListDataEvent e) {
+            events++;
+            last = e;
+        }
+
+        public void intervalRemoved(ListDataEvent e) {
+            events++;
+            last = e;
+        }
+
+        public void contentsChanged(ListDataEvent e) {
+            events++;
+            last = e;
+        }
+    }
+    
+    @Test
+    public void testSingleEvent() {
+        FileListModel model = new FileListModel();
+        Listener listener = new Listener();
+        model.addListDataListener(listener);
+        
+        List<Path> files = new ArrayList<Path>();
+        for (int i = 0; i < 100000; i++) {
+            files.add(Paths.get("/videos/file" + i + ".avi"));
+        }
+        model.setFiles(files);
+        assertEquals(1, listener.events);
+        assertEquals(ListDataEvent.CONTENTS_CHANGED, listener.last.getType());
+        assertEquals(99999, listener.last.getIndex1());
+        assertEquals(100000, model.getSize());
+        
+        // shrinking covers the removed rows as well
+        model.setFiles(files.subList(0, 10));
+        assertEquals(2, listener.events);
+        assertEquals(99999, listener.last.getIndex1());
+        
+        // nothing to do
+        model.setFiles(Collections.<Path>emptyList());
+        model.setFiles(Collections.<Path>emptyList());
+        assertEquals(3, listener.events);
+    }
+    
+    @Test
+    public void testLazyDisplayStrings() {
+        FileListModel model = new FileListModel();
+        Path file = Paths.get("/videos/a.avi");
+        List<Path> files = new ArrayList<Path>();
+        files.add(Paths.get("/videos/short.avi"));
+        files.add(file);
+        files.add(Paths.get("/videos/the longest name.avi"));
+        model.setFiles(files);
+        
+        assertNull(model.paths.get(1));
+        assertEquals(FileListModel.displayString(file), model.getElementAt(1));
+        assertSame(model.getElementAt(1), model.getElementAt(1));
+        assertNull(model.paths.get(0));
+        
+        assertEquals(FileListModel.displayString(files.get(2)), model.getLongestElement());
+        assertNull(model.paths.get(0));
+        assertNull(new FileListModel().getLongestElement());
+    }
+    
+    @Test
+    public void testApply() {
+        FileListModel model = new FileListModel();
+        List<Path> before = new ArrayList<Path>();
+        for (int i = 0; i < 10; i++) {
+            before.add(Paths.get("/videos/file" + i + ".avi"));
+        }
+        model.setFiles(before);
+        String cached = model.getElementAt(9);
+        
+        List<Path> after = new ArrayList<Path>(before);
+        after.remove(2);
+        after.remove(2);
+        after.add(0, Paths.get("/videos/new.avi"));
+        Listener listener = new Listener();
+        model.addListDataListener(listener);
+        model.apply(ListChange.diff(before, after));
+        
+        assertEquals(2, listener.events);
+        assertEquals(ListDataEvent.INTERVAL_REMOVED, listener.last.getType());
+        assertEquals(3, listener.last.getIndex0());
+        assertEquals(4, listener.last.getIndex1());
+        assertEquals(after, model.getFiles());
+        assertSame(cached, model.getElementAt(8));
+        assertNull(model.paths.get(0));
+        
+        // already shown
+        model.apply(ListChange.diff(before, after));
+        assertEquals(2, listener.events);
+        
+        // doesn't fit the shown list: replaced
+        List<Path> other = Collections.singletonList(Paths.get("/other.avi"));
+        model.apply(ListChange.diff(new ArrayList<Path>(), other));
+        assertEquals(3, listener.events);
+        assertEquals(ListDataEvent.CONTENTS_CHANGED, listener.last.getType());
+        assertEquals(other, model.getFiles());
+    }
+    
+}
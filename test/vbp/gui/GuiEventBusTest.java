@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2011 Sebastian Straub <sebastian-straub@gmx.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package vbp.gui;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import javax.swing.SwingUtilities;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+public class GuiEventBusTest {
+    
+    /**
+     * Records all batches and counts down, when the given event arrives
+     */
+    private static class Recorder<T> implements GuiEventBus.Receiver<T> {
+        
+        final List<List<T>> batches = new ArrayList<List<T>>();
+        final CountDownLatch last = new CountDownLatch(1);
+        final T lastEvent;
+        boolean onEdt = true;
+
+        Recorder(T lastEvent) {
+            this.lastEvent = lastEvent;
+        }
+
+        @Override
+        public void receive(List<T> events) {
+            onEdt &= SwingUtilities.isEventDispatchThread();
+            batches.add(events);
+            if (events.contains(lastEvent)) {
+                last.countDown();
+            }
+        }
+        
+        List<T> all() {
+            List<T> all = new ArrayList<T>();
+            for (List<T> batch : batches) {
+                all.addAll(batch);
+            }
+            return all;
+        }
+    }
+    
+    @Test
+    public void testLatest() throws InterruptedException {
+        GuiEventBus bus = new GuiEventBus(20);
+        Recorder<Integer> recorder = new Recorder<Integer>(-1);
+        GuiEventBus.Topic<Integer> topic = bus.latest(recorder);
+        
+        for (int i = 0; i < 10000; i++) {
+            topic.post(i % 2, i);
+        }
+        topic.post(-1);
+        assertTrue(recorder.last.await(5, TimeUnit.SECONDS));
+        
+        // intermediate states are dropped, the latest ones arrive
+        assertTrue(recorder.onEdt);
+        assertTrue(recorder.batches.size() < 100);
+        List<Integer> all = recorder.all();
+        assertTrue(all.size() < 300);
+        assertTrue(all.contains(9998));
+        assertTrue(all.contains(9999));
+    }
+    
+    @Test
+    public void testAll() throws InterruptedException {
+        GuiEventBus bus = new GuiEventBus(20);
+        Recorder<Integer> recorder = new Recorder<Integer>(9999);
+        GuiEventBus.Topic<Integer> topic = bus.all(recorder);
+        Recorder<String> other = new Recorder<String>("b");
+        GuiEventBus.Topic<String> strings = bus.latest(other);
+        
+        strings.post("a");
+        for (int i = 0; i < 10000; i++) {
+            topic.post(i);
+        }
+        strings.post("b");
+        assertTrue(recorder.last.await(5, TimeUnit.SECONDS));
+        assertTrue(other.last.await(5, TimeUnit.SECONDS));
+        
+        // every event in order, but in a few batches
+        List<Integer> all = recorder.all();
+        assertEquals(10000, all.size());
+        for (int i = 0; i < all.size(); i++) {
+            assertEquals(i, (int) all.get(i));
+        }
+        assertTrue(recorder.batches.size() < 100);
+        assertEquals("b", other.all().get(other.all().size() - 1));
+    }
+    
+}
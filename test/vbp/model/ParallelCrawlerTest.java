@@ -0,0 +1,245 @@
+/*
+ * Copyright (C) 2011 Sebastian Straub <sebastian-straub@gmx.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package vbp.model;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import vbp.util.fs.ArchiveFileSystems;
+import vbp.util.fs.FixtureGenerator;
+import vbp.util.fs.MemoryFileSystem;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+public class ParallelCrawlerTest {
+    
+    private File tempDir;
+    private List<Path> input;
+    private ExecutorService executor;
+    
+    /** lets only .avi files pass */
+    private final IFileFilter aviOnly = new IFileFilter() {
+
+        @Override
+        public boolean filter(Path file) {
+            return file.getFileName().toString().endsWith(".avi");
+        }
+
+        @Override
+        public boolean filter(Path file, BasicFileAttributes attributes) {
+            return filter(file);
+        }
+
+        @Override
+        public void update() {
+        }
+    };
+    
+    @Before
+    public void setUp() throws IOException {
+        tempDir = File.createTempFile("vbp-crawl", "");
+        tempDir.delete();
+        Random random = new Random(7);
+        File a = new File(tempDir, "a");
+        File b = new File(tempDir, "b");
+        createTree(a, 3, random);
+        createTree(b, 2, random);
+        File single = new File(tempDir, "single.avi");
+        single.createNewFile();
+        
+        input = Arrays.asList(b.toPath(), single.toPath(), a.toPath(), new File(tempDir, "missing").toPath());
+        executor = Executors.newCachedThreadPool();
+    }
+    
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+        delete(tempDir);
+    }
+    
+    @Test
+    public void testSameResults() {
+        for (int limit : new int[] { 1, 4 }) {
+            ParallelCrawler parallel = new ParallelCrawler(executor, limit);
+            Crawler sequential = new Crawler();
+            for (boolean recursive : new boolean[] { true, false }) {
+                assertEquals(sequential.crawlComplete(input, recursive),
+                        parallel.crawlComplete(input, recursive));
+                assertEquals(sequential.crawlComplete(input, recursive, aviOnly),
+                        parallel.crawlComplete(input, recursive, aviOnly));
+            }
+        }
+        assertEquals(52, new Crawler().crawlComplete(input, true, aviOnly).size());
+    }
+    
+    @Test
+    public void testNewListPerCrawl() {
+        ParallelCrawler parallel = new ParallelCrawler(executor, 4);
+        List<Path> first = parallel.crawlComplete(input, true);
+        List<Path> copy = new ArrayList<Path>(first);
+        parallel.crawlComplete(input, false);
+        assertEquals(copy, first);
+    }
+    
+    /**
+     * Crawls a tree in memory, filtered by size (the videos are larger than
+     * all other files)
+     */
+    @Test
+    public void testMemoryFileSystem() throws IOException {
+        MemoryFileSystem fs = MemoryFileSystem.create("crawl");
+        try {
+            FixtureGenerator generator = new FixtureGenerator(3);
+            FixtureGenerator.Stats stats = generator.generate(fs.getPath("/share"));
+            List<Path> roots = Arrays.asList(fs.getPath("/share"));
+            
+            FileFilter videos = FileFilter.empty();
+            videos.fileSize = true;
+            videos.minSize = 2L << 20;
+            videos.maxSize = Long.MAX_VALUE;
+            
+            List<Path> all = new Crawler().crawlComplete(roots, true);
+            assertEquals(stats.getFiles(), all.size());
+            assertSame(fs, all.get(0).getFileSystem());
+            List<Path> filtered = new Crawler().crawlComplete(roots, true, videos);
+            assertEquals(stats.getVideos(), filtered.size());
+            ParallelCrawler parallel = new ParallelCrawler(executor, 4);
+            assertEquals(all, parallel.crawlComplete(roots, true));
+            assertEquals(filtered, parallel.crawlComplete(roots, true, videos));
+        } finally {
+            fs.close();
+        }
+    }
+    
+    /**
+     * Archives are crawled like folders
+     */
+    @Test
+    public void testArchives() throws IOException {
+        File zip = new File(tempDir, "a/videos.zip");
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(zip));
+        try {
+            for (String name : new String[] { "x.avi", "sub/y.avi", "notes.txt" }) {
+                out.putNextEntry(new ZipEntry(name));
+                out.closeEntry();
+            }
+        } finally {
+            out.close();
+        }
+        
+        ArchiveFileSystems archives = new ArchiveFileSystems();
+        try {
+            Crawler sequential = new Crawler();
+            ParallelCrawler parallel = new ParallelCrawler(executor, 4);
+            assertTrue(sequential.crawlComplete(input, true).contains(zip.toPath()));
+            sequential.setArchives(archives);
+            parallel.setArchives(archives);
+            for (boolean recursive : new boolean[] { true, false }) {
+                assertEquals(sequential.crawlComplete(input, recursive, aviOnly),
+                        parallel.crawlComplete(input, recursive, aviOnly));
+            }
+            List<Path> files = sequential.crawlComplete(input, true, aviOnly);
+            assertEquals(54, files.size());
+            assertFalse(files.contains(zip.toPath()));
+            Path root = archives.mount(zip.toPath());
+            assertTrue(files.contains(root.resolve("x.avi")));
+            assertTrue(files.contains(root.resolve("sub/y.avi")));
+            
+            // an archive as input is a folder
+            assertEquals(Arrays.asList(root.resolve("x.avi")),
+                    sequential.crawlComplete(Arrays.asList(zip.toPath()), false, aviOnly));
+        } finally {
+            archives.clear();
+        }
+    }
+    
+    /**
+     * A folder and one of its subfolders as input: the files of the subfolder
+     * are listed twice
+     */
+    @Test
+    public void testOverlappingInputs() {
+        Path folder = new File(tempDir, "a").toPath();
+        File[] subfolders = folder.toFile().listFiles(new java.io.FileFilter() {
+
+            @Override
+            public boolean accept(File file) {
+                return file.isDirectory();
+            }
+        });
+        Model model = new Model();
+        model.loadDefaults();
+        model.setRecursive(true);
+        model.addInputFiles(Arrays.asList(folder));
+        int files = model.getFilesToTranscode().size();
+        model.addInputFiles(Arrays.asList(subfolders[0].toPath()));
+        
+        assertEquals(model.crawl(), model.filesToTranscode);
+        assertTrue(model.getFilesToTranscode().size() > files);
+    }
+    
+    @Test
+    public void testCreate() {
+        Crawler crawler = ParallelCrawler.create();
+        assertEquals(ParallelCrawler.isSupported(), crawler instanceof ParallelCrawler);
+        assertEquals(new Crawler().crawlComplete(input, true, aviOnly), crawler.crawlComplete(input, true, aviOnly));
+    }
+    
+    /**
+     * Creates a folder with 3 videos, 1 other file and (depth - 1) levels of
+     * sub folders (with random names, so the listing order is arbitrary)
+     */
+    private static void createTree(File folder, int depth, Random random) throws IOException {
+        folder.mkdirs();
+        for (int i = 0; i < 3; i++) {
+            new File(folder, random.nextInt(1000) + "-" + i + ".avi").createNewFile();
+        }
+        new File(folder, "notes.txt").createNewFile();
+        if (depth > 1) {
+            for (int i = 0; i < 3; i++) {
+                createTree(new File(folder, "sub" + random.nextInt(1000) + "-" + i), depth - 1, random);
+            }
+        }
+    }
+    
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+    
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2011 Sebastian Straub <sebastian-straub@gmx.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package vbp.model;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Iterator;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import vbp.model.preset.Encoder;
+import vbp.model.preset.PresetLibrary;
+
+/**
+ *
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+public class SettingsTest {
+    
+    private File project;
+    
+    @Before
+    public void setUp() throws IOException {
+        project = File.createTempFile("vbp-settings", ".vbpp");
+    }
+    
+    @After
+    public void tearDown() {
+        project.delete();
+    }
+    
+    /**
+     * Archives are not searched by default, files written before archives
+     * could be searched keep treating them like any other file
+     */
+    @Test
+    public void testOlderFileWithoutArchives() throws IOException {
+        Model model = new Model();
+        model.loadDefaults();
+        assertFalse(model.crawlArchives);
+        model.crawlArchives = true;
+        Settings.writeProject(model, project);
+        List<String> lines = Files.readAllLines(project.toPath(), StandardCharsets.UTF_8);
+        for (Iterator<String> it = lines.iterator(); it.hasNext();) {
+            if (it.next().startsWith("archives")) {
+                it.remove();
+            }
+        }
+        Files.write(project.toPath(), lines, StandardCharsets.UTF_8);
+        
+        assertTrue(model.loadProject(project));
+        assertFalse(model.crawlArchives);
+    }
+    
+    /**
+     * The handbrake query of a project is used for this project only, the
+     * preset in the library stays unchanged
+     */
+    @Test
+    public void testProjectQuery() {
+        Model other = new Model();
+        other.loadDefaults();
+        assertTrue(other.setHandBrakeQuery("-f mp4 -e x264 -q 20"));
+        Settings.writeProject(other, project);
+        
+        Model model = new Model();
+        model.loadDefaults();
+        String original = model.getPresets().get(PresetLibrary.DEFAULT_HANDBRAKE).getCommandLine();
+        assertTrue(model.loadProject(project));
+        assertEquals("-f mp4 -e x264 -q 20", model.getHandBrakeQuery());
+        assertEquals("mp4", model.getPreset(Encoder.HANDBRAKE).getExtension());
+        assertEquals(original, model.getPresets().get(PresetLibrary.DEFAULT_HANDBRAKE).getCommandLine());
+        
+        // edits stay in the project, selecting a preset discards the query
+        assertTrue(model.setHandBrakeQuery("-f mkv -e x264 -q 22"));
+        assertEquals(original, model.getPresets().get(PresetLibrary.DEFAULT_HANDBRAKE).getCommandLine());
+        assertFalse(model.setHandBrakeQuery("-e x264 -q"));
+        assertEquals("-f mkv -e x264 -q 22", model.getHandBrakeQuery());
+        assertTrue(model.selectPreset(Encoder.HANDBRAKE, PresetLibrary.DEFAULT_HANDBRAKE));
+        assertEquals(original, model.getHandBrakeQuery());
+    }
+    
+}
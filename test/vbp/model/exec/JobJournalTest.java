@@ -0,0 +1,254 @@
+/*
+ * Copyright (C) 2011 Sebastian Straub <sebastian-straub@gmx.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package vbp.model.exec;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+public class JobJournalTest {
+    
+    private File tempDir;
+    private File journalFile;
+    
+    @Before
+    public void setUp() throws IOException {
+        tempDir = File.createTempFile("vbp-journal", "");
+        tempDir.delete();
+        tempDir.mkdir();
+        journalFile = new File(tempDir, "batch.journal");
+    }
+    
+    @After
+    public void tearDown() {
+        for (File file : tempDir.listFiles()) {
+            file.delete();
+        }
+        tempDir.delete();
+    }
+    
+    /**
+     * Test of resume: done jobs are skipped, running and failed jobs are
+     * requeued and the partial output of their encoder is deleted, queued jobs
+     * are untouched.
+     */
+    @Test
+    public void testResume() throws IOException {
+        List<TranscodeJob> jobs = createJobs("done", "running", "failed", "queued", "unknown");
+        for (TranscodeJob job : jobs) {
+            write(job.getDestination(), "output");
+        }
+        
+        JobJournal journal = new JobJournal(journalFile);
+        for (TranscodeJob job : jobs) {
+            journal.record(job);
+        }
+        setState(jobs.get(0), TranscodeJob.State.RUNNING, -1, journal);
+        setState(jobs.get(0), TranscodeJob.State.DONE, 0, journal);
+        setState(jobs.get(1), TranscodeJob.State.RUNNING, -1, journal);
+        setState(jobs.get(2), TranscodeJob.State.RUNNING, -1, journal);
+        setState(jobs.get(2), TranscodeJob.State.FAILED, 1, journal);
+        journal.close();
+        
+        // restart: new jobs, new journal instance
+        jobs = createJobs("done", "running", "failed", "queued");
+        journal = new JobJournal(journalFile);
+        List<TranscodeJob> remaining = journal.resume(jobs);
+        journal.close();
+        
+        assertEquals(jobs.subList(1, 4), remaining);
+        assertEquals(TranscodeJob.State.DONE, jobs.get(0).getState());
+        assertTrue(jobs.get(0).getDestination().exists());
+        assertFalse(jobs.get(1).getDestination().exists());
+        assertFalse(jobs.get(2).getDestination().exists());
+        // never started: the file was not written by the encoder
+        assertTrue(jobs.get(3).getDestination().exists());
+    }
+    
+    /**
+     * Files that existed before the job are kept: the job failed before its
+     * encoder was started (or the encoder refused to overwrite the file)
+     */
+    @Test
+    public void testResumeKeepsExistingFiles() throws IOException {
+        List<TranscodeJob> jobs = createJobs("skipped", "refused", "interrupted");
+        for (TranscodeJob job : jobs) {
+            write(job.getDestination(), "user file");
+        }
+        
+        JobJournal journal = new JobJournal(journalFile);
+        setState(jobs.get(0), TranscodeJob.State.FAILED, -1, journal);
+        // started, but the file existed already: the encoder didn't create it
+        for (TranscodeJob job : jobs.subList(1, 3)) {
+            job.state = TranscodeJob.State.RUNNING;
+            journal.record(job);
+        }
+        setState(jobs.get(1), TranscodeJob.State.FAILED, 1, journal);
+        journal.close();
+        
+        jobs = createJobs("skipped", "refused", "interrupted");
+        journal = new JobJournal(journalFile);
+        assertEquals(jobs, journal.resume(jobs));
+        journal.close();
+        for (TranscodeJob job : jobs) {
+            assertTrue(job.getDestination().exists());
+        }
+    }
+    
+    /**
+     * A job that is done, but whose output has vanished, must run again
+     */
+    @Test
+    public void testResumeMissingOutput() throws IOException {
+        List<TranscodeJob> jobs = createJobs("gone");
+        JobJournal journal = new JobJournal(journalFile);
+        setState(jobs.get(0), TranscodeJob.State.DONE, 0, journal);
+        journal.close();
+        
+        jobs = createJobs("gone");
+        journal = new JobJournal(journalFile);
+        assertEquals(jobs, journal.resume(jobs));
+        assertEquals(TranscodeJob.State.QUEUED, jobs.get(0).getState());
+        journal.close();
+    }
+    
+    /**
+     * Test of escaping (paths with tabs, line breaks and backslashes) and of
+     * a torn last record, as left by a crash
+     */
+    @Test
+    public void testEscapingAndTornRecord() throws IOException {
+        List<TranscodeJob> jobs = createJobs("tab\there", "line\nbreak", "back\\slash\\t");
+        JobJournal journal = new JobJournal(journalFile);
+        for (TranscodeJob job : jobs) {
+            setState(job, TranscodeJob.State.DONE, 0, journal);
+        }
+        journal.close();
+        
+        OutputStream out = new FileOutputStream(journalFile, true);
+        try {
+            out.write(("0\tRUNNING\t-1\tx\t" + jobs.get(0).getDestination().getPath()).getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+        
+        journal = new JobJournal(journalFile);
+        for (TranscodeJob job : jobs) {
+            assertEquals(TranscodeJob.State.DONE, journal.getState(job));
+        }
+        journal.close();
+    }
+    
+    /**
+     * A record appended after a torn record must not be lost
+     */
+    @Test
+    public void testAppendAfterTornRecord() throws IOException {
+        List<TranscodeJob> jobs = createJobs("first", "second");
+        JobJournal journal = new JobJournal(journalFile);
+        setState(jobs.get(0), TranscodeJob.State.DONE, 0, journal);
+        journal.close();
+        long complete = journalFile.length();
+        
+        OutputStream out = new FileOutputStream(journalFile, true);
+        try {
+            out.write(("0\tRUNNING\t-1\tx\t" + jobs.get(1).getDestination().getPath()).getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+        
+        journal = new JobJournal(journalFile);
+        assertEquals(complete, journalFile.length());
+        setState(jobs.get(1), TranscodeJob.State.DONE, 0, journal);
+        journal.close();
+        
+        journal = new JobJournal(journalFile);
+        assertEquals(TranscodeJob.State.DONE, journal.getState(jobs.get(0)));
+        assertEquals(TranscodeJob.State.DONE, journal.getState(jobs.get(1)));
+        journal.close();
+    }
+    
+    /**
+     * Test of sync batching: RUNNING is synced immediately, other states are
+     * only synced once the batch is full
+     */
+    @Test
+    public void testSyncBatching() throws IOException {
+        JobJournal journal = new JobJournal(journalFile);
+        journal.syncInterval = Long.MAX_VALUE;
+        journal.syncBatchSize = 3;
+        List<TranscodeJob> jobs = createJobs("a", "b", "c");
+        
+        journal.record(jobs.get(0));
+        journal.record(jobs.get(1));
+        assertEquals(2, journal.unsynced);
+        journal.record(jobs.get(2));
+        assertEquals(0, journal.unsynced);
+        journal.record(jobs.get(0));
+        assertEquals(1, journal.unsynced);
+        setState(jobs.get(1), TranscodeJob.State.RUNNING, -1, journal);
+        assertEquals(0, journal.unsynced);
+        
+        assertTrue(journal.delete());
+        assertFalse(journalFile.exists());
+    }
+    
+    // ++++++++++ helpers ++++++++++
+    
+    private List<TranscodeJob> createJobs(String... names) {
+        List<TranscodeJob> jobs = new ArrayList<TranscodeJob>();
+        int id = 0;
+        for (String name : names) {
+            jobs.add(new TranscodeJob(id++, new File(tempDir, name + ".avi"),
+                    new File(tempDir, name + ".mkv"), Collections.<String>emptyList()));
+        }
+        return jobs;
+    }
+    
+    private static void setState(TranscodeJob job, TranscodeJob.State state, int exitCode,
+            JobJournal journal) throws IOException {
+        if (state == TranscodeJob.State.RUNNING) {
+            job.ownsDestination = true;     // as if the encoder had created the output
+        }
+        job.state = state;
+        job.exitCode = exitCode;
+        journal.record(job);
+    }
+    
+    private static void write(File file, String content) throws IOException {
+        FileWriter writer = new FileWriter(file);
+        try {
+            writer.write(content);
+        } finally {
+            writer.close();
+        }
+    }
+    
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2011 Sebastian Straub <sebastian-straub@gmx.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package vbp.model.exec;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+public class ModelExecutorTest {
+    
+    @Test
+    public void testSerialLane() throws Exception {
+        ModelExecutor executor = new ModelExecutor();
+        final List<Integer> order = Collections.synchronizedList(new ArrayList<Integer>());
+        final List<String> threads = Collections.synchronizedList(new ArrayList<String>());
+        Future<?> last = null;
+        for (int i = 0; i < 20; i++) {
+            final int n = i;
+            last = executor.submit(ModelExecutor.Lane.IO, new Runnable() {
+
+                @Override
+                public void run() {
+                    order.add(n);
+                    threads.add(Thread.currentThread().getName());
+                }
+            });
+        }
+        last.get(5, TimeUnit.SECONDS);
+        
+        for (int i = 0; i < 20; i++) {
+            assertEquals(i, (int) order.get(i));
+            assertEquals("vbp-io-1", threads.get(i));
+        }
+        assertTrue(executor.shutdown(5, TimeUnit.SECONDS));
+    }
+    
+    @Test
+    public void testBoundedQueue() throws Exception {
+        ModelExecutor executor = new ModelExecutor();
+        final CountDownLatch blocked = new CountDownLatch(1);
+        executor.submit(ModelExecutor.Lane.PERSISTENCE, new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    blocked.await();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        Runnable nothing = new Runnable() {
+
+            @Override
+            public void run() {
+            }
+        };
+        for (int i = 0; i < 40; i++) {
+            futures.add(executor.submit(ModelExecutor.Lane.PERSISTENCE, nothing));
+        }
+        int rejected = 0;
+        for (Future<?> future : futures) {
+            if (future.isCancelled()) {
+                rejected++;
+            }
+        }
+        // the first task runs, the queue holds 16 more
+        assertEquals(40 - 16, rejected);
+        blocked.countDown();
+        assertTrue(executor.shutdown(5, TimeUnit.SECONDS));
+    }
+    
+    @Test
+    public void testShutdown() throws Exception {
+        ModelExecutor executor = new ModelExecutor();
+        final CountDownLatch started = new CountDownLatch(1);
+        final AtomicBoolean interrupted = new AtomicBoolean(false);
+        final AtomicBoolean saved = new AtomicBoolean(false);
+        executor.submit(ModelExecutor.Lane.IO, new Runnable() {
+
+            @Override
+            public void run() {
+                started.countDown();
+                try {
+                    Thread.sleep(60000);
+                } catch (InterruptedException ex) {
+                    interrupted.set(true);
+                }
+            }
+        });
+        executor.submit(ModelExecutor.Lane.PERSISTENCE, new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(200);
+                } catch (InterruptedException ex) {
+                    return;
+                }
+                saved.set(true);
+            }
+        });
+        started.await();
+        
+        assertTrue(executor.shutdown(5, TimeUnit.SECONDS));
+        assertTrue(interrupted.get());
+        assertTrue(saved.get());
+        assertTrue(executor.isShutdown());
+        assertTrue(executor.submit(ModelExecutor.Lane.CPU, new Runnable() {
+
+            @Override
+            public void run() {
+            }
+        }).isCancelled());
+    }
+    
+}
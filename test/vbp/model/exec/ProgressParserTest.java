@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2011 Sebastian Straub <sebastian-straub@gmx.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package vbp.model.exec;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+public class ProgressParserTest {
+    
+    /**
+     * Test of FFmpegProgressParser, with the output of ffmpeg -progress pipe:1
+     */
+    @Test
+    public void testFFmpeg() {
+        ProgressParser parser = new FFmpegProgressParser().create();
+        assertEquals(Arrays.asList("ffmpeg", "-progress", "pipe:1", "-nostats", "-i", "in.avi", "out.mkv"),
+                parser.prepareCommand(Arrays.asList("ffmpeg", "-i", "in.avi", "out.mkv")));
+        
+        assertFalse(parser.feed("Input #0, avi, from 'in.avi':"));
+        assertFalse(parser.feed("  Duration: 00:01:40.00, start: 0.000000, bitrate: 1205 kb/s"));
+        assertFalse(parser.feed("    Stream #0:0: Video: mpeg4, yuv420p, 640x480, 25 fps"));
+        
+        for (String line : new String[] { "frame=625", "fps=50.0", "bitrate= 800.1kbits/s",
+                "out_time_us=25000000", "out_time=00:00:25.000000", "speed=2.00x" }) {
+            assertFalse(parser.feed(line));
+        }
+        assertTrue(parser.feed("progress=continue"));
+        Progress progress = parser.getProgress();
+        assertEquals(25, progress.getPercent(), 0.001);
+        assertEquals(50, progress.getFps(), 0.001);
+        assertEquals(2, progress.getSpeed(), 0.001);
+        // 75s of video left at twice the speed
+        assertEquals(37500, progress.getEta());
+        
+        assertFalse(parser.feed("speed=N/A"));
+        assertTrue(parser.feed("progress=continue"));
+        assertEquals(-1, parser.getProgress().getEta());
+        
+        assertTrue(parser.feed("progress=end"));
+        assertEquals(100, parser.getProgress().getPercent(), 0.001);
+        assertEquals(0, parser.getProgress().getEta());
+    }
+    
+    /**
+     * Without a known duration, only fps and speed can be reported
+     */
+    @Test
+    public void testFFmpegUnknownDuration() {
+        ProgressParser parser = new FFmpegProgressParser();
+        parser.feed("  Duration: N/A, start: 0.000000, bitrate: N/A");
+        parser.feed("fps=30.0");
+        parser.feed("out_time_us=1000000");
+        parser.feed("speed=1.5x");
+        assertTrue(parser.feed("progress=continue"));
+        assertEquals(-1, parser.getProgress().getPercent(), 0.001);
+        assertEquals(-1, parser.getProgress().getEta());
+        assertEquals(1.5, parser.getProgress().getSpeed(), 0.001);
+    }
+    
+    /**
+     * Test of HandbrakeProgressParser, single and multi-pass
+     */
+    @Test
+    public void testHandbrake() {
+        ProgressParser parser = new HandbrakeProgressParser().create();
+        assertFalse(parser.feed("[12:00:00] starting job"));
+        assertTrue(parser.feed("Encoding: task 1 of 1, 0.52 %"));
+        assertEquals(0.52, parser.getProgress().getPercent(), 0.001);
+        assertEquals(-1, parser.getProgress().getFps(), 0.001);
+        
+        assertTrue(parser.feed("Encoding: task 1 of 1, 45.67 % (30.12 fps, avg 28.50 fps, ETA 00h01m23s)"));
+        Progress progress = parser.getProgress();
+        assertEquals(45.67, progress.getPercent(), 0.001);
+        assertEquals(30.12, progress.getFps(), 0.001);
+        assertEquals(83000, progress.getEta());
+        
+        parser = new HandbrakeProgressParser();
+        assertTrue(parser.feed("Encoding: task 1 of 2, 50.00 % (60.00 fps, avg 58.00 fps, ETA 00h00m30s)"));
+        assertEquals(25, parser.getProgress().getPercent(), 0.001);
+        assertEquals(-1, parser.getProgress().getEta());
+        assertTrue(parser.feed("Encoding: task 2 of 2, 50.00 % (20.00 fps, avg 21.00 fps, ETA 00h01m00s)"));
+        assertEquals(75, parser.getProgress().getPercent(), 0.001);
+        assertEquals(60000, parser.getProgress().getEta());
+    }
+    
+    /**
+     * Test of BatchProgress: finished jobs count as complete, running jobs
+     * with their own progress
+     */
+    @Test
+    public void testBatchProgress() {
+        TranscodeJob[] jobs = new TranscodeJob[4];
+        for (int i = 0; i < jobs.length; i++) {
+            jobs[i] = new TranscodeJob(i, new File(i + ".avi"), new File(i + ".mkv"), Collections.<String>emptyList());
+        }
+        BatchProgress batch = new BatchProgress(jobs.length);
+        assertEquals(0, batch.getProgress().getPercent(), 0.001);
+        assertEquals(-1, batch.getProgress().getEta());
+        
+        jobs[0].state = TranscodeJob.State.RUNNING;
+        batch.update(jobs[0]);
+        jobs[1].state = TranscodeJob.State.RUNNING;
+        batch.update(jobs[1]);
+        jobs[0].state = TranscodeJob.State.DONE;
+        batch.update(jobs[0]);
+        jobs[1].progress = new Progress(50, 20, 1.5, 1000);
+        Progress progress = batch.update(jobs[1]);
+        
+        assertEquals(1, batch.getFinished());
+        assertEquals(37.5, progress.getPercent(), 0.001);
+        assertEquals(20, progress.getFps(), 0.001);
+        assertEquals(1.5, progress.getSpeed(), 0.001);
+        assertTrue(progress.getEta() >= 0);
+    }
+    
+    /**
+     * Jobs that fail without running (e.g. skipped by the scheduler) are
+     * finished as well, repeated updates are counted once
+     */
+    @Test
+    public void testBatchProgressSkipped() {
+        TranscodeJob[] jobs = new TranscodeJob[2];
+        for (int i = 0; i < jobs.length; i++) {
+            jobs[i] = new TranscodeJob(i, new File(i + ".avi"), new File(i + ".mkv"), Collections.<String>emptyList());
+        }
+        BatchProgress batch = new BatchProgress(jobs.length);
+        
+        jobs[0].state = TranscodeJob.State.FAILED;
+        batch.update(jobs[0]);
+        batch.update(jobs[0]);
+        assertEquals(1, batch.getFinished());
+        assertEquals(50, batch.getProgress().getPercent(), 0.001);
+        
+        jobs[1].state = TranscodeJob.State.RUNNING;
+        batch.update(jobs[1]);
+        jobs[1].state = TranscodeJob.State.DONE;
+        Progress progress = batch.update(jobs[1]);
+        assertEquals(2, batch.getFinished());
+        assertEquals(100, progress.getPercent(), 0.001);
+    }
+    
+}
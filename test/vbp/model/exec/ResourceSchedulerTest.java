@@ -0,0 +1,269 @@
+/*
+ * Copyright (C) 2011 Sebastian Straub <sebastian-straub@gmx.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package vbp.model.exec;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.FileStore;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import sebi.util.system.Platform;
+import static org.junit.Assert.*;
+import static org.junit.Assume.*;
+
+/**
+ *
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+public class ResourceSchedulerTest {
+    
+    private File tempDir;
+    private TestScheduler scheduler;
+    
+    @Before
+    public void setUp() throws IOException {
+        tempDir = File.createTempFile("vbp-sched", "");
+        tempDir.delete();
+        tempDir.mkdir();
+        scheduler = new TestScheduler(8);
+        scheduler.setAdjustInterval(0);
+        scheduler.setPollInterval(20);
+    }
+    
+    @After
+    public void tearDown() {
+        File[] children = tempDir.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                child.delete();
+            }
+        }
+        tempDir.delete();
+    }
+    
+    @Test
+    public void testConcurrencyFollowsLoad() throws IOException {
+        TranscodeJob job = createJob(0, 10);
+        List<TranscodeJob> none = Collections.emptyList();
+        
+        // 4 cores, 1.5 busy -> start with 2 idle cores
+        scheduler.load = 1.5;
+        assertTrue(scheduler.admit(job, none));
+        assertEquals(2, scheduler.getConcurrency());
+        
+        // no headroom -> no more jobs
+        scheduler.load = 3.5;
+        List<TranscodeJob> two = Arrays.asList(createJob(1, 10), createJob(2, 10));
+        assertFalse(scheduler.admit(job, two));
+        assertEquals(2, scheduler.getConcurrency());
+        
+        // overloaded -> decrease
+        scheduler.load = 6;
+        assertFalse(scheduler.admit(job, two));
+        assertEquals(1, scheduler.getConcurrency());
+        
+        // never below one job
+        assertFalse(scheduler.admit(job, two));
+        assertEquals(1, scheduler.getConcurrency());
+        assertTrue(scheduler.admit(job, none));
+        
+        // idle again -> increase step by step, but not above the maximum
+        scheduler.load = 0;
+        for (int i = 0; i < 20; i++) {
+            scheduler.admit(job, none);
+        }
+        assertEquals(8, scheduler.getConcurrency());
+    }
+    
+    /**
+     * The load of our own jobs is not mistaken for a busy machine
+     */
+    @Test
+    public void testOwnLoadDoesNotThrottle() throws IOException {
+        // one job per core
+        scheduler = new TestScheduler(4);
+        scheduler.setAdjustInterval(0);
+        TranscodeJob job = createJob(0, 10);
+        scheduler.load = 0;
+        assertTrue(scheduler.admit(job, Collections.<TranscodeJob>emptyList()));
+        assertEquals(4, scheduler.getConcurrency());
+        
+        // 3 of our jobs keep 3 cores busy -> one more may start
+        List<TranscodeJob> running = new ArrayList<TranscodeJob>();
+        for (int i = 1; i <= 3; i++) {
+            running.add(createJob(i, 10));
+        }
+        scheduler.load = 3;
+        for (int i = 0; i < 20; i++) {
+            assertTrue(scheduler.admit(job, running));
+        }
+        assertEquals(4, scheduler.getConcurrency());
+        
+        // our 4 jobs (and some overhead) overload the cores -> full, but no decrease
+        running.add(createJob(4, 10));
+        scheduler.load = 4.5;
+        for (int i = 0; i < 20; i++) {
+            assertFalse(scheduler.admit(job, running));
+        }
+        assertEquals(4, scheduler.getConcurrency());
+        
+        // multi-threaded encoders
+        scheduler.setLoadPerJob(3);
+        scheduler.load = 12;
+        assertFalse(scheduler.admit(job, running));
+        assertEquals(4, scheduler.getConcurrency());
+        
+        // foreign load on top of our jobs -> decrease
+        scheduler.setLoadPerJob(1);
+        scheduler.load = 6;
+        assertFalse(scheduler.admit(job, running));
+        assertEquals(3, scheduler.getConcurrency());
+    }
+    
+    @Test
+    public void testNoLoadAverage() throws IOException {
+        scheduler.load = -1;
+        assertTrue(scheduler.admit(createJob(0, 10), Collections.<TranscodeJob>emptyList()));
+        assertEquals(8, scheduler.getConcurrency());
+    }
+    
+    @Test
+    public void testDiskSpace() throws IOException {
+        scheduler.usable = 1000;
+        TranscodeJob job = createJob(0, 600);
+        TranscodeJob runningJob = createJob(1, 600);
+        
+        assertTrue(scheduler.admit(job, Collections.<TranscodeJob>emptyList()));
+        assertFalse(scheduler.isPausedForSpace());
+        
+        // running job has written 100 of 600 bytes -> 500 still needed
+        resize(runningJob.getDestination(), 100);
+        assertFalse(scheduler.admit(job, Collections.singletonList(runningJob)));
+        assertTrue(scheduler.isPausedForSpace());
+        
+        resize(runningJob.getDestination(), 500);
+        assertTrue(scheduler.admit(job, Collections.singletonList(runningJob)));
+        
+        scheduler.setReservedSpace(350);
+        assertFalse(scheduler.admit(job, Collections.singletonList(runningJob)));
+    }
+    
+    /**
+     * The executor pauses while the space of the running jobs is reserved and
+     * continues as soon as they are done.
+     */
+    @Test
+    public void testExecutorPausesAdmission() throws Exception {
+        assumeTrue(!Platform.isWindows() && new File("/bin/sh").canExecute());
+        
+        scheduler.usable = 120;
+        List<TranscodeJob> jobs = new ArrayList<TranscodeJob>();
+        for (int i = 0; i < 4; i++) {
+            jobs.add(new TranscodeJob(i, createJob(i, 50).getSource(), new File(tempDir, i + ".out"),
+                    Arrays.asList("/bin/sh", "-c", "sleep 0.3")));
+        }
+        
+        TranscodeExecutor executor = new TranscodeExecutor(4, new File(tempDir, "logs"));
+        executor.setScheduler(scheduler);
+        long start = System.currentTimeMillis();
+        executor.execute(jobs);
+        assertTrue(System.currentTimeMillis() - start >= 600);
+        assertEquals(2, executor.getPeakConcurrency());
+        for (TranscodeJob job : jobs) {
+            assertEquals(TranscodeJob.State.DONE, job.getState());
+        }
+    }
+    
+    /**
+     * A job that doesn't fit while nothing else is running is skipped, the
+     * batch goes on
+     */
+    @Test
+    public void testExecutorSkipsUnsatisfiableJob() throws Exception {
+        assumeTrue(!Platform.isWindows() && new File("/bin/sh").canExecute());
+        
+        scheduler.usable = 100;
+        List<TranscodeJob> jobs = new ArrayList<TranscodeJob>();
+        long[] sizes = { 50, 500, 50 };
+        for (int i = 0; i < sizes.length; i++) {
+            jobs.add(new TranscodeJob(i, createJob(i, sizes[i]).getSource(), new File(tempDir, i + ".out"),
+                    Arrays.asList("/bin/sh", "-c", "exit 0")));
+        }
+        
+        TranscodeExecutor executor = new TranscodeExecutor(2, new File(tempDir, "logs"));
+        executor.setScheduler(scheduler);
+        executor.execute(jobs);
+        assertEquals(TranscodeJob.State.DONE, jobs.get(0).getState());
+        assertEquals(TranscodeJob.State.FAILED, jobs.get(1).getState());
+        assertTrue(jobs.get(1).getStderrLog().length() > 0);
+        assertEquals(TranscodeJob.State.DONE, jobs.get(2).getState());
+    }
+    
+    // helpers
+    
+    private TranscodeJob createJob(int id, long sourceSize) throws IOException {
+        File source = new File(tempDir, id + ".avi");
+        resize(source, sourceSize);
+        File destination = new File(tempDir, id + ".mkv");
+        return new TranscodeJob(id, source, destination, Collections.<String>emptyList());
+    }
+    
+    private static void resize(File file, long length) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(length);
+        } finally {
+            raf.close();
+        }
+    }
+    
+    /**
+     * Scheduler with a fake machine: 4 cores, adjustable load and disk space
+     */
+    private static class TestScheduler extends ResourceScheduler {
+        
+        volatile double load = 0;
+        volatile long usable = Long.MAX_VALUE / 2;
+
+        TestScheduler(int maxConcurrency) {
+            super(maxConcurrency);
+        }
+
+        @Override
+        protected double getLoadAverage() {
+            return load;
+        }
+
+        @Override
+        protected int getAvailableProcessors() {
+            return 4;
+        }
+
+        @Override
+        protected long getUsableSpace(FileStore store) {
+            return usable;
+        }
+        
+    }
+    
+}
@@ -0,0 +1,268 @@
+/*
+ * Copyright (C) 2011 Sebastian Straub <sebastian-straub@gmx.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package vbp.model.exec;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import sebi.util.system.Platform;
+import static org.junit.Assert.*;
+import static org.junit.Assume.*;
+
+/**
+ *
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+public class SpoolQueueTest {
+    
+    private File tempDir;
+    private File spoolDir;
+    
+    @Before
+    public void setUp() throws IOException {
+        tempDir = File.createTempFile("vbp-spool", "");
+        tempDir.delete();
+        tempDir.mkdir();
+        tempDir = tempDir.getCanonicalFile();
+        spoolDir = new File(tempDir, "spool");
+    }
+    
+    @After
+    public void tearDown() {
+        delete(tempDir);
+    }
+    
+    /**
+     * Many threads claim jobs at the same time, every job must be claimed
+     * exactly once
+     */
+    @Test
+    public void testClaimIsExclusive() throws Exception {
+        final SpoolQueue queue = new SpoolQueue(spoolDir);
+        queue.submit("batch", createJobs(50, "ffmpeg"));
+        assertEquals(50, queue.countPending());
+        
+        ExecutorService threads = Executors.newFixedThreadPool(8);
+        List<Future<List<String>>> results = new ArrayList<Future<List<String>>>();
+        for (int i = 0; i < 8; i++) {
+            final String worker = "worker" + i;
+            results.add(threads.submit(new Callable<List<String>>() {
+
+                @Override
+                public List<String> call() throws Exception {
+                    List<String> claimed = new ArrayList<String>();
+                    SpoolQueue.Lease lease;
+                    while ((lease = queue.claim(worker)) != null) {
+                        claimed.add(lease.getId());
+                    }
+                    return claimed;
+                }
+            }));
+        }
+        threads.shutdown();
+        
+        Set<String> ids = new HashSet<String>();
+        int total = 0;
+        for (Future<List<String>> result : results) {
+            List<String> claimed = result.get();
+            total += claimed.size();
+            ids.addAll(claimed);
+        }
+        assertEquals(50, total);
+        assertEquals(50, ids.size());
+        assertEquals(0, queue.countPending());
+        assertEquals(50, queue.countRunning());
+    }
+    
+    /**
+     * A lease without heartbeat is released, the next attempt knows about it
+     */
+    @Test
+    public void testStaleLease() throws Exception {
+        SpoolQueue queue = new SpoolQueue(spoolDir);
+        queue.submit("batch", createJobs(1, "ffmpeg"));
+        
+        SpoolQueue.Lease lease = queue.claim("dead");
+        assertEquals("batch-000000", lease.getId());
+        assertEquals(0, lease.getAttempt());
+        assertEquals(Arrays.asList("ffmpeg", "-i", "0.avi", "0.mkv"), stripPaths(lease.getJob().getCommand()));
+        
+        // fresh leases are kept
+        assertEquals(0, queue.releaseStale(60000));
+        assertTrue(queue.heartbeat(lease));
+        
+        // the encoder was running when the worker died
+        queue.markStarted(lease);
+        lease.file.setLastModified(System.currentTimeMillis() - 120000);
+        assertEquals(1, queue.releaseStale(60000));
+        assertFalse(queue.heartbeat(lease));
+        
+        SpoolQueue.Lease retry = queue.claim("alive");
+        assertEquals("batch-000000", retry.getId());
+        assertEquals(1, retry.getAttempt());
+        assertEquals("alive", retry.getWorker());
+        assertTrue(queue.isStarted(retry));
+        
+        // the dead worker can't complete the job any more
+        TranscodeJob job = lease.getJob();
+        job.state = TranscodeJob.State.DONE;
+        assertFalse(queue.complete(lease, job));
+        assertTrue(queue.complete(retry, job));
+        assertEquals(1, queue.countDone());
+        assertEquals(0, queue.countRunning());
+    }
+    
+    /**
+     * Leases that never started the encoder keep their attempt counter, files
+     * with unknown names don't disturb the queue
+     */
+    @Test
+    public void testUnstartedLeaseAndStrayFiles() throws Exception {
+        SpoolQueue queue = new SpoolQueue(spoolDir);
+        queue.submit("batch", createJobs(1, "ffmpeg"));
+        assertTrue(new File(spoolDir, "pending/stray.job").createNewFile());
+        File stray = new File(spoolDir, "running/stray");
+        assertTrue(stray.createNewFile());
+        stray.setLastModified(System.currentTimeMillis() - 120000);
+        assertEquals(1, queue.countPending());
+        assertEquals(0, queue.countRunning());
+        
+        SpoolQueue.Lease lease = queue.claim("dead");
+        assertEquals("batch-000000", lease.getId());
+        assertNull(queue.claim("dead"));
+        
+        // released without starting the encoder (e.g. stopped or stale)
+        assertTrue(queue.release(lease));
+        lease = queue.claim("dead");
+        assertEquals(0, lease.getAttempt());
+        lease.file.setLastModified(System.currentTimeMillis() - 120000);
+        assertEquals(1, queue.releaseStale(60000));
+        
+        SpoolQueue.Lease retry = queue.claim("alive");
+        assertEquals(0, retry.getAttempt());
+        assertFalse(queue.isStarted(retry));
+        assertTrue(stray.exists());
+    }
+    
+    /**
+     * Several workers (as they would run on different machines) work on the
+     * same queue until it's empty
+     */
+    @Test
+    public void testWorkers() throws Exception {
+        assumeTrue(!Platform.isWindows() && new File("/bin/sh").canExecute());
+        
+        File stub = new File(tempDir, "encoder");
+        write(stub, "#!/bin/sh\n"
+                + "sleep 0.1\n"
+                + "case \"$2\" in *7.avi) exit 5;; esac\n"
+                + "cp \"$2\" \"$3\"\n");
+        stub.setExecutable(true);
+        
+        final SpoolQueue queue = new SpoolQueue(spoolDir);
+        List<TranscodeJob> jobs = createJobs(12, stub.getPath());
+        for (TranscodeJob job : jobs) {
+            write(job.getSource(), job.getSource().getName());
+        }
+        queue.submit("batch", jobs);
+        
+        ExecutorService machines = Executors.newFixedThreadPool(3);
+        List<Future<Integer>> completed = new ArrayList<Future<Integer>>();
+        for (int i = 0; i < 3; i++) {
+            final SpoolWorker worker = new SpoolWorker(queue, 2, "host" + i + "@1");
+            assertEquals("host" + i + "_1", worker.getName());
+            worker.setPollInterval(50);
+            worker.setHeartbeatInterval(100);
+            completed.add(machines.submit(new Callable<Integer>() {
+
+                @Override
+                public Integer call() throws Exception {
+                    return worker.run(true);
+                }
+            }));
+        }
+        machines.shutdown();
+        
+        int total = 0;
+        for (Future<Integer> result : completed) {
+            total += result.get();
+        }
+        assertEquals(12, total);
+        assertEquals(11, queue.countDone());
+        assertEquals(1, queue.countFailed());
+        assertEquals(0, queue.countPending());
+        assertEquals(0, queue.countRunning());
+        for (TranscodeJob job : jobs) {
+            assertEquals(!job.getSource().getName().equals("7.avi"), job.getDestination().isFile());
+        }
+        assertTrue(new File(spoolDir, "failed/batch-000007.result").isFile());
+        assertTrue(new File(spoolDir, "logs/batch-000007/0.err.log").isFile());
+    }
+    
+    // helpers
+    
+    private List<TranscodeJob> createJobs(int count, String encoder) {
+        List<TranscodeJob> jobs = new ArrayList<TranscodeJob>();
+        for (int i = 0; i < count; i++) {
+            File source = new File(tempDir, i + ".avi");
+            File destination = new File(tempDir, i + ".mkv");
+            jobs.add(new TranscodeJob(i, source, destination,
+                    Arrays.asList(encoder, "-i", source.getPath(), destination.getPath())));
+        }
+        return jobs;
+    }
+    
+    private List<String> stripPaths(List<String> command) {
+        List<String> stripped = new ArrayList<String>();
+        for (String arg : command) {
+            stripped.add(arg.startsWith(tempDir.getPath()) ? new File(arg).getName() : arg);
+        }
+        return stripped;
+    }
+    
+    private static void write(File file, String content) throws IOException {
+        FileWriter writer = new FileWriter(file);
+        try {
+            writer.write(content);
+        } finally {
+            writer.close();
+        }
+    }
+    
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+    
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright (C) 2011 Sebastian Straub <sebastian-straub@gmx.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package vbp.model.exec;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import sebi.util.observer.ObserverArgs;
+import sebi.util.system.Platform;
+import vbp.model.export.ExportFFmpeg;
+import vbp.model.export.ScriptDialect;
+import static org.junit.Assert.*;
+import static org.junit.Assume.*;
+
+/**
+ *
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+public class TranscodeExecutorTest {
+    
+    private File tempDir;
+    private File logDir;
+    private File stub;
+    private List<Path> inputFiles;
+    
+    @Before
+    public void setUp() throws IOException {
+        assumeTrue(!Platform.isWindows() && new File("/bin/sh").canExecute());
+        
+        tempDir = File.createTempFile("vbp-exec", "");
+        tempDir.delete();
+        tempDir.mkdir();
+        tempDir = tempDir.getCanonicalFile();
+        logDir = new File(tempDir, "logs");
+        
+        // stub encoder: fails for files named "fail", otherwise "transcodes" the file
+        stub = new File(tempDir, "encoder");
+        write(stub, "#!/bin/sh\n"
+                + "echo \"transcoding $2\"\n"
+                + "echo 'some warning' >&2\n"
+                + "sleep 0.2\n"
+                + "case \"$2\" in *fail*) exit 4;; esac\n"
+                + "cp \"$2\" \"$3\"\n");
+        stub.setExecutable(true);
+        
+        inputFiles = new ArrayList<Path>();
+        for (String name : new String[] { "a.avi", "b c.avi", "fail.avi", "d.avi" }) {
+            File file = new File(tempDir, name);
+            write(file, name);
+            inputFiles.add(file.toPath());
+        }
+    }
+    
+    @After
+    public void tearDown() {
+        if (tempDir != null) {
+            delete(tempDir);
+        }
+    }
+    
+    @Test
+    public void testExecute() throws Exception {
+        File output = new File(tempDir, "out");
+        ExportFFmpeg ffmpeg = new ExportFFmpeg(inputFiles, "ffmpeg -i in.avi out.mkv", stub.getPath(), output, true, ScriptDialect.SHELL);
+        List<TranscodeJob> jobs = ffmpeg.buildJobs();
+        assertEquals(4, jobs.size());
+        
+        TranscodeExecutor executor = new TranscodeExecutor(2, logDir);
+        executor.execute(jobs);
+        
+        assertEquals(2, executor.getPeakConcurrency());
+        assertEquals(0, executor.getActive());
+        for (TranscodeJob job : jobs) {
+            assertTrue(job.isFinished());
+            assertEquals("transcoding " + job.getSource().getPath(), readLines(job.getStdoutLog()).get(0));
+            assertEquals("some warning", readLines(job.getStderrLog()).get(0));
+            if (job.getSource().getName().equals("fail.avi")) {
+                assertEquals(TranscodeJob.State.FAILED, job.getState());
+                assertEquals(4, job.getExitCode());
+            } else {
+                assertEquals(TranscodeJob.State.DONE, job.getState());
+                assertEquals(0, job.getExitCode());
+                // output folders have been created
+                assertTrue(job.getDestination().isFile());
+            }
+        }
+    }
+    
+    @Test
+    public void testMissingEncoder() throws Exception {
+        ExportFFmpeg ffmpeg = new ExportFFmpeg(inputFiles, "ffmpeg -i in.avi out.mkv",
+                new File(tempDir, "missing").getPath(), "{name}-conv", ScriptDialect.SHELL);
+        List<TranscodeJob> jobs = new TranscodeExecutor(1, logDir).execute(ffmpeg.buildJobs());
+        
+        for (TranscodeJob job : jobs) {
+            assertEquals(TranscodeJob.State.FAILED, job.getState());
+            assertEquals(-1, job.getExitCode());
+            assertTrue(readLines(job.getStderrLog()).get(0).startsWith("vbp: could not start encoder"));
+        }
+    }
+    
+    @Test
+    public void testProgress() throws Exception {
+        File ffmpegStub = new File(tempDir, "ffmpeg");
+        write(ffmpegStub, "#!/bin/sh\n"
+                + "[ \"$1 $2 $3\" = '-progress pipe:1 -nostats' ] || exit 2\n"
+                + "echo '  Duration: 00:00:10.00, start: 0.000000, bitrate: 1 kb/s' >&2\n"
+                + "printf 'frame=125\\nfps=25.0\\nout_time_us=5000000\\nspeed=2.5x\\nprogress=continue\\n'\n"
+                + "printf 'frame=250\\nfps=25.0\\nout_time_us=10000000\\nspeed=2.5x\\nprogress=end\\n'\n"
+                + "cp \"$5\" \"$6\"\n");
+        ffmpegStub.setExecutable(true);
+        
+        ExportFFmpeg ffmpeg = new ExportFFmpeg(inputFiles.subList(0, 2), "ffmpeg -i in.avi out.mkv",
+                ffmpegStub.getPath(), "{name}-conv", ScriptDialect.SHELL);
+        TranscodeExecutor executor = new TranscodeExecutor(2, logDir);
+        executor.setProgressParser(new FFmpegProgressParser());
+        final List<TranscodeJob> updates = Collections.synchronizedList(new ArrayList<TranscodeJob>());
+        executor.eventJobProgress().addObserver(new ObserverArgs<TranscodeJob>() {
+
+            @Override
+            public void update(TranscodeJob job) {
+                updates.add(job);
+            }
+        });
+        List<TranscodeJob> jobs = executor.execute(ffmpeg.buildJobs());
+        
+        assertEquals(4, updates.size());
+        for (TranscodeJob job : jobs) {
+            assertEquals(TranscodeJob.State.DONE, job.getState());
+            assertEquals(100, job.getProgress().getPercent(), 0.001);
+            assertEquals(25, job.getProgress().getFps(), 0.001);
+            assertEquals(0, job.getProgress().getEta());
+            // the output is still logged
+            assertTrue(readLines(job.getStderrLog()).get(0).contains("Duration: 00:00:10.00"));
+            assertEquals("progress=end", readLines(job.getStdoutLog()).get(9));
+        }
+    }
+    
+    // helpers
+    
+    private static void write(File file, String content) throws IOException {
+        FileWriter writer = new FileWriter(file);
+        try {
+            writer.write(content);
+        } finally {
+            writer.close();
+        }
+    }
+    
+    private static List<String> readLines(File file) throws IOException {
+        List<String> lines = new ArrayList<String>();
+        BufferedReader reader = new BufferedReader(new FileReader(file));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+        } finally {
+            reader.close();
+        }
+        return lines;
+    }
+    
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+    
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2011 Sebastian Straub <sebastian-straub@gmx.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package vbp.model.export;
+
+import java.util.Arrays;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+public class CommandTemplateTest {
+    
+    private CommandTemplate template = new CommandTemplate(
+            Arrays.asList("ffmpeg", "-i", "", "-vf", "scale=640:-2", "-metadata", "title=a b", ""), 2, 7);
+    
+    /**
+     * Every job gets a copy of the skeleton with filled slots
+     */
+    @Test
+    public void testArgv() {
+        String[] first = template.argv("in 1.avi", "out 1.mkv");
+        String[] second = template.argv("in 2.avi", "out 2.mkv");
+        
+        assertEquals(Arrays.asList("ffmpeg", "-i", "in 1.avi", "-vf", "scale=640:-2", "-metadata", "title=a b", "out 1.mkv"),
+                Arrays.asList(first));
+        assertEquals("in 2.avi", second[2]);
+        assertEquals("out 1.mkv", first[7]);
+        assertEquals(8, template.size());
+    }
+    
+    /**
+     * Rendering must be the same as quoting every argument by the dialect
+     */
+    @Test
+    public void testRender() {
+        for (ScriptDialect dialect : ScriptDialect.values()) {
+            String expected = dialect.command(template.command("it's.avi", "100% done.mkv"));
+            String rendered = template.render(dialect, dialect.quote("it's.avi"), dialect.quote("100% done.mkv"));
+            assertEquals(dialect.getDescription(), expected, rendered + dialect.getLineSeparator());
+        }
+        assertEquals("ffmpeg -i \"$1\" -vf scale=640:-2 -metadata 'title=a b' \"$2\"",
+                template.render(ScriptDialect.SHELL, "\"$1\"", "\"$2\""));
+        
+        // destination before source
+        CommandTemplate reversed = new CommandTemplate(Arrays.asList("cp", "-t", "", ""), 3, 2);
+        assertEquals("cp -t 'b c' a", reversed.render(ScriptDialect.SHELL, "a", "'b c'"));
+    }
+    
+}
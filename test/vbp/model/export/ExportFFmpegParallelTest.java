@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2011 Sebastian Straub <sebastian-straub@gmx.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package vbp.model.export;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import sebi.util.system.Platform;
+import static org.junit.Assert.*;
+import static org.junit.Assume.*;
+
+/**
+ *
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+public class ExportFFmpegParallelTest {
+    
+    private File tempDir;
+    private List<Path> inputFiles;
+    
+    @Before
+    public void setUp() throws IOException {
+        tempDir = File.createTempFile("vbp-parallel", "");
+        tempDir.delete();
+        tempDir.mkdir();
+        tempDir = tempDir.getCanonicalFile();
+        
+        // sparse files of different size
+        inputFiles = new ArrayList<Path>();
+        inputFiles.add(createFile("small.avi", 10).toPath());
+        inputFiles.add(createFile("large film.avi", 3000).toPath());
+        inputFiles.add(createFile("fail me.avi", 20).toPath());
+        inputFiles.add(createFile("medium's.avi", 500).toPath());
+    }
+    
+    @After
+    public void tearDown() {
+        File[] children = tempDir.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                child.delete();
+            }
+        }
+        tempDir.delete();
+    }
+    
+    @Test
+    public void testManifestOrder() {
+        ExportFFmpegParallel ffmpeg = new ExportFFmpegParallel(inputFiles, "ffmpeg -i in.avi out.mkv", "ffmpeg", "{name}-conv", 4);
+        ffmpeg.buildScript();
+        
+        String[] fields = new String(ffmpeg.getManifest()).split("\0");
+        assertEquals(12, fields.length);
+        assertEquals("0", fields[0]);
+        assertEquals(new File(tempDir, "large film.avi").getPath(), fields[1]);
+        assertEquals(new File(tempDir, "large film-conv.mkv").getPath(), fields[2]);
+        assertEquals(new File(tempDir, "medium's.avi").getPath(), fields[4]);
+        assertEquals(new File(tempDir, "fail me.avi").getPath(), fields[7]);
+        assertEquals(new File(tempDir, "small.avi").getPath(), fields[10]);
+    }
+    
+    @Test(expected = UnsupportedOperationException.class)
+    public void testOnlyShellDialect() {
+        new ExportFFmpegParallel(inputFiles, "ffmpeg -i in.avi out.mkv", "ffmpeg", "{name}-conv", 4) {
+            {
+                dialect = ScriptDialect.BATCH;
+            }
+        }.buildScript();
+    }
+    
+    /**
+     * Runs the driver against a stub ffmpeg, which fails for one of the files.
+     */
+    @Test
+    public void testDriverWithStubFFmpeg() throws Exception {
+        assumeTrue(!Platform.isWindows() && new File("/bin/sh").canExecute());
+        
+        File stub = new File(tempDir, "ffmpeg");
+        write(stub, "#!/bin/sh\ncase \"$2\" in *fail*) exit 3;; esac\nexit 0\n");
+        stub.setExecutable(true);
+        
+        ExportFFmpegParallel ffmpeg = new ExportFFmpegParallel(inputFiles, "ffmpeg -i in.avi out.mkv", stub.getPath(), "{name}-conv", 2);
+        File script = new File(tempDir, "batch.sh");
+        ffmpeg.writeScript(script, ffmpeg.buildScript());
+        assertTrue(new File(tempDir, "batch.jobs").isFile());
+        
+        assertEquals(123, run("/bin/sh", script.getPath()));      // xargs: some jobs failed
+        
+        List<String> results = readLines(new File(tempDir, "batch.results"));
+        Collections.sort(results);
+        assertEquals(4, results.size());
+        assertEquals("0\t0\t" + new File(tempDir, "large film.avi").getPath(), results.get(0));
+        assertEquals("1\t0\t" + new File(tempDir, "medium's.avi").getPath(), results.get(1));
+        assertEquals("2\t3\t" + new File(tempDir, "fail me.avi").getPath(), results.get(2));
+        assertEquals("3\t0\t" + new File(tempDir, "small.avi").getPath(), results.get(3));
+    }
+    
+    // helpers
+    
+    private File createFile(String name, long length) throws IOException {
+        File file = new File(tempDir, name);
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(length);
+        } finally {
+            raf.close();
+        }
+        return file;
+    }
+    
+    private static void write(File file, String content) throws IOException {
+        FileWriter writer = new FileWriter(file);
+        try {
+            writer.write(content);
+        } finally {
+            writer.close();
+        }
+    }
+    
+    private static List<String> readLines(File file) throws IOException {
+        List<String> lines = new ArrayList<String>();
+        BufferedReader reader = new BufferedReader(new FileReader(file));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+        } finally {
+            reader.close();
+        }
+        return lines;
+    }
+    
+    private static int run(String... command) throws IOException, InterruptedException {
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        InputStream out = process.getInputStream();
+        while (out.read() != -1) {
+            // discard output
+        }
+        return process.waitFor();
+    }
+    
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright (C) 2011 Sebastian Straub <sebastian-straub@gmx.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package vbp.model.export;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import sebi.util.system.Platform;
+import static org.junit.Assert.*;
+import static org.junit.Assume.*;
+
+/**
+ *
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+public class ExportFFmpegSegmentedTest {
+    
+    private File tempDir;
+    private List<Path> inputFiles;
+    
+    @Before
+    public void setUp() throws IOException {
+        tempDir = File.createTempFile("vbp-segmented", "");
+        tempDir.delete();
+        tempDir.mkdir();
+        tempDir = tempDir.getCanonicalFile();
+        
+        inputFiles = Arrays.asList(new File(tempDir, "long film's.avi").toPath(), new File(tempDir, "other.avi").toPath());
+        for (Path file : inputFiles) {
+            write(file.toFile(), "video");
+        }
+    }
+    
+    @After
+    public void tearDown() {
+        delete(tempDir);
+    }
+    
+    @Test
+    public void testScript() {
+        ExportFFmpegSegmented ffmpeg = new ExportFFmpegSegmented(inputFiles, "ffmpeg -i in.avi out.mkv", "ffmpeg", "{name}-conv", 120, 3);
+        String script = ffmpeg.buildScript();
+        
+        assertTrue(script.startsWith("#!/bin/sh\n"));
+        assertTrue(script.contains(" -f segment -segment_time 120 "));
+        assertTrue(script.contains("-P \"${VBP_JOBS:-3}\""));
+        assertTrue(script.contains("*.part.mkv"));
+        assertTrue(script.contains("vbp_segmented '" + tempDir.getPath() + "/long film'\\''s.avi' "));
+        assertTrue(script.endsWith("vbp_segmented " + tempDir.getPath() + "/other.avi "
+                + tempDir.getPath() + "/other-conv.mkv\n"));
+        
+        // invalid lengths fall back to the default
+        ffmpeg = new ExportFFmpegSegmented(inputFiles, "ffmpeg -i in.avi out.mkv", "ffmpeg", "{name}-conv", 0, 3);
+        assertEquals(ExportFFmpegSegmented.DEFAULT_SEGMENT_LENGTH, ffmpeg.getSegmentLength());
+    }
+    
+    @Test(expected = UnsupportedOperationException.class)
+    public void testOnlyShellDialect() {
+        new ExportFFmpegSegmented(inputFiles, "ffmpeg -i in.avi out.mkv", "ffmpeg", "{name}-conv", 60, 2) {
+            {
+                dialect = ScriptDialect.BATCH;
+            }
+        }.buildScript();
+    }
+    
+    /**
+     * Runs the script against a stub ffmpeg, that "splits" every file into
+     * three segments, "encodes" them by replacing digits by letters and joins
+     * them in the order of the concat list.
+     */
+    @Test
+    public void testScriptWithStubFFmpeg() throws Exception {
+        assumeTrue(!Platform.isWindows() && new File("/bin/sh").canExecute());
+        
+        File stub = new File(tempDir, "ffmpeg");
+        write(stub, "#!/bin/sh\n"
+                + "if [ \"$6\" = segment ]; then\n"
+                + "  for i in 0 1 2; do printf \"$i\" > \"$(printf \"${11}\" $i)\"; done\n"
+                + "elif [ \"$2\" = concat ]; then\n"
+                + "  dir=$(dirname \"$6\"); : > \"$9\"\n"
+                + "  sed -n \"s/^file '\\(.*\\)'$/\\1/p\" \"$6\" | while read -r f; do cat \"$dir/$f\" >> \"$9\"; done\n"
+                + "else\n"
+                + "  tr 012 abc < \"$2\" > \"$3\"\n"
+                + "fi\n");
+        stub.setExecutable(true);
+        File tmp = new File(tempDir, "tmp");
+        tmp.mkdir();
+        
+        ExportFFmpegSegmented ffmpeg = new ExportFFmpegSegmented(inputFiles, "ffmpeg -i in.avi out.mkv", stub.getPath(), "{name}-conv", 60, 2);
+        File script = new File(tempDir, "batch.sh");
+        ffmpeg.writeScript(script, ffmpeg.buildScript());
+        
+        ProcessBuilder builder = new ProcessBuilder("/bin/sh", script.getPath()).redirectErrorStream(true);
+        builder.environment().put("TMPDIR", tmp.getPath());
+        assertEquals(0, run(builder));
+        
+        assertEquals("abc", readLines(new File(tempDir, "long film's-conv.mkv")).get(0));
+        assertEquals("abc", readLines(new File(tempDir, "other-conv.mkv")).get(0));
+        // the segments have been removed
+        assertEquals(0, tmp.list().length);
+    }
+    
+    // helpers
+    
+    private static void write(File file, String content) throws IOException {
+        FileWriter writer = new FileWriter(file);
+        try {
+            writer.write(content);
+        } finally {
+            writer.close();
+        }
+    }
+    
+    private static List<String> readLines(File file) throws IOException {
+        List<String> lines = new ArrayList<String>();
+        BufferedReader reader = new BufferedReader(new FileReader(file));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+        } finally {
+            reader.close();
+        }
+        return lines;
+    }
+    
+    private static int run(ProcessBuilder builder) throws IOException, InterruptedException {
+        Process process = builder.start();
+        InputStream out = process.getInputStream();
+        while (out.read() != -1) {
+            // discard output
+        }
+        return process.waitFor();
+    }
+    
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+    
+}
@@ -18,13 +18,20 @@ package vbp.model.export;
 
 import sebi.util.system.Platform;
 import java.util.ArrayList;
-import java.io.File;
+import java.util.Arrays;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
 import java.util.List;
 import org.junit.After;
 import org.junit.AfterClass;
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
+import vbp.model.exec.TranscodeJob;
+import vbp.model.preset.Encoder;
+import vbp.model.preset.Preset;
+import vbp.util.arg.ShellGrammar;
 import static org.junit.Assert.*;
 
 /**
@@ -34,23 +41,23 @@ import static org.junit.Assert.*;
 public class ExportFFmpegTest {
     
     public ExportFFmpegTest() {
-        this.inputFiles = new ArrayList<File>();
+        this.inputFiles = new ArrayList<Path>();
         if(Platform.isWindows()) {
-            inputFiles.add(new File("C:\\Movies\\film1.avi"));
-            inputFiles.add(new File("C:\\Movies\\film2.avi"));
-            inputFiles.add(new File("C:\\Movies\\film3.mkv"));
-            inputFiles.add(new File("C:\\Movies\\film4 test.mov"));
-            inputFiles.add(new File("C:\\Movies\\film5.divx"));
+            inputFiles.add(Paths.get("C:\\Movies\\film1.avi"));
+            inputFiles.add(Paths.get("C:\\Movies\\film2.avi"));
+            inputFiles.add(Paths.get("C:\\Movies\\film3.mkv"));
+            inputFiles.add(Paths.get("C:\\Movies\\film4 test.mov"));
+            inputFiles.add(Paths.get("C:\\Movies\\film5.divx"));
         } else {
-            inputFiles.add(new File("/home/movies/film1.avi"));
-            inputFiles.add(new File("/home/movies/film2.avi"));
-            inputFiles.add(new File("/home/movies/film3.mkv"));
-            inputFiles.add(new File("/home/movies/film4 test.mov"));
-            inputFiles.add(new File("/home/movies/film5.divx"));
+            inputFiles.add(Paths.get("/home/movies/film1.avi"));
+            inputFiles.add(Paths.get("/home/movies/film2.avi"));
+            inputFiles.add(Paths.get("/home/movies/film3.mkv"));
+            inputFiles.add(Paths.get("/home/movies/film4 test.mov"));
+            inputFiles.add(Paths.get("/home/movies/film5.divx"));
         }
     }
     
-    private List<File> inputFiles;
+    private List<Path> inputFiles;
     private String commandLine = "ffmpeg -i video_origine.avi video_finale.mpg";
     private String renamePattern = "{name}-conv";
 //    private File outputFolder;
@@ -79,4 +86,63 @@ public class ExportFFmpegTest {
         String script = ffmpeg.buildScript();
     }
     
+    @Test
+    public void testShellScript() {
+        Export ffmpeg = new ExportFFmpeg(inputFiles, commandLine, "ffmpeg", renamePattern, ScriptDialect.SHELL);
+        String script = ffmpeg.buildScript();
+        
+        assertEquals("sh", ffmpeg.scriptFileExtension);
+        assertTrue(script.startsWith("#!/bin/sh\n"));
+        assertEquals(inputFiles.size() + 1, script.split("\n").length);
+    }
+    
+    @Test
+    public void testBatchScript() {
+        Export ffmpeg = new ExportFFmpeg(inputFiles, commandLine, "ffmpeg", renamePattern, ScriptDialect.BATCH);
+        String script = ffmpeg.buildScript();
+        
+        assertEquals("bat", ffmpeg.scriptFileExtension);
+        assertTrue(script.startsWith("@echo off\r\n"));
+        assertEquals(inputFiles.size() + 1, script.split("\r\n").length);
+    }
+    
+    /**
+     * The options of the command line are kept, input options stay in front
+     * of the input
+     */
+    @Test
+    public void testArguments() {
+        Path input = inputFiles.get(0);
+        ExportFFmpeg ffmpeg = new ExportFFmpeg(inputFiles.subList(0, 1),
+                "ffmpeg -ss 10 -i in.avi -c:v libx264 -vf 'scale=640:-2' -f matroska", "ffmpeg", renamePattern);
+        ffmpeg.setGrammar(ShellGrammar.POSIX);
+        List<String> command = ffmpeg.buildJobs().get(0).getCommand();
+        
+        assertEquals("mkv", ffmpeg.destinationFileExtension);
+        assertEquals(Arrays.asList("ffmpeg", "-ss", "10", "-i", input.toString(), "-c:v", "libx264",
+                "-vf", "scale=640:-2", "-f", "matroska", ffmpeg.applyRenamePattern(input)), command);
+    }
+    
+    /**
+     * Files with an assigned preset get its options and output extension
+     */
+    @Test
+    public void testMixedPresets() {
+        Path input = inputFiles.get(2);
+        Preset mkv = new Preset("mkv", Encoder.FFMPEG, "ffmpeg -i in.avi -c:v libx264 out.mkv", null,
+                Arrays.asList("*.mkv"), ShellGrammar.POSIX);
+        ExportFFmpeg ffmpeg = new ExportFFmpeg(inputFiles, commandLine, "ffmpeg", renamePattern, ScriptDialect.SHELL);
+        ffmpeg.setAssignment(Collections.singletonMap(input, mkv));
+        List<TranscodeJob> jobs = ffmpeg.buildJobs();
+        
+        assertTrue(jobs.get(0).getCommand().get(3).endsWith("film1-conv.mpg"));
+        assertEquals(Arrays.asList("ffmpeg", "-i", input.toString(), "-c:v", "libx264",
+                ffmpeg.applyRenamePattern(input)), jobs.get(2).getCommand());
+        assertTrue(ffmpeg.applyRenamePattern(input).endsWith("film3-conv.mkv"));
+        
+        String[] lines = ffmpeg.buildScript().split("\n");
+        assertTrue(lines[3].contains("libx264"));
+        assertFalse(lines[1].contains("libx264"));
+    }
+    
 }
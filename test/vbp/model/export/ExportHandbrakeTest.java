@@ -18,7 +18,10 @@ package vbp.model.export;
 
 import sebi.util.system.Platform;
 import java.io.File;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import javax.swing.JFileChooser;
 import org.junit.After;
@@ -27,6 +30,7 @@ import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
 import vbp.model.Model;
+import vbp.util.arg.ShellGrammar;
 import static org.junit.Assert.*;
 
 /**
@@ -36,19 +40,19 @@ import static org.junit.Assert.*;
 public class ExportHandbrakeTest {
     
     public ExportHandbrakeTest() {
-        this.inputFiles = new ArrayList<File>();
+        this.inputFiles = new ArrayList<Path>();
         if(Platform.isWindows()) {
-            inputFiles.add(new File("C:\\Movies\\film1.avi"));
-            inputFiles.add(new File("C:\\Movies\\film2.avi"));
-            inputFiles.add(new File("C:\\Movies\\film3.mkv"));
-            inputFiles.add(new File("C:\\Movies\\film4 test.mov"));
-            inputFiles.add(new File("C:\\Movies\\film5.divx"));
+            inputFiles.add(Paths.get("C:\\Movies\\film1.avi"));
+            inputFiles.add(Paths.get("C:\\Movies\\film2.avi"));
+            inputFiles.add(Paths.get("C:\\Movies\\film3.mkv"));
+            inputFiles.add(Paths.get("C:\\Movies\\film4 test.mov"));
+            inputFiles.add(Paths.get("C:\\Movies\\film5.divx"));
         } else {
-            inputFiles.add(new File("/home/movies/film1.avi"));
-            inputFiles.add(new File("/home/movies/film2.avi"));
-            inputFiles.add(new File("/home/movies/film3.mkv"));
-            inputFiles.add(new File("/home/movies/film4 test.mov"));
-            inputFiles.add(new File("/home/movies/film5.divx"));
+            inputFiles.add(Paths.get("/home/movies/film1.avi"));
+            inputFiles.add(Paths.get("/home/movies/film2.avi"));
+            inputFiles.add(Paths.get("/home/movies/film3.mkv"));
+            inputFiles.add(Paths.get("/home/movies/film4 test.mov"));
+            inputFiles.add(Paths.get("/home/movies/film5.divx"));
         }
     }
     
@@ -67,7 +71,7 @@ public class ExportHandbrakeTest {
     }
     
     private Export handbrake;
-    private List<File> inputFiles;
+    private List<Path> inputFiles;
     private String handBrakeQuery = "-f mkv --strict-anamorphic -e x264 -q 25 -a 1 -E lame -6 dpl2 -R Auto -B 128 -D 0.0 -x ref=2:bframes=2:subq=6:mixed-refs=0:weightb=0:8x8dct=0:trellis=0 --verbose=1";
     private String renamePattern = "{name}-conv";
     private File outputFolder;
@@ -123,4 +127,26 @@ public class ExportHandbrakeTest {
         assertEquals(expected, result);
     }
     
+    /**
+     * Input and output in the query are replaced, the format may be missing
+     * or be the last argument
+     */
+    @Test
+    public void testQuery() {
+        Path input = inputFiles.get(3);
+        ExportHandbrake export = new ExportHandbrake(inputFiles.subList(3, 4), "-i x.avi -e x264 -o y.m4v -f", renamePattern);
+        export.setGrammar(ShellGrammar.POSIX);
+        String script = export.buildScript();
+        
+        assertEquals("m4v", export.destinationFileExtension);
+        String destination = export.applyRenamePattern(input);
+        assertTrue(script.contains(String.format("-i \"%s\" -o \"%s\" -e x264 -f", input, destination)));
+        assertEquals(Arrays.asList("HandBrakeCLI", "-i", input.toString(), "-o", destination, "-e", "x264", "-f"),
+                export.buildJobs().get(0).getCommand());
+        
+        export = new ExportHandbrake(inputFiles, "-e x264", renamePattern);
+        export.buildScript();
+        assertEquals("mp4", export.destinationFileExtension);
+    }
+    
 }
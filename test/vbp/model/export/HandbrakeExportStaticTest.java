@@ -17,6 +17,8 @@
 package vbp.model.export;
 
 import java.io.File;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import org.junit.BeforeClass;
 import org.junit.Test;
 import sebi.util.system.Platform;
@@ -32,14 +34,14 @@ public class HandbrakeExportStaticTest {
     @BeforeClass
     public static void setUpClass() {
         if(!Platform.isWindows()) {
-            input = new File("/home/movies/video.avi");
+            input = Paths.get("/home/movies/video.avi");
             output = new File("/home/movies/output");
         }
     }
     
     private static String query = "-f mkv --strict-anamorphic -e x264 -q 25 -a 1"
             + " -E lame -6 dpl2 -R Auto -B 128 -D 0.0 -x ref=2:bframes=2:subq=6:mixed-refs=0:weightb=0:8x8dct=0:trellis=0 --verbose=1";
-    private static File input = new File("C:/movies/test/video.avi");
+    private static Path input = Paths.get("C:/movies/test/video.avi");
     private static File output = new File("C:/movies/output");
     
     
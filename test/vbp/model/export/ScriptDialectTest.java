@@ -0,0 +1,219 @@
+/*
+ * Copyright (C) 2011 Sebastian Straub <sebastian-straub@gmx.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package vbp.model.export;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import sebi.util.system.Platform;
+import static org.junit.Assert.*;
+import static org.junit.Assume.*;
+
+/**
+ *
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+public class ScriptDialectTest {
+    
+    private File tempDir;
+    
+    /** file names that break naive quoting */
+    private String[] nastyNames = {
+        "plain.avi",
+        "with space.avi",
+        "it's.avi",
+        "double \"quoted\".avi",
+        "$HOME and `date`.avi",
+        "100% back\\slash\\.avi",
+        "semi;colon & pipe|.avi",
+        "*glob?[x].avi"
+    };
+    
+    @Before
+    public void setUp() throws IOException {
+        tempDir = File.createTempFile("vbp-dialect", "");
+        tempDir.delete();
+        tempDir.mkdir();
+        tempDir = tempDir.getCanonicalFile();
+    }
+    
+    @After
+    public void tearDown() {
+        File[] children = tempDir.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                child.delete();
+            }
+        }
+        tempDir.delete();
+    }
+
+    /**
+     * Test of quote method, of class ShellScript.
+     */
+    @Test
+    public void testShellQuote() {
+        ScriptDialect sh = ScriptDialect.SHELL;
+        assertEquals("plain.avi", sh.quote("plain.avi"));
+        assertEquals("''", sh.quote(""));
+        assertEquals("'with space.avi'", sh.quote("with space.avi"));
+        assertEquals("'it'\\''s.avi'", sh.quote("it's.avi"));
+        assertEquals("'$HOME'", sh.quote("$HOME"));
+    }
+
+    /**
+     * Test of quote method, of class BatchScript.
+     */
+    @Test
+    public void testBatchQuote() {
+        ScriptDialect bat = ScriptDialect.BATCH;
+        assertEquals("\"C:\\Movies\\film.avi\"", bat.quote("C:\\Movies\\film.avi"));
+        assertEquals("\"C:\\Movies\\\\\"", bat.quote("C:\\Movies\\"));
+        assertEquals("\"semi;colon & pipe|.avi\"", bat.quote("semi;colon & pipe|.avi"));
+        // inner quotes: cmd.exe must not see the & outside of quotes
+        assertEquals("^\"100%% \\^\"done\\^\"^\"", bat.quote("100% \"done\""));
+        assertEquals("^\"a\\\\\\^\"b^\"", bat.quote("a\\\"b"));
+        assertEquals("^\"a\\^\"^&echo x^\"", bat.quote("a\"&echo x"));
+        assertEquals("^\"^(^<\\^\"^>^|^^^)^\"", bat.quote("(<\">|^)"));
+    }
+
+    /**
+     * Test of quote and command method, of class PowerShellScript.
+     */
+    @Test
+    public void testPowerShellQuote() {
+        ScriptDialect ps = ScriptDialect.POWERSHELL;
+        assertEquals("'it''s $HOME'", ps.quote("it's $HOME"));
+        assertEquals("'a\u2019\u2019b'", ps.quote("a\u2019b"));
+        assertEquals("& 'ffmpeg' '-i' 'a b.avi'\r\n", ps.command(Arrays.asList("ffmpeg", "-i", "a b.avi")));
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void testBatchRejectsLineBreaks() {
+        ScriptDialect.BATCH.quote("two\nlines.avi");
+    }
+
+    /**
+     * Test of forFileExtension method, of class ScriptDialect.
+     */
+    @Test
+    public void testForFileExtension() {
+        assertSame(ScriptDialect.SHELL, ScriptDialect.forFileExtension("sh"));
+        assertSame(ScriptDialect.BATCH, ScriptDialect.forFileExtension("BAT"));
+        assertSame(ScriptDialect.POWERSHELL, ScriptDialect.forFileExtension("ps1"));
+        assertNull(ScriptDialect.forFileExtension("exe"));
+        assertNull(ScriptDialect.forFileExtension(null));
+    }
+    
+    /**
+     * The generated shell script must be valid syntax for bash.
+     */
+    @Test
+    public void testShellSyntax() throws Exception {
+        assumeTrue(!Platform.isWindows() && new File("/bin/bash").canExecute());
+        
+        File script = writeScript(buildShellScript("ffmpeg"));
+        assertEquals(0, run("/bin/bash", "-n", script.getPath()));
+    }
+    
+    /**
+     * Runs the generated shell script against a stub ffmpeg, that writes
+     * every argument it receives in a separate line: all arguments must arrive
+     * unchanged.
+     */
+    @Test
+    public void testShellWithStubFFmpeg() throws Exception {
+        assumeTrue(!Platform.isWindows() && new File("/bin/bash").canExecute());
+        
+        File log = new File(tempDir, "args.log");
+        File stub = new File(tempDir, "ffmpeg stub");
+        write(stub, "#!/bin/sh\nfor arg in \"$@\"; do printf '%s\\n' \"$arg\" >> '" + log.getPath() + "'; done\n");
+        stub.setExecutable(true);
+        
+        File script = writeScript(buildShellScript(stub.getPath()));
+        assertEquals(0, run("/bin/bash", script.getPath()));
+        
+        List<String> expected = new ArrayList<String>();
+        for (String name : nastyNames) {
+            expected.add("-i");
+            expected.add(new File(tempDir, name).getPath());
+            expected.add(new File(tempDir, Export.removeExtension(name) + "-conv.mpg").getPath());
+        }
+        assertEquals(expected, readLines(log));
+    }
+    
+    // helpers
+    
+    private String buildShellScript(String executerPath) {
+        List<Path> files = new ArrayList<Path>();
+        for (String name : nastyNames) {
+            files.add(new File(tempDir, name).toPath());
+        }
+        Export ffmpeg = new ExportFFmpeg(files, "ffmpeg -i video_origine.avi video_finale.mpg",
+                executerPath, "{name}-conv", ScriptDialect.SHELL);
+        return ffmpeg.buildScript();
+    }
+    
+    private File writeScript(String content) throws IOException {
+        File script = new File(tempDir, "script.sh");
+        write(script, content);
+        return script;
+    }
+    
+    private static void write(File file, String content) throws IOException {
+        FileWriter writer = new FileWriter(file);
+        try {
+            writer.write(content);
+        } finally {
+            writer.close();
+        }
+    }
+    
+    private static List<String> readLines(File file) throws IOException {
+        List<String> lines = new ArrayList<String>();
+        BufferedReader reader = new BufferedReader(new FileReader(file));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+        } finally {
+            reader.close();
+        }
+        return lines;
+    }
+    
+    private static int run(String... command) throws IOException, InterruptedException {
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        InputStream out = process.getInputStream();
+        while (out.read() != -1) {
+            // discard output
+        }
+        return process.waitFor();
+    }
+    
+}
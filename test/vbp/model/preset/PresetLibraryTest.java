@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2011 Sebastian Straub <sebastian-straub@gmx.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package vbp.model.preset;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import vbp.util.arg.ShellGrammar;
+
+/**
+ *
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+public class PresetLibraryTest {
+    
+    private File tempDir;
+    
+    @Before
+    public void setUp() throws IOException {
+        tempDir = File.createTempFile("vbp-presets", "");
+        tempDir.delete();
+        tempDir.mkdir();
+    }
+    
+    @After
+    public void tearDown() {
+        for (File file : tempDir.listFiles()) {
+            file.delete();
+        }
+        tempDir.delete();
+    }
+    
+    /**
+     * Saved presets are loaded with the same order, options and rules
+     */
+    @Test
+    public void testSaveLoad() throws IOException {
+        PresetLibrary library = PresetLibrary.defaults();
+        library.put(new Preset("web", Encoder.FFMPEG, "ffmpeg -i in.avi -vf \"scale=640:-2\" -c:v libx264 out.mp4", "m4v",
+                Arrays.asList("*.wmv", "*.flv"), ShellGrammar.platformDefault()));
+        File file = new File(tempDir, PresetLibrary.FILE_NAME);
+        library.save(file);
+        
+        PresetLibrary loaded = PresetLibrary.load(file);
+        assertEquals(names(library.getPresets()), names(loaded.getPresets()));
+        Preset web = loaded.get("web");
+        assertEquals(Encoder.FFMPEG, web.getEncoder());
+        assertEquals(library.get("web").getCommandLine(), web.getCommandLine());
+        assertEquals("m4v", web.getExtension());
+        assertEquals(Arrays.asList("*.wmv", "*.flv"), web.getPatterns());
+        assertEquals("mpg", loaded.get(PresetLibrary.DEFAULT_FFMPEG).getExtension());
+        assertEquals("mkv", loaded.get(PresetLibrary.DEFAULT_HANDBRAKE).getExtension());
+    }
+    
+    /**
+     * Invalid presets are rejected by put and skipped by load
+     */
+    @Test
+    public void testInvalid() throws IOException {
+        PresetLibrary library = new PresetLibrary();
+        try {
+            library.put(new Preset("a", Encoder.FFMPEG, "-an -c:v"));
+            fail("invalid preset accepted");
+        } catch (IllegalArgumentException ex) {
+            assertTrue(library.getPresets().isEmpty());
+        }
+        
+        File file = new File(tempDir, PresetLibrary.FILE_NAME);
+        PresetLibrary.defaults().save(file);
+        List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        lines.add("[broken]");
+        lines.add("encoder = ffmpeg");
+        lines.add("command = -c:v");
+        lines.add("[unknown]");
+        lines.add("encoder = mencoder");
+        lines.add("command = -ovc lavc");
+        Files.write(file.toPath(), lines, StandardCharsets.UTF_8);
+        assertEquals(names(PresetLibrary.defaults().getPresets()), names(PresetLibrary.load(file).getPresets()));
+    }
+    
+    /**
+     * The first matching rule of the same encoder wins, files without rule
+     * keep the selected preset
+     */
+    @Test
+    public void testAssign() {
+        PresetLibrary library = PresetLibrary.defaults();
+        Preset selected = library.get(PresetLibrary.DEFAULT_FFMPEG);
+        List<Path> files = Arrays.asList(Paths.get("a.avi"), Paths.get("b.wmv"), Paths.get("c.flv"), Paths.get("d.mpg"));
+        assertTrue(library.assign(files, selected).isEmpty());
+        
+        library.put(new Preset("wmv", Encoder.FFMPEG, "-c:v libx264 out.mkv", null,
+                Arrays.asList("*.wmv"), ShellGrammar.POSIX));
+        library.put(new Preset("web", Encoder.FFMPEG, "-c:v libx264 out.mp4", null,
+                Arrays.asList("*.wmv", "*.flv"), ShellGrammar.POSIX));
+        library.put(new Preset("own", Encoder.FFMPEG, "-an out.avi", null,
+                Arrays.asList("*.mpg"), ShellGrammar.POSIX));
+        library.put(new Preset("hb", Encoder.HANDBRAKE, "-e x264", null,
+                Arrays.asList("*.avi"), ShellGrammar.POSIX));
+        
+        Map<Path, Preset> assignment = library.assign(files, library.get("own"));
+        assertEquals(2, assignment.size());
+        assertEquals("wmv", assignment.get(Paths.get("b.wmv")).getName());
+        assertEquals("web", assignment.get(Paths.get("c.flv")).getName());
+        assertEquals("mp4", assignment.get(Paths.get("c.flv")).getExtension());
+        
+        assertEquals(Collections.singleton(Paths.get("a.avi")),
+                library.assign(files, library.get(PresetLibrary.DEFAULT_HANDBRAKE)).keySet());
+    }
+    
+    private static List<String> names(List<Preset> presets) {
+        String[] names = new String[presets.size()];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = presets.get(i).getName();
+        }
+        return Arrays.asList(names);
+    }
+    
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2011 Sebastian Straub <sebastian-straub@gmx.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package vbp.model.preset;
+
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import vbp.util.arg.ShellGrammar;
+
+/**
+ *
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+public class PresetTest {
+    
+    /**
+     * The output extension is inferred from the command line (unless there is
+     * an explicit one)
+     */
+    @Test
+    public void testExtension() {
+        assertEquals("mpg", new Preset("a", Encoder.FFMPEG, "ffmpeg -i in.avi out.mpg").getExtension());
+        assertEquals("mkv", new Preset("a", Encoder.FFMPEG, "ffmpeg -i in.avi -f matroska pipe").getExtension());
+        assertEquals("avi", new Preset("a", Encoder.FFMPEG, "-c:v mpeg4").getExtension());
+        assertEquals("mkv", new Preset("a", Encoder.HANDBRAKE, "-f av_mkv -e x264").getExtension());
+        assertEquals("m4v", new Preset("a", Encoder.HANDBRAKE, "-e x264 -o out.m4v").getExtension());
+        assertEquals("mp4", new Preset("a", Encoder.HANDBRAKE, "-e x264").getExtension());
+        
+        Preset preset = new Preset("a", Encoder.FFMPEG, "ffmpeg -i in.avi out.mpg", "ts",
+                Collections.<String>emptyList(), ShellGrammar.POSIX);
+        assertEquals("ts", preset.getExtension());
+        assertEquals("ts", preset.withCommandLine("-c:v mpeg2video").getExtension());
+        assertNull(new Preset("a", Encoder.FFMPEG, "-c:v mpeg4").getExplicitExtension());
+    }
+    
+    /**
+     * Test of validate
+     */
+    @Test
+    public void testValidate() {
+        assertTrue(new Preset("a", Encoder.FFMPEG, "ffmpeg -y -i in.avi -an out.mkv").validate().isEmpty());
+        assertTrue(new Preset("a", Encoder.HANDBRAKE, "-f mkv -2T -q20 --verbose=1").validate().isEmpty());
+        
+        assertEquals(1, new Preset("", Encoder.FFMPEG, "-an").validate().size());
+        assertEquals(1, new Preset("[a]", Encoder.FFMPEG, "-an").validate().size());
+        assertEquals(1, new Preset("a", Encoder.FFMPEG, "-an -c:v").validate().size());
+        assertEquals(1, new Preset("a", Encoder.HANDBRAKE, "-e x264 stray").validate().size());
+        assertEquals(1, new Preset("a", Encoder.FFMPEG, "-an", "m p4",
+                Collections.<String>emptyList(), ShellGrammar.POSIX).validate().size());
+        assertEquals(1, new Preset("a", Encoder.FFMPEG, "-an", null,
+                Arrays.asList("*.{avi"), ShellGrammar.POSIX).validate().size());
+    }
+    
+    /**
+     * Test of matches: glob patterns on the file name, case insensitive
+     */
+    @Test
+    public void testMatches() {
+        Preset preset = new Preset("a", Encoder.FFMPEG, "-an", null,
+                Arrays.asList("*.{avi,wmv}", "clip-??.mov"), ShellGrammar.POSIX);
+        assertTrue(preset.matches(Paths.get("videos", "holiday.avi")));
+        assertTrue(preset.matches(Paths.get("videos", "HOLIDAY.WMV")));
+        assertTrue(preset.matches(Paths.get("clip-01.mov")));
+        assertFalse(preset.matches(Paths.get("clip-001.mov")));
+        assertFalse(preset.matches(Paths.get("avi", "holiday.mkv")));
+        assertFalse(new Preset("a", Encoder.FFMPEG, "-an").matches(Paths.get("holiday.avi")));
+    }
+    
+}
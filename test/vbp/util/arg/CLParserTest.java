@@ -234,4 +234,22 @@ public class CLParserTest {
 //        
 //        assertEquals("flv", destinationFileExtension);
 //    }
+    
+    /**
+     * Empty command lines and quotation marks that are not closed
+     */
+    @Test
+    public void testEdgeCases() {
+        CLParser empty = new CLParser("   ");
+        assertNull(empty.getFirstArg());
+        assertEquals("", empty.printString());
+        assertFalse(empty.removeLastArg());
+        
+        CLParser unclosed = new CLParser("ffmpeg -i \"open end.avi");
+        assertEquals(3, unclosed.getArgIndex("\"open end.avi") + 1);
+        assertEquals("open end.avi", unclosed.getLastArg());
+        assertEquals("", new CLParser("a \"").getLastArg());
+        assertEquals("b", new CLParser("\"a\"b").getNthArg(1));
+    }
+    
 }
@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2011 Sebastian Straub <sebastian-straub@gmx.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package vbp.util.arg;
+
+import java.util.Arrays;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+public class EncoderCommandTest {
+    
+    /**
+     * Input options, output options and the output of an ffmpeg command line
+     */
+    @Test
+    public void testFFmpeg() {
+        EncoderCommand cmd = EncoderCommand.parse("/usr/bin/ffmpeg -y -ss 10 -i 'in file.avi' -c:v libx264 "
+                + "-vf \"scale=640:-2\" -an -f matroska 'out file.mkv'", OptionSyntax.FFMPEG, ShellGrammar.POSIX);
+        
+        assertEquals("/usr/bin/ffmpeg", cmd.getProgram());
+        assertEquals(Arrays.asList("in file.avi"), cmd.getInputs());
+        assertEquals("out file.mkv", cmd.getOutput());
+        assertEquals("mkv", cmd.getOutputExtension());
+        assertEquals(Arrays.asList("-y", "-ss", "10"), cmd.getInputArguments());
+        assertEquals(Arrays.asList("-c:v", "libx264", "-vf", "scale=640:-2", "-an", "-f", "matroska"), cmd.getArguments());
+        assertEquals("matroska", cmd.getValue("-f"));
+        assertTrue(cmd.exists("-an"));
+        assertFalse(cmd.exists("-ss"));     // belongs to the input
+        
+        // no output, no program, value that looks like an option
+        cmd = EncoderCommand.parse("-itsoffset -5 -b 1000k", OptionSyntax.FFMPEG, ShellGrammar.POSIX);
+        assertNull(cmd.getProgram());
+        assertNull(cmd.getOutput());
+        assertNull(cmd.getOutputExtension());
+        assertEquals("-5", cmd.getValue("-itsoffset"));
+        assertEquals(Arrays.asList("-itsoffset", "-5", "-b", "1000k"), cmd.getArguments());
+    }
+    
+    /**
+     * getopt syntax of HandBrakeCLI: attached values, combined flags
+     */
+    @Test
+    public void testHandbrake() {
+        EncoderCommand cmd = EncoderCommand.parse("HandBrakeCLI.exe -i \"C:\\Movies\\a b.avi\" --output=out.m4v "
+                + "-2T -q20 --verbose=1 -d --format mkv -x ref=2:bframes=2", OptionSyntax.HANDBRAKE, ShellGrammar.WINDOWS);
+        
+        assertEquals("HandBrakeCLI.exe", cmd.getProgram());
+        assertEquals(Arrays.asList("C:\\Movies\\a b.avi"), cmd.getInputs());
+        assertEquals("out.m4v", cmd.getOutput());
+        assertTrue(cmd.getInputOptions().isEmpty());
+        assertEquals(Arrays.asList("-2", "-T", "-q20", "--verbose=1", "-d", "--format", "mkv", "-x", "ref=2:bframes=2"),
+                cmd.getArguments());
+        assertEquals("20", cmd.getValue("-q"));
+        assertEquals("1", cmd.getValue("--verbose"));
+        assertNull(cmd.getValue("-d"));
+        assertEquals("mkv", cmd.getValue("-f", "--format"));
+        
+        // option without value at the end
+        cmd = EncoderCommand.parse("-e x264 -f", OptionSyntax.HANDBRAKE, ShellGrammar.POSIX);
+        assertTrue(cmd.exists("-f"));
+        assertNull(cmd.getValue("-f"));
+    }
+    
+}
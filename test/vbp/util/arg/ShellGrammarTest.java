@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2011 Sebastian Straub <sebastian-straub@gmx.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package vbp.util.arg;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+public class ShellGrammarTest {
+    
+    /**
+     * Test of split method, POSIX rules
+     */
+    @Test
+    public void testSplitPosix() {
+        ShellGrammar sh = ShellGrammar.POSIX;
+        assertEquals(Collections.emptyList(), sh.split(" \t "));
+        assertEquals(Arrays.asList("-i", "my file.avi", "out.mkv"), sh.split("  -i 'my file.avi'   out.mkv "));
+        assertEquals(Arrays.asList("--name=a b"), sh.split("--name=\"a b\""));
+        assertEquals(Arrays.asList("it's", "a \"quote\""), sh.split("it\\'s \"a \\\"quote\\\"\""));
+        assertEquals(Arrays.asList("\\$x", "$x"), sh.split("'\\$x' \"\\$x\""));
+        assertEquals(Arrays.asList("", "a b"), sh.split("'' a\\ b"));
+        assertEquals(Arrays.asList("-a", "-b"), sh.split("-a \\\n-b"));
+        assertEquals(Arrays.asList("x", "open end"), sh.split("x 'open end"));
+        assertEquals(Arrays.asList("x\\"), sh.split("x\\"));
+    }
+    
+    /**
+     * Test of split method, CommandLineToArgvW rules
+     */
+    @Test
+    public void testSplitWindows() {
+        ShellGrammar cmd = ShellGrammar.WINDOWS;
+        assertEquals(Arrays.asList("-i", "C:\\My Movies\\a.avi", "it's"), cmd.split("-i \"C:\\My Movies\\a.avi\" it's"));
+        assertEquals(Arrays.asList("a\\\\b", "c\"d"), cmd.split("a\\\\b c\\\"d"));
+        assertEquals(Arrays.asList("C:\\dir\\", "x"), cmd.split("\"C:\\dir\\\\\" x"));
+        assertEquals(Arrays.asList("say \"hi\""), cmd.split("\"say \"\"hi\"\"\""));
+        assertEquals(Arrays.asList(""), cmd.split("\"\""));
+    }
+    
+    /**
+     * Test of quote and join methods: split() must return the same words
+     */
+    @Test
+    public void testRoundTrip() {
+        List<String> words = Arrays.asList("plain", "", "with space", "it's", "a \"quote\"", "C:\\dir\\",
+                "C:\\dir with space\\", "back\\\"slash", "$HOME", "tab\there");
+        for (ShellGrammar grammar : ShellGrammar.values()) {
+            assertEquals(grammar.name(), words, grammar.split(grammar.join(words)));
+        }
+        assertEquals("-x ref=2:bframes=2", ShellGrammar.WINDOWS.join(Arrays.asList("-x", "ref=2:bframes=2")));
+        assertEquals("'it'\\''s'", ShellGrammar.POSIX.quote("it's"));
+    }
+    
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2011 Sebastian Straub <sebastian-straub@gmx.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package vbp.util.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+public class ListChangeTest {
+    
+    @Test
+    public void testRanges() {
+        List<String> before = Arrays.asList("a", "b", "c", "d", "e", "f");
+        List<String> after = Arrays.asList("a", "x", "y", "c", "d", "f", "z");
+        ListChange<String> change = ListChange.diff(before, after);
+        
+        assertEquals("[REMOVED@1[b], ADDED@1[x, y], REMOVED@5[e], ADDED@6[z]]", change.toString());
+        assertSame(before, change.getPrevious());
+        assertSame(after, change.getList());
+        assertEquals(2, change.getRanges().get(1).getLastIndex());
+        
+        assertApplies(before, change);
+        assertTrue(ListChange.diff(before, new ArrayList<String>(before)).isEmpty());
+    }
+    
+    @Test
+    public void testMove() {
+        List<String> before = Arrays.asList("a", "b", "c", "d");
+        List<String> after = Arrays.asList("a", "c", "d", "b");
+        ListChange<String> change = ListChange.diff(before, after);
+        
+        assertEquals("[REMOVED@1[b], ADDED@3[b]]", change.toString());
+        assertApplies(before, change);
+    }
+    
+    /**
+     * Overlapping folders yield the same file more than once
+     */
+    @Test
+    public void testDuplicates() {
+        List<String> before = Arrays.asList("a", "b");
+        List<String> after = Arrays.asList("a", "b", "c", "b");
+        ListChange<String> change = ListChange.diff(before, after);
+        
+        assertEquals("[ADDED@2[c, b]]", change.toString());
+        assertApplies(before, change);
+        assertApplies(after, ListChange.diff(after, before));
+        assertApplies(Arrays.asList("b", "a", "b"), ListChange.diff(Arrays.asList("b", "a", "b"), after));
+        assertTrue(ListChange.diff(after, new ArrayList<String>(after)).isEmpty());
+        
+        Random random = new Random(42);
+        for (int run = 0; run < 200; run++) {
+            List<Integer> first = randomList(random);
+            first.addAll(randomList(random));
+            List<Integer> second = randomList(random);
+            second.addAll(randomList(random));
+            assertApplies(first, ListChange.diff(first, second));
+        }
+    }
+    
+    @Test
+    public void testReplace() {
+        List<String> before = Arrays.asList("a", "b");
+        List<String> after = Arrays.asList("b", "c");
+        ListChange<String> change = ListChange.replace(before, after);
+        
+        assertEquals("[REMOVED@0[a, b], ADDED@0[b, c]]", change.toString());
+        assertApplies(before, change);
+    }
+    
+    @Test
+    public void testRandom() {
+        Random random = new Random(42);
+        for (int run = 0; run < 200; run++) {
+            List<Integer> before = randomList(random);
+            List<Integer> after = randomList(random);
+            if (run % 2 == 0) {
+                // mostly unchanged order, like a crawl with other filters
+                after = new ArrayList<Integer>(before);
+                after.removeAll(randomList(random));
+                after.add(random.nextInt(after.size() + 1), 1000 + run);
+            }
+            assertApplies(before, ListChange.diff(before, after));
+        }
+    }
+    
+    private static List<Integer> randomList(Random random) {
+        List<Integer> list = new ArrayList<Integer>();
+        for (int i = 0; i < 50; i++) {
+            if (random.nextInt(3) > 0) {
+                list.add(i);
+            }
+        }
+        Collections.shuffle(list.subList(0, random.nextInt(list.size() + 1)), random);
+        return list;
+    }
+    
+    private static <E> void assertApplies(List<E> before, ListChange<E> change) {
+        List<E> target = new ArrayList<E>(before);
+        change.apply(target);
+        assertEquals(change.getList(), target);
+    }
+    
+}
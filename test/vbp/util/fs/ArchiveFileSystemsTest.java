@@ -0,0 +1,227 @@
+/*
+ * Copyright (C) 2011 Sebastian Straub <sebastian-straub@gmx.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package vbp.util.fs;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import vbp.model.exec.TranscodeJob;
+import vbp.model.export.ExportFFmpeg;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+public class ArchiveFileSystemsTest {
+    
+    private File tempDir;
+    private ArchiveFileSystems archives;
+    
+    @Before
+    public void setUp() {
+        tempDir = new File(System.getProperty("java.io.tmpdir"), "vbp-archives-" + System.nanoTime());
+        tempDir.mkdirs();
+        archives = new ArchiveFileSystems();
+    }
+    
+    @After
+    public void tearDown() {
+        archives.clear();
+        for (File file : tempDir.listFiles()) {
+            file.delete();
+        }
+        tempDir.delete();
+    }
+    
+    @Test
+    public void testZip() throws IOException {
+        Path zip = createZip(new File(tempDir, "season 1.zip"));
+        assertTrue(ArchiveFileSystems.isArchive(zip));
+        
+        Path root = archives.mount(zip);
+        assertSame(root.getFileSystem(), archives.mount(zip).getFileSystem());
+        assertEquals(Arrays.asList("e01.mkv", "notes.txt", "extras"), list(root));
+        assertEquals(Arrays.asList("making of.avi"), list(root.resolve("extras")));
+        
+        // stored entries are read from the archive
+        Path stored = root.resolve("e01.mkv");
+        assertEquals(5, Files.size(stored));
+        assertEquals("video", new String(Files.readAllBytes(stored), "UTF-8"));
+        assertTrue(PathUtils.extent(stored).isStored());
+        assertFalse(PathUtils.extent(root.resolve("notes.txt")).isStored());
+        try {
+            Files.readAllBytes(root.resolve("notes.txt"));
+            fail();
+        } catch (IOException ex) {
+        }
+        
+        // archive paths can be written and resolved again
+        String canonical = PathUtils.canonicalPath(stored);
+        assertEquals(zip.toFile().getCanonicalPath() + "!/e01.mkv", canonical);
+        assertEquals(stored, archives.resolve(zip.getFileSystem(), canonical));
+        assertEquals(new File(tempDir, "season 1/extras/making of.avi").toPath(),
+                PathUtils.local(root.resolve("extras/making of.avi")));
+    }
+    
+    @Test
+    public void testIso() throws IOException {
+        Path iso = createIso(new File(tempDir, "dvd.iso"));
+        Path root = archives.mount(iso);
+        assertEquals(Arrays.asList("VIDEO_TS"), list(root));
+        Path vob = root.resolve("VIDEO_TS/VTS_01_1.VOB");
+        assertEquals(5, Files.size(vob));
+        assertEquals("video", new String(Files.readAllBytes(vob), "UTF-8"));
+        assertEquals(new Extent(iso.toAbsolutePath(), 20 * 2048, 5, true).toString(),
+                PathUtils.extent(vob).toString());
+    }
+    
+    @Test
+    public void testDamaged() throws IOException {
+        File file = new File(tempDir, "damaged.zip");
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(new byte[100]);
+        out.close();
+        try {
+            archives.mount(file.toPath());
+            fail();
+        } catch (IOException ex) {
+        }
+    }
+    
+    /**
+     * ffmpeg reads stored files from the archive, compressed files are skipped
+     */
+    @Test
+    public void testExport() throws IOException {
+        Path zip = createZip(new File(tempDir, "season 1.zip"));
+        Path root = archives.mount(zip);
+        Extent extent = PathUtils.extent(root.resolve("e01.mkv"));
+        List<Path> files = Arrays.asList(root.resolve("e01.mkv"), root.resolve("notes.txt"));
+        
+        List<TranscodeJob> jobs = new ExportFFmpeg(files, "ffmpeg -i in.mkv out.mp4", "ffmpeg", "{name}-conv").buildJobs();
+        assertEquals(1, jobs.size());
+        String source = String.format("subfile,,start,%d,end,%d,,:%s", extent.getOffset(), extent.getEnd(),
+                zip.toFile().getCanonicalPath());
+        assertEquals(Arrays.asList("ffmpeg", "-i", source,
+                new File(tempDir, "season 1/e01-conv.mp4").getCanonicalPath()), jobs.get(0).getCommand());
+    }
+    
+    private static List<String> list(Path folder) throws IOException {
+        List<String> names = new ArrayList<String>();
+        for (Path entry : Files.newDirectoryStream(folder)) {
+            names.add(entry.getFileName().toString());
+        }
+        return names;
+    }
+    
+    /**
+     * Creates a zip with a stored and two compressed files
+     */
+    private static Path createZip(File file) throws IOException {
+        ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(file));
+        try {
+            byte[] video = "video".getBytes("UTF-8");
+            ZipEntry stored = new ZipEntry("e01.mkv");
+            stored.setMethod(ZipEntry.STORED);
+            stored.setSize(video.length);
+            CRC32 crc = new CRC32();
+            crc.update(video);
+            stored.setCrc(crc.getValue());
+            zip.putNextEntry(stored);
+            zip.write(video);
+            zip.closeEntry();
+            
+            zip.putNextEntry(new ZipEntry("notes.txt"));
+            zip.write("some notes, compressed".getBytes("UTF-8"));
+            zip.closeEntry();
+            zip.putNextEntry(new ZipEntry("extras/"));
+            zip.closeEntry();
+            zip.putNextEntry(new ZipEntry("extras/making of.avi"));
+            zip.write(video);
+            zip.closeEntry();
+        } finally {
+            zip.close();
+        }
+        return file.toPath();
+    }
+    
+    /**
+     * Creates a minimal ISO 9660 image with the file VIDEO_TS/VTS_01_1.VOB
+     * (sector 16: primary volume descriptor, 17: terminator, 18: root
+     * directory, 19: VIDEO_TS, 20: content of the file)
+     */
+    private static Path createIso(File file) throws IOException {
+        ByteBuffer image = ByteBuffer.allocate(21 * 2048).order(ByteOrder.LITTLE_ENDIAN);
+        int pvd = 16 * 2048;
+        image.put(pvd, (byte) 1);
+        putString(image, pvd + 1, "CD001");
+        image.putShort(pvd + 128, (short) 2048);
+        putRecord(image, pvd + 156, 18, 2048, 2, "\0");
+        image.put(17 * 2048, (byte) 255);
+        putString(image, 17 * 2048 + 1, "CD001");
+        
+        int pos = 18 * 2048;
+        pos += putRecord(image, pos, 18, 2048, 2, "\0");
+        pos += putRecord(image, pos, 18, 2048, 2, "\1");
+        putRecord(image, pos, 19, 2048, 2, "VIDEO_TS");
+        pos = 19 * 2048;
+        pos += putRecord(image, pos, 19, 2048, 2, "\0");
+        pos += putRecord(image, pos, 18, 2048, 2, "\1");
+        putRecord(image, pos, 20, 5, 0, "VTS_01_1.VOB;1");
+        putString(image, 20 * 2048, "video");
+        
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(image.array());
+        } finally {
+            out.close();
+        }
+        return file.toPath();
+    }
+    
+    private static int putRecord(ByteBuffer image, int pos, int sector, int length, int flags, String name) {
+        int size = 33 + name.length() + ((name.length() % 2 == 0) ? 1 : 0);
+        image.put(pos, (byte) size);
+        image.putInt(pos + 2, sector);
+        image.putInt(pos + 10, length);
+        image.put(pos + 25, (byte) flags);
+        image.put(pos + 32, (byte) name.length());
+        putString(image, pos + 33, name);
+        return size;
+    }
+    
+    private static void putString(ByteBuffer image, int pos, String string) {
+        for (int i = 0; i < string.length(); i++) {
+            image.put(pos + i, (byte) string.charAt(i));
+        }
+    }
+    
+}
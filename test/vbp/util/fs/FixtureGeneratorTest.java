@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2011 Sebastian Straub <sebastian-straub@gmx.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package vbp.util.fs;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.TreeMap;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+public class FixtureGeneratorTest {
+    
+    @Test
+    public void testShape() throws IOException {
+        MemoryFileSystem fs = MemoryFileSystem.create("shape");
+        try {
+            FixtureGenerator generator = new FixtureGenerator(1);
+            generator.setDepth(3);
+            generator.setFolders(4);
+            generator.setFiles(10);
+            generator.setJitter(0);
+            generator.setVideoShare(1);
+            FixtureGenerator.Stats stats = generator.generate(fs.getPath("/root"));
+            
+            assertEquals(4 + 16, stats.getFolders());
+            assertEquals(10 * 21, stats.getFiles());
+            assertEquals(stats.getFiles(), stats.getVideos());
+            assertTrue(stats.getBytes() >= 210 * (50L << 20));
+        } finally {
+            fs.close();
+        }
+    }
+    
+    /**
+     * The same seed gives the same tree, in memory and on disk
+     */
+    @Test
+    public void testReproducible() throws IOException {
+        MemoryFileSystem fs = MemoryFileSystem.create("reproducible");
+        File dir = File.createTempFile("vbp-fixture", "");
+        dir.delete();
+        try {
+            FixtureGenerator generator = new FixtureGenerator(99);
+            generator.setDepth(2);
+            generator.generate(fs.getPath("/root"));
+            generator.generate(dir.toPath());
+            
+            Map<String, Long> memory = list(fs.getPath("/root"));
+            assertEquals(memory, list(dir.toPath()));
+            assertFalse(memory.equals(list(new FixtureGenerator(100), fs.getPath("/other"))));
+        } finally {
+            fs.close();
+            delete(dir);
+        }
+    }
+    
+    private static Map<String, Long> list(FixtureGenerator generator, Path root) throws IOException {
+        generator.setDepth(2);
+        generator.generate(root);
+        return list(root);
+    }
+    
+    /**
+     * @return the relative paths and sizes of all files below root
+     */
+    private static Map<String, Long> list(final Path root) throws IOException {
+        final Map<String, Long> files = new TreeMap<String, Long>();
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                files.put(root.relativize(file).toString().replace(File.separatorChar, '/'), attrs.size());
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return files;
+    }
+    
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+    
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2011 Sebastian Straub <sebastian-straub@gmx.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package vbp.util.fs;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+public class MemoryFileSystemTest {
+    
+    private MemoryFileSystem fs;
+    
+    @Before
+    public void setUp() {
+        fs = MemoryFileSystem.create("test");
+    }
+    
+    @After
+    public void tearDown() {
+        fs.close();
+    }
+    
+    @Test
+    public void testPaths() {
+        Path path = fs.getPath("/videos", "series", "a.avi");
+        assertEquals("/videos/series/a.avi", path.toString());
+        assertEquals("a.avi", path.getFileName().toString());
+        assertEquals("/videos/series", path.getParent().toString());
+        assertEquals(3, path.getNameCount());
+        assertTrue(path.startsWith("/videos"));
+        assertTrue(path.endsWith("series/a.avi"));
+        assertEquals(path, fs.getPath("/videos/./other/../series//a.avi").normalize());
+        assertEquals("../b/c", fs.getPath("/x/a").relativize(fs.getPath("/x/b/c")).toString());
+        assertEquals(path, fs.getPath("/videos").resolve("series/a.avi"));
+        assertEquals(path, fs.provider().getPath(path.toUri()));
+        assertTrue(fs.getPathMatcher("glob:**/*.{avi,mkv}").matches(path));
+        assertFalse(fs.getPathMatcher("glob:/videos/*.avi").matches(path));
+    }
+    
+    @Test
+    public void testFiles() throws IOException {
+        Path dir = fs.getPath("/videos/series");
+        Files.createDirectories(dir);
+        Path file = dir.resolve("a.avi");
+        Files.write(file, "hello".getBytes("UTF-8"));
+        Files.createDirectory(dir.resolve("sub"));
+        Files.createFile(dir.resolve("b.mkv"));
+        
+        assertTrue(Files.isDirectory(dir));
+        assertTrue(Files.isRegularFile(file));
+        assertFalse(Files.exists(dir.resolve("missing")));
+        assertEquals("hello", new String(Files.readAllBytes(file), "UTF-8"));
+        assertEquals(5, Files.size(file));
+        
+        // listing in order of creation
+        List<String> names = new ArrayList<String>();
+        for (Path entry : Files.newDirectoryStream(dir)) {
+            names.add(entry.getFileName().toString());
+        }
+        assertEquals(Arrays.asList("a.avi", "sub", "b.mkv"), names);
+        
+        try {
+            Files.createFile(file);
+            fail();
+        } catch (FileAlreadyExistsException ex) {
+        }
+        try {
+            Files.delete(dir);
+            fail();
+        } catch (DirectoryNotEmptyException ex) {
+        }
+        try {
+            Files.size(dir.resolve("missing"));
+            fail();
+        } catch (NoSuchFileException ex) {
+        }
+        
+        Files.move(file, dir.resolve("sub/c.avi"));
+        assertFalse(Files.exists(file));
+        assertEquals(5, Files.size(dir.resolve("sub/c.avi")));
+        Files.delete(dir.resolve("b.mkv"));
+        assertFalse(Files.exists(dir.resolve("b.mkv")));
+    }
+    
+    @Test
+    public void testSparse() throws IOException {
+        Path file = fs.getPath("/big.mkv");
+        SeekableByteChannel channel = Files.newByteChannel(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        channel.position((8L << 30) - 1);
+        channel.write(ByteBuffer.wrap(new byte[1]));
+        channel.close();
+        
+        assertEquals(8L << 30, Files.size(file));
+        assertEquals(0, ((MemoryFileSystem.Node) fs.find((MemoryPath) file)).data.length);
+        
+        channel = Files.newByteChannel(file, StandardOpenOption.READ);
+        ByteBuffer buffer = ByteBuffer.allocate(4);
+        channel.position(1000);
+        assertEquals(4, channel.read(buffer));
+        assertArrayEquals(new byte[4], buffer.array());
+        channel.close();
+    }
+    
+    @Test
+    public void testWalk() throws IOException {
+        FixtureGenerator generator = new FixtureGenerator(3);
+        FixtureGenerator.Stats stats = generator.generate(fs.getPath("/videos"));
+        
+        final int[] counts = new int[2];
+        final long[] bytes = new long[1];
+        Files.walkFileTree(fs.getPath("/videos"), new SimpleFileVisitor<Path>() {
+
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                counts[0]++;
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                counts[1]++;
+                bytes[0] += attrs.size();
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        assertEquals(stats.getFolders() + 1, counts[0]);
+        assertEquals(stats.getFiles(), counts[1]);
+        assertEquals(stats.getBytes(), bytes[0]);
+    }
+    
+}
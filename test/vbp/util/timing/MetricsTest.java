@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2011 Sebastian Straub <sebastian-straub@gmx.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package vbp.util.timing;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+public class MetricsTest {
+    
+    @Before
+    public void setUp() {
+        Metrics.setEnabled(true);
+        Metrics.reset();
+    }
+    
+    @After
+    public void tearDown() {
+        Metrics.setEnabled(false);
+        Metrics.reset();
+    }
+    
+    @Test
+    public void testDisabled() {
+        Metrics.setEnabled(false);
+        Counter counter = Metrics.counter("test.disabled");
+        Timer timer = Metrics.timer("test.disabled");
+        counter.increment();
+        assertEquals(0, timer.start());
+        timer.stop(timer.start());
+        timer.record(1000);
+        assertEquals(0, counter.getValue());
+        assertEquals(0, timer.getCount());
+    }
+    
+    @Test
+    public void testMetrics() {
+        Counter counter = Metrics.counter("test.counter");
+        assertSame(counter, Metrics.counter("test.counter"));
+        counter.increment();
+        counter.add(41);
+        assertEquals(42, counter.getValue());
+        assertEquals(Long.valueOf(42), Metrics.getCounters().get("test.counter"));
+        
+        Histogram histogram = Metrics.histogram("test.histogram");
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i);
+        }
+        histogram.record(-5);
+        assertEquals(101, histogram.getCount());
+        assertEquals(5050, histogram.getSum());
+        assertEquals(100, histogram.getMax());
+        // upper bound of the bucket [32, 63]
+        assertEquals(63, histogram.getPercentile(50));
+        assertEquals(100, histogram.getPercentile(99));
+        assertEquals(0, histogram.getPercentile(0));
+        
+        Timer timer = Metrics.timer("test.timer");
+        long start = timer.start();
+        assertTrue(start != 0);
+        timer.stop(start);
+        timer.record(5000000);
+        assertEquals(2, timer.getCount());
+        assertTrue(timer.getTotal() >= 5000000);
+        
+        Metrics.reset();
+        assertEquals(0, counter.getValue());
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, timer.getCount());
+    }
+    
+    @Test
+    public void testSummary() {
+        Metrics.counter("test.b").add(3);
+        Metrics.counter("test.a").increment();
+        Metrics.counter("test.unused");
+        Metrics.timer("test.\"quoted\"").record(2500000);
+        Metrics.histogram("test.sizes").record(10);
+        
+        String json = Metrics.summary("test");
+        assertTrue(json.startsWith("{\n  \"run\": \"test\",\n  \"started\": \""));
+        assertTrue(json.contains("\"counters\": {\n    \"test.a\": 1,\n    \"test.b\": 3\n  }"));
+        assertFalse(json.contains("test.unused"));
+        assertTrue(json.contains("\"test.\\\"quoted\\\"\": {\"count\": 1, \"totalMs\": 2.500, "));
+        assertTrue(json.contains("\"test.sizes\": {\"count\": 1, \"sum\": 10, \"mean\": 10.000, "
+                + "\"p50\": 10, \"p99\": 10, \"max\": 10}"));
+    }
+    
+    @Test
+    public void testSnapshot() {
+        Metrics.counter("test.files").add(10);
+        MetricsSnapshot before = Metrics.snapshot();
+        Metrics.counter("test.files").add(1000);
+        Metrics.timer("test.walk").record(2000000000L);
+        MetricsSnapshot run = Metrics.snapshot().since(before);
+        assertEquals(1000, run.counter("test.files"));
+        assertEquals(2000000000L, run.timer("test.walk"));
+        assertEquals(0, run.counter("test.missing"));
+        
+        RunReport report = new RunReport("scan", 4000000000L, run.counter("test.files"))
+                .count("files visited", run.counter("test.files"))
+                .stage("walk", run.timer("test.walk"))
+                .stage("render", 1000000)
+                .stage("render", 1000000);
+        assertEquals(250, report.getThroughput(), 1e-9);
+        assertEquals(Long.valueOf(2000000), report.getStages().get("render"));
+        assertTrue(report.toString().startsWith("scan: "));
+        assertTrue(report.toString().contains(" 250 files/s"));
+    }
+    
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2011 Sebastian Straub <sebastian-straub@gmx.net>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package vbp.util.timing;
+
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Sebastian Straub <sebastian-straub@gmx.net>
+ */
+public class PhaseTimerTest {
+    
+    @Test
+    public void testPhases() throws InterruptedException {
+        final PhaseTimer timer = new PhaseTimer();
+        PhaseTimer.Phase open = timer.begin("open");
+        Thread thread = new Thread(new Runnable() {
+
+            public void run() {
+                timer.begin("parallel").end();
+            }
+        }, "worker");
+        thread.start();
+        thread.join();
+        open.end();
+        open.end();
+        
+        List<PhaseTimer.Phase> phases = timer.getPhases();
+        assertEquals(2, phases.size());
+        assertEquals("parallel", phases.get(0).getName());
+        assertEquals("open", phases.get(1).getName());
+        assertTrue(phases.get(1).getDuration() >= phases.get(0).getDuration());
+        assertEquals(-1, timer.begin("unfinished").getDuration());
+        
+        String report = timer.report();
+        assertTrue(report.contains("[worker]"));
+        assertTrue(report.contains("total"));
+        assertFalse(report.contains("unfinished"));
+    }
+    
+}